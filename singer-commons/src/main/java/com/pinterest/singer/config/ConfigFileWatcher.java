@@ -20,11 +20,7 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.hash.HashCode;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
-import com.google.common.io.ByteSource;
-import com.google.common.io.Files;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.twitter.common.base.MorePreconditions;
 import com.twitter.util.Function;
@@ -33,8 +29,21 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -45,10 +54,12 @@ import java.util.concurrent.TimeUnit;
  * and have it monitor as many config files as needed.
  *
  * The class allows users to specify a watch on a file path and pass in a callback that
- * will be invoked whenever an update to the file is detected. Update detection currently
- * works by periodic polling; if the last modified time on the file is updated and the
- * content hash has changed, all watchers on that file are notified. Note that last modified
- * time is just used as a hint to determine whether to check the content and not for versioning.
+ * will be invoked whenever an update to the file is detected. The directories of the watched
+ * files are registered with a WatchService, and an event in a directory triggers a check of its
+ * files after a short debounce delay, which coalesces the events of multi step writes. Files on
+ * file systems without notifications are checked by periodic polling instead. A check compares
+ * size, last modified time and inode of the file first, and only reads the file if they changed;
+ * all watchers on that file are notified if the content differs from the last notified content.
  *
  * Objects of this class are thread safe.
  *
@@ -56,14 +67,22 @@ import java.util.concurrent.TimeUnit;
 public class ConfigFileWatcher {
 
   private static final Logger LOG = LoggerFactory.getLogger(ConfigFileWatcher.class);
-  private static final HashFunction HASH_FUNCTION = Hashing.md5();
   public static final int DEFAULT_POLL_PERIOD_SECONDS = 10;
+  public static final int DEFAULT_DEBOUNCE_MILLIS = 50;
   private static volatile ConfigFileWatcher DEFAULT_INSTANCE = null;
 
   // Thread safety note: only addWatch() can add new entries to this map, and that method
   // is synchronized. The reason for using a concurrent map is only to allow the watcher
   // thread to concurrently iterate over it.
   private final ConcurrentMap<String, ConfigFileInfo> watchedFileMap = Maps.newConcurrentMap();
+  // Watched files of each directory registered with the watch service.
+  private final ConcurrentMap<Path, List<String>> watchedDirs = Maps.newConcurrentMap();
+  // Directories with a scheduled check.
+  private final Set<Path> pendingDirs = Sets.newConcurrentHashSet();
+  private final ScheduledExecutorService service;
+  // null if the file system does not support notifications.
+  private final WatchService watchService;
+  private final int debounceMillis;
   private final WatcherTask watcherTask;
 
   /**
@@ -83,16 +102,36 @@ public class ConfigFileWatcher {
 
   @VisibleForTesting
   ConfigFileWatcher(int pollPeriodSeconds) {
-    ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(
+    this(pollPeriodSeconds, DEFAULT_DEBOUNCE_MILLIS);
+  }
+
+  @VisibleForTesting
+  ConfigFileWatcher(int pollPeriodSeconds, int debounceMillis) {
+    this.service = Executors.newSingleThreadScheduledExecutor(
         new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ConfigFileWatcher-%d").build());
+    this.debounceMillis = debounceMillis;
     this.watcherTask = new WatcherTask();
     service.scheduleWithFixedDelay(
         watcherTask, pollPeriodSeconds, pollPeriodSeconds, TimeUnit.SECONDS);
+    this.watchService = newWatchService();
+    if (watchService != null) {
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ConfigFileWatcherEvents-%d")
+          .build().newThread(this::processEvents).start();
+    }
+  }
+
+  private static WatchService newWatchService() {
+    try {
+      return FileSystems.getDefault().newWatchService();
+    } catch (IOException | UnsupportedOperationException e) {
+      LOG.warn("File system notifications are not available, polling config files instead", e);
+      return null;
+    }
   }
 
   /**
-   * Adds a watch on the specified file. The file must exist, otherwise a FileNotFoundException
-   * is returned. If the file is deleted after a watch is established, the watcher will log errors
+   * Adds a watch on the specified file. The file must exist, otherwise an IOException is thrown.
+   * If the file is deleted after a watch is established, the watcher will log errors
    * but continue to monitor it, and resume watching if it is recreated.
    *
    * @param filePath path to the file to watch.
@@ -109,18 +148,73 @@ public class ConfigFileWatcher {
 
     // Read the file and make the initial onUpdate call.
     File file = new File(filePath);
-    ByteSource byteSource = Files.asByteSource(file);
-    onUpdate.apply(byteSource.read());
+    FileState fileState = FileState.of(file);
+    byte[] contents = Files.readAllBytes(file.toPath());
+    onUpdate.apply(contents);
 
     // Add the file to our map if it isn't already there, and register the new change watcher.
     ConfigFileInfo configFileInfo = watchedFileMap.get(filePath);
     if (configFileInfo == null) {
-      configFileInfo = new ConfigFileInfo(file.lastModified(), byteSource.hash(HASH_FUNCTION));
+      configFileInfo = new ConfigFileInfo(fileState, contents);
       watchedFileMap.put(filePath, configFileInfo);
+      registerDirectories(filePath, configFileInfo);
     }
     configFileInfo.changeWatchers.add(onUpdate);
   }
 
+  /**
+   * Registers the directory of the file, and the directory of its current target if the file is a
+   * symlink, with the watch service, and polls the file if that fails. Registering a directory
+   * again is a no-op, so this is called again whenever the target of the file may have changed,
+   * e.g. after the data symlink of a mounted ConfigMap was swapped to a new directory.
+   */
+  private synchronized void registerDirectories(String filePath, ConfigFileInfo configFileInfo) {
+    if (watchService == null) {
+      configFileInfo.polled = true;
+      return;
+    }
+    try {
+      Path path = Paths.get(filePath).toAbsolutePath();
+      Set<Path> dirs = new HashSet<>();
+      dirs.add(path.getParent());
+      dirs.add(path.toRealPath().getParent());
+      for (Path dir : dirs) {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        List<String> filePaths =
+            watchedDirs.computeIfAbsent(dir, key -> Lists.newCopyOnWriteArrayList());
+        if (!filePaths.contains(filePath)) {
+          filePaths.add(filePath);
+        }
+      }
+      if (configFileInfo.polled) {
+        LOG.info("Watching the directories of {} again", filePath);
+      }
+      configFileInfo.polled = false;
+    } catch (IOException | UnsupportedOperationException e) {
+      // only log the first failure, registration is retried on every poll
+      if (!configFileInfo.polled) {
+        LOG.warn("Failed to watch the directory of {}, polling it instead", filePath, e);
+      }
+      configFileInfo.polled = true;
+    }
+  }
+
+  /**
+   * Stops tracking a directory whose watch key is no longer valid and polls its files until
+   * their directories can be registered again.
+   */
+  private synchronized void unregisterDirectory(Path dir, List<String> filePaths) {
+    LOG.warn("Directory {} is no longer watched, polling its config files", dir);
+    watchedDirs.remove(dir, filePaths);
+    for (String filePath : filePaths) {
+      ConfigFileInfo configFileInfo = watchedFileMap.get(filePath);
+      if (configFileInfo != null) {
+        configFileInfo.polled = true;
+      }
+    }
+  }
+
   @VisibleForTesting
   public List<Function<byte[], Void>> getWatchers(String filePath) {
     ConfigFileInfo configFileInfo = watchedFileMap.get(filePath);
@@ -132,12 +226,98 @@ public class ConfigFileWatcher {
 
   @VisibleForTesting
   public void runWatcherTaskNow() {
-    watcherTask.run();
+    for (String filePath : watchedFileMap.keySet()) {
+      checkFile(filePath);
+    }
+  }
+
+  /**
+   * Takes the events of the watch service and schedules a check of the files in the directory of
+   * each event. Events of a directory that arrive before its check runs are coalesced.
+   */
+  private void processEvents() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        LOG.warn("Stopped processing config file events", e);
+        return;
+      }
+      // overflows are handled like any other event, the check covers all files of the directory
+      key.pollEvents();
+      Path dir = (Path) key.watchable();
+      List<String> filePaths = watchedDirs.get(dir);
+      if (filePaths == null) {
+        continue;
+      }
+      if (!key.reset()) {
+        // the directory is gone, poll its files until they are watched again
+        unregisterDirectory(dir, filePaths);
+      }
+      if (pendingDirs.add(dir)) {
+        service.schedule(() -> {
+          pendingDirs.remove(dir);
+          for (String filePath : filePaths) {
+            ConfigFileInfo configFileInfo = watchedFileMap.get(filePath);
+            if (configFileInfo != null) {
+              // the event may be the swap of a symlink on the path of the file to a new directory
+              registerDirectories(filePath, configFileInfo);
+              checkFile(filePath);
+            }
+          }
+        }, debounceMillis, TimeUnit.MILLISECONDS);
+      }
+    }
   }
 
   /**
-   * Scheduled task that periodically checks each watched file for updates, and if found to have
-   * been changed, triggers notifications on all its watchers.
+   * Checks the file for updates, and if found to have been changed, triggers notifications on all
+   * its watchers.
+   */
+  private void checkFile(String filePath) {
+    ConfigFileInfo configFileInfo = watchedFileMap.get(filePath);
+    if (configFileInfo == null) {
+      return;
+    }
+    try {
+      File file = new File(filePath);
+      FileState fileState = FileState.of(file);
+      if (fileState.equals(configFileInfo.fileState)) {
+        LOG.debug("File {} not modified since {}", filePath, fileState.lastModified);
+        return;
+      }
+      configFileInfo.fileState = fileState;
+      byte[] newContents = Files.readAllBytes(file.toPath());
+      if (Arrays.equals(newContents, configFileInfo.contents)) {
+        LOG.info("File {} was modified at {} but content is unchanged.",
+            filePath, fileState.lastModified);
+        return;
+      }
+      configFileInfo.contents = newContents;
+      LOG.info("File {} was modified at {}, notifying watchers.", filePath, fileState.lastModified);
+      for (Function<byte[], Void> watchers : configFileInfo.changeWatchers) {
+        try {
+          watchers.apply(newContents);
+        } catch (Exception e) {
+          LOG.error(
+              "Exception in watcher callback for {}, ignoring. New file contents were: {}",
+              filePath, new String(newContents, Charsets.UTF_8), e);
+        }
+      }
+    } catch (Exception e) {
+      // We catch and log exceptions related to the update of any specific file, but
+      // move on so others aren't affected. Issues can happen for example if the watcher
+      // races with an external file replace operation; in that case, the next event or
+      // poll should pick up the update.
+      // TODO: Consider adding a metric to track this so we can alert on failures.
+      LOG.error("Config update check failed for {}", filePath, e);
+    }
+  }
+
+  /**
+   * Scheduled task that periodically retries to register the directories of the watched files,
+   * and checks the files that are not covered by file system notifications.
    *
    * Thread safety note: this task must be run in a single threaded executor; i.e. only one run
    * of the task can be active at any time.
@@ -147,67 +327,81 @@ public class ConfigFileWatcher {
     @Override
     public void run() {
       for (Map.Entry<String, ConfigFileInfo> entry : watchedFileMap.entrySet()) {
-        String filePath = entry.getKey();
         ConfigFileInfo configFileInfo = entry.getValue();
-        try {
-          File file = new File(filePath);
-          long lastModified = file.lastModified();
-          Preconditions.checkArgument(lastModified > 0L);
-          if (lastModified != configFileInfo.lastModifiedTimestampMillis) {
-            configFileInfo.lastModifiedTimestampMillis = lastModified;
-            ByteSource byteSource = Files.asByteSource(file);
-            HashCode newContentHash = byteSource.hash(HASH_FUNCTION);
-            if (!newContentHash.equals(configFileInfo.contentHash)) {
-              configFileInfo.contentHash = newContentHash;
-              LOG.info("File {} was modified at {}, notifying watchers.", filePath, lastModified);
-              byte[] newContents = byteSource.read();
-              for (Function<byte[], Void> watchers : configFileInfo.changeWatchers) {
-                try {
-                  watchers.apply(newContents);
-                } catch (Exception e) {
-                  LOG.error(
-                      "Exception in watcher callback for {}, ignoring. New file contents were: {}",
-                      filePath, new String(newContents, Charsets.UTF_8), e);
-                }
-              }
-            } else {
-              LOG.info("File {} was modified at {} but content hash is unchanged.",
-                  filePath, lastModified);
-            }
-          } else {
-            LOG.debug("File {} not modified since {}", filePath, lastModified);
-          }
-        } catch (Exception e) {
-          // We catch and log exceptions related to the update of any specific file, but
-          // move on so others aren't affected. Issues can happen for example if the watcher
-          // races with an external file replace operation; in that case, the next run should
-          // pick up the update.
-          // TODO: Consider adding a metric to track this so we can alert on failures.
-          LOG.error("Config update check failed for {}", filePath, e);
+        boolean polled = configFileInfo.polled;
+        registerDirectories(entry.getKey(), configFileInfo);
+        // also check files that just left polling, their updates may not have raised events
+        if (polled || configFileInfo.polled) {
+          checkFile(entry.getKey());
         }
       }
     }
   }
 
+  /**
+   * Size, last modified time and inode of a file. A file whose state is unchanged is not read.
+   */
+  private static final class FileState {
+
+    private final long size;
+    private final long lastModified;
+    // identifies the inode of the file on file systems that support it, null otherwise.
+    private final Object fileKey;
+
+    private FileState(long size, long lastModified, Object fileKey) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.fileKey = fileKey;
+    }
+
+    private static FileState of(File file) throws IOException {
+      BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+          BasicFileAttributes.class);
+      return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(),
+          attributes.fileKey());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      FileState that = (FileState) o;
+      return size == that.size && lastModified == that.lastModified
+          && Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(size, lastModified, fileKey);
+    }
+  }
+
   /**
    * Encapsulates state related to each watched config file.
    *
    * Thread safety note:
    *   1. changeWatchers is thread safe since it uses a copy-on-write array list.
-   *   2. lastModifiedTimestampMillis and contentHash aren't safe to update across threads. We
-   *      initialize in addWatch() at construction time, and thereafter only the watcher task
-   *      thread accesses this state, so we are good.
+   *   2. fileState and contents aren't safe to update across threads. We initialize in
+   *      addWatch() at construction time, and thereafter only the single threaded watcher
+   *      executor accesses this state, so we are good.
+   *   3. polled is set by the event thread when the directory of the file can no longer be
+   *      watched, and cleared by the watcher executor once its directories are registered again.
+   *      Both updates happen while holding the lock of the ConfigFileWatcher.
    */
   private static class ConfigFileInfo {
 
     private final List<Function<byte[], Void>> changeWatchers = Lists.newCopyOnWriteArrayList();
-    private long lastModifiedTimestampMillis;
-    private HashCode contentHash;
+    private FileState fileState;
+    private byte[] contents;
+    private volatile boolean polled;
 
-    public ConfigFileInfo(long lastModifiedTimestampMillis, HashCode contentHash) {
-      this.lastModifiedTimestampMillis = lastModifiedTimestampMillis;
-      Preconditions.checkArgument(lastModifiedTimestampMillis > 0L);
-      this.contentHash = Preconditions.checkNotNull(contentHash);
+    public ConfigFileInfo(FileState fileState, byte[] contents) {
+      this.fileState = Preconditions.checkNotNull(fileState);
+      this.contents = Preconditions.checkNotNull(contents);
     }
   }
 }
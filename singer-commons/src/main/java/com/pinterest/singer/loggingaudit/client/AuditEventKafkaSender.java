@@ -17,6 +17,8 @@
 package com.pinterest.singer.loggingaudit.client;
 
 import com.pinterest.singer.loggingaudit.client.common.LoggingAuditClientMetrics;
+import com.pinterest.singer.loggingaudit.thrift.AggregatedLoggingAuditEvent;
+import com.pinterest.singer.loggingaudit.thrift.AggregatedLoggingAuditEventBatch;
 import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
 import com.pinterest.singer.loggingaudit.thrift.LoggingAuditEvent;
 import com.pinterest.singer.loggingaudit.thrift.LoggingAuditStage;
@@ -47,6 +49,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 /**
  *  LoggingAuditEventSender implementations that dequeue LoggingAuditEvent and send it to Kafka.
  *
+ *  If an aggregator is set, the sender instead periodically drains the AggregatedLoggingAuditEvents
+ *  of the aggregator and sends them in AggregatedLoggingAuditEventBatches to the aggregated topic.
+ *
  *  Each instance of this class should be executed in its own thread.
  */
 public class AuditEventKafkaSender implements LoggingAuditEventSender {
@@ -71,6 +76,11 @@ public class AuditEventKafkaSender implements LoggingAuditEventSender {
    */
   private static final int DEQUEUE_WAIT_IN_SECONDS = 30;
 
+  /**
+   *  maximum number of AggregatedLoggingAuditEventBatches waiting to be sent.
+   */
+  private static final int MAX_PENDING_BATCHES = 1000;
+
 
   /**
    *   when gracefully shutting down the Sender, the calling thread sleeps for some time and let
@@ -173,6 +183,29 @@ public class AuditEventKafkaSender implements LoggingAuditEventSender {
    */
   private int currentPartitionId = -1;
 
+  /**
+   *  aggregator of the audit events if aggregation is enabled, null otherwise.
+   */
+  private LoggingAuditEventAggregator aggregator;
+
+  /**
+   *  topic to store the AggregatedLoggingAuditEventBatches
+   */
+  private String aggregatedTopic;
+
+  private int aggregationFlushIntervalInMilliseconds;
+
+  private int maxAggregatedEventsPerBatch;
+
+  private long lastAggregationFlushTime;
+
+  /**
+   *  batches of aggregated events waiting to be sent. Batches that failed to be sent are
+   *  inserted at the beginning of the deque, like the LoggingAuditEvents in the queue.
+   */
+  private final LinkedBlockingDeque<PendingBatch> pendingBatches =
+      new LinkedBlockingDeque<>(MAX_PENDING_BATCHES);
+
   public AuditEventKafkaSender(KafkaSenderConfig config,
                                LinkedBlockingDeque<LoggingAuditEvent> queue,
                                LoggingAuditStage stage, String host, String name) {
@@ -182,9 +215,22 @@ public class AuditEventKafkaSender implements LoggingAuditEventSender {
     this.host = host;
     this.name = name;
     this.stopGracePeriodInSeconds = config.getStopGracePeriodInSeconds();
+    this.aggregatedTopic = config.getAggregatedTopic();
     this.badPartitions.add(-1);
   }
 
+  /**
+   *  Send the aggregated events of the given aggregator instead of the events in the queue.
+   *  Must be called before the sender is started.
+   */
+  public void setAggregator(LoggingAuditEventAggregator aggregator,
+                            int aggregationFlushIntervalInMilliseconds,
+                            int maxAggregatedEventsPerBatch) {
+    this.aggregator = aggregator;
+    this.aggregationFlushIntervalInMilliseconds = aggregationFlushIntervalInMilliseconds;
+    this.maxAggregatedEventsPerBatch = maxAggregatedEventsPerBatch;
+  }
+
 
   public KafkaProducer<byte[], byte[]> getKafkaProducer() {
     return kafkaProducer;
@@ -252,6 +298,10 @@ public class AuditEventKafkaSender implements LoggingAuditEventSender {
    */
   @Override
   public void run() {
+    if (aggregator != null) {
+      runAggregated();
+      return;
+    }
     LoggingAuditEvent event = null;
     ProducerRecord<byte[], byte[]> record;
     byte[] value = null;
@@ -296,6 +346,154 @@ public class AuditEventKafkaSender implements LoggingAuditEventSender {
   }
 
 
+  /**
+   *  Sender periodically drains the aggregator and sends the aggregated events in batches. A batch
+   *  that fails to be sent is retried on other partitions, at most NUM_OF_PARTITIONS_TO_TRY_SENDING
+   *  times before it is dropped.
+   *
+   *  The aggregator is drained even while no partition is available, so the aggregated events
+   *  wait in the bounded pendingBatches. Once the loop exits, the aggregator is closed and the
+   *  events that were not sent are dropped.
+   */
+  private void runAggregated() {
+    lastAggregationFlushTime = System.currentTimeMillis();
+    try {
+      sendAggregated();
+    } finally {
+      int dropped = aggregator.close().size();
+      PendingBatch batch;
+      while ((batch = pendingBatches.poll()) != null) {
+        dropped += batch.batch.getEventsSize();
+      }
+      if (dropped > 0) {
+        LOG.warn("[{}] stopped sending, dropped {} aggregated audit events.", name, dropped);
+        OpenTsdbMetricConverter
+            .incr(LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_KAFKA_AGGREGATED_EVENTS_DROPPED,
+                dropped, "host=" + host, "stage=" + stage.toString());
+      }
+    }
+  }
+
+  private void sendAggregated() {
+    while (!cancelled.get()) {
+      try {
+        refreshPartitionIfNeeded();
+        long now = System.currentTimeMillis();
+        long nextFlushTime = lastAggregationFlushTime + aggregationFlushIntervalInMilliseconds;
+        if (now >= nextFlushTime) {
+          lastAggregationFlushTime = now;
+          nextFlushTime = now + aggregationFlushIntervalInMilliseconds;
+          List<AggregatedLoggingAuditEvent> events = aggregator.drain();
+          OpenTsdbMetricConverter.gauge(LoggingAuditClientMetrics.AUDIT_CLIENT_AGGREGATOR_SIZE,
+              events.size(), "host=" + host, "stage=" + stage.toString());
+          addPendingBatches(events);
+        }
+        if (currentPartitionId == -1) {
+          Thread.sleep(100);
+          continue;
+        }
+        PendingBatch batch =
+            pendingBatches.poll(Math.max(1, nextFlushTime - now), TimeUnit.MILLISECONDS);
+        if (batch != null) {
+          try {
+            byte[] value = serializer.serialize(batch.batch);
+            kafkaProducer.send(new ProducerRecord<>(this.aggregatedTopic, currentPartitionId, null,
+                value), new AggregatedBatchCallback(batch, currentPartitionId));
+          } catch (TException e) {
+            LOG.debug("[{}] failed to construct ProducerRecord because of serialization exception.",
+                Thread.currentThread().getName(), e);
+            OpenTsdbMetricConverter
+                .incr(LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_SERIALIZATION_EXCEPTION, 1,
+                    "host=" + host, "stage=" + stage.toString());
+          }
+        }
+      } catch (InterruptedException e) {
+        LOG.warn("[{}] got interrupted when polling the pending batches and while loop is ended!",
+            Thread.currentThread().getName(), e);
+        OpenTsdbMetricConverter.incr(
+            LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_DEQUEUE_INTERRUPTED_EXCEPTION, 1,
+            "host=" + host, "stage=" + stage.toString());
+        break;
+      } catch (Exception e) {
+        LOG.warn("Exit the while loop and finish the thread execution due to exception: ", e);
+        OpenTsdbMetricConverter.incr(LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_EXCEPTION, 1,
+            "host=" + host, "stage=" + stage.toString());
+        break;
+      }
+    }
+  }
+
+  private void addPendingBatches(List<AggregatedLoggingAuditEvent> events) {
+    for (int start = 0; start < events.size(); start += maxAggregatedEventsPerBatch) {
+      List<AggregatedLoggingAuditEvent> batchEvents = new ArrayList<>(events.subList(start,
+          Math.min(events.size(), start + maxAggregatedEventsPerBatch)));
+      PendingBatch batch =
+          new PendingBatch(new AggregatedLoggingAuditEventBatch().setEvents(batchEvents));
+      if (!pendingBatches.offerLast(batch)) {
+        OpenTsdbMetricConverter
+            .incr(LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_KAFKA_AGGREGATED_EVENTS_DROPPED,
+                batchEvents.size(), "host=" + host, "stage=" + stage.toString());
+      }
+    }
+  }
+
+  /**
+   *  AggregatedLoggingAuditEventBatch with the number of partitions tried to send it to.
+   */
+  private static final class PendingBatch {
+
+    private final AggregatedLoggingAuditEventBatch batch;
+    private int triedCount = 0;
+
+    private PendingBatch(AggregatedLoggingAuditEventBatch batch) {
+      this.batch = batch;
+    }
+  }
+
+  private class AggregatedBatchCallback implements Callback {
+
+    private final PendingBatch batch;
+    private final int partition;
+
+    private AggregatedBatchCallback(PendingBatch batch, int partition) {
+      this.batch = batch;
+      this.partition = partition;
+    }
+
+    @Override
+    public void onCompletion(RecordMetadata recordMetadata, Exception e) {
+      int numEvents = batch.batch.getEventsSize();
+      try {
+        if (e == null) {
+          OpenTsdbMetricConverter
+              .incr(LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_KAFKA_AGGREGATED_EVENTS_ACKED,
+                  numEvents, "host=" + host, "stage=" + stage.toString());
+          badPartitions.remove(recordMetadata.partition());
+          return;
+        }
+        badPartitions.add(this.partition);
+        OpenTsdbMetricConverter
+            .incr(LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_KAFKA_PARTITION_ERROR, 1,
+                "host=" + host, "stage=" + stage.toString(), "topic=" + aggregatedTopic,
+                "partition=" + this.partition);
+        batch.triedCount += 1;
+        if (batch.triedCount >= NUM_OF_PARTITIONS_TO_TRY_SENDING || aggregator.isClosed()
+            || !pendingBatches.offerFirst(batch)) {
+          LOG.debug("Failed to send aggregated audit events after trying {} partitions. Drop them.",
+              batch.triedCount);
+          OpenTsdbMetricConverter
+              .incr(LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_KAFKA_AGGREGATED_EVENTS_DROPPED,
+                  numEvents, "host=" + host, "stage=" + stage.toString());
+        }
+      } catch (Throwable t) {
+        LOG.warn("Exception throws in the callback. Drop the aggregated events.", t);
+        OpenTsdbMetricConverter
+            .incr(LoggingAuditClientMetrics.AUDIT_CLIENT_SENDER_KAFKA_CALLBACK_EXCEPTION, 1,
+                "host=" + host, "stage=" + stage.toString(), "topic=" + aggregatedTopic);
+      }
+    }
+  }
+
   public class KafkaProducerCallback implements Callback {
 
     private LoggingAuditEvent event;
@@ -406,7 +604,7 @@ public class AuditEventKafkaSender implements LoggingAuditEventSender {
         Thread.currentThread().getName(), stopGracePeriodInSeconds, name);
     int i = 0;
     int numOfRounds = stopGracePeriodInSeconds / THREAD_SLEEP_IN_SECONDS;
-    while (queue.size() > 0 && this.thread != null && thread.isAlive() && i < numOfRounds) {
+    while (hasEventsToSend() && this.thread != null && thread.isAlive() && i < numOfRounds) {
       i += 1;
       try {
         Thread.sleep(THREAD_SLEEP_IN_SECONDS * 1000);
@@ -431,4 +629,11 @@ public class AuditEventKafkaSender implements LoggingAuditEventSender {
         queue.size());
   }
 
+  private boolean hasEventsToSend() {
+    if (aggregator != null) {
+      return aggregator.size() > 0 || !pendingBatches.isEmpty();
+    }
+    return queue.size() > 0;
+  }
+
 }
@@ -18,15 +18,47 @@ package com.pinterest.singer.loggingaudit.client;
 import com.pinterest.singer.utils.CommonUtils;
 import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
 
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  *  This class is used to generate LoggingAuditHeaders object which is defined as thrift struct.
  *  LoggingAuditHeaders object can uniquely identify each log message and support auditing use case.
  *
  *  Each private of AuditHeadersGenerator class corresponds to each field of LoggingAuditHeaders.
+ *
+ *  This class is thread safe and lock free: sequence numbers are claimed from an atomic counter of
+ *  the current session, and the thread that exhausts a session installs the next one. Besides new
+ *  LoggingAuditHeaders objects, the headers can be written into a reused object or be written
+ *  serialized with the TBinaryProtocol into a buffer.
  **/
 
 public class AuditHeadersGenerator {
 
+  private static final TStruct HEADERS_STRUCT = new TStruct("LoggingAuditHeaders");
+  private static final TField HOST_FIELD = new TField("host", TType.STRING, (short) 1);
+  private static final TField LOG_NAME_FIELD = new TField("logName", TType.STRING, (short) 2);
+  private static final TField PID_FIELD = new TField("pid", TType.I32, (short) 3);
+  private static final TField SESSION_FIELD = new TField("session", TType.I64, (short) 4);
+  private static final TField LOG_SEQ_NUM_IN_SESSION_FIELD =
+      new TField("logSeqNumInSession", TType.I32, (short) 5);
+  private static final TField TIMESTAMP_FIELD = new TField("timestamp", TType.I64, (short) 6);
+  private static final TField TRACKED_FIELD = new TField("tracked", TType.BOOL, (short) 7);
+
+  // bytes of a field header in the TBinaryProtocol: the type and the field id
+  private static final int FIELD_HEADER_BYTES = 3;
+
   /**
    *  Host on which log messages are generated.
    */
@@ -43,36 +75,168 @@ public class AuditHeadersGenerator {
   private int pid;
 
   /**
-   *  Timestamp when ThriftLogger instance is initialized.
+   *  The current session and the log sequence numbers claimed in it.
    */
-  private long session;
+  private final AtomicReference<Session> session;
 
   /**
-   *  Log sequence number for a given session and it starts with 0.
+   *  The host, logName and pid fields serialized with the TBinaryProtocol.
    */
-  private int logSeqNumInSession;
+  private final byte[] serializedPrefix;
 
   public AuditHeadersGenerator(String host, String logName) {
     this.host = host;
     this.logName = logName;
     this.pid = CommonUtils.getPid();
-    this.session = System.currentTimeMillis();
-    this.logSeqNumInSession = -1;
+    this.session = new AtomicReference<>(new Session(System.currentTimeMillis()));
+    this.serializedPrefix = serializePrefix(host, logName, pid);
   }
 
-  public synchronized LoggingAuditHeaders generateHeaders() {
-    if (this.logSeqNumInSession == Integer.MAX_VALUE) {
-      this.session = System.currentTimeMillis();
-      this.logSeqNumInSession = -1;
+  public LoggingAuditHeaders generateHeaders() {
+    return generateHeaders(new LoggingAuditHeaders());
+  }
+
+  /**
+   * Set the fields of the given headers to the ones of the next log message. Only the tracked
+   * field is left as it is.
+   *
+   * @param headers the headers to set, e.g. an object that is reused by the caller.
+   * @return the given headers.
+   */
+  public LoggingAuditHeaders generateHeaders(LoggingAuditHeaders headers) {
+    Session current = session.get();
+    int logSeqNumInSession = current.claim();
+    while (logSeqNumInSession < 0) {
+      current = nextSession(current);
+      logSeqNumInSession = current.claim();
     }
-    this.logSeqNumInSession += 1;
-    return new LoggingAuditHeaders()
+    return headers
         .setHost(this.host)
         .setLogName(this.logName)
         .setPid(this.pid)
-        .setSession(this.session)
-        .setLogSeqNumInSession(this.logSeqNumInSession)
+        .setSession(current.session)
+        .setLogSeqNumInSession(logSeqNumInSession)
         .setTimestamp(System.currentTimeMillis());
   }
 
+  /**
+   * Write the headers of the next log message serialized with the TBinaryProtocol into a buffer,
+   * which gives the same bytes as serializing the generated LoggingAuditHeaders.
+   *
+   * @param buffer the buffer to write to, starting at its position.
+   * @param tracked whether the message is tracked, the field is only written if true.
+   * @return the number of bytes written, the position of the buffer is advanced past them.
+   * @throws BufferOverflowException if the headers do not fit the remaining buffer, no sequence
+   *                                 number is claimed then.
+   */
+  public int writeHeaders(ByteBuffer buffer, boolean tracked) {
+    int length = serializedPrefix.length
+        + FIELD_HEADER_BYTES + Long.BYTES
+        + FIELD_HEADER_BYTES + Integer.BYTES
+        + FIELD_HEADER_BYTES + Long.BYTES
+        + (tracked ? FIELD_HEADER_BYTES + 1 : 0)
+        + 1;
+    if (buffer.remaining() < length) {
+      throw new BufferOverflowException();
+    }
+    Session current = session.get();
+    int logSeqNumInSession = current.claim();
+    while (logSeqNumInSession < 0) {
+      current = nextSession(current);
+      logSeqNumInSession = current.claim();
+    }
+    buffer.put(serializedPrefix);
+    putFieldHeader(buffer, SESSION_FIELD);
+    putLong(buffer, current.session);
+    putFieldHeader(buffer, LOG_SEQ_NUM_IN_SESSION_FIELD);
+    putInt(buffer, logSeqNumInSession);
+    putFieldHeader(buffer, TIMESTAMP_FIELD);
+    putLong(buffer, System.currentTimeMillis());
+    if (tracked) {
+      putFieldHeader(buffer, TRACKED_FIELD);
+      buffer.put((byte) 1);
+    }
+    buffer.put(TType.STOP);
+    return length;
+  }
+
+  /**
+   * Replace an exhausted session with a new one, unless another thread already did.
+   *
+   * @return the current session.
+   */
+  private Session nextSession(Session exhausted) {
+    // a new session must differ from the exhausted one even within the same millisecond
+    Session next = new Session(Math.max(System.currentTimeMillis(), exhausted.session + 1));
+    if (session.compareAndSet(exhausted, next)) {
+      return next;
+    }
+    return session.get();
+  }
+
+  private static byte[] serializePrefix(String host, String logName, int pid) {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    TProtocol protocol = new TBinaryProtocol(new TIOStreamTransport(os));
+    try {
+      protocol.writeStructBegin(HEADERS_STRUCT);
+      protocol.writeFieldBegin(HOST_FIELD);
+      protocol.writeString(host);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(LOG_NAME_FIELD);
+      protocol.writeString(logName);
+      protocol.writeFieldEnd();
+      protocol.writeFieldBegin(PID_FIELD);
+      protocol.writeI32(pid);
+      protocol.writeFieldEnd();
+    } catch (TException e) {
+      // writing to a ByteArrayOutputStream does not fail
+      throw new IllegalStateException(e);
+    }
+    return os.toByteArray();
+  }
+
+  // TBinaryProtocol is big endian, independent of the byte order of the buffer
+
+  private static void putFieldHeader(ByteBuffer buffer, TField field) {
+    buffer.put(field.type);
+    buffer.put((byte) (field.id >>> 8));
+    buffer.put((byte) field.id);
+  }
+
+  private static void putInt(ByteBuffer buffer, int value) {
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      buffer.put((byte) (value >>> shift));
+    }
+  }
+
+  private static void putLong(ByteBuffer buffer, long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      buffer.put((byte) (value >>> shift));
+    }
+  }
+
+  private static final class Session {
+
+    /**
+     *  Timestamp when the session started.
+     */
+    private final long session;
+
+    /**
+     *  Log sequence number of the next message in the session, it starts with 0.
+     */
+    private final AtomicLong nextLogSeqNum = new AtomicLong();
+
+    private Session(long session) {
+      this.session = session;
+    }
+
+    /**
+     * @return the claimed log sequence number, or -1 if the session is exhausted.
+     */
+    private int claim() {
+      long logSeqNum = nextLogSeqNum.getAndIncrement();
+      return logSeqNum <= Integer.MAX_VALUE ? (int) logSeqNum : -1;
+    }
+  }
 }
@@ -70,6 +70,11 @@ public class LoggingAuditClient {
    */
   private LinkedBlockingDeque<LoggingAuditEvent> queue;
 
+  /**
+   *  aggregates audit events instead of enqueueing them if aggregation is enabled, null otherwise.
+   */
+  private LoggingAuditEventAggregator aggregator;
+
   /**
    *  audit event generator
    */
@@ -115,6 +120,11 @@ public class LoggingAuditClient {
     this.auditConfigs.putAll(config.getAuditConfigs());
     this.loggingAuditEventGenerator =
         new LoggingAuditEventGenerator(this.host, this.stage, this.auditConfigs);
+    if (config.isEnableAggregation()) {
+      this.aggregator = new LoggingAuditEventAggregator(
+          TimeUnit.SECONDS.toMillis(config.getAggregationWindowInSeconds()),
+          config.getMaxAggregates(), config.getMaxEventsPerAggregate());
+    }
     initLoggingAuditEventSender(this.config.getSenderConfig(), this.queue);
   }
 
@@ -125,6 +135,11 @@ public class LoggingAuditClient {
         this.host, KAFKA_SENDER_NAME);
     ((AuditEventKafkaSender) this.sender).setKafkaProducer(KafkaUtils.createKafkaProducer(
         config.getKafkaSenderConfig().getKafkaProducerConfig(), KAFKA_SENDER_NAME));
+    if (this.aggregator != null) {
+      ((AuditEventKafkaSender) this.sender).setAggregator(this.aggregator,
+          this.config.getAggregationFlushIntervalInMilliseconds(),
+          this.config.getMaxAggregatedEventsPerBatch());
+    }
     this.sender.start();
   }
 
@@ -184,7 +199,8 @@ public class LoggingAuditClient {
 
   /**
    *  create and enqueue a LoggingAuditEvent if TopicAuditConfig exists for this topic/logName,
-   *  enqueueEnabled is true and there is capacity available in the queue.
+   *  enqueueEnabled is true and there is capacity available in the queue. If aggregation is
+   *  enabled, the LoggingAuditEvent is added to the aggregator instead of the queue.
    * @param loggingAuditName
    * @param loggingAuditHeaders
    * @param messageValid
@@ -207,6 +223,14 @@ public class LoggingAuditClient {
       LoggingAuditEvent loggingAuditEvent = loggingAuditEventGenerator.generateAuditEvent(
           loggingAuditName, loggingAuditHeaders, messageValid, messageAcknowledgedTimestamp,
           kafkaCluster, topic, messageSkipped);
+      if (aggregator != null) {
+        String metric = aggregator.add(loggingAuditEvent)
+                        ? LoggingAuditClientMetrics.AUDIT_CLIENT_AGGREGATOR_EVENTS_ADDED
+                        : LoggingAuditClientMetrics.AUDIT_CLIENT_AGGREGATOR_EVENTS_DROPPED;
+        OpenTsdbMetricConverter.incr(metric, "logName=" + loggingAuditHeaders.getLogName(),
+            "host=" + host, "stage=" + stage.toString());
+        return;
+      }
       boolean successful = false;
       try {
         // compared to put() which is blocking until available space in the queue, offer()
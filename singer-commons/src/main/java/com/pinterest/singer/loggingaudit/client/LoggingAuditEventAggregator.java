@@ -0,0 +1,255 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pinterest.singer.loggingaudit.client;
+
+import com.pinterest.singer.loggingaudit.thrift.AggregatedLoggingAuditEvent;
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditEvent;
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditSeqNumRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  LoggingAuditEventAggregator rolls up LoggingAuditEvents into AggregatedLoggingAuditEvents, one
+ *  per log, session and time window (and the other fields audit events of a message can differ
+ *  in). An aggregate only keeps the logSeqNumInSession of its events, which are turned into
+ *  ranges of consecutive sequence numbers when the aggregates are drained.
+ *
+ *  The aggregator is bounded: events that would need an aggregate beyond maxAggregates, or that
+ *  are added to an aggregate holding maxEventsPerAggregate events, are dropped. Once closed, the
+ *  aggregator drops all events.
+ *
+ *  This class is thread safe. Adding an event only locks the aggregate it is added to.
+ */
+public class LoggingAuditEventAggregator {
+
+  private static final int INITIAL_SEQ_NUMS = 64;
+
+  /**
+   *  length of the time windows in milliseconds.
+   */
+  private final long windowInMilliseconds;
+
+  private final int maxAggregates;
+
+  private final int maxEventsPerAggregate;
+
+  private final ConcurrentHashMap<AggregationKey, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+  private volatile boolean closed = false;
+
+  public LoggingAuditEventAggregator(long windowInMilliseconds, int maxAggregates,
+                                     int maxEventsPerAggregate) {
+    if (windowInMilliseconds <= 0) {
+      throw new IllegalArgumentException("Aggregation window must be positive");
+    }
+    if (maxAggregates <= 0 || maxEventsPerAggregate <= 0) {
+      throw new IllegalArgumentException("Aggregation limits must be positive");
+    }
+    this.windowInMilliseconds = windowInMilliseconds;
+    this.maxAggregates = maxAggregates;
+    this.maxEventsPerAggregate = maxEventsPerAggregate;
+  }
+
+  /**
+   * @return false if the event was dropped because the aggregator is full or closed.
+   */
+  public boolean add(LoggingAuditEvent event) {
+    AggregationKey key = new AggregationKey(event, windowInMilliseconds);
+    int logSeqNumInSession = event.getLoggingAuditHeaders().getLogSeqNumInSession();
+    while (!closed) {
+      Aggregate aggregate = aggregates.get(key);
+      if (aggregate == null) {
+        // concurrent adds of new keys can overshoot the limit by the number of adding threads
+        if (aggregates.size() >= maxAggregates) {
+          return false;
+        }
+        aggregate = aggregates.computeIfAbsent(key, k -> new Aggregate(event));
+      }
+      switch (aggregate.add(logSeqNumInSession, maxEventsPerAggregate)) {
+        case ADDED:
+          return true;
+        case FULL:
+          return false;
+        default:
+          // the aggregate was drained concurrently, add the event to a new one
+          aggregates.remove(key, aggregate);
+      }
+    }
+    return false;
+  }
+
+  /**
+   *  Stop accepting events and remove all aggregates.
+   *
+   * @return the removed aggregates.
+   */
+  public List<AggregatedLoggingAuditEvent> close() {
+    closed = true;
+    return drain();
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   *  Remove all aggregates.
+   *
+   * @return the removed aggregates.
+   */
+  public List<AggregatedLoggingAuditEvent> drain() {
+    List<AggregatedLoggingAuditEvent> events = new ArrayList<>(aggregates.size());
+    for (AggregationKey key : aggregates.keySet()) {
+      Aggregate aggregate = aggregates.remove(key);
+      if (aggregate != null) {
+        events.add(aggregate.close(key.window * windowInMilliseconds));
+      }
+    }
+    return events;
+  }
+
+  /**
+   * @return the number of aggregates.
+   */
+  public int size() {
+    return aggregates.size();
+  }
+
+  /**
+   *  Fields the aggregated events share.
+   */
+  private static final class AggregationKey {
+
+    private final String logName;
+    private final String host;
+    private final int pid;
+    private final long session;
+    private final long window;
+    private final boolean startAtCurrentStage;
+    private final boolean stopAtCurrentStage;
+    private final boolean messageValid;
+    private final boolean messageSkipped;
+    private final String kafkaCluster;
+    private final String topic;
+    private final int hashCode;
+
+    private AggregationKey(LoggingAuditEvent event, long windowInMilliseconds) {
+      LoggingAuditHeaders headers = event.getLoggingAuditHeaders();
+      this.logName = headers.getLogName();
+      this.host = headers.getHost();
+      this.pid = headers.getPid();
+      this.session = headers.getSession();
+      this.window = Math.floorDiv(event.getHeaderGeneratedTimestamp(), windowInMilliseconds);
+      this.startAtCurrentStage = event.isStartAtCurrentStage();
+      this.stopAtCurrentStage = event.isStopAtCurrentStage();
+      this.messageValid = event.isMessageValid();
+      this.messageSkipped = event.isMessageSkipped();
+      this.kafkaCluster = event.getKafkaCluster();
+      this.topic = event.getTopic();
+      this.hashCode = Objects.hash(logName, host, pid, session, window, startAtCurrentStage,
+          stopAtCurrentStage, messageValid, messageSkipped, kafkaCluster, topic);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof AggregationKey)) {
+        return false;
+      }
+      AggregationKey that = (AggregationKey) o;
+      return pid == that.pid && session == that.session && window == that.window
+          && startAtCurrentStage == that.startAtCurrentStage
+          && stopAtCurrentStage == that.stopAtCurrentStage
+          && messageValid == that.messageValid && messageSkipped == that.messageSkipped
+          && Objects.equals(logName, that.logName) && Objects.equals(host, that.host)
+          && Objects.equals(kafkaCluster, that.kafkaCluster) && Objects.equals(topic, that.topic);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private enum AddResult {
+    ADDED, FULL, CLOSED
+  }
+
+  private static final class Aggregate {
+
+    private final LoggingAuditEvent firstEvent;
+    private int[] seqNums = new int[INITIAL_SEQ_NUMS];
+    private int count = 0;
+    private boolean closed = false;
+
+    private Aggregate(LoggingAuditEvent firstEvent) {
+      this.firstEvent = firstEvent;
+    }
+
+    /**
+     * @return CLOSED if the aggregate is closed and FULL if it holds maxEvents sequence numbers,
+     * the sequence number is not added in both cases.
+     */
+    private synchronized AddResult add(int logSeqNumInSession, int maxEvents) {
+      if (closed) {
+        return AddResult.CLOSED;
+      }
+      if (count >= maxEvents) {
+        return AddResult.FULL;
+      }
+      if (count == seqNums.length) {
+        seqNums = Arrays.copyOf(seqNums, Math.min(count * 2, maxEvents));
+      }
+      seqNums[count++] = logSeqNumInSession;
+      return AddResult.ADDED;
+    }
+
+    private synchronized AggregatedLoggingAuditEvent close(long windowStartTimestamp) {
+      closed = true;
+      // events of concurrent threads are not added in sequence number order
+      Arrays.sort(seqNums, 0, count);
+      List<LoggingAuditSeqNumRange> ranges = new ArrayList<>();
+      LoggingAuditSeqNumRange range = null;
+      for (int i = 0; i < count; i++) {
+        int seqNum = seqNums[i];
+        long rangeEnd = range == null ? Long.MIN_VALUE : (long) range.getStart() + range.getCount();
+        if (seqNum < rangeEnd) {
+          // repeated audit of the same message
+          continue;
+        }
+        if (seqNum == rangeEnd) {
+          range.setCount(range.getCount() + 1);
+        } else {
+          range = new LoggingAuditSeqNumRange().setStart(seqNum).setCount(1);
+          ranges.add(range);
+        }
+      }
+      return new AggregatedLoggingAuditEvent()
+          .setEvent(firstEvent)
+          .setSeqNumRanges(ranges)
+          .setCount(count)
+          .setWindowStartTimestamp(windowStartTimestamp);
+    }
+  }
+}
@@ -24,6 +24,12 @@ public class LoggingAuditClientConfigDef {
   public static final String DEFAULT_ENABLE_AUDIT_FOR_ALL_TOPICS = "enableAuditForAllTopicsByDefault";
   public static final String QUEUE_SIZE = "queueSize";
   public static final String ENQUEUE_WAIT_IN_MILLISECONDS = "enqueueWaitInMilliseconds";
+  public static final String ENABLE_AGGREGATION = "enableAggregation";
+  public static final String AGGREGATION_WINDOW_IN_SECONDS = "aggregationWindowInSeconds";
+  public static final String AGGREGATION_FLUSH_INTERVAL_IN_MILLISECONDS = "aggregationFlushIntervalInMilliseconds";
+  public static final String MAX_AGGREGATED_EVENTS_PER_BATCH = "maxAggregatedEventsPerBatch";
+  public static final String MAX_AGGREGATES = "maxAggregates";
+  public static final String MAX_EVENTS_PER_AGGREGATE = "maxEventsPerAggregate";
 
   public static final String AUDITED_TOPICS_PREFIX = "auditedTopics.";
   public static final String AUDITED_TOPIC_NAMES = "names";
@@ -37,6 +43,7 @@ public class LoggingAuditClientConfigDef {
 
   public static final String KAFKA_SENDER_PREFIX = "kafka.";
   public static final String KAFKA_TOPIC = "topic";
+  public static final String KAFKA_AGGREGATED_TOPIC = "aggregatedTopic";
   public static final String KAFKA_STOP_GRACE_PERIOD_IN_SECONDS = "stopGracePeriodInSeconds";
 
   public static final String KAFKA_PRODUCER_CONFIG_PREFIX = "producerConfig.";
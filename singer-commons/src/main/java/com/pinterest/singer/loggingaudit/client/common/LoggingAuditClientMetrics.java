@@ -45,4 +45,12 @@ public class LoggingAuditClientMetrics {
   public static final String AUDIT_CLIENT_SENDER_KAFKA_CURRENT_PARTITION_RESET = "audit.client.sender.kafka.current_partition_reset";
 
   public static final String AUDIT_CLIENT_SENDER_KAFKA_CALLBACK_EXCEPTION = "audit.client.sender.kafka.callback_exception";
+
+  public static final String AUDIT_CLIENT_AGGREGATOR_EVENTS_ADDED = "audit.client.aggregator.events_added";
+  public static final String AUDIT_CLIENT_AGGREGATOR_SIZE = "audit.client.aggregator.size";
+  // audit events dropped because the aggregator is full or its sender stopped.
+  public static final String AUDIT_CLIENT_AGGREGATOR_EVENTS_DROPPED = "audit.client.aggregator.events_dropped";
+  // these metrics count AggregatedLoggingAuditEvents, not the audit events aggregated in them.
+  public static final String AUDIT_CLIENT_SENDER_KAFKA_AGGREGATED_EVENTS_ACKED = "audit.client.sender.kafka.aggregated_events_acked";
+  public static final String AUDIT_CLIENT_SENDER_KAFKA_AGGREGATED_EVENTS_DROPPED = "audit.client.sender.kafka.aggregated_events_dropped";
 }
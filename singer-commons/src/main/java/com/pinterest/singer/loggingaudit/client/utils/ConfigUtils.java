@@ -84,6 +84,31 @@ public class ConfigUtils {
       loggingAuditClientConfig.setEnqueueWaitInMilliseconds(Integer
           .valueOf(properties.get(LoggingAuditClientConfigDef.ENQUEUE_WAIT_IN_MILLISECONDS)));
     }
+    if (properties.containsKey(LoggingAuditClientConfigDef.ENABLE_AGGREGATION)) {
+      loggingAuditClientConfig.setEnableAggregation(
+          Boolean.valueOf(properties.get(LoggingAuditClientConfigDef.ENABLE_AGGREGATION)));
+    }
+    if (properties.containsKey(LoggingAuditClientConfigDef.AGGREGATION_WINDOW_IN_SECONDS)) {
+      loggingAuditClientConfig.setAggregationWindowInSeconds(Integer
+          .valueOf(properties.get(LoggingAuditClientConfigDef.AGGREGATION_WINDOW_IN_SECONDS)));
+    }
+    if (properties.containsKey(
+        LoggingAuditClientConfigDef.AGGREGATION_FLUSH_INTERVAL_IN_MILLISECONDS)) {
+      loggingAuditClientConfig.setAggregationFlushIntervalInMilliseconds(Integer.valueOf(
+          properties.get(LoggingAuditClientConfigDef.AGGREGATION_FLUSH_INTERVAL_IN_MILLISECONDS)));
+    }
+    if (properties.containsKey(LoggingAuditClientConfigDef.MAX_AGGREGATED_EVENTS_PER_BATCH)) {
+      loggingAuditClientConfig.setMaxAggregatedEventsPerBatch(Integer
+          .valueOf(properties.get(LoggingAuditClientConfigDef.MAX_AGGREGATED_EVENTS_PER_BATCH)));
+    }
+    if (properties.containsKey(LoggingAuditClientConfigDef.MAX_AGGREGATES)) {
+      loggingAuditClientConfig.setMaxAggregates(
+          Integer.valueOf(properties.get(LoggingAuditClientConfigDef.MAX_AGGREGATES)));
+    }
+    if (properties.containsKey(LoggingAuditClientConfigDef.MAX_EVENTS_PER_AGGREGATE)) {
+      loggingAuditClientConfig.setMaxEventsPerAggregate(
+          Integer.valueOf(properties.get(LoggingAuditClientConfigDef.MAX_EVENTS_PER_AGGREGATE)));
+    }
 
     // parse kafka producer config
     if (!properties.containsKey(LoggingAuditClientConfigDef.BOOTSTRAP_SERVERS)) {
@@ -102,6 +127,10 @@ public class ConfigUtils {
     if (properties.containsKey(LoggingAuditClientConfigDef.KAFKA_TOPIC)) {
       kafkaSenderConfig.setTopic(properties.get(LoggingAuditClientConfigDef.KAFKA_TOPIC));
     }
+    if (properties.containsKey(LoggingAuditClientConfigDef.KAFKA_AGGREGATED_TOPIC)) {
+      kafkaSenderConfig.setAggregatedTopic(
+          properties.get(LoggingAuditClientConfigDef.KAFKA_AGGREGATED_TOPIC));
+    }
     kafkaSenderConfig.setKafkaProducerConfig(kafkaProducerConfig);
 
     LoggingAuditEventSenderConfig senderConfig = new LoggingAuditEventSenderConfig();
@@ -159,6 +188,30 @@ public class ConfigUtils {
       loggingAuditClientConfig.setEnqueueWaitInMilliseconds(
           conf.getInt(LoggingAuditClientConfigDef.ENQUEUE_WAIT_IN_MILLISECONDS));
     }
+    if (conf.containsKey(LoggingAuditClientConfigDef.ENABLE_AGGREGATION)) {
+      loggingAuditClientConfig.setEnableAggregation(
+          conf.getBoolean(LoggingAuditClientConfigDef.ENABLE_AGGREGATION));
+    }
+    if (conf.containsKey(LoggingAuditClientConfigDef.AGGREGATION_WINDOW_IN_SECONDS)) {
+      loggingAuditClientConfig.setAggregationWindowInSeconds(
+          conf.getInt(LoggingAuditClientConfigDef.AGGREGATION_WINDOW_IN_SECONDS));
+    }
+    if (conf.containsKey(LoggingAuditClientConfigDef.AGGREGATION_FLUSH_INTERVAL_IN_MILLISECONDS)) {
+      loggingAuditClientConfig.setAggregationFlushIntervalInMilliseconds(
+          conf.getInt(LoggingAuditClientConfigDef.AGGREGATION_FLUSH_INTERVAL_IN_MILLISECONDS));
+    }
+    if (conf.containsKey(LoggingAuditClientConfigDef.MAX_AGGREGATED_EVENTS_PER_BATCH)) {
+      loggingAuditClientConfig.setMaxAggregatedEventsPerBatch(
+          conf.getInt(LoggingAuditClientConfigDef.MAX_AGGREGATED_EVENTS_PER_BATCH));
+    }
+    if (conf.containsKey(LoggingAuditClientConfigDef.MAX_AGGREGATES)) {
+      loggingAuditClientConfig.setMaxAggregates(
+          conf.getInt(LoggingAuditClientConfigDef.MAX_AGGREGATES));
+    }
+    if (conf.containsKey(LoggingAuditClientConfigDef.MAX_EVENTS_PER_AGGREGATE)) {
+      loggingAuditClientConfig.setMaxEventsPerAggregate(
+          conf.getInt(LoggingAuditClientConfigDef.MAX_EVENTS_PER_AGGREGATE));
+    }
     return loggingAuditClientConfig;
   }
 
@@ -253,6 +306,10 @@ public class ConfigUtils {
     if (conf.containsKey(LoggingAuditClientConfigDef.KAFKA_TOPIC)) {
       kafkaSenderConfig.setTopic(conf.getString(LoggingAuditClientConfigDef.KAFKA_TOPIC));
     }
+    if (conf.containsKey(LoggingAuditClientConfigDef.KAFKA_AGGREGATED_TOPIC)) {
+      kafkaSenderConfig.setAggregatedTopic(
+          conf.getString(LoggingAuditClientConfigDef.KAFKA_AGGREGATED_TOPIC));
+    }
     if (conf.containsKey(LoggingAuditClientConfigDef.KAFKA_STOP_GRACE_PERIOD_IN_SECONDS)) {
       kafkaSenderConfig.setStopGracePeriodInSeconds(
           conf.getInt(LoggingAuditClientConfigDef.KAFKA_STOP_GRACE_PERIOD_IN_SECONDS));
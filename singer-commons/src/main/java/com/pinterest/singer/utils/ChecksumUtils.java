@@ -0,0 +1,66 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.pinterest.singer.utils;
+
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.apache.kafka.common.utils.Crc32C;
+
+import com.pinterest.singer.thrift.ChecksumType;
+import com.pinterest.singer.thrift.LogMessage;
+
+/**
+ *  Computes the checksums of LogMessages.
+ *
+ *  CRC32C checksums are computed by java.util.zip.CRC32C on Java 9 and later, which is hardware
+ *  accelerated, and by a pure Java implementation on Java 8.
+ */
+public class ChecksumUtils {
+
+  private static final ThreadLocal<Checksum> LOCAL_CRC32 = ThreadLocal.withInitial(CRC32::new);
+  private static final ThreadLocal<Checksum> LOCAL_CRC32C = ThreadLocal.withInitial(Crc32C::create);
+
+  private ChecksumUtils() {
+  }
+
+  /**
+   * @return the checksum type of the message, CRC32 if the message does not set it.
+   */
+  public static ChecksumType getChecksumType(LogMessage logMessage) {
+    return logMessage.isSetChecksumType() ? logMessage.getChecksumType() : ChecksumType.CRC32;
+  }
+
+  public static long computeChecksum(ChecksumType checksumType, byte[] message) {
+    Checksum checksum = checksumType == ChecksumType.CRC32C ? LOCAL_CRC32C.get() : LOCAL_CRC32.get();
+    checksum.reset();
+    checksum.update(message, 0, message.length);
+    return checksum.getValue();
+  }
+
+  /**
+   * @return whether the checksum of the message matches its payload. Messages without checksum are
+   *         considered uncorrupted.
+   */
+  public static boolean verifyChecksum(LogMessage logMessage) {
+    if (!logMessage.isSetChecksum()) {
+      return true;
+    }
+    return computeChecksum(getChecksumType(logMessage), logMessage.getMessage())
+        == logMessage.getChecksum();
+  }
+}
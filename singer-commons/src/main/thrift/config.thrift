@@ -133,6 +133,26 @@ enum FileNameMatchMode {
   PREFIX = 1
 }
 
+enum TopicRouteMatchType {
+  // The message key starts with the pattern.
+  KEY_PREFIX = 0,
+  // The value of the injected header headerName equals the pattern.
+  HEADER = 1,
+  // The whole message matches the pattern as a regular expression.
+  REGEX = 2,
+  // The top-level field thriftFieldId of a TBinaryProtocol encoded message equals the pattern.
+  THRIFT_FIELD = 3
+}
+
+struct TopicRouteConfig {
+  // The topic to write matching messages to.
+  1: required string topic;
+  2: required TopicRouteMatchType matchType;
+  3: required string pattern;
+  4: optional string headerName;
+  5: optional i16 thriftFieldId;
+}
+
 struct KafkaWriterConfig {
   1: required string topic;
   2: required common.KafkaProducerConfig producerConfig;
@@ -140,6 +160,9 @@ struct KafkaWriterConfig {
   4: optional bool auditingEnabled = 0;
   5: optional bool skipNoLeaderPartitions = 0;
   6: optional i32 writeTimeoutInSeconds = 60;
+  // Routes evaluated in order, the first matching route decides the topic of a message. Messages
+  // that match no route are written to topic. Requires the memory efficient processor.
+  7: optional list<TopicRouteConfig> topicRoutes;
 }
 
 struct NoOpWriteConfig {
@@ -258,6 +281,19 @@ struct HeartbeatWriterConfig {
   2: optional KafkaWriterConfig kafkaWriterConfig;
 }
 
+/**
+ * Rate quota enforced with token buckets before each processing batch. A rate of 0 means
+ * unlimited.
+ */
+struct RateQuotaConfig {
+  1: optional i64 bytesPerSecond = 0;
+  2: optional i64 messagesPerSecond = 0;
+  /**
+   * Number of seconds worth of tokens a bucket can accumulate while it is not used.
+   */
+  3: optional i32 burstInSeconds = 1;
+}
+
 struct SingerLogConfig {
   1: required string name;
   2: required string logDir;
@@ -307,6 +343,24 @@ struct SingerLogConfig {
    * The pod identifier is determined by KubeConfig.podAllowlistMetadataKey.
    */
   16: optional list<string> podAllowlist;
+
+  /**
+   * Relative share of processing time that the log streams of this log get when the
+   * weighted fair processor scheduler is enabled. A log with weight 4 gets roughly four times
+   * the processing time of a log with weight 1 when the processor threads are saturated.
+   */
+  17: optional i32 schedulingWeight = 1;
+
+  /**
+   * Byte and message rate quota shared by all log streams of this log.
+   */
+  18: optional RateQuotaConfig rateQuotaConfig;
+
+  /**
+   * Additional destinations, keyed by destination name, that are fed from the same read pass
+   * as logStreamWriterConfig. Each destination keeps its own position in the stream.
+   */
+  19: optional map<string, LogStreamWriterConfig> fanOutWriterConfigs;
 }
 
 /**
@@ -428,6 +482,57 @@ struct AdminConfig {
 
 }
 
+/**
+ * Configuration of the weighted fair scheduler that hands out processing cycles to
+ * log stream processors. When it is disabled, each processor schedules its cycles directly
+ * on the processor thread pool.
+ */
+struct ProcessorSchedulerConfig {
+  1: optional bool enabled = false;
+
+  /**
+   * Streams whose processing lag exceeds this threshold get their weight boosted
+   * proportionally to the lag.
+   */
+  2: optional i64 lagBoostThresholdInMillis = 60000;
+
+  /**
+   * Upper bound of the lag based weight boost.
+   */
+  3: optional double maxLagBoost = 4.0;
+
+  /**
+   * Streams whose oldest unshipped file will expire within this window get
+   * retentionDeadlineBoost applied to their weight.
+   */
+  4: optional i32 retentionDeadlineWindowInSeconds = 1800;
+
+  5: optional double retentionDeadlineBoost = 8.0;
+}
+
+/**
+ * Configuration of the catch-up mode of log stream processors. A stream enters catch-up mode
+ * when its oldest unshipped file is estimated to be deleted within catchUpWindowInSeconds.
+ */
+struct RetentionCatchUpConfig {
+  1: optional bool enabled = false;
+
+  2: optional i32 catchUpWindowInSeconds = 1800;
+
+  /**
+   * Batch size and processing time slice of a stream in catch-up mode are multiplied by
+   * these factors.
+   */
+  3: optional i32 batchSizeMultiplier = 4;
+  4: optional i32 timeSliceMultiplier = 4;
+
+  /**
+   * Number of dedicated catch-up worker threads. Processing cycles of streams in catch-up
+   * mode run on these workers, ordered by the time left until data loss.
+   */
+  5: optional i32 catchUpThreadPoolSize = 2;
+}
+
 /**
  * The singer config, synthesized from both the singer's own config and possible user config files.
  */
@@ -564,4 +669,87 @@ struct SingerConfig {
   */
   29: optional bool enablePooledReaderBuffers = false;
 
+  /**
+  * Weighted fair scheduling of log stream processing cycles
+  */
+  30: optional ProcessorSchedulerConfig processorSchedulerConfig;
+
+  /**
+  * Retention deadline aware catch-up of log streams with a backlog
+  */
+  31: optional RetentionCatchUpConfig retentionCatchUpConfig;
+
+  /**
+  * Byte and message rate quota shared by all logs on the host
+  */
+  32: optional RateQuotaConfig hostRateQuotaConfig;
+
+  /**
+  * Number of threads processing the file system events of each FileSystemMonitor. Events are
+  * sharded by directory across the threads.
+  */
+  33: optional i32 fsEventProcessorThreads = 1;
+
+  /**
+  * Minimum interval between two reconciliations of the monitored directories after file system
+  * events were lost. Overflows during the interval are coalesced into one reconciliation.
+  */
+  34: optional i32 overflowReconcileIntervalInMillis = 5000;
+
+  /**
+  * Number of threads initializing log streams at startup and for new pods. The log streams of
+  * different pods and of different host level logs are initialized in parallel.
+  */
+  35: optional i32 logStreamInitThreads = 4;
+
+  /**
+  * File the log streams of host level logs are persisted to, on shutdown and periodically.
+  * Singer restores the log streams from it on startup instead of rescanning the log directories,
+  * and verifies them against the file system in the background. Disabled if not set.
+  */
+  36: optional string streamTopologySnapshotPath;
+
+  /**
+  * Interval between two periodic saves of the stream topology snapshot.
+  */
+  37: optional i32 streamTopologySnapshotIntervalInSecs = 300;
+
+  /**
+  * Stream topology snapshots older than this are ignored on startup.
+  */
+  38: optional i32 streamTopologySnapshotMaxAgeInSecs = 3600;
+
+  /**
+  * Apply changes of the log configs without restarting Singer. Added and removed logs are started
+  * and stopped, logs whose changes are limited to the decider, batch size and processing
+  * intervals are updated in place, and the log streams of other changed logs are restarted.
+  * Changes of the other settings still restart Singer.
+  */
+  39: optional bool enableLogConfigHotReload = false;
+
+  /**
+  * Number of dedicated worker threads for the processing cycles of log streams that are drained
+  * after their pod was deleted or before Singer shuts down. Draining streams are ordered by
+  * deadline and bytes left to ship. If 0, draining streams share the processor threads.
+  */
+  40: optional i32 drainThreadPoolSize = 0;
+
+  /**
+  * Number of threads verifying the checksums of the messages of large batches of audited log
+  * streams in parallel. If 0, checksums are verified on the processor threads.
+  */
+  41: optional i32 checksumVerificationThreads = 0;
+
+  /**
+  * Batches with fewer bytes of messages are verified on the processor thread, even if
+  * checksumVerificationThreads is set.
+  */
+  42: optional i64 parallelChecksumVerificationMinBytes = 1048576;
+
+  /**
+  * Max number of pending file system events of each fsEventProcessorThreads shard. Events that
+  * don't fit are dropped and handled like a watch queue overflow.
+  */
+  43: optional i32 fsEventShardQueueSize = 10000;
+
 }
@@ -164,3 +164,57 @@ struct LoggingAuditEvent {
     12: optional bool messageSkipped = false;
 
 }
+
+
+/**
+ *  Range of consecutive logSeqNumInSession values of audited messages.
+ **/
+struct LoggingAuditSeqNumRange {
+
+   /**
+    *  first logSeqNumInSession of the range.
+    */
+   1: required i32 start;
+
+   /**
+    *  number of consecutive logSeqNumInSession values in the range.
+    */
+   2: required i32 count;
+}
+
+/**
+ *  AggregatedLoggingAuditEvent rolls up the LoggingAuditEvents of the messages of one session of a
+ *  log that are audited at a stage within the same time window (based on headerGeneratedTimestamp).
+ *  Besides the logName and session, the aggregated events share the host, pid, stage,
+ *  startAtCurrentStage, stopAtCurrentStage, messageValid, messageSkipped, kafkaCluster and topic.
+ **/
+struct AggregatedLoggingAuditEvent {
+
+   /**
+    *  LoggingAuditEvent of the first aggregated message, it carries the fields shared by all
+    *  aggregated messages.
+    */
+   1: required LoggingAuditEvent event;
+
+   /**
+    *  logSeqNumInSession of the aggregated messages as ranges in ascending order.
+    */
+   2: required list<LoggingAuditSeqNumRange> seqNumRanges;
+
+   /**
+    *  number of aggregated LoggingAuditEvents, including repeated audits of the same message.
+    */
+   3: required i64 count;
+
+   /**
+    *  start timestamp (millisecond) of the time window of the aggregated messages.
+    */
+   4: required i64 windowStartTimestamp;
+}
+
+/**
+ *  Batch of AggregatedLoggingAuditEvents sent out as one record.
+ **/
+struct AggregatedLoggingAuditEventBatch {
+   1: required list<AggregatedLoggingAuditEvent> events;
+}
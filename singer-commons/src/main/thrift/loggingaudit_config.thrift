@@ -71,6 +71,11 @@ struct KafkaSenderConfig {
     1: optional string topic = "logging_audit";
     2: optional common.KafkaProducerConfig kafkaProducerConfig;
     3: optional i32 stopGracePeriodInSeconds = 30;
+
+    /**
+     * topic of the AggregatedLoggingAuditEventBatches sent when aggregation is enabled.
+     */
+    4: optional string aggregatedTopic = "logging_audit_aggregated";
 }
 
 /**
@@ -124,4 +129,38 @@ struct LoggingAuditClientConfig {
     * Value of the map is AuditConfig.
     */
     7: optional map<string, AuditConfig> auditConfigs;
+
+   /**
+    * flag whether to roll up audit events into AggregatedLoggingAuditEvents instead of sending one
+    * LoggingAuditEvent per audited message. Default is false.
+    */
+    8: optional bool enableAggregation = false;
+
+   /**
+    * length of the time windows (based on the time the headers are generated) that audit events
+    * are aggregated in. Default is 60 seconds.
+    */
+    9: optional i32 aggregationWindowInSeconds = 60;
+
+   /**
+    * how often aggregated audit events are sent out. Default is 10 seconds.
+    */
+    10: optional i32 aggregationFlushIntervalInMilliseconds = 10000;
+
+   /**
+    * max number of AggregatedLoggingAuditEvents in one AggregatedLoggingAuditEventBatch.
+    */
+    11: optional i32 maxAggregatedEventsPerBatch = 500;
+
+   /**
+    * max number of AggregatedLoggingAuditEvents waiting to be sent. Audit events that would need
+    * a new AggregatedLoggingAuditEvent beyond this limit are dropped.
+    */
+    12: optional i32 maxAggregates = 10000;
+
+   /**
+    * max number of audit events rolled up into one AggregatedLoggingAuditEvent. Audit events
+    * beyond this limit are dropped.
+    */
+    13: optional i32 maxEventsPerAggregate = 100000;
 }
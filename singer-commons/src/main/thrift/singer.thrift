@@ -37,3 +37,30 @@ struct LogMessageAndPosition {
   // Used as a DTO between reader, processor and writer
   3: optional map<string, binary> injectedHeaders;
 }
+
+// Persisted state of a LogStream, used to warm restart Singer.
+struct LogStreamSnapshot {
+  // Name of the SingerLog of the LogStream.
+  1: required string logName;
+
+  // File name prefix of the LogStream.
+  2: required string fileNamePrefix;
+
+  // Directory the LogStream was registered under.
+  3: required string logDir;
+
+  // LogFiles of the LogStream, in stream order.
+  4: required list<LogFileAndPath> logFileAndPaths;
+
+  // Last committed position of the LogStream, only set in the snapshot saved at shutdown after
+  // the processor of the LogStream stopped. Used instead of the watermark after a restart.
+  5: optional LogPosition committedPosition;
+}
+
+// Persisted LogStreams of the host level SingerLogs.
+struct StreamTopologySnapshot {
+  // When the snapshot was taken, in milliseconds.
+  1: required i64 timestampMillis;
+
+  2: required list<LogStreamSnapshot> logStreams;
+}
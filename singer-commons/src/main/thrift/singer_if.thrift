@@ -5,6 +5,15 @@ namespace java com.pinterest.singer.thrift
 
 include "loggingaudit.thrift"
 
+/**
+ * Algorithm of the checksum of a LogMessage.
+ **/
+enum ChecksumType {
+  CRC32 = 0,
+  // CRC-32C (Castagnoli), hardware accelerated on Java 9 and later
+  CRC32C = 1
+}
+
 /**
  * Log message that applications pass to logger.
  **/
@@ -15,9 +24,12 @@ struct LogMessage {
   2: required binary message;
   // The optional message timestamp in nano-seconds
   3: optional i64 timestampInNanos;
-  // The CRC-32 checksum for the message
+  // The checksum for the message, computed with checksumType
   4: optional i64 checksum;
   5: optional loggingaudit.LoggingAuditHeaders loggingAuditHeaders;
+  // The algorithm of the checksum. The checksum is a CRC-32 checksum if not set, so that messages
+  // of older loggers can still be verified. Readers older than this field can only verify CRC32.
+  6: optional ChecksumType checksumType;
 }
 
 
@@ -16,6 +16,7 @@
 package com.pinterest.singer.common;
 
 import com.pinterest.singer.common.errors.LogMonitorException;
+import com.pinterest.singer.config.SingerConfigDiff;
 
 /**
  * Represent a monitor that monitor all configured LogStreams.
@@ -42,4 +43,13 @@ public interface LogMonitor {
    */
   void stop();
 
+  /**
+   * Apply changes of the log configs to the monitored logs without restarting Singer.
+   *
+   * @return true if the changes were applied, false if Singer has to be restarted.
+   */
+  default boolean reloadLogConfigs(SingerConfigDiff diff) {
+    return false;
+  }
+
 }
\ No newline at end of file
@@ -20,8 +20,10 @@ import com.pinterest.singer.common.errors.LogStreamException;
 import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
 import com.pinterest.singer.thrift.LogFile;
 import com.pinterest.singer.thrift.LogFileAndPath;
+import com.pinterest.singer.thrift.LogPosition;
 import com.pinterest.singer.thrift.configuration.FileNameMatchMode;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
+import com.pinterest.singer.utils.FileNamePatternMatcher;
 import com.pinterest.singer.utils.SingerUtils;
 
 import com.google.common.base.Objects;
@@ -33,7 +35,6 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.comparator.CompositeFileComparator;
 import org.apache.commons.io.comparator.LastModifiedFileComparator;
 import org.apache.commons.io.comparator.NameFileComparator;
-import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +45,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -107,6 +109,9 @@ public class LogStream {
   // Store [LogFile -> logFilePath index] map
   private Map<LogFile, Integer> logFilePathsIndex;
 
+  // Store [file name -> LogFile] map of the paths in logFilePaths
+  private Map<String, LogFile> logFileNamesIndex;
+
   // when the logstream is created
   private long creationTime = -1L;
 
@@ -123,6 +128,10 @@ public class LogStream {
 
   private FileNameMatchMode fileNameMatchMode;
 
+  // Committed position restored from the snapshot saved at shutdown, used by the first processing
+  // cycle instead of the watermark file. null once taken.
+  private volatile LogPosition restoredCommittedPosition;
+
   /**
    * New constructor if there are multiple directories in a config because we need to know the directory through the
    * full added path to derive the directory, we can no longer use the log config to derive the directory
@@ -145,6 +154,7 @@ public class LogStream {
     this.logStreamDescriptor = String.format("%s:%s", singerLog.getLogName(), fileNamePrefix);
     this.logFilePaths = Lists.newArrayList();
     this.logFilePathsIndex = new HashMap<>();
+    this.logFileNamesIndex = new HashMap<>();
     this.lastStreamModificationTime = -1L;
 
     this.dir = this.singerLog.getSingerLogConfig().getLogDir();
@@ -162,8 +172,61 @@ public class LogStream {
     return logFilePaths.size();
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes" })
   public void initialize() throws IOException {
+    List<File> logFiles = listLogFiles();
+    synchronized (logFilesInfoLock) {
+      logFilePaths.clear();
+      logFilePathsIndex.clear();
+      logFileNamesIndex.clear();
+      for (File entry : logFiles) {
+        try {
+          long inode = SingerUtils.getFileInode(entry.toPath());
+          append(new LogFile(inode), entry.toPath().toString());
+        } catch (Exception e) {
+          LOG.warn("Could not parse inode of file " + entry.toPath() + ", dropping it from logstream " + this);
+        }
+      }
+    }
+    OpenTsdbMetricConverter.incr(SingerMetrics.LOGSTREAM_INITIALIZE, 1,
+        "log=" + logStreamName, "host=" + SingerUtils.getHostname());
+  }
+
+  /**
+   * Bring the files of the stream in sync with a fresh listing of its directory, e.g. after the
+   * stream was restored from a snapshot. Unlike initialize(), only the differences are applied:
+   * files that are gone are removed, new files are inserted in stream order and renamed files get
+   * their new path, so the stream can be reconciled while it is processed.
+   */
+  public void reconcile() throws IOException {
+    Map<LogFile, String> listedFiles = new LinkedHashMap<>();
+    for (File entry : listLogFiles()) {
+      try {
+        listedFiles.put(new LogFile(SingerUtils.getFileInode(entry.toPath())),
+            entry.toPath().toString());
+      } catch (Exception e) {
+        LOG.warn("Could not parse inode of file " + entry.toPath() + ", dropping it from logstream " + this);
+      }
+    }
+    synchronized (logFilesInfoLock) {
+      for (LogFileAndPath logFileAndPath : Lists.newArrayList(logFilePaths)) {
+        if (!listedFiles.containsKey(logFileAndPath.getLogFile())) {
+          removeLogFilePathInfo(logFileAndPath.getPath());
+        }
+      }
+      for (Map.Entry<LogFile, String> listedFile : listedFiles.entrySet()) {
+        Integer index = logFilePathsIndex.get(listedFile.getKey());
+        if (index == null || !listedFile.getValue().equals(logFilePaths.get(index).getPath())) {
+          put(listedFile.getKey(), listedFile.getValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the files of the stream in its directory, oldest first
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private List<File> listLogFiles() {
     SingerLogConfig singerLogConfig = singerLog.getSingerLogConfig();
     String regexStr = fileNamePrefix;
     File logDir = new File(dir);
@@ -173,7 +236,7 @@ public class LogStream {
     }
 
     LOG.info("Matching files under {} with filter {}", logDir, regexStr);
-    FileFilter fileFilter = new RegexFileFilter(regexStr);
+    FileFilter fileFilter = FileNamePatternMatcher.newFileFilter(regexStr);
     File[] files = logDir.listFiles(fileFilter);
 
     // Sort the file first by last_modified timestamp and then by name in case two files have
@@ -184,40 +247,48 @@ public class LogStream {
     List<File> logFiles = ordering.sortedCopy(Arrays.asList(files));
 
     LOG.info(files.length + " files matches the regex '{}'", regexStr);
+    return logFiles;
+  }
+
+  /**
+   * Replace the files of the stream with files that are already in stream order, e.g. from a
+   * snapshot persisted before a restart, without listing the directory or reading the files.
+   *
+   * @param logFileAndPaths the files of the stream, oldest first
+   */
+  public void restore(List<LogFileAndPath> logFileAndPaths) {
     synchronized (logFilesInfoLock) {
       logFilePaths.clear();
       logFilePathsIndex.clear();
-      for (File entry : logFiles) {
-        try {
-          long inode = SingerUtils.getFileInode(entry.toPath());
-          append(new LogFile(inode), entry.toPath().toString());
-        } catch (Exception e) {
-          LOG.warn("Could not parse inode of file " + entry.toPath() + ", dropping it from logstream " + this);
+      logFileNamesIndex.clear();
+      for (LogFileAndPath logFileAndPath : logFileAndPaths) {
+        if (!logFilePathsIndex.containsKey(logFileAndPath.getLogFile())) {
+          logFilePathsIndex.put(logFileAndPath.getLogFile(), logFilePaths.size());
+          logFilePaths.add(logFileAndPath);
+          indexFileName(logFileAndPath);
         }
       }
     }
-    OpenTsdbMetricConverter.incr(SingerMetrics.LOGSTREAM_INITIALIZE, 1,
-        "log=" + logStreamName, "host=" + SingerUtils.getHostname());
+  }
+
+  public void setRestoredCommittedPosition(LogPosition restoredCommittedPosition) {
+    this.restoredCommittedPosition = restoredCommittedPosition;
+  }
+
+  /**
+   * @return the committed position restored from a snapshot, or null if there is none or it was
+   * already taken. The position is only returned once.
+   */
+  public LogPosition takeRestoredCommittedPosition() {
+    LogPosition position = restoredCommittedPosition;
+    restoredCommittedPosition = null;
+    return position;
   }
 
   public boolean containsFile(String fileName) {
-    boolean result = false;
     synchronized (logFilesInfoLock) {
-      for (int i = 0; i < logFilePaths.size(); i++) {
-        try {
-          LogFileAndPath logFileAndPath = logFilePaths.get(i);
-          File file = new File(logFileAndPath.path);
-
-          if (fileName.equals(file.getName())) {
-            result = true;
-            break;
-          }
-        } catch (Exception e) {
-          LOG.error("Exception in checking file existence ", e);
-        }
-      }
+      return logFileNamesIndex.containsKey(fileName);
     }
-    return result;
   }
 
   /**
@@ -231,14 +302,37 @@ public class LogStream {
 
   public long getInodeByFileName(String fileName) {
     synchronized (logFilesInfoLock) {
-      for (int i = 0; i < logFilePaths.size(); i++) {
-        LogFileAndPath logFileAndPath = logFilePaths.get(i);
-        File file = new File(logFileAndPath.getPath());
-        if (file.getName().equals(fileName)) {
-          return logFileAndPath.logFile.getInode();
+      LogFile logFile = logFileNamesIndex.get(fileName);
+      return logFile == null ? -1 : logFile.getInode();
+    }
+  }
+
+  /**
+   * Record the name of a path that was added to logFilePaths. If several paths of the stream
+   * share the name, the latest added one wins.
+   */
+  private void indexFileName(LogFileAndPath logFileAndPath) {
+    if (logFileAndPath.getPath() != null) {
+      logFileNamesIndex.put(FilenameUtils.getName(logFileAndPath.getPath()),
+          logFileAndPath.getLogFile());
+    }
+  }
+
+  /**
+   * Forget the name of a path that was removed from logFilePaths, falling back to another path
+   * of the stream with the same name if there is one.
+   */
+  private void unindexFileName(LogFileAndPath logFileAndPath) {
+    if (logFileAndPath.getPath() == null) {
+      return;
+    }
+    String fileName = FilenameUtils.getName(logFileAndPath.getPath());
+    if (logFileNamesIndex.remove(fileName, logFileAndPath.getLogFile())) {
+      for (LogFileAndPath other : logFilePaths) {
+        if (other.getPath() != null && fileName.equals(FilenameUtils.getName(other.getPath()))) {
+          logFileNamesIndex.put(fileName, other.getLogFile());
         }
       }
-      return -1;
     }
   }
 
@@ -395,6 +489,7 @@ public class LogStream {
     synchronized (logFilesInfoLock) {
       LogFileAndPath logFileAndPath = new LogFileAndPath(logFile, path);
       int index = findPositionInStream(path, SingerUtils.getFileLastModifiedTime(path));
+      indexFileName(logFileAndPath);
       if (index < logFilePaths.size()) {
         logFilePaths.add(index, logFileAndPath);
         for (int i = index; i < logFilePaths.size(); i++) {
@@ -420,7 +515,9 @@ public class LogStream {
         putIfAbsent(logFile, path);
       } else {
         int index = logFilePathsIndex.get(logFile);
-        logFilePaths.set(index, new LogFileAndPath(logFile, path));
+        LogFileAndPath logFileAndPath = new LogFileAndPath(logFile, path);
+        unindexFileName(logFilePaths.set(index, logFileAndPath));
+        indexFileName(logFileAndPath);
       }
     }
   }
@@ -436,13 +533,15 @@ public class LogStream {
         int index = logFilePathsIndex.get(logFile);
         // the file is not the last one in the list. we need to update logFilePaths
         // and logFilePathsIndex
-        logFilePaths.remove(index);
+        unindexFileName(logFilePaths.remove(index));
         for (int i = index; i < logFilePaths.size(); i++) {
           LogFileAndPath fileAndPath = logFilePaths.get(i);
           logFilePathsIndex.put(fileAndPath.getLogFile(), i);
         }
-        logFilePaths.add(new LogFileAndPath(logFile, path));
+        LogFileAndPath logFileAndPath = new LogFileAndPath(logFile, path);
+        logFilePaths.add(logFileAndPath);
         logFilePathsIndex.put(logFile, logFilePaths.size() - 1);
+        indexFileName(logFileAndPath);
       }
     }
   }
@@ -468,6 +567,7 @@ public class LogStream {
         LogFileAndPath fileAndPath = logFilePaths.get(index);
         logFilePathsIndex.remove(fileAndPath.getLogFile());
         logFilePaths.remove(index);
+        unindexFileName(fileAndPath);
         for (int i = index; i < logFilePaths.size(); i++) {
           fileAndPath = logFilePaths.get(i);
           logFilePathsIndex.put(fileAndPath.getLogFile(), i);
@@ -611,8 +711,10 @@ public class LogStream {
       // re-index log paths
       logFilePaths = new ArrayList<>(logFilePaths.subList(curLogFileIndex, logFilePaths.size()));
       logFilePathsIndex.clear();
+      logFileNamesIndex.clear();
       for (int i = 0; i < logFilePaths.size(); i++) {
         logFilePathsIndex.put(logFilePaths.get(i).getLogFile(), i);
+        indexFileName(logFilePaths.get(i));
       }
     }
   }
@@ -636,6 +738,18 @@ public class LogStream {
     }
   }
 
+  /**
+   * @param logFile
+   * @return the index of the LogFile in the LogStream, oldest file first, or -1 if the LogStream
+   * does not have the LogFile.
+   */
+  public int getLogFileIndex(LogFile logFile) {
+    synchronized (logFilesInfoLock) {
+      Integer index = logFilePathsIndex.get(logFile);
+      return index == null ? -1 : index;
+    }
+  }
+
   public List<String> getLogFilePaths() throws LogStreamException {
     synchronized (logFilesInfoLock) {
       return logFilePaths.stream().map(lfp -> lfp.getPath()).collect(Collectors.toList());
@@ -698,6 +812,7 @@ public class LogStream {
       synchronized (logFilesInfoLock) {
           logFilePathsIndex.clear();
           logFilePaths.clear();
+          logFileNamesIndex.clear();
           LOG.warn("Cleared logstream:" + this.toString());
       }
   }
@@ -19,6 +19,8 @@ import com.pinterest.singer.common.errors.LogStreamProcessorException;
 import com.pinterest.singer.common.errors.LogStreamWriterException;
 import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
 import com.pinterest.singer.thrift.LogMessage;
+import com.pinterest.singer.thrift.LogPosition;
+import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 import com.pinterest.singer.utils.SingerUtils;
 
 import java.io.Closeable;
@@ -68,6 +70,23 @@ public interface LogStreamProcessor extends Closeable {
    */
   long getLastCompleteCycleTime();
 
+  /**
+   * @return the last committed position of the LogStream, or null if it is not known.
+   */
+  default LogPosition getCommittedPosition() {
+    return null;
+  }
+
+  /**
+   * Apply the log decider, batch size and processing intervals of an updated SingerLogConfig to
+   * the running processor.
+   *
+   * @return true if the tunables were applied, false if the processor has to be recreated.
+   */
+  default boolean applyTunables(SingerLogConfig singerLogConfig) {
+    return false;
+  }
+
   default void emitMessageSizeMetrics(LogStream logStream, LogMessage logMessage) {
     String logTag = "log=" + logStream.getSingerLog().getSingerLogConfig().getName();
     String hostTag = "host=" + SingerUtils.HOSTNAME;
@@ -32,6 +32,17 @@ public class SingerConfigDef {
   public static final String DAILY_RESTART_TIME_END = "dailyRestartUtcTimeRangeEnd";
 
   public static final String MONITOR_INTERVAL_IN_SECS = "monitorIntervalInSecs";
+  public static final String FS_EVENT_PROCESSOR_THREADS = "fsEventProcessorThreads";
+  public static final String FS_EVENT_SHARD_QUEUE_SIZE = "fsEventShardQueueSize";
+  public static final String OVERFLOW_RECONCILE_INTERVAL_MILLIS = "overflowReconcileIntervalInMillis";
+  public static final String LOG_STREAM_INIT_THREADS = "logStreamInitThreads";
+  public static final String STREAM_TOPOLOGY_SNAPSHOT_PATH = "streamTopologySnapshotPath";
+  public static final String STREAM_TOPOLOGY_SNAPSHOT_INTERVAL_SECS = "streamTopologySnapshotIntervalInSecs";
+  public static final String STREAM_TOPOLOGY_SNAPSHOT_MAX_AGE_SECS = "streamTopologySnapshotMaxAgeInSecs";
+  public static final String ENABLE_LOG_CONFIG_HOT_RELOAD = "enableLogConfigHotReload";
+  public static final String DRAIN_THREAD_POOL_SIZE = "drainThreadPoolSize";
+  public static final String CHECKSUM_VERIFICATION_THREADS = "checksumVerificationThreads";
+  public static final String PARALLEL_CHECKSUM_VERIFICATION_MIN_BYTES = "parallelChecksumVerificationMinBytes";
 
   public static final String PROCESS_INTERVAL_SECS = "processingIntervalInSeconds";
   public static final String PROCESS_INTERVAL_MILLIS = "processingIntervalInMilliseconds";
@@ -50,6 +61,12 @@ public class SingerConfigDef {
   public static final String TOPIC = "topic";
 
   public static final String KAFKA_WRITE_TIMEOUT_IN_SECONDS = "writeTimeoutInSeconds";
+  public static final String TOPIC_ROUTES = "topicRoutes";
+  public static final String TOPIC_ROUTE_PREFIX = "topicRoute.";
+  public static final String ROUTE_MATCH_TYPE = "matchType";
+  public static final String ROUTE_PATTERN = "pattern";
+  public static final String ROUTE_HEADER_NAME = "headerName";
+  public static final String ROUTE_THRIFT_FIELD_ID = "thriftFieldId";
   public static final String LOG_RETENTION_SECONDS = "logRetentionInSeconds";
 
   public static final String PRODUCER_BUFFER_MEMORY = ProducerConfig.BUFFER_MEMORY_CONFIG;
@@ -108,6 +125,33 @@ public class SingerConfigDef {
 
   public static final String PROCESS_BATCH_SIZE = "batchSize";
   public static final String SKIP_DRAINING = "skipDraining";
+  public static final String SCHEDULING_WEIGHT = "schedulingWeight";
+  public static final String FANOUT_WRITERS = "fanOutWriters";
+  public static final String FANOUT_WRITER_PREFIX = "fanOutWriter.";
+  public static final String FANOUT_PRIMARY_DESTINATION = "primary";
+
+  // Weighted fair processor scheduler configs
+  public static final String PROCESSOR_SCHEDULER_PREFIX = "processorScheduler.";
+  public static final String SCHEDULER_ENABLED = "enabled";
+  public static final String SCHEDULER_LAG_BOOST_THRESHOLD_MILLIS = "lagBoostThresholdInMillis";
+  public static final String SCHEDULER_MAX_LAG_BOOST = "maxLagBoost";
+  public static final String SCHEDULER_RETENTION_DEADLINE_WINDOW_SECS = "retentionDeadlineWindowInSeconds";
+  public static final String SCHEDULER_RETENTION_DEADLINE_BOOST = "retentionDeadlineBoost";
+
+  // Retention deadline aware catch-up configs
+  public static final String RETENTION_CATCH_UP_PREFIX = "retentionCatchUp.";
+  public static final String CATCH_UP_ENABLED = "enabled";
+  public static final String CATCH_UP_WINDOW_SECS = "catchUpWindowInSeconds";
+  public static final String CATCH_UP_BATCH_SIZE_MULTIPLIER = "batchSizeMultiplier";
+  public static final String CATCH_UP_TIME_SLICE_MULTIPLIER = "timeSliceMultiplier";
+  public static final String CATCH_UP_THREAD_POOL_SIZE = "catchUpThreadPoolSize";
+
+  // Rate quota configs, per log and per host
+  public static final String RATE_QUOTA_PREFIX = "rateQuota.";
+  public static final String HOST_RATE_QUOTA_PREFIX = "hostRateQuota.";
+  public static final String QUOTA_BYTES_PER_SECOND = "bytesPerSecond";
+  public static final String QUOTA_MESSAGES_PER_SECOND = "messagesPerSecond";
+  public static final String QUOTA_BURST_SECS = "burstInSeconds";
 
   public static final String TEXT_READER_FILTER_MESSAGE_REGEX = "filterMessageRegex";
 
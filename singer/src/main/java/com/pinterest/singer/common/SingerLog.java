@@ -22,6 +22,7 @@ import com.google.common.base.Preconditions;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -30,8 +31,8 @@ import java.util.Optional;
  */
 public class SingerLog {
 
-  // The config for the SingerLog.
-  private final SingerLogConfig singerLogConfig;
+  // The config for the SingerLog, replaced as a whole when its tunables are updated.
+  private volatile SingerLogConfig singerLogConfig;
   private String podUid;
   private Map<String, ByteBuffer> podMetadata = new HashMap<>();
 
@@ -56,9 +57,14 @@ public class SingerLog {
     return singerLogConfig.equals(singerLog.singerLogConfig);
   }
 
+  /**
+   * Only hashes the parts of the config that are not changed by {@link #setSingerLogConfig}, so
+   * that a SingerLog can be found in hashed collections after its tunables were updated.
+   */
   @Override
   public int hashCode() {
-    return singerLogConfig.hashCode();
+    return Objects.hash(singerLogConfig.getName(), singerLogConfig.getLogDir(),
+        singerLogConfig.getLogStreamRegex());
   }
 
   /**
@@ -74,6 +80,22 @@ public class SingerLog {
   public SingerLogConfig getSingerLogConfig() {
     return singerLogConfig;
   }
+
+  /**
+   * Replace the config of this SingerLog with a config of the same log that differs in its
+   * tunables. Configs are never modified in place since processor threads read them concurrently.
+   *
+   * @param singerLogConfig the new config
+   */
+  public void setSingerLogConfig(SingerLogConfig singerLogConfig) {
+    Preconditions.checkArgument(
+        Objects.equals(this.singerLogConfig.getName(), singerLogConfig.getName())
+            && Objects.equals(this.singerLogConfig.getLogDir(), singerLogConfig.getLogDir())
+            && Objects.equals(this.singerLogConfig.getLogStreamRegex(),
+                singerLogConfig.getLogStreamRegex()),
+        "Config of a different log: %s", singerLogConfig.getName());
+    this.singerLogConfig = singerLogConfig;
+  }
   
   public String getPodUid() {
     return podUid;
@@ -33,7 +33,29 @@ public class SingerMetrics {
   public static final String FS_EVENT                 = SINGER_FSM_PREFIX + "event";
   public static final String FS_EVENTS_OVERFLOW       = SINGER_FSM_PREFIX + "events_overflow";
   public static final String FS_EVENT_QUEUE_SIZE      = SINGER_FSM_PREFIX + "queue_size";
+  public static final String FS_EVENT_SHARD_QUEUE_SIZE = SINGER_FSM_PREFIX + "shard_queue_size";
+  public static final String FS_EVENTS_COALESCED      = SINGER_FSM_PREFIX + "events_coalesced";
+  public static final String FS_EVENT_SHARD_OVERFLOW  = SINGER_FSM_PREFIX + "shard_overflow";
+  public static final String FS_EVENT_HANDLER_ERRORS  = SINGER_FSM_PREFIX + "event_handler_errors";
+  public static final String FILE_CATALOG_RESCAN      = SINGER_FSM_PREFIX + "file_catalog_rescan";
+  public static final String FS_RECONCILED_DIRS       = SINGER_FSM_PREFIX + "reconciled_dirs";
+  public static final String FS_UNCHANGED_DIRS        = SINGER_FSM_PREFIX + "reconcile_unchanged_dirs";
   public static final String MISSING_LOG_FILES        = SINGER_FSM_PREFIX + "missing_log_files";
+  public static final String LOG_STREAM_INIT_PENDING  = SINGER_FSM_PREFIX + "log_stream_init_pending";
+  public static final String LOG_STREAM_INIT_DONE     = SINGER_FSM_PREFIX + "log_stream_init_done";
+  public static final String LOG_STREAM_INIT_FAILED   = SINGER_FSM_PREFIX + "log_stream_init_failed";
+  public static final String LOG_STREAM_INIT_LATENCY  = SINGER_FSM_PREFIX + "log_stream_init_latency_ms";
+  public static final String SNAPSHOT_SAVED           = SINGER_FSM_PREFIX + "topology_snapshot_saved";
+  public static final String SNAPSHOT_SAVE_FAILURE    = SINGER_FSM_PREFIX + "topology_snapshot_save_failure";
+  public static final String SNAPSHOT_LOAD_FAILURE    = SINGER_FSM_PREFIX + "topology_snapshot_load_failure";
+  public static final String SNAPSHOT_STALE           = SINGER_FSM_PREFIX + "topology_snapshot_stale";
+  public static final String SNAPSHOT_RESTORED_STREAMS = SINGER_FSM_PREFIX + "topology_snapshot_restored_streams";
+  public static final String SNAPSHOT_DROPPED_STREAMS = SINGER_FSM_PREFIX + "topology_snapshot_dropped_streams";
+
+  public static final String CONFIG_RELOAD_SUCCESS = "singer.config_reload.success";
+  public static final String CONFIG_RELOAD_FAILURE = "singer.config_reload.failure";
+  public static final String CONFIG_RELOAD_RESTARTED_STREAMS = "singer.config_reload.restarted_streams";
+  public static final String CONFIG_RELOAD_UPDATED_STREAMS = "singer.config_reload.updated_streams";
 
   public static final String FILE_LOOKUP_SUCCESS = "singer.file_lookup.success";
   public static final String FILE_LOOKUP_FAILURE = "singer.file_lookup.failure";
@@ -67,6 +89,20 @@ public class SingerMetrics {
   public static final String PROCESSOR_MESSAGE_VALUE_SIZE_BYTES = "processor.message.value.size.bytes";
   public static final String DISABLE_DECIDER_ACTIVE = "singer.processor.disable_decider_active";
 
+  public static final String SCHEDULER_READY_QUEUE_SIZE = "singer.scheduler.ready_queue_size";
+  public static final String SCHEDULER_WAIT_TIME = "singer.scheduler.wait_time_ms";
+
+  public static final String RETENTION_DEADLINE_SECS = "singer.processor.retention_deadline_secs";
+  public static final String CATCH_UP_MODE = "singer.processor.catch_up_mode";
+  public static final String CATCH_UP_QUEUE_SIZE = "singer.processor.catch_up_queue_size";
+  public static final String DRAIN_QUEUE_SIZE = "singer.processor.drain_queue_size";
+  public static final String DRAIN_REMAINING_STREAMS = "singer.processor.drain_remaining_streams";
+  public static final String DRAIN_REMAINING_BYTES = "singer.processor.drain_remaining_bytes";
+
+  public static final String PROCESSOR_THROTTLED = "singer.processor.throttled";
+  public static final String PROCESSOR_THROTTLE_DELAY = "singer.processor.throttle_delay_ms";
+  public static final String FANOUT_WRITE_FAILURE = "singer.processor.fanout.write_failure";
+
   public static final String DECIDER_ACCESSED = "singer.decider.accessed";
 
   public static final String SKIPPED_BYTES = "singer.reader.skipped_bytes";
@@ -84,6 +120,7 @@ public class SingerMetrics {
   public static final String BROKER_WRITE_LATENCY        = SINGER_WRITER + "broker_write_latency";
   public static final String WRITER_BATCH_SIZE    = SINGER_WRITER + "message_batch_size";
   public static final String WRITER_SSL_EXCEPTION = SINGER_WRITER + "ssl_exception";
+  public static final String ROUTED_MESSAGES = SINGER_WRITER + "num_routed_messages";
   public static final String KAFKA_THROUGHPUT = SINGER_WRITER + "topic_kafka_throughput";
   public static final String KAFKA_LATENCY = SINGER_WRITER + "max_kafka_batch_write_latency";
   public static final String NUM_COMMITED_TRANSACTIONS = SINGER_WRITER + "num_committed_transactions";
@@ -108,6 +145,8 @@ public class SingerMetrics {
   public static final String NUMBER_OF_PODS = KUBE_PREFIX + "number_of_pods";
   public static final String POD_METADATA_UPDATED = KUBE_PREFIX + "pod_metadata_updated";
   public static final String POD_METADATA_MAP_SIZE = KUBE_PREFIX + "pod_metadata_size";
+  public static final String POD_METADATA_SNAPSHOT_REFRESH = KUBE_PREFIX + "pod_metadata_snapshot_refresh";
+  public static final String POD_METADATA_MALFORMED = KUBE_PREFIX + "pod_metadata_malformed";
   public static final String POD_ALLOWLIST_MATCH = KUBE_PREFIX + "pod_allowlist_match";
 
   public static final String ADMIN_PREFIX = SINGER_PREIX + "admin.";
@@ -129,6 +168,7 @@ public class SingerMetrics {
   public static final String MISSING_DIR_CHECKER_EXCEPTION = "singer.missing_dir_checker.iteration_exception";
   public static final String MISSING_DIR_CHECK_THREAD_STOPPED = "singer.missing_dir_check_thread_stopped";
   public static final String NUMBER_OF_MISSING_DIRS = "singer.missing_dir_checker.num_of_missing_dirs";
+  public static final String WILDCARD_DIR_CREATE_EVENTS = "singer.missing_dir_checker.wildcard_dir_create_events";
   public static final String NUMBER_OF_SERIALIZING_HEADERS_ERRORS = "singer.headers_injector.num_of_serializing_headers_errors";
   public static final String AUDIT_HEADERS_INJECTED = "singer.audit.num_of_headers_injected";
   public static final String CHECKSUM_INJECTED = "singer.audit.num_of_checksum_injected";
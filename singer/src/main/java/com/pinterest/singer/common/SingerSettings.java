@@ -25,9 +25,14 @@ import com.pinterest.singer.kubernetes.KubeService;
 import com.pinterest.singer.loggingaudit.client.LoggingAuditClient;
 import com.pinterest.singer.monitor.FileSystemMonitor;
 import com.pinterest.singer.monitor.LogStreamManager;
+import com.pinterest.singer.processor.CatchUpExecutor;
+import com.pinterest.singer.processor.DrainCoordinator;
+import com.pinterest.singer.processor.RateQuota;
+import com.pinterest.singer.processor.WeightedFairScheduler;
 import com.pinterest.singer.thrift.configuration.SingerConfig;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 import com.pinterest.singer.utils.SingerUtils;
+import com.pinterest.singer.writer.ChecksumVerifier;
 import com.pinterest.singer.writer.KafkaProducerMetricsMonitor;
 import com.twitter.ostrich.stats.Stats;
 import com.google.common.annotations.VisibleForTesting;
@@ -68,6 +73,36 @@ public final class SingerSettings {
    */
   private static ScheduledExecutorService logProcessorExecutor = null;
 
+  /**
+   * The weighted fair scheduler for log stream processing cycles, null if it is not enabled
+   */
+  private static WeightedFairScheduler logProcessorScheduler = null;
+
+  /**
+   * The dedicated workers for log streams in retention catch-up mode, null if it is not enabled
+   */
+  private static CatchUpExecutor catchUpExecutor = null;
+
+  /**
+   * The dedicated workers for draining log streams, null if draining streams share the
+   * processor threads
+   */
+  private static DrainCoordinator drainCoordinator = null;
+
+  /**
+   * Verifies the checksums of large batches in parallel, null if checksums are verified on the
+   * processor threads.
+   */
+  private static ChecksumVerifier checksumVerifier = null;
+
+  /**
+   * Byte and message rate quota shared by all logs on the host, null if not configured
+   */
+  private static RateQuota hostRateQuota = null;
+
+  // Rate quotas of logs keyed by log name. Guarded by the getOrCreate method.
+  private static Map<String, RateQuota> logRateQuotas = new HashMap<>();
+
   /**
    * The thread pools for writing the logs to central storage such as kafka. We use a thread
    * pool per cluster to isolate logging failures in one cluster from another.
@@ -79,6 +114,11 @@ public final class SingerSettings {
    */
   private static ScheduledExecutorService backgroundTaskExecutor;
 
+  /**
+   * Runs the reconciliations of the directories of all FileSystemMonitors. Guarded by the getter.
+   */
+  private static ScheduledExecutorService directoryReconcilerExecutor;
+
   /**
    * The Singer config file directory watcher
    */
@@ -133,6 +173,39 @@ public final class SingerSettings {
         singerConfig.getThreadPoolSize(),
         new ThreadFactoryBuilder().setNameFormat("Processor: %d").build());
 
+    if (singerConfig.isSetProcessorSchedulerConfig()
+        && singerConfig.getProcessorSchedulerConfig().isEnabled()) {
+      logProcessorScheduler = new WeightedFairScheduler(logProcessorExecutor,
+          singerConfig.getThreadPoolSize(), singerConfig.getProcessorSchedulerConfig());
+      LOG.info("Weighted fair scheduling of log stream processors is enabled");
+    }
+
+    if (singerConfig.isSetRetentionCatchUpConfig()
+        && singerConfig.getRetentionCatchUpConfig().isEnabled()) {
+      catchUpExecutor = new CatchUpExecutor(logProcessorExecutor,
+          singerConfig.getRetentionCatchUpConfig().getCatchUpThreadPoolSize());
+      LOG.info("Retention deadline aware catch-up of log streams is enabled");
+    }
+
+    if (singerConfig.getDrainThreadPoolSize() > 0) {
+      drainCoordinator = new DrainCoordinator(logProcessorExecutor,
+          singerConfig.getDrainThreadPoolSize());
+    }
+
+    if (singerConfig.getChecksumVerificationThreads() > 0) {
+      checksumVerifier = new ChecksumVerifier(Executors.newFixedThreadPool(
+          singerConfig.getChecksumVerificationThreads(),
+          new ThreadFactoryBuilder().setNameFormat("ChecksumVerifier: %d").setDaemon(true).build()),
+          singerConfig.getParallelChecksumVerificationMinBytes());
+      LOG.info("Parallel checksum verification is enabled with {} threads",
+          singerConfig.getChecksumVerificationThreads());
+    }
+
+    if (singerConfig.isSetHostRateQuotaConfig()) {
+      hostRateQuota = new RateQuota("host", singerConfig.getHostRateQuotaConfig());
+      LOG.info("Host rate quota is set to {}", singerConfig.getHostRateQuotaConfig());
+    }
+
     SingerSettings.logWritingExecutors = new HashMap<>();
     
     backgroundTaskExecutor = Executors.newSingleThreadScheduledExecutor(
@@ -335,6 +408,29 @@ public final class SingerSettings {
         backgroundTaskExecutor.shutdownNow();
     }
     singerConfig = null;
+    logProcessorScheduler = null;
+    if (catchUpExecutor != null) {
+      catchUpExecutor.shutdown();
+      catchUpExecutor = null;
+    }
+    if (drainCoordinator != null) {
+      drainCoordinator.shutdown();
+      drainCoordinator = null;
+    }
+    if (checksumVerifier != null) {
+      checksumVerifier.shutdown();
+      checksumVerifier = null;
+    }
+    synchronized (SingerSettings.class) {
+      if (directoryReconcilerExecutor != null) {
+        directoryReconcilerExecutor.shutdownNow();
+        directoryReconcilerExecutor = null;
+      }
+    }
+    hostRateQuota = null;
+    synchronized (SingerSettings.class) {
+      logRateQuotas.clear();
+    }
     fsMonitorMap.clear();
   }
   
@@ -350,9 +446,93 @@ public final class SingerSettings {
     SingerSettings.backgroundTaskExecutor = backgroundTaskExecutor;
   }
   
+  /**
+   * @return the executor shared by the DirectoryReconcilers of all FileSystemMonitors, so that
+   * pods don't need a reconciliation thread each.
+   */
+  public static synchronized ScheduledExecutorService getDirectoryReconcilerExecutor() {
+    if (directoryReconcilerExecutor == null) {
+      directoryReconcilerExecutor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("DirectoryReconciler").setDaemon(true).build());
+    }
+    return directoryReconcilerExecutor;
+  }
+
   public static ScheduledExecutorService getLogProcessorExecutor() {
     return logProcessorExecutor;
   }
+
+  public static WeightedFairScheduler getLogProcessorScheduler() {
+    return logProcessorScheduler;
+  }
+
+  @VisibleForTesting
+  public static void setLogProcessorScheduler(WeightedFairScheduler logProcessorScheduler) {
+    SingerSettings.logProcessorScheduler = logProcessorScheduler;
+  }
+
+  public static CatchUpExecutor getCatchUpExecutor() {
+    return catchUpExecutor;
+  }
+
+  @VisibleForTesting
+  public static void setCatchUpExecutor(CatchUpExecutor catchUpExecutor) {
+    SingerSettings.catchUpExecutor = catchUpExecutor;
+  }
+
+  public static DrainCoordinator getDrainCoordinator() {
+    return drainCoordinator;
+  }
+
+  @VisibleForTesting
+  public static void setDrainCoordinator(DrainCoordinator drainCoordinator) {
+    SingerSettings.drainCoordinator = drainCoordinator;
+  }
+
+  public static ChecksumVerifier getChecksumVerifier() {
+    return checksumVerifier;
+  }
+
+  @VisibleForTesting
+  public static void setChecksumVerifier(ChecksumVerifier checksumVerifier) {
+    SingerSettings.checksumVerifier = checksumVerifier;
+  }
+
+  public static RateQuota getHostRateQuota() {
+    return hostRateQuota;
+  }
+
+  @VisibleForTesting
+  public static void setHostRateQuota(RateQuota hostRateQuota) {
+    SingerSettings.hostRateQuota = hostRateQuota;
+  }
+
+  /**
+   * Get the rate quota shared by all log streams of the given log. The quota is re-created when
+   * the quota config of the log changes.
+   *
+   * @return the quota, or null if the log has no quota configured.
+   */
+  public static synchronized RateQuota getOrCreateLogRateQuota(SingerLogConfig logConfig) {
+    if (!logConfig.isSetRateQuotaConfig()) {
+      logRateQuotas.remove(logConfig.getName());
+      return null;
+    }
+    RateQuota quota = logRateQuotas.get(logConfig.getName());
+    if (quota == null || !quota.getConfig().equals(logConfig.getRateQuotaConfig())) {
+      quota = new RateQuota(logConfig.getName(), logConfig.getRateQuotaConfig());
+      logRateQuotas.put(logConfig.getName(), quota);
+    }
+    return quota;
+  }
+
+  /**
+   * Remove the rate quotas of the logs whose name starts with the given prefix, e.g. the logs of
+   * a deleted pod.
+   */
+  public static synchronized void removeLogRateQuotas(String logNamePrefix) {
+    logRateQuotas.keySet().removeIf(logName -> logName.startsWith(logNamePrefix));
+  }
   
   /**
    * Refactored so unit tests can call
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.config;
+
+import com.pinterest.singer.thrift.configuration.LogStreamProcessorConfig;
+import com.pinterest.singer.thrift.configuration.SingerConfig;
+import com.pinterest.singer.thrift.configuration.SingerLogConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Difference between two SingerConfigs, with the SingerLogConfigs matched by name.
+ * <p/>
+ * A changed SingerLogConfig is tunable if it only differs in the log decider, the batch size or
+ * the processing intervals of its processor. Those can be applied to the running processors of the
+ * log, any other change requires the log streams of the log to be restarted.
+ */
+public class SingerConfigDiff {
+
+  private final SingerConfig newConfig;
+  private final List<SingerLogConfig> addedLogConfigs = new ArrayList<>();
+  private final List<SingerLogConfig> removedLogConfigs = new ArrayList<>();
+  // the new configs of the changed logs
+  private final List<SingerLogConfig> tunedLogConfigs = new ArrayList<>();
+  private final List<SingerLogConfig> restartedLogConfigs = new ArrayList<>();
+  private final boolean logConfigsOnly;
+
+  public SingerConfigDiff(SingerConfig oldConfig, SingerConfig newConfig) {
+    this.newConfig = newConfig;
+    Map<String, SingerLogConfig> oldLogConfigs = indexByName(oldConfig);
+    Map<String, SingerLogConfig> newLogConfigs = indexByName(newConfig);
+    for (Map.Entry<String, SingerLogConfig> entry : newLogConfigs.entrySet()) {
+      SingerLogConfig oldLogConfig = oldLogConfigs.get(entry.getKey());
+      SingerLogConfig newLogConfig = entry.getValue();
+      if (oldLogConfig == null) {
+        addedLogConfigs.add(newLogConfig);
+      } else if (isTunableChange(oldLogConfig, newLogConfig)) {
+        tunedLogConfigs.add(newLogConfig);
+      } else if (!oldLogConfig.equals(newLogConfig)) {
+        restartedLogConfigs.add(newLogConfig);
+      }
+    }
+    for (Map.Entry<String, SingerLogConfig> entry : oldLogConfigs.entrySet()) {
+      if (!newLogConfigs.containsKey(entry.getKey())) {
+        removedLogConfigs.add(entry.getValue());
+      }
+    }
+    SingerConfig oldSettings = oldConfig.deepCopy();
+    oldSettings.unsetLogConfigs();
+    SingerConfig newSettings = newConfig.deepCopy();
+    newSettings.unsetLogConfigs();
+    this.logConfigsOnly = oldSettings.equals(newSettings);
+  }
+
+  private static Map<String, SingerLogConfig> indexByName(SingerConfig config) {
+    Map<String, SingerLogConfig> logConfigs = new LinkedHashMap<>();
+    if (config.getLogConfigs() != null) {
+      for (SingerLogConfig logConfig : config.getLogConfigs()) {
+        logConfigs.put(logConfig.getName(), logConfig);
+      }
+    }
+    return logConfigs;
+  }
+
+  /**
+   * @return true if the two configs differ and the new config is the old config with different
+   * tunables.
+   */
+  static boolean isTunableChange(SingerLogConfig oldLogConfig, SingerLogConfig newLogConfig) {
+    if (oldLogConfig.equals(newLogConfig)
+        || !oldLogConfig.isSetLogStreamProcessorConfig()
+        || !newLogConfig.isSetLogStreamProcessorConfig()) {
+      return false;
+    }
+    // apply the old tunables to the new config, everything else has to be the same
+    SingerLogConfig config = newLogConfig.deepCopy();
+    if (oldLogConfig.isSetLogDecider()) {
+      config.setLogDecider(oldLogConfig.getLogDecider());
+    } else {
+      config.unsetLogDecider();
+    }
+    LogStreamProcessorConfig oldProcessorConfig = oldLogConfig.getLogStreamProcessorConfig();
+    LogStreamProcessorConfig processorConfig = config.getLogStreamProcessorConfig();
+    processorConfig.setBatchSize(oldProcessorConfig.getBatchSize());
+    processorConfig.setProcessingIntervalInMillisecondsMin(
+        oldProcessorConfig.getProcessingIntervalInMillisecondsMin());
+    processorConfig.setProcessingIntervalInMillisecondsMax(
+        oldProcessorConfig.getProcessingIntervalInMillisecondsMax());
+    if (oldProcessorConfig.isSetProcessingTimeSliceInMilliseconds()) {
+      processorConfig.setProcessingTimeSliceInMilliseconds(
+          oldProcessorConfig.getProcessingTimeSliceInMilliseconds());
+    } else {
+      processorConfig.unsetProcessingTimeSliceInMilliseconds();
+    }
+    return config.equals(oldLogConfig);
+  }
+
+  public SingerConfig getNewConfig() {
+    return newConfig;
+  }
+
+  public List<SingerLogConfig> getAddedLogConfigs() {
+    return Collections.unmodifiableList(addedLogConfigs);
+  }
+
+  public List<SingerLogConfig> getRemovedLogConfigs() {
+    return Collections.unmodifiableList(removedLogConfigs);
+  }
+
+  /**
+   * @return the new configs of the logs whose changes can be applied in place.
+   */
+  public List<SingerLogConfig> getTunedLogConfigs() {
+    return Collections.unmodifiableList(tunedLogConfigs);
+  }
+
+  /**
+   * @return the new configs of the logs whose log streams have to be restarted.
+   */
+  public List<SingerLogConfig> getRestartedLogConfigs() {
+    return Collections.unmodifiableList(restartedLogConfigs);
+  }
+
+  /**
+   * @return true if logs are added, removed or have to be restarted.
+   */
+  public boolean hasLogStreamChanges() {
+    return !addedLogConfigs.isEmpty() || !removedLogConfigs.isEmpty()
+        || !restartedLogConfigs.isEmpty();
+  }
+
+  /**
+   * @return true if nothing but the log configs changed.
+   */
+  public boolean isLogConfigsOnly() {
+    return logConfigsOnly;
+  }
+
+  @Override
+  public String toString() {
+    return "SingerConfigDiff{added=" + names(addedLogConfigs)
+        + ", removed=" + names(removedLogConfigs)
+        + ", tuned=" + names(tunedLogConfigs)
+        + ", restarted=" + names(restartedLogConfigs)
+        + ", logConfigsOnly=" + logConfigsOnly + "}";
+  }
+
+  private static List<String> names(List<SingerLogConfig> logConfigs) {
+    List<String> names = new ArrayList<>(logConfigs.size());
+    for (SingerLogConfig logConfig : logConfigs) {
+      names.add(logConfig.getName());
+    }
+    return names;
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.pinterest.singer.config;
 
+import com.pinterest.singer.common.SingerSettings;
 import com.pinterest.singer.thrift.configuration.SingerConfig;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -30,7 +31,8 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Watcher periodically re-parse entire directory tree and exits the Singer process if any change
- * detected.
+ * detected. If log config hot reload is enabled, changes limited to the log configs are handed to
+ * the ConfigReloader instead, and Singer only exits if they can not be applied.
  */
 public class SingerDirectoryWatcher implements Runnable {
 
@@ -45,23 +47,49 @@ public class SingerDirectoryWatcher implements Runnable {
       System.exit(status);
     }
   };
+  public interface ConfigReloader {
+
+    /**
+     * @return true if the changes were applied, false if Singer has to be restarted.
+     */
+    boolean reload(SingerConfigDiff diff);
+  }
+
+  static final ConfigReloader logMonitorConfigReloader = new ConfigReloader() {
+    @Override
+    public boolean reload(SingerConfigDiff diff) {
+      return SingerSettings.getLogMonitor() != null
+          && SingerSettings.getLogMonitor().reloadLogConfigs(diff);
+    }
+  };
   private final ExitManager exitManager;
-  private final SingerConfig origConfig;
+  private final ConfigReloader configReloader;
+  private volatile SingerConfig currentConfig;
   private final SingerConfigurator configurator;
   private static final Logger LOG = LoggerFactory.getLogger(SingerDirectoryWatcher.class);
 
   public SingerDirectoryWatcher(SingerConfig origConfig, SingerConfigurator singerConfigurator)
       throws ConfigurationException {
-    this(origConfig, singerConfigurator, systemExitManager);
+    this(origConfig, singerConfigurator, systemExitManager,
+        origConfig.isEnableLogConfigHotReload() ? logMonitorConfigReloader : null);
   }
 
   @VisibleForTesting
   public SingerDirectoryWatcher(SingerConfig origConfig,
                                 SingerConfigurator singerConfigurator,
                                 ExitManager exitManager) throws ConfigurationException {
-    this.origConfig = origConfig;
+    this(origConfig, singerConfigurator, exitManager, null);
+  }
+
+  @VisibleForTesting
+  public SingerDirectoryWatcher(SingerConfig origConfig,
+                                SingerConfigurator singerConfigurator,
+                                ExitManager exitManager,
+                                ConfigReloader configReloader) throws ConfigurationException {
+    this.currentConfig = origConfig;
     this.configurator = singerConfigurator;
     this.exitManager = exitManager;
+    this.configReloader = configReloader;
     // start a daemon thread so we can exit without any bothering.
     ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(new
         ThreadFactoryBuilder().setDaemon(true).setNameFormat("SingerDirectoryWatcher-%d").build());
@@ -73,7 +101,16 @@ public class SingerDirectoryWatcher implements Runnable {
   public void run() {
     try {
       SingerConfig newConfig = configurator.parseSingerConfig();
-      if (!origConfig.equals(newConfig)) {
+      if (!currentConfig.equals(newConfig)) {
+        if (configReloader != null) {
+          SingerConfigDiff diff = new SingerConfigDiff(currentConfig, newConfig);
+          if (diff.isLogConfigsOnly() && configReloader.reload(diff)) {
+            LOG.warn("Reloaded singer log configs: {}", diff);
+            currentConfig = newConfig;
+            return;
+          }
+          LOG.error("Failed to reload singer config changes: {}", diff);
+        }
         LOG.error("Exiting as singer config changes detected. This is by design, don't panic.");
         exitManager.exit(0);
       }
@@ -241,6 +241,9 @@ public class KubeService implements Runnable {
     /**
      * Clear the set of Pod Names and update it with the latest fetch from kubelet
      * 
+     * The fetched pod list also replaces the pod metadata snapshot of the
+     * {@link PodMetadataFetcher}, so metadata lookups don't fetch it again.
+     * 
      * Following a listener design, currently we only have 1 listener but in future
      * if we want to do something else as well when these events happen then this
      * might come in handy.
@@ -249,7 +252,9 @@ public class KubeService implements Runnable {
      */
     public void updatePodNames() throws IOException {
         LOG.debug("Active podset:" + activePodSet);
-        Set<String> updatedPodNames = fetchPodNamesFromMetadata();
+        JsonArray podList = getPodListFromKubelet();
+        PodMetadataFetcher.getInstance().updateSnapshot(podList);
+        Set<String> updatedPodNames = getPodNames(podList);
         SetView<String> deletedNames = Sets.difference(activePodSet, updatedPodNames);
 
         // ignore new pods, pod discovery is done by watching directories
@@ -305,7 +310,16 @@ public class KubeService implements Runnable {
      * @throws IOException
      */
     public Set<String> fetchPodNamesFromMetadata() throws IOException {
-        JsonArray podList = getPodListFromKubelet();
+        return getPodNames(getPodListFromKubelet());
+    }
+
+    /**
+     * Extract Pod IDs from a pod list fetched from kubelet, skipping ignored pods.
+     *
+     * @param podList items of the kubelet pod list, may be null
+     * @return set of pod names
+     */
+    private Set<String> getPodNames(JsonArray podList) {
         Set<String> podNames = new HashSet<>();
         if (podList != null) {
             for (int i = 0; i < podList.size(); i++) {
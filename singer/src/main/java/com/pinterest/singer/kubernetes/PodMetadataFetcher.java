@@ -15,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,8 +24,11 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Service for fetching and caching pod metadata from the kubelet API.
  * 
- * This class provides lazy loading of pod metadata - metadata is fetched
- * on-demand when first requested and cached for subsequent access.
+ * This class provides lazy loading of pod metadata - metadata is looked up
+ * on-demand when first requested and cached for subsequent access. Lookups
+ * are served from a snapshot of the kubelet pod list indexed by pod directory
+ * name, which is replaced on every {@link KubeService} poll, so initializing
+ * many pods does not fetch the pod list once per pod.
  * 
  */
 public class PodMetadataFetcher {
@@ -32,6 +36,8 @@ public class PodMetadataFetcher {
   private final Map<String, Map<String,String>> podMetadata = new ConcurrentHashMap<>();
   private final List<String> podMetadataFields;
   private final String podLogDirectory;
+  // metadata objects of the latest kubelet pod list, indexed by pod directory name
+  private volatile Map<String, JsonObject> podListSnapshot = Collections.emptyMap();
   private static PodMetadataFetcher instance;
 
 
@@ -76,19 +82,82 @@ public class PodMetadataFetcher {
   }
 
   /**
-   * Get metadata for a pod, fetching from kubelet if not already cached.
+   * Get metadata for a pod from the latest pod list snapshot. If the pod is not in the snapshot,
+   * the snapshot is refreshed from kubelet once for all the callers that missed it.
    * 
    * @param podUid the pod directory name (namespace_name_uid format)
    * @return the pod metadata map, or null if unavailable
    */
   public Map<String, String> getPodMetadata(String podUid) {
     // Return cached if available
-    if (podMetadata.containsKey(podUid)) {
-      return podMetadata.get(podUid);
+    Map<String, String> cached = podMetadata.get(podUid);
+    if (cached != null) {
+      return cached;
     }
-    
-    // Fetch and cache
-    return fetchAndCache(podUid);
+    if (podMetadataFields == null || podMetadataFields.isEmpty()) {
+      return null;
+    }
+
+    Map<String, JsonObject> snapshot = podListSnapshot;
+    JsonObject metadata = snapshot.get(podUid);
+    if (metadata == null) {
+      metadata = refreshSnapshot(snapshot).get(podUid);
+    }
+    if (metadata == null) {
+      return null;
+    }
+    return cache(podUid, metadata);
+  }
+
+  /**
+   * Replace the pod list snapshot with a pod list fetched from kubelet, e.g. by the
+   * {@link KubeService} poll. Items without a metadata object holding the namespace, name and
+   * uid of the pod are skipped.
+   *
+   * @param podList the items of the kubelet pod list, ignored if null
+   */
+  public void updateSnapshot(JsonArray podList) {
+    if (podList == null) {
+      return;
+    }
+    Map<String, JsonObject> snapshot = new HashMap<>(podList.size());
+    for (int i = 0; i < podList.size(); i++) {
+      JsonObject metadata = getValidMetadata(podList.get(i));
+      if (metadata == null) {
+        LOG.warn("Skipping malformed item of the kubelet pod list: {}", podList.get(i));
+        OpenTsdbMetricConverter.incr(SingerMetrics.POD_METADATA_MALFORMED);
+        continue;
+      }
+      String podDirectoryName = KubeService.getPodDirectoryName(
+          podLogDirectory,
+          metadata.get("namespace").getAsString(),
+          metadata.get("name").getAsString(),
+          metadata.get("uid").getAsString()
+      );
+      snapshot.put(podDirectoryName, metadata);
+    }
+    podListSnapshot = snapshot;
+  }
+
+  /**
+   * @return the metadata object of a pod list item, or null if it is not an object or lacks
+   *         the namespace, name or uid of the pod.
+   */
+  private static JsonObject getValidMetadata(JsonElement pod) {
+    if (pod == null || !pod.isJsonObject()) {
+      return null;
+    }
+    JsonElement metadata = pod.getAsJsonObject().get("metadata");
+    if (metadata == null || !metadata.isJsonObject()) {
+      return null;
+    }
+    for (String field : new String[] {"namespace", "name", "uid"}) {
+      JsonElement value = metadata.getAsJsonObject().get(field);
+      if (value == null || !value.isJsonPrimitive()) {
+        return null;
+      }
+    }
+    return metadata.getAsJsonObject();
   }
 
   /**
@@ -104,42 +173,33 @@ public class PodMetadataFetcher {
   }
 
   /**
-   * Fetch metadata from kubelet and cache it.
-   * Synchronized to prevent duplicate fetches for the same pod.
+   * Fetch the pod list from kubelet unless the snapshot was already replaced since the caller
+   * looked it up. Synchronized so that concurrent misses result in a single fetch.
+   *
+   * @param staleSnapshot the snapshot the caller missed in
+   * @return the latest snapshot
    */
-  private synchronized Map<String, String> fetchAndCache(String podUid) {    
-    if (podMetadataFields == null || podMetadataFields.isEmpty()) {
-      return null;
-    }
-    
-    try {
-      JsonArray podList = KubeService.getPodListFromKubelet();
-      if (podList != null) {
-        for (int i = 0; i < podList.size(); i++) {
-          JsonObject metadata = podList.get(i).getAsJsonObject().get("metadata").getAsJsonObject();
-          String podDirectoryName = KubeService.getPodDirectoryName(
-              podLogDirectory,
-              metadata.get("namespace").getAsString(),
-              metadata.get("name").getAsString(),
-              metadata.get("uid").getAsString()
-          );
-          
-          if (podDirectoryName.equals(podUid)) {
-            Map<String, String> extracted = extractPodMetadataFields(metadata, podMetadataFields);
-            podMetadata.put(podUid, extracted);
-            LOG.info("Fetched and cached metadata for pod: {} is {}", podUid, extracted);
-            OpenTsdbMetricConverter.gauge(SingerMetrics.POD_METADATA_MAP_SIZE, podMetadata.size());
-            OpenTsdbMetricConverter.incr(SingerMetrics.POD_METADATA_UPDATED,
-                "podName=" + podUid, "namespace=" + metadata.get("namespace").getAsString());
-            return extracted;
-          }
-        }
+  private synchronized Map<String, JsonObject> refreshSnapshot(
+      Map<String, JsonObject> staleSnapshot) {
+    if (podListSnapshot == staleSnapshot) {
+      try {
+        updateSnapshot(KubeService.getPodListFromKubelet());
+        OpenTsdbMetricConverter.incr(SingerMetrics.POD_METADATA_SNAPSHOT_REFRESH);
+      } catch (IOException e) {
+        LOG.warn("Failed to fetch the pod list from kubelet", e);
       }
-    } catch (IOException e) {
-      LOG.warn("Failed to fetch metadata for pod: {}", podUid, e);
     }
-    
-    return null;
+    return podListSnapshot;
+  }
+
+  private Map<String, String> cache(String podUid, JsonObject metadata) {
+    Map<String, String> extracted = extractPodMetadataFields(metadata, podMetadataFields);
+    podMetadata.put(podUid, extracted);
+    LOG.info("Fetched and cached metadata for pod: {} is {}", podUid, extracted);
+    OpenTsdbMetricConverter.gauge(SingerMetrics.POD_METADATA_MAP_SIZE, podMetadata.size());
+    OpenTsdbMetricConverter.incr(SingerMetrics.POD_METADATA_UPDATED,
+        "podName=" + podUid, "namespace=" + metadata.get("namespace").getAsString());
+    return extracted;
   }
 
   /**
@@ -23,14 +23,20 @@ import com.pinterest.singer.common.LogStreamReader;
 import com.pinterest.singer.common.errors.LogStreamReaderException;
 import com.pinterest.singer.common.LogStreamWriter;
 import com.pinterest.singer.common.errors.LogStreamWriterException;
+import com.pinterest.singer.common.SingerLog;
 import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.common.SingerSettings;
+import com.pinterest.singer.common.errors.SingerLogException;
 import com.pinterest.singer.config.Decider;
+import com.pinterest.singer.config.SingerConfigDiff;
 import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
 import com.pinterest.singer.processor.DefaultLogStreamProcessor;
+import com.pinterest.singer.processor.FanOutLogStreamProcessor;
 import com.pinterest.singer.processor.MemoryEfficientLogStreamProcessor;
 import com.pinterest.singer.reader.DefaultLogStreamReader;
 import com.pinterest.singer.reader.TextLogFileReaderFactory;
 import com.pinterest.singer.reader.ThriftLogFileReaderFactory;
+import com.pinterest.singer.thrift.LogPosition;
 import com.pinterest.singer.thrift.configuration.MessageTransformerConfig;
 import com.pinterest.singer.thrift.configuration.NoOpWriteConfig;
 import com.pinterest.singer.thrift.configuration.S3WriterConfig;
@@ -45,10 +51,12 @@ import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 import com.pinterest.singer.thrift.configuration.SingerRestartConfig;
 import com.pinterest.singer.thrift.configuration.TextReaderConfig;
 import com.pinterest.singer.thrift.configuration.ThriftReaderConfig;
+import com.pinterest.singer.thrift.configuration.TopicRouteConfig;
 import com.pinterest.singer.utils.SingerUtils;
 import com.pinterest.singer.writer.NoOpLogStreamWriter;
 import com.pinterest.singer.writer.KafkaWriter;
 import com.pinterest.singer.writer.kafka.CommittableKafkaWriter;
+import com.pinterest.singer.writer.kafka.TopicRouter;
 import com.pinterest.singer.writer.pulsar.PulsarWriter;
 import com.pinterest.singer.writer.s3.S3Writer;
 
@@ -73,13 +81,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadLocalRandom;
@@ -97,9 +109,8 @@ import java.util.regex.Pattern;
  * <p>
  * This class is not thread-safe. monitorLogs() method does all the monitoring tasks and should
  * only be called from one thread at any time. The start() and stop() methods can be called in other
- * threads to start and stop the monitor.
- * <p>
- * TODO(wangxd): close processors for LogStreams in those logs that are no longer monitored.
+ * threads to start and stop the monitor. Log config changes are applied by reloadLogConfigs() on
+ * the monitoring thread as well.
  */
 public class DefaultLogMonitor implements LogMonitor, Runnable {
 
@@ -133,6 +144,13 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
 
   private long restartTimeInMillis = Long.MAX_VALUE;
 
+  // Persists the log streams for a warm restart, null if disabled.
+  private StreamTopologySnapshotter streamTopologySnapshotter;
+
+  private long snapshotIntervalInMillis;
+
+  private long lastSnapshotTimeInMillis = System.currentTimeMillis();
+
   /**
    * The value used for determining whether instance-level decider sampling should be enabled, ranging between 0 and 99
    * This will be shared across all logstreams monitored by this instance
@@ -159,6 +177,12 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
       dailyRestart = true;
       setDailyRestartTime(singerConfig.singerRestartConfig);
     }
+    if (singerConfig.isSetStreamTopologySnapshotPath()) {
+      streamTopologySnapshotter =
+          new StreamTopologySnapshotter(singerConfig.getStreamTopologySnapshotPath());
+      snapshotIntervalInMillis =
+          TimeUnit.SECONDS.toMillis(singerConfig.getStreamTopologySnapshotIntervalInSecs());
+    }
   }
 
   /**
@@ -290,6 +314,30 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
     int batchSize = processorConfig.getBatchSize();
     batchSize = writer.isAuditingEnabled() ? batchSize - 1 : batchSize;
 
+    if (singerLogConfig.isSetFanOutWriterConfigs()
+        && !singerLogConfig.getFanOutWriterConfigs().isEmpty()) {
+      // One read pass feeds the primary writer and all fan-out writers.
+      Map<String, LogStreamWriter> fanOutWriters = new HashMap<>();
+      boolean auditingEnabled = writer.isAuditingEnabled();
+      for (Map.Entry<String, LogStreamWriterConfig> entry
+          : singerLogConfig.getFanOutWriterConfigs().entrySet()) {
+        LogStreamWriter fanOutWriter = createLogStreamWriter(logStream, entry.getValue());
+        auditingEnabled |= fanOutWriter.isAuditingEnabled();
+        fanOutWriters.put(entry.getKey(), fanOutWriter);
+      }
+      return new FanOutLogStreamProcessor(
+          logStream,
+          singerLogConfig.getLogDecider(),
+          reader,
+          writer,
+          fanOutWriters,
+          auditingEnabled ? processorConfig.getBatchSize() - 1 : processorConfig.getBatchSize(),
+          processorConfig.getProcessingIntervalInMillisecondsMin(),
+          processorConfig.getProcessingIntervalInMillisecondsMax(),
+          processorConfig.getProcessingTimeSliceInMilliseconds(),
+          singerLogConfig.getLogRetentionInSeconds());
+    }
+
     // Enable memory optimization only if the writer supports it and the logstream
     // is configured for it
     if (singerLogConfig.getLogStreamProcessorConfig().isEnableMemoryEfficientProcessor() && 
@@ -412,8 +460,22 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
             auditingEnabled, auditTopic, partitionerClass, writeTimeoutInSeconds, enableHeadersInjector);
       } else {
         // only enable committable writer for selective streams
-        kafkaWriter = new CommittableKafkaWriter(logStream, producerConfig, topic, kafkaWriterConfig.isSkipNoLeaderPartitions(),
-            auditingEnabled, auditTopic, partitionerClass, writeTimeoutInSeconds, enableHeadersInjector);
+        CommittableKafkaWriter committableKafkaWriter = new CommittableKafkaWriter(logStream,
+            producerConfig, topic, kafkaWriterConfig.isSkipNoLeaderPartitions(), auditingEnabled,
+            auditTopic, partitionerClass, writeTimeoutInSeconds, enableHeadersInjector);
+        if (kafkaWriterConfig.isSetTopicRoutes()) {
+          List<TopicRouteConfig> topicRoutes = new ArrayList<>();
+          for (TopicRouteConfig topicRoute : kafkaWriterConfig.getTopicRoutes()) {
+            TopicRouteConfig resolvedTopicRoute = new TopicRouteConfig(topicRoute);
+            resolvedTopicRoute.setTopic(extractTopicNameFromLogStreamName(
+                logStream.getLogStreamName(),
+                singerLogConfig.getLogStreamRegex(),
+                topicRoute.getTopic()));
+            topicRoutes.add(resolvedTopicRoute);
+          }
+          committableKafkaWriter.setTopicRouter(new TopicRouter(topicRoutes));
+        }
+        kafkaWriter = committableKafkaWriter;
       }
       LOG.info("Created kafka writer : " + kafkaWriterConfig.toString());
       return kafkaWriter;
@@ -495,6 +557,98 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
     }
   }
 
+  /**
+   * Apply the log config changes on the monitoring thread, between two monitoring cycles.
+   * Processors of removed logs are stopped, the LogStreams of added and restarted logs are
+   * initialized and picked up by the next monitoring cycle, and tunables are applied to the
+   * running processors of the tuned logs.
+   * <p>
+   * Log streams of pods are created from the log configs when pods are discovered, so in
+   * Kubernetes mode only tunable changes are applied.
+   */
+  @Override
+  public boolean reloadLogConfigs(SingerConfigDiff diff) {
+    if (diff.getNewConfig().isKubernetesEnabled() && diff.hasLogStreamChanges()) {
+      LOG.warn("Log streams of pods can not be reloaded: {}", diff);
+      return false;
+    }
+    try {
+      return logMonitorExecutor.submit(() -> applyLogConfigChanges(diff)).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.error("Interrupted while reloading log configs", e);
+    } catch (ExecutionException | RejectedExecutionException e) {
+      LOG.error("Failed to reload log configs: " + diff, e);
+    }
+    Stats.incr(SingerMetrics.CONFIG_RELOAD_FAILURE);
+    return false;
+  }
+
+  private boolean applyLogConfigChanges(SingerConfigDiff diff) throws SingerLogException {
+    LogStreamManager logStreamManager = LogStreamManager.getInstance();
+    int restartedStreams = 0;
+    int updatedStreams = 0;
+    List<SingerLogConfig> stoppedLogConfigs = new ArrayList<>(diff.getRemovedLogConfigs());
+    stoppedLogConfigs.addAll(diff.getRestartedLogConfigs());
+    for (SingerLogConfig logConfig : stoppedLogConfigs) {
+      for (LogStream logStream : logStreamManager.removeSingerLogs(logConfig.getName())) {
+        stopLogStreamProcessor(logStream);
+        restartedStreams++;
+      }
+    }
+
+    SingerSettings.setSingerConfig(diff.getNewConfig());
+    SingerSettings.initializeConfigMap(diff.getNewConfig());
+
+    for (SingerLogConfig logConfig : diff.getTunedLogConfigs()) {
+      Set<SingerLog> tunedSingerLogs = Collections.newSetFromMap(new IdentityHashMap<>());
+      tunedSingerLogs.addAll(logStreamManager.updateSingerLogTunables(logConfig));
+      List<LogStream> recreatedLogStreams = new ArrayList<>();
+      for (Map.Entry<LogStream, LogStreamProcessor> entry : processedLogStreams.entrySet()) {
+        SingerLog singerLog = entry.getKey().getSingerLog();
+        if (!tunedSingerLogs.contains(singerLog)) {
+          continue;
+        }
+        if (entry.getValue().applyTunables(singerLog.getSingerLogConfig())) {
+          updatedStreams++;
+        } else {
+          recreatedLogStreams.add(entry.getKey());
+        }
+      }
+      // the next monitoring cycle recreates the processors from the updated config
+      for (LogStream logStream : recreatedLogStreams) {
+        stopLogStreamProcessor(logStream);
+        restartedStreams++;
+      }
+    }
+
+    List<SingerLogConfig> startedLogConfigs = new ArrayList<>(diff.getAddedLogConfigs());
+    startedLogConfigs.addAll(diff.getRestartedLogConfigs());
+    for (SingerLogConfig logConfig : startedLogConfigs) {
+      logStreamManager.initializeSingerLog(logConfig);
+    }
+    Stats.incr(SingerMetrics.CONFIG_RELOAD_SUCCESS);
+    Stats.incr(SingerMetrics.CONFIG_RELOAD_RESTARTED_STREAMS, restartedStreams);
+    Stats.incr(SingerMetrics.CONFIG_RELOAD_UPDATED_STREAMS, updatedStreams);
+    LOG.info("Applied log config changes {}: restarted {} and updated {} log streams",
+        diff, restartedStreams, updatedStreams);
+    return true;
+  }
+
+  private void stopLogStreamProcessor(LogStream logStream) {
+    LogStreamProcessor processor = processedLogStreams.remove(logStream);
+    if (processor == null) {
+      return;
+    }
+    processor.stop();
+    try {
+      processor.close();
+      LOG.info("Stop and close processor for log stream: {}", logStream);
+    } catch (IOException e) {
+      LOG.error("Failed to close processor for log stream: {}", logStream);
+    }
+  }
+
   /**
    * Check the daily singer restart setting, and restart singer
    * if the conditions are satisfied. Singer randomly selects a minute in the
@@ -518,6 +672,11 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
       cleanUpLogs();
       // Report stats.
       reportStats();
+      if (streamTopologySnapshotter != null
+          && System.currentTimeMillis() - lastSnapshotTimeInMillis >= snapshotIntervalInMillis) {
+        // committed positions move on until shutdown, only the final ones are persisted
+        saveStreamTopologySnapshot(Collections.emptyMap());
+      }
     } catch (LogMonitorException t) {
       LOG.error("Caught exception when monitor log streams", t);
       Stats.incr("singer.monitor.exception");
@@ -669,7 +828,14 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
     }
   }
 
+  private void saveStreamTopologySnapshot(Map<LogStream, LogPosition> committedPositions) {
+    lastSnapshotTimeInMillis = System.currentTimeMillis();
+    streamTopologySnapshotter.save(StreamTopologySnapshotter.build(
+        LogStreamManager.getInstance().getDirStreams(), committedPositions));
+  }
+
   private void stopMonitoredLogs() {
+    Map<LogStream, LogPosition> committedPositions = new HashMap<>();
     for (Iterator<Map.Entry<LogStream, LogStreamProcessor>> it
          = processedLogStreams.entrySet().iterator(); it.hasNext(); ) {
       Map.Entry<LogStream, LogStreamProcessor> entry = it.next();
@@ -677,6 +843,9 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
       // Stop and close the processor for this LogStream.
       LogStreamProcessor processor = entry.getValue();
       processor.stop();
+      if (processor.getCommittedPosition() != null) {
+        committedPositions.put(logStream, processor.getCommittedPosition());
+      }
       try {
         processor.close();
         LOG.info("Stop and close processor for log stream: {}", logStream);
@@ -686,6 +855,9 @@ public class DefaultLogMonitor implements LogMonitor, Runnable {
       // Remove the LogStream from processed LogStreams.
       it.remove();
     }
+    if (streamTopologySnapshotter != null) {
+      saveStreamTopologySnapshot(committedPositions);
+    }
   }
 
   /**
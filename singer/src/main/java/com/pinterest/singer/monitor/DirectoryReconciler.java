@@ -0,0 +1,304 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.monitor;
+
+import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Reconciles the log streams with the monitored directories after file system events were lost.
+ * <p/>
+ * Instead of rescanning every monitored directory on each overflow, the reconciler remembers the
+ * mtime and the file names of each directory at the last point where its log streams were known
+ * to be consistent with the disk, and keeps them up to date as CREATE and DELETE events are
+ * processed. Creating, deleting or renaming a file changes the mtime of its directory, so a
+ * directory whose mtime did not change is skipped. If the mtime changed, or is too recent to be
+ * trusted, the names in the directory are compared with the known names, and only directories
+ * with files the log streams don't know about (or know about but are gone) are rescanned. Lost
+ * MODIFY events change neither, they need no rescan since readers poll their current file anyway.
+ * <p/>
+ * Reconciliation requests are coalesced: a request while a reconciliation is pending is served by
+ * it, and two reconciliations are at least minIntervalMillis apart, so an overflow storm results
+ * in a bounded number of passes. Reconciliations run on an executor shared by the reconcilers of
+ * all FileSystemMonitors.
+ */
+public class DirectoryReconciler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DirectoryReconciler.class);
+
+  // File systems with a coarse mtime granularity can change a directory without changing its
+  // mtime if the change happens in the same tick as the scan, such mtimes are not trusted.
+  private static final long MTIME_GRANULARITY_MILLIS = 1000L;
+  private static final long UNKNOWN_MTIME = -1L;
+
+  private final String name;
+  private final long minIntervalMillis;
+  private final Supplier<Collection<Path>> monitoredPaths;
+  private final ScheduledExecutorService executor;
+  // state of each directory when its log streams were last known to be consistent with the disk
+  private final Map<Path, DirectoryState> consistentStates = new ConcurrentHashMap<>();
+  // guarded by this
+  private ScheduledFuture<?> pendingReconciliation = null;
+  private long lastReconciliationMillis = 0L;
+  private boolean stopped = false;
+
+  public DirectoryReconciler(String name, long minIntervalMillis,
+                             Supplier<Collection<Path>> monitoredPaths,
+                             ScheduledExecutorService executor) {
+    this.name = name;
+    this.minIntervalMillis = minIntervalMillis;
+    this.monitoredPaths = monitoredPaths;
+    this.executor = executor;
+  }
+
+  /**
+   * Cancel the pending reconciliation and forget the directories. This method is idempotent.
+   */
+  public synchronized void stop() {
+    stopped = true;
+    if (pendingReconciliation != null) {
+      pendingReconciliation.cancel(false);
+      pendingReconciliation = null;
+    }
+    consistentStates.clear();
+  }
+
+  /**
+   * Record the current state of a directory whose log streams are about to be initialized from a
+   * full listing, e.g. when the directory is registered. The directory must already be watched,
+   * so that changes after the state was read are reported as events.
+   */
+  public void markConsistent(Path dir) {
+    consistentStates.put(dir, readState(dir));
+  }
+
+  /**
+   * Forget a directory that is no longer monitored.
+   */
+  public void forget(Path dir) {
+    consistentStates.remove(dir);
+  }
+
+  /**
+   * Record a file whose CREATE event was processed, so that its directory is not rescanned for it.
+   */
+  public void onFileCreated(Path dir, String fileName) {
+    DirectoryState state = consistentStates.get(dir);
+    if (state != null) {
+      state.update(fileName, true);
+    }
+  }
+
+  /**
+   * Forget a file whose DELETE event was processed, so that its directory is not rescanned for it.
+   */
+  public void onFileDeleted(Path dir, String fileName) {
+    DirectoryState state = consistentStates.get(dir);
+    if (state != null) {
+      state.update(fileName, false);
+    }
+  }
+
+  /**
+   * Request a reconciliation of the changed directories, e.g. after a watch queue overflow.
+   */
+  public synchronized void requestReconciliation() {
+    if (stopped || pendingReconciliation != null) {
+      return;
+    }
+    long delayMillis =
+        Math.max(0L, lastReconciliationMillis + minIntervalMillis - System.currentTimeMillis());
+    try {
+      pendingReconciliation =
+          executor.schedule(this::runReconciliation, delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      LOG.warn("Reconciliation of the monitored directories of {} was rejected", name);
+    }
+  }
+
+  private void runReconciliation() {
+    synchronized (this) {
+      pendingReconciliation = null;
+      if (stopped) {
+        return;
+      }
+      lastReconciliationMillis = System.currentTimeMillis();
+    }
+    try {
+      reconcile();
+    } catch (Exception e) {
+      LOG.error("Failed to reconcile the monitored directories of {}", name, e);
+    }
+  }
+
+  @VisibleForTesting
+  public Set<Path> getConsistentDirectories() {
+    return consistentStates.keySet();
+  }
+
+  /**
+   * Rescan the monitored directories that changed since they were last consistent.
+   *
+   * @return the rescanned directories.
+   */
+  @VisibleForTesting
+  public List<Path> reconcile() {
+    List<Path> changedDirs = new ArrayList<>();
+    List<DirectoryState> scanStates = new ArrayList<>();
+    int unchangedDirs = 0;
+    Collection<Path> dirs = monitoredPaths.get();
+    // directories that are no longer monitored don't need to be remembered
+    consistentStates.keySet().retainAll(dirs instanceof Set ? dirs : new HashSet<>(dirs));
+    for (Path dir : dirs) {
+      DirectoryState consistentState = consistentStates.get(dir);
+      if (consistentState != null && consistentState.isUnchanged(dir)) {
+        unchangedDirs++;
+      } else {
+        changedDirs.add(dir);
+        scanStates.add(readState(dir));
+      }
+    }
+    LOG.info("Reconciling {} changed directories of {}, {} directories are unchanged",
+        changedDirs.size(), name, unchangedDirs);
+    if (!changedDirs.isEmpty()) {
+      for (Path dir : changedDirs) {
+        FileCatalog.getInstance().invalidate(dir);
+      }
+      new LogDirectoriesScanner(new HashSet<>(changedDirs)).run();
+      for (int i = 0; i < changedDirs.size(); i++) {
+        consistentStates.put(changedDirs.get(i), scanStates.get(i));
+      }
+    }
+    OpenTsdbMetricConverter.incr(SingerMetrics.FS_RECONCILED_DIRS, changedDirs.size());
+    OpenTsdbMetricConverter.incr(SingerMetrics.FS_UNCHANGED_DIRS, unchangedDirs);
+    // wildcard directories created while events were lost have to be discovered as well
+    LogStreamManager.getInstance().getMissingDirChecker().wakeUp();
+    return changedDirs;
+  }
+
+  /**
+   * Read the mtime of a directory before its names, so that a change between the two reads
+   * shows up as a changed mtime later on.
+   */
+  private static DirectoryState readState(Path dir) {
+    long readMillis = System.currentTimeMillis();
+    long mtime = mtime(dir);
+    return new DirectoryState(mtime, readMillis, listNames(dir));
+  }
+
+  /**
+   * @return the mtime of the directory, or UNKNOWN_MTIME if it does not exist.
+   */
+  private static long mtime(Path dir) {
+    try {
+      return Files.getLastModifiedTime(dir).toMillis();
+    } catch (IOException e) {
+      return UNKNOWN_MTIME;
+    }
+  }
+
+  /**
+   * @return the names of the files and directories in the directory, without the dot files that
+   * FileSystemMonitor ignores, or null if the directory can't be listed.
+   */
+  private static Set<String> listNames(Path dir) {
+    Set<String> names = new HashSet<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path file : stream) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(".")) {
+          names.add(name);
+        }
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return names;
+  }
+
+  /**
+   * Mtime and names of a directory as known to its log streams.
+   */
+  private static final class DirectoryState {
+
+    // mtime of the directory when it matched the names, or UNKNOWN_MTIME
+    private long mtime;
+    // when mtime was read, changes in the same mtime tick may have happened after it was read
+    private long mtimeReadMillis;
+    // null if the names are unknown
+    private final Set<String> names;
+
+    private DirectoryState(long mtime, long mtimeReadMillis, Set<String> names) {
+      this.mtime = mtime;
+      this.mtimeReadMillis = mtimeReadMillis;
+      this.names = names;
+    }
+
+    /**
+     * The mtime after a processed event can include changes whose events were lost, so it is not
+     * recorded. The next reconciliation compares the names and records the mtime if they match.
+     */
+    private synchronized void update(String name, boolean created) {
+      if (names != null) {
+        if (created) {
+          names.add(name);
+        } else {
+          names.remove(name);
+        }
+      }
+      mtime = UNKNOWN_MTIME;
+    }
+
+    private synchronized boolean isUnchanged(Path dir) {
+      long readMillis = System.currentTimeMillis();
+      long currentMtime = mtime(dir);
+      if (currentMtime == UNKNOWN_MTIME) {
+        return false;
+      }
+      if (currentMtime == mtime && mtime < mtimeReadMillis - MTIME_GRANULARITY_MILLIS) {
+        return true;
+      }
+      // the mtime changed or can't be trusted, compare the names instead
+      if (names == null || !names.equals(listNames(dir))) {
+        return false;
+      }
+      mtime = currentMtime;
+      mtimeReadMillis = readMillis;
+      return true;
+    }
+  }
+}
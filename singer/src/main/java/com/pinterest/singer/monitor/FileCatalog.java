@@ -0,0 +1,221 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.monitor;
+
+import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+import com.pinterest.singer.utils.FileNamePatternMatcher;
+import com.pinterest.singer.utils.SingerUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catalog of the inodes of the files of each log directory, indexed by name and by inode.
+ * <p/>
+ * The files of a directory that match a file name pattern are catalogued with one scan the first
+ * time they are queried. After that FileSystemMonitor keeps the catalog up to date from the
+ * CREATE, MODIFY and DELETE events of the directory, so finding a renamed file by its inode does
+ * not list and stat the directory again. A lookup miss rescans the matching files, at most once
+ * per minRescanIntervalMillis for each directory and pattern, so repeated lookups of a deleted
+ * file don't rescan the directory every time. When events may have been lost (watch queue
+ * overflow) the catalogs of the changed directories are dropped.
+ * <p/>
+ * Entries can lag behind the file system by the event processing delay, callers that act on a
+ * file should verify its inode before using it.
+ */
+public class FileCatalog {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileCatalog.class);
+  public static final long DEFAULT_MIN_RESCAN_INTERVAL_MILLIS = 1000L;
+
+  private final Map<String, DirectoryCatalog> directories = new ConcurrentHashMap<>();
+  private volatile long minRescanIntervalMillis = DEFAULT_MIN_RESCAN_INTERVAL_MILLIS;
+
+  private static final class InstanceHolder {
+    private static final FileCatalog INSTANCE = new FileCatalog();
+  }
+
+  public static FileCatalog getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  @VisibleForTesting
+  public void setMinRescanIntervalMillis(long minRescanIntervalMillis) {
+    this.minRescanIntervalMillis = minRescanIntervalMillis;
+  }
+
+  /**
+   * Find the name of a file by its inode among the files whose name matches the regex, scanning
+   * the matching files if they are not catalogued yet or the inode is unknown.
+   *
+   * @return the name of the file, or null if the directory has no file with the inode.
+   */
+  public String getFileNameByInode(Path dir, String fileNameRegex, long inode)
+      throws IOException {
+    return getOrCreateCatalog(dir).getName(fileNameRegex, inode, minRescanIntervalMillis);
+  }
+
+  /**
+   * Read the inode of a file and record it if its directory is catalogued.
+   *
+   * @return the current inode of the file.
+   * @throws NoSuchFileException if the file does not exist anymore.
+   */
+  public long update(Path dir, Path fileName) throws IOException {
+    long inode = SingerUtils.getFileInode(dir.resolve(fileName));
+    DirectoryCatalog catalog = directories.get(key(dir));
+    if (catalog != null) {
+      catalog.put(fileName.toString(), inode);
+    }
+    return inode;
+  }
+
+  /**
+   * Forget a deleted file.
+   */
+  public void remove(Path dir, Path fileName) {
+    DirectoryCatalog catalog = directories.get(key(dir));
+    if (catalog != null) {
+      catalog.remove(fileName.toString());
+    }
+  }
+
+  /**
+   * Drop all catalogs, e.g. after file system events were lost. Each directory is scanned again
+   * on its next query.
+   */
+  public void invalidate() {
+    directories.clear();
+  }
+
+  /**
+   * Drop the catalog of a directory, which is scanned again on its next query.
+   */
+  public void invalidate(Path dir) {
+    directories.remove(key(dir));
+  }
+
+  /**
+   * Drop the catalogs of a directory and of all directories below it, e.g. the log directories
+   * of a deleted pod.
+   */
+  public void invalidateTree(Path root) {
+    String rootKey = key(root);
+    String prefix = rootKey.endsWith("/") ? rootKey : rootKey + "/";
+    directories.keySet().removeIf(key -> key.equals(rootKey) || key.startsWith(prefix));
+  }
+
+  @VisibleForTesting
+  public boolean isCatalogued(Path dir) {
+    return directories.containsKey(key(dir));
+  }
+
+  private DirectoryCatalog getOrCreateCatalog(Path dir) {
+    return directories.computeIfAbsent(key(dir), key -> new DirectoryCatalog(dir));
+  }
+
+  private static String key(Path dir) {
+    return dir.normalize().toString();
+  }
+
+  private static final class DirectoryCatalog {
+
+    private final Path dir;
+    private final Map<String, Long> inodesByName = new HashMap<>();
+    private final Map<Long, String> namesByInode = new HashMap<>();
+    // time of the last scan of the files matching each file name regex
+    private final Map<String, Long> scanMillisByRegex = new HashMap<>();
+
+    private DirectoryCatalog(Path dir) {
+      this.dir = dir;
+    }
+
+    /**
+     * Replace the entries of the files matching the regex with the files on disk. Entries of other
+     * files are kept, only the matching files are stat'ed.
+     */
+    private synchronized void rescan(String fileNameRegex) throws IOException {
+      scanMillisByRegex.put(fileNameRegex, System.currentTimeMillis());
+      FileFilter filter = FileNamePatternMatcher.newFileFilter(fileNameRegex);
+      inodesByName.entrySet().removeIf(entry -> {
+        if (filter.accept(dir.resolve(entry.getKey()).toFile())) {
+          namesByInode.remove(entry.getValue(), entry.getKey());
+          return true;
+        }
+        return false;
+      });
+      if (!Files.isDirectory(dir)) {
+        return;
+      }
+      int numFiles = 0;
+      try (DirectoryStream<Path> stream =
+               Files.newDirectoryStream(dir, file -> filter.accept(file.toFile()))) {
+        for (Path file : stream) {
+          try {
+            put(file.getFileName().toString(), SingerUtils.getFileInode(file));
+            numFiles++;
+          } catch (NoSuchFileException e) {
+            // deleted during the scan
+          }
+        }
+      }
+      OpenTsdbMetricConverter.incr(SingerMetrics.FILE_CATALOG_RESCAN);
+      LOG.debug("Catalogued {} files matching {} in {}", numFiles, fileNameRegex, dir);
+    }
+
+    private synchronized String getName(String fileNameRegex, long inode,
+                                        long minRescanIntervalMillis) throws IOException {
+      Long scanMillis = scanMillisByRegex.get(fileNameRegex);
+      if (scanMillis == null) {
+        rescan(fileNameRegex);
+        return namesByInode.get(inode);
+      }
+      String name = namesByInode.get(inode);
+      if (name == null && System.currentTimeMillis() - scanMillis >= minRescanIntervalMillis) {
+        rescan(fileNameRegex);
+        name = namesByInode.get(inode);
+      }
+      return name;
+    }
+
+    private synchronized void put(String name, long inode) {
+      Long previous = inodesByName.put(name, inode);
+      if (previous != null && previous != inode) {
+        namesByInode.remove(previous, name);
+      }
+      namesByInode.put(inode, name);
+    }
+
+    private synchronized void remove(String name) {
+      Long previous = inodesByName.remove(name);
+      if (previous != null) {
+        namesByInode.remove(previous, name);
+      }
+    }
+  }
+}
@@ -31,11 +31,12 @@ import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.IntSupplier;
 
 public class FileSystemEventFetcher implements Runnable {
 
@@ -44,13 +45,15 @@ public class FileSystemEventFetcher implements Runnable {
   private LinkedBlockingQueue<FileSystemEvent> fileSystemEvents;
 
   private WatchService watchService;
-  private final Map<WatchKey, Path> keys = new HashMap<>();
+  private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
   // Register path can be called asynchronously
   private final Set<Path> monitoredPaths = new ConcurrentSkipListSet<>();
 
   private boolean cancelled = true;
   private Thread thread;
   private String name;
+  // events fetched but still queued behind the fetcher, e.g. in the shards of the processor
+  private volatile IntSupplier numPendingEventsDownstream = () -> 0;
 
   @SuppressWarnings({ "unchecked", "rawtypes" })
   public FileSystemEventFetcher(SingerConfig config) throws IOException {
@@ -74,6 +77,14 @@ public class FileSystemEventFetcher implements Runnable {
     return event;
   }
 
+  /**
+   * Include the events that are queued after they left the queue of the fetcher in the reported
+   * queue size.
+   */
+  public void setNumPendingEventsDownstream(IntSupplier numPendingEventsDownstream) {
+    this.numPendingEventsDownstream = numPendingEventsDownstream;
+  }
+
   public Set<Path> getMonitoredPaths() {
     return this.monitoredPaths;
   }
@@ -90,7 +101,7 @@ public class FileSystemEventFetcher implements Runnable {
    * @throws IOException If there is a problem reading the directory or registering the watch
    * service
    */
-  public void registerPath(Path logDir) throws IOException {
+  public synchronized void registerPath(Path logDir) throws IOException {
     if (!logDir.toFile().isDirectory()) {
       LOG.error("Invalid log directory : {}", logDir.toAbsolutePath());
       Stats.incr(SingerMetrics.IO_EXCEPTION_INVALID_DIR);
@@ -102,6 +113,24 @@ public class FileSystemEventFetcher implements Runnable {
     }
   }
 
+  /**
+   * Cancels the watch of a registered path.
+   *
+   * @param logDir A directory that no longer contains tracked log files
+   */
+  public synchronized void unregisterPath(Path logDir) {
+    if (monitoredPaths.remove(logDir)) {
+      keys.entrySet().removeIf(entry -> {
+        if (entry.getValue().equals(logDir)) {
+          entry.getKey().cancel();
+          return true;
+        }
+        return false;
+      });
+      LOG.info("Stopped monitoring paths in " + logDir.toString());
+    }
+  }
+
   /**
    *  Start a file system event fetching thread. This method is idempotent.
    *  @param name of the event fetcher.
@@ -137,6 +166,10 @@ public class FileSystemEventFetcher implements Runnable {
           // Blocks until keys are present
           WatchKey watchKey = watchService.take();
           Path logDir = keys.get(watchKey);
+          if (logDir == null) {
+            // the path was unregistered after the key was signalled
+            continue;
+          }
 
           for (final WatchEvent<?> event : watchKey.pollEvents()) {
             fileSystemEvents.add(new FileSystemEvent(logDir, event));
@@ -153,7 +186,7 @@ public class FileSystemEventFetcher implements Runnable {
             }
             watchKey.cancel();
           }
-          int numEvents = fileSystemEvents.size();
+          int numEvents = fileSystemEvents.size() + numPendingEventsDownstream.getAsInt();
           OpenTsdbMetricConverter.addMetric(SingerMetrics.FS_EVENT_QUEUE_SIZE, numEvents);
         } catch (InterruptedException e) {
           LOG.error("Filesystem Monitor thread was interrupted: {}");
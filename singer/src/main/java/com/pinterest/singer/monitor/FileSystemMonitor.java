@@ -55,6 +55,9 @@ public class FileSystemMonitor implements Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(FileSystemMonitor.class);
 
   private FileSystemEventFetcher fileSystemEventFetcher;
+  // Null if events are processed on the monitor thread.
+  private ShardedFSEventProcessor shardedFSEventProcessor;
+  private DirectoryReconciler directoryReconciler;
   private boolean cancelled = true;
   private Thread thread;
   private String name;
@@ -105,6 +108,12 @@ public class FileSystemMonitor implements Runnable {
     if(fileSystemEventFetcher != null) {
         fileSystemEventFetcher.stop();
     }
+    if (shardedFSEventProcessor != null) {
+        shardedFSEventProcessor.stop();
+    }
+    if (directoryReconciler != null) {
+        directoryReconciler.stop();
+    }
     if (thread != null && thread.isAlive()) {
         thread.interrupt();
     }
@@ -116,11 +125,33 @@ public class FileSystemMonitor implements Runnable {
 
   private void initialize(SingerConfig singerConfig) throws IOException {
     fileSystemEventFetcher = new FileSystemEventFetcher(singerConfig);
+    directoryReconciler = new DirectoryReconciler(name,
+        singerConfig != null ? singerConfig.getOverflowReconcileIntervalInMillis()
+                             : new SingerConfig().getOverflowReconcileIntervalInMillis(),
+        fileSystemEventFetcher::getMonitoredPaths,
+        SingerSettings.getDirectoryReconcilerExecutor());
+    if (singerConfig != null && singerConfig.getFsEventProcessorThreads() > 1) {
+      shardedFSEventProcessor = new ShardedFSEventProcessor(name,
+          singerConfig.getFsEventProcessorThreads(), singerConfig.getFsEventShardQueueSize(),
+          this::handleFileSystemEvent, lostEvent -> handleOverflow());
+      fileSystemEventFetcher.setNumPendingEventsDownstream(
+          shardedFSEventProcessor::getNumPendingEvents);
+      shardedFSEventProcessor.start();
+    }
     fileSystemEventFetcher.start(name);
   }
 
   public void registerPath(Path logDir) throws IOException {
     fileSystemEventFetcher.registerPath(logDir);
+    directoryReconciler.markConsistent(logDir);
+  }
+
+  /**
+   * Stop watching a directory that no longer contains log streams, e.g. after its log was removed.
+   */
+  public void unregisterPath(Path logDir) {
+    fileSystemEventFetcher.unregisterPath(logDir);
+    directoryReconciler.forget(logDir);
   }
 
   private void handleEntryCreateEvent(Path parentDir,Path addedFile) throws IOException {
@@ -136,8 +167,11 @@ public class FileSystemMonitor implements Runnable {
       Stats.incr(SingerMetrics.MISSING_LOG_FILES);
       return;
     }
+    if (theFile.isDirectory()) {
+      LogStreamManager.onDirectoryCreated(fullAddedPath);
+    }
 
-    long inode = SingerUtils.getFileInode(fullAddedPath);
+    long inode = FileCatalog.getInstance().update(parentDir, addedFile);
     List<LogStream> existingLogStreams = LogStreamManager.getLogStreamsFor(parentDir, fullAddedPath);
 
     // if we already find a log stream, update the inodes mapping.
@@ -190,6 +224,7 @@ public class FileSystemMonitor implements Runnable {
    */
   private void handleEntryDeleteEvent(Path parentDir,  Path deletedFile) {
     LOG.info("deleting " + deletedFile.toString());
+    FileCatalog.getInstance().remove(parentDir, deletedFile);
     List<LogStream> logStreams = LogStreamManager.getLogStreamsFor(parentDir, parentDir.resolve(deletedFile));
     for (LogStream stream: logStreams) {
       LogFileAndPath latestLogFileAndPath = stream.getLatestLogFileAndPath();
@@ -215,7 +250,7 @@ public class FileSystemMonitor implements Runnable {
     Path fullPath = logDir.resolve(modified);
     long inode;
     try {
-      inode = SingerUtils.getFileInode(fullPath);
+      inode = FileCatalog.getInstance().update(logDir, modified);
     } catch(NoSuchFileException e) {
       LOG.warn("Failed to get inode info for " + fullPath, e);
       return;
@@ -233,7 +268,8 @@ public class FileSystemMonitor implements Runnable {
 
   /**
    * Checks for new events from the WatchService and adds or removes map entries based on the
-   * events.
+   * events. If fsEventProcessorThreads is greater than 1, the events are handed over to the
+   * shard threads of their directories instead.
    */
   @VisibleForTesting
   public void processFileSystemEvents() throws InterruptedException {
@@ -241,31 +277,48 @@ public class FileSystemMonitor implements Runnable {
     FileSystemEvent fileSystemEvent = fileSystemEventFetcher.getEvent();
     WatchEvent.Kind<?> kind = fileSystemEvent.event().kind();
     LOG.debug("Checking file system events: {}", kind);
+    if (kind.equals(StandardWatchEventKinds.OVERFLOW)) {
+      LOG.warn("Received overflow watch event from filesystem: Events may have been lost");
+      handleOverflow();
+      return;
+    }
+    Path filePath = (Path) fileSystemEvent.event().context();
+    if (filePath.toString().startsWith(".")) {
+      // ignore the watermark files
+      LOG.debug("Ignore event for watermark file {}", filePath);
+      return;
+    }
+    if (shardedFSEventProcessor != null) {
+      shardedFSEventProcessor.dispatch(fileSystemEvent);
+    } else {
+      handleFileSystemEvent(fileSystemEvent);
+    }
+  }
+
+  /**
+   * Events were lost, either by the WatchService or because they could not be queued or handled.
+   */
+  private void handleOverflow() {
+    Stats.incr(SingerMetrics.FS_EVENTS_OVERFLOW);
+    directoryReconciler.requestReconciliation();
+  }
+
+  private void handleFileSystemEvent(FileSystemEvent fileSystemEvent) {
+    WatchEvent<?> event = fileSystemEvent.event();
+    WatchEvent.Kind<?> kind = event.kind();
+    Path dirPath = fileSystemEvent.logDir();
+    Path filePath = (Path) event.context();
     try {
-      if (kind.equals(StandardWatchEventKinds.OVERFLOW)) {
-        LOG.warn("Received overflow watch event from filesystem: Events may have been lost");
-        Stats.incr(SingerMetrics.FS_EVENTS_OVERFLOW);
-        LogDirectoriesScanner scanner =
-            new LogDirectoriesScanner(fileSystemEventFetcher.getMonitoredPaths());
-        scanner.start();
+      if (kind.equals(StandardWatchEventKinds.ENTRY_MODIFY)) {
+        handleEntryModifyEvent(dirPath, filePath);
+      } else if (kind.equals(StandardWatchEventKinds.ENTRY_CREATE)) {
+        handleEntryCreateEvent(dirPath, filePath);
+        directoryReconciler.onFileCreated(dirPath, filePath.toString());
+      } else if (kind.equals(StandardWatchEventKinds.ENTRY_DELETE)) {
+        handleEntryDeleteEvent(dirPath, filePath);
+        directoryReconciler.onFileDeleted(dirPath, filePath.toString());
       } else {
-        WatchEvent<?> event = fileSystemEvent.event();
-        Path dirPath = fileSystemEvent.logDir();
-        Path filePath = (Path) event.context();
-        if (filePath.toString().startsWith(".")) {
-          // ignore the watermark files
-          LOG.debug("Ignore event for watermark file {}", filePath);
-          return;
-        }
-        if (kind.equals(StandardWatchEventKinds.ENTRY_MODIFY)) {
-          handleEntryModifyEvent(dirPath, filePath);
-        } else if (kind.equals(StandardWatchEventKinds.ENTRY_CREATE)) {
-          handleEntryCreateEvent(dirPath, filePath);
-        } else if (kind.equals(StandardWatchEventKinds.ENTRY_DELETE)) {
-          handleEntryDeleteEvent(dirPath, filePath);
-        } else {
-          LOG.error("Unexpected file system event {}:{}", kind, event.context());
-        }
+        LOG.error("Unexpected file system event {}:{}", kind, event.context());
       }
     } catch (IOException e) {
       LOG.error("Encountered IOException : ", e);
@@ -323,5 +376,11 @@ public class FileSystemMonitor implements Runnable {
     if (fileSystemEventFetcher != null) {
       fileSystemEventFetcher.stop();
     }
+    if (shardedFSEventProcessor != null) {
+      shardedFSEventProcessor.stop();
+    }
+    if (directoryReconciler != null) {
+      directoryReconciler.stop();
+    }
   }
 }
\ No newline at end of file
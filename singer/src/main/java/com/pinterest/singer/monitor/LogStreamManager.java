@@ -26,18 +26,26 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -51,6 +59,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Ordering;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.pinterest.singer.common.LogStream;
 import com.pinterest.singer.common.SingerSettings;
 import com.pinterest.singer.common.SingerLog;
@@ -61,12 +70,15 @@ import com.pinterest.singer.kubernetes.KubeService;
 import com.pinterest.singer.kubernetes.PodMetadataFetcher;
 import com.pinterest.singer.kubernetes.PodWatcher;
 import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+import com.pinterest.singer.processor.DrainCoordinator;
 import com.pinterest.singer.thrift.LogFile;
+import com.pinterest.singer.thrift.LogStreamSnapshot;
+import com.pinterest.singer.thrift.StreamTopologySnapshot;
 import com.pinterest.singer.thrift.configuration.FileNameMatchMode;
 import com.pinterest.singer.thrift.configuration.SingerConfig;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
+import com.pinterest.singer.utils.FileNamePatternMatcher;
 import com.pinterest.singer.utils.LogConfigUtils;
-import com.pinterest.singer.utils.PatternCache;
 import com.pinterest.singer.utils.SingerUtils;
 import com.twitter.ostrich.stats.Stats;
 
@@ -107,6 +119,11 @@ public class LogStreamManager implements PodWatcher {
    * and LogDirectoriesScanner
    */
   private Map<String, Set<SingerLog>> singerLogPaths = new ConcurrentHashMap<>();
+
+  // compiled matchers of the log stream regexes of each directory in singerLogPaths
+  private final Map<String, SingerLogMatcher> singerLogMatchers = new ConcurrentHashMap<>();
+  // bumped on every change of singerLogPaths, cached matchers built before a change are stale
+  private final AtomicLong singerLogPathsVersion = new AtomicLong();
   private String podLogDirectory = "";
   private String podAllowlistMetadataKey = null;
   private final boolean kubernetesEnabled;
@@ -116,7 +133,19 @@ public class LogStreamManager implements PodWatcher {
   private RecursiveFSEventProcessor recursiveEventProcessor;
   private MissingDirChecker missingDirChecker;
 
-  @VisibleForTesting
+  /**
+   * Bounded pool that lists directories and builds the LogStreams of different pods and of
+   * different host level SingerLogs in parallel.
+   */
+  private final ExecutorService logStreamInitExecutor;
+  private final AtomicInteger pendingLogStreamInits = new AtomicInteger();
+
+  /**
+   * Deferred initializations of pods by pod uid, so that a pod deleted while its initialization
+   * is pending doesn't get log streams after its cleanup.
+   */
+  private final Map<String, PodInitialization> podInitializations = new ConcurrentHashMap<>();
+
   public MissingDirChecker getMissingDirChecker() {
     return missingDirChecker;
   }
@@ -125,6 +154,11 @@ public class LogStreamManager implements PodWatcher {
     missingDirChecker = new MissingDirChecker();
     SingerConfig singerConfig = SingerSettings.getSingerConfig();
     kubernetesEnabled = singerConfig != null && singerConfig.isKubernetesEnabled();
+    int logStreamInitThreads = singerConfig != null
+                               ? singerConfig.getLogStreamInitThreads()
+                               : new SingerConfig().getLogStreamInitThreads();
+    logStreamInitExecutor = Executors.newFixedThreadPool(logStreamInitThreads,
+        new ThreadFactoryBuilder().setNameFormat("LogStreamInit-%d").setDaemon(true).build());
     if (kubernetesEnabled) {
       KubeService.getInstance().addWatcher(this);
       podLogDirectory = singerConfig.getKubeConfig().getPodLogDirectory();
@@ -190,17 +224,11 @@ public class LogStreamManager implements PodWatcher {
 
   private List<SingerLog> getMatchedSingerLogsInternal(Path parentDir, File logFile) {
     LOG.debug("Getting Singer Logs for " + logFile.toString() + " in " + parentDir);
-    List<SingerLog> singerLogs = new ArrayList<>();
+    List<SingerLog> singerLogs = Collections.emptyList();
     String pathStr = parentDir.toString();
-    if (singerLogPaths.containsKey(pathStr)) {
-      for (SingerLog log : singerLogPaths.get(pathStr)) {
-        String regex = log.getSingerLogConfig().getLogStreamRegex();
-        LOG.debug("Checking..." + regex + " matching " + logFile.toString());
-        Pattern pattern = PatternCache.getPattern(regex);
-        if (pattern.matcher(logFile.getName()).matches()) {
-          singerLogs.add(log);
-        }
-      }
+    Set<SingerLog> logsInDir = singerLogPaths.get(pathStr);
+    if (logsInDir != null) {
+      singerLogs = getSingerLogMatcher(pathStr, logsInDir).match(logFile.getName());
     }
     if (singerLogs.isEmpty()) {
       LOG.debug("Did not find any matched SingerLog for {}", logFile);
@@ -208,6 +236,48 @@ public class LogStreamManager implements PodWatcher {
     return singerLogs;
   }
 
+  /**
+   * Returns the compiled matcher of all SingerLogs of a directory. A cached matcher that was built
+   * before the last change of singerLogPaths is stale and gets rebuilt.
+   */
+  private FileNamePatternMatcher<SingerLog> getSingerLogMatcher(String pathStr,
+                                                                Set<SingerLog> logsInDir) {
+    // read before the set, so a concurrent change leaves the new matcher stale
+    long version = singerLogPathsVersion.get();
+    SingerLogMatcher cached = singerLogMatchers.get(pathStr);
+    if (cached != null && cached.version == version) {
+      return cached.matcher;
+    }
+    Map<String, List<SingerLog>> logsByRegex = new LinkedHashMap<>();
+    for (SingerLog log : logsInDir) {
+      logsByRegex.computeIfAbsent(log.getSingerLogConfig().getLogStreamRegex(),
+          regex -> new ArrayList<>()).add(log);
+    }
+    FileNamePatternMatcher<SingerLog> matcher = new FileNamePatternMatcher<>(logsByRegex);
+    singerLogMatchers.put(pathStr, new SingerLogMatcher(version, matcher));
+    LOG.info("Compiled {} log stream patterns of {}", matcher.size(), pathStr);
+    return matcher;
+  }
+
+  private static final class SingerLogMatcher {
+    // the version of singerLogPaths the matcher was built from
+    private final long version;
+    private final FileNamePatternMatcher<SingerLog> matcher;
+
+    private SingerLogMatcher(long version, FileNamePatternMatcher<SingerLog> matcher) {
+      this.version = version;
+      this.matcher = matcher;
+    }
+  }
+
+  /**
+   * Notifies the MissingDirChecker that a directory was created in a monitored directory.
+   * @param dir The created directory
+   */
+  public static void onDirectoryCreated(Path dir) {
+    LogStreamManager.getInstance().missingDirChecker.onDirectoryCreated(dir);
+  }
+
   /**
    * Creates a new LogStream object from a file and this configuration.
    * @return The LogStream object that contains this file
@@ -275,6 +345,8 @@ public class LogStreamManager implements PodWatcher {
     List<SingerLogConfig> logConfigs = SingerSettings.getSingerConfig().getLogConfigs();
 
     if (logConfigs!=null) {
+      Map<String, List<LogStreamSnapshot>> snapshotsByLog = loadStreamTopologySnapshot();
+      List<Future<Void>> initializations = new ArrayList<>();
       for (SingerLogConfig singerLogConfig : logConfigs) {
         // In Kubernetes mode, only process configs that include host-level processing
         // Skip configs that are pod-only (have allowlist but no INCLUDE_HOST_MARKER)
@@ -290,14 +362,25 @@ public class LogStreamManager implements PodWatcher {
         // as normal, add all directories to singerLogPaths
         Set<String> allRegexPaths = LogConfigUtils.findDirectories(directories);
         for (String logPathKey : allRegexPaths) {
-          if (!singerLogPaths.containsKey(logPathKey)) {
-            singerLogPaths.put(logPathKey, new HashSet<>());
-          }
-          singerLogPaths.get(logPathKey).add(singerLog);
+          addSingerLogPath(logPathKey, singerLog);
+        }
+        List<LogStreamSnapshot> snapshots = snapshotsByLog.get(singerLog.getLogName());
+        if (snapshots != null) {
+          // ship from the restored log streams right away and verify them in the background
+          restoreLogStreams(singerLog, snapshots);
+          submitLogStreamInit(singerLog.getLogName(), () -> {
+            verifyRestoredLogStreams(singerLog);
+            return null;
+          });
+          continue;
         }
         // initialize the log streams
-        initializeLogStreamsInternal(NON_KUBERNETES_POD_ID, singerLog);
+        initializations.add(submitLogStreamInit(singerLog.getLogName(), () -> {
+          initializeLogStreamsInternal(NON_KUBERNETES_POD_ID, singerLog);
+          return null;
+        }));
       }
+      awaitLogStreamInits(initializations);
       LOG.info("set singerLogsWithoutDir and start MissingDirChecker thread.");
       missingDirChecker.setSingerLogsWithoutDir(singerLogsWithoutDir);
       missingDirChecker.start();
@@ -337,14 +420,13 @@ public class LogStreamManager implements PodWatcher {
         if (dir.exists()) {
           String regexStr = singerLogConfig.getLogStreamRegex();
           LOG.info("Attempting to match files under {} with filter {}", logDirPath.toFile().getAbsolutePath(), regexStr);
-          Pattern pattern = PatternCache.getPattern(regexStr);
+          FileFilter patternFilter = FileNamePatternMatcher.newFileFilter(regexStr);
           FileFilter excludeDotFilesFilter = file -> {
             // Exclude files that start with a dot (mostly want to ignore watermark files)
             if (file.getName().startsWith(".")) {
               return false;
             }
-            // Apply the cached pattern
-            return pattern.matcher(file.getName()).matches();
+            return patternFilter.accept(file);
           };
 
           File[] files = dir.listFiles(excludeDotFilesFilter);
@@ -372,6 +454,306 @@ public class LogStreamManager implements PodWatcher {
     }
   }
 
+  /**
+   * @return the LogStreams of the stream topology snapshot by SingerLog name, empty if the
+   * snapshot is disabled or there is no usable snapshot.
+   */
+  private Map<String, List<LogStreamSnapshot>> loadStreamTopologySnapshot() {
+    Map<String, List<LogStreamSnapshot>> snapshotsByLog = new HashMap<>();
+    SingerConfig singerConfig = SingerSettings.getSingerConfig();
+    if (!singerConfig.isSetStreamTopologySnapshotPath()) {
+      return snapshotsByLog;
+    }
+    StreamTopologySnapshot snapshot =
+        new StreamTopologySnapshotter(singerConfig.getStreamTopologySnapshotPath())
+            .load(TimeUnit.SECONDS.toMillis(singerConfig.getStreamTopologySnapshotMaxAgeInSecs()));
+    if (snapshot != null) {
+      for (LogStreamSnapshot logStream : snapshot.getLogStreams()) {
+        snapshotsByLog.computeIfAbsent(logStream.getLogName(), name -> new ArrayList<>())
+            .add(logStream);
+      }
+    }
+    return snapshotsByLog;
+  }
+
+  /**
+   * Registers the log directories of a SingerLog and restores its LogStreams from a snapshot
+   * without listing the directories. LogStreams whose directory or file name no longer matches
+   * the configuration of the SingerLog are dropped.
+   */
+  private void restoreLogStreams(SingerLog singerLog, List<LogStreamSnapshot> snapshots)
+      throws SingerLogException {
+    SingerLogConfig singerLogConfig = singerLog.getSingerLogConfig();
+    List<String> directoriesFromConfig = SingerUtils.splitString(singerLogConfig.getLogDir());
+    for (String dir : directoriesFromConfig) {
+      if (LogConfigUtils.WILDCARD_SUPPORTED_CHARS.matcher(dir).find()) {
+        singerLogsWithoutDir.putIfAbsent(singerLog, NON_KUBERNETES_POD_ID);
+        break;
+      }
+    }
+    Set<String> logDirs = new HashSet<>();
+    try {
+      for (String logDir : LogConfigUtils.findDirectories(directoriesFromConfig)) {
+        Path logDirPath = SingerUtils.getPath(logDir);
+        SingerSettings.getOrCreateFileSystemMonitor(NON_KUBERNETES_POD_ID).registerPath(logDirPath);
+        if (new File(logDir).exists()) {
+          logDirs.add(logDirPath.normalize().toString());
+        } else {
+          singerLogsWithoutDir.putIfAbsent(singerLog, NON_KUBERNETES_POD_ID);
+        }
+      }
+    } catch (IOException e) {
+      throw new SingerLogException("Bad log directories in this singer log", e);
+    }
+
+    FileFilter patternFilter = FileNamePatternMatcher.newFileFilter(singerLogConfig.getLogStreamRegex());
+    int restored = 0;
+    for (LogStreamSnapshot snapshot : snapshots) {
+      String logDir = snapshot.getLogDir();
+      if (!logDirs.contains(logDir)
+          || !patternFilter.accept(new File(logDir, snapshot.getFileNamePrefix()))) {
+        Stats.incr(SingerMetrics.SNAPSHOT_DROPPED_STREAMS);
+        continue;
+      }
+      LogStream stream = singerLogConfig.getFilenameMatchMode() == FileNameMatchMode.EXACT
+                         ? new LogStream(singerLog, snapshot.getFileNamePrefix())
+                         : new LogStream(singerLog, new File(logDir, snapshot.getFileNamePrefix()).toPath());
+      stream.restore(snapshot.getLogFileAndPaths());
+      if (snapshot.isSetCommittedPosition()) {
+        if (stream.hasLogFile(snapshot.getCommittedPosition().getLogFile())) {
+          // the position saved at shutdown is what the processor committed last, start from it
+          stream.setRestoredCommittedPosition(snapshot.getCommittedPosition());
+        } else {
+          // the snapshot is inconsistent with itself, don't ship from it
+          try {
+            stream.initialize();
+          } catch (IOException e) {
+            throw new SingerLogException("Failed to initialize " + stream, e);
+          }
+        }
+      }
+      registerLogStreamInDirLogStreamMap(SingerUtils.getPath(logDir), stream);
+      restored++;
+    }
+    Stats.incr(SingerMetrics.SNAPSHOT_RESTORED_STREAMS, restored);
+    LOG.info("Restored {} log streams of {} from the stream topology snapshot", restored,
+        singerLog.getLogName());
+  }
+
+  /**
+   * Brings the LogStreams restored from a snapshot in sync with the file system: every restored
+   * LogStream is reconciled with a fresh listing of its directory, and files that appeared since
+   * the snapshot are added to new or existing LogStreams. Processors may already be running, so
+   * the LogStreams are only changed where they differ from the listing.
+   */
+  private void verifyRestoredLogStreams(SingerLog singerLog) throws IOException {
+    Set<Path> logDirPaths = new HashSet<>();
+    for (String logDir : LogConfigUtils.findDirectories(
+        SingerUtils.splitString(singerLog.getSingerLogConfig().getLogDir()))) {
+      Path logDirPath = SingerUtils.getPath(logDir);
+      if (!logDirPath.toFile().exists()) {
+        continue;
+      }
+      logDirPaths.add(logDirPath);
+      Collection<LogStream> logStreams = dirStreams.get(logDirPath.normalize().toString());
+      if (logStreams != null) {
+        for (LogStream logStream : logStreams) {
+          if (logStream.getSingerLog() == singerLog) {
+            logStream.reconcile();
+          }
+        }
+      }
+    }
+    new LogDirectoriesScanner(logDirPaths).run();
+  }
+
+  /**
+   * Run a log stream initialization on the bounded initialization pool.
+   *
+   * @param name the pod or SingerLog being initialized, for logging
+   * @param initialization the initialization to run
+   * @return the future of the initialization
+   */
+  private Future<Void> submitLogStreamInit(String name, Callable<Void> initialization) {
+    Stats.setGauge(SingerMetrics.LOG_STREAM_INIT_PENDING, pendingLogStreamInits.incrementAndGet());
+    return logStreamInitExecutor.submit(() -> {
+      long startMillis = System.currentTimeMillis();
+      try {
+        initialization.call();
+        Stats.incr(SingerMetrics.LOG_STREAM_INIT_DONE);
+        return null;
+      } catch (Exception e) {
+        Stats.incr(SingerMetrics.LOG_STREAM_INIT_FAILED);
+        LOG.error("Failed to initialize log streams of " + name, e);
+        throw e;
+      } finally {
+        Stats.setGauge(SingerMetrics.LOG_STREAM_INIT_PENDING,
+            pendingLogStreamInits.decrementAndGet());
+        OpenTsdbMetricConverter.addMetric(SingerMetrics.LOG_STREAM_INIT_LATENCY,
+            (int) (System.currentTimeMillis() - startMillis));
+      }
+    });
+  }
+
+  /**
+   * Wait for all initializations to finish.
+   *
+   * @throws SingerLogException the first failure of the initializations
+   */
+  private static void awaitLogStreamInits(List<Future<Void>> initializations)
+      throws SingerLogException {
+    SingerLogException failure = null;
+    for (Future<Void> initialization : initializations) {
+      try {
+        initialization.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SingerLogException("Interrupted while initializing log streams", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof SingerLogException
+                    ? (SingerLogException) e.getCause()
+                    : new SingerLogException("Failed to initialize log streams", e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Initialize the LogStreams of a host level SingerLog added while Singer is running.
+   *
+   * @param singerLogConfig the config of the added log
+   * @throws SingerLogException if there is a problem with one of the LogStreams
+   */
+  public void initializeSingerLog(SingerLogConfig singerLogConfig) throws SingerLogException {
+    SingerLog singerLog = new SingerLog(singerLogConfig);
+    Set<String> allRegexPaths =
+        LogConfigUtils.findDirectories(SingerUtils.splitString(singerLogConfig.getLogDir()));
+    for (String logPathKey : allRegexPaths) {
+      addSingerLogPath(logPathKey, singerLog);
+    }
+    initializeLogStreamsInternal(NON_KUBERNETES_POD_ID, singerLog);
+    LOG.info("Initialized log streams of added log {}", singerLogConfig.getName());
+  }
+
+  /**
+   * Remove the SingerLogs configured with the given name, on the host and in all pods, and their
+   * LogStreams.
+   *
+   * @param logName the configured name of the log
+   * @return the removed LogStreams, their processors have to be stopped by the caller.
+   */
+  public List<LogStream> removeSingerLogs(String logName) {
+    List<String> unusedPaths = new ArrayList<>();
+    for (Iterator<Entry<String, Set<SingerLog>>> it = singerLogPaths.entrySet().iterator();
+         it.hasNext(); ) {
+      Entry<String, Set<SingerLog>> entry = it.next();
+      entry.getValue().removeIf(singerLog -> logName.equals(getConfiguredLogName(singerLog)));
+      if (entry.getValue().isEmpty()) {
+        it.remove();
+        unusedPaths.add(entry.getKey());
+      }
+    }
+    singerLogsWithoutDir.keySet()
+        .removeIf(singerLog -> logName.equals(getConfiguredLogName(singerLog)));
+    missingDirChecker.pruneWatchedWildcardLogs();
+    singerLogPathsVersion.incrementAndGet();
+    singerLogMatchers.clear();
+    // stop watching the directories that no longer have a log
+    if (!unusedPaths.isEmpty()) {
+      try {
+        FileSystemMonitor fileSystemMonitor =
+            SingerSettings.getOrCreateFileSystemMonitor(NON_KUBERNETES_POD_ID);
+        for (String path : unusedPaths) {
+          fileSystemMonitor.unregisterPath(SingerUtils.getPath(path));
+        }
+      } catch (SingerLogException e) {
+        LOG.warn("Failed to unregister the directories of log {}", logName, e);
+      }
+    }
+    List<LogStream> removedLogStreams = new ArrayList<>();
+    for (Collection<LogStream> logStreams : dirStreams.values()) {
+      for (Iterator<LogStream> it = logStreams.iterator(); it.hasNext(); ) {
+        LogStream logStream = it.next();
+        if (logName.equals(getConfiguredLogName(logStream.getSingerLog()))) {
+          it.remove();
+          removedLogStreams.add(logStream);
+        }
+      }
+    }
+    LOG.info("Removed {} log streams of log {}", removedLogStreams.size(), logName);
+    return removedLogStreams;
+  }
+
+  /**
+   * Apply the log decider and processor config of an updated SingerLogConfig to the running
+   * SingerLogs configured with the same name, on the host and in all pods.
+   *
+   * @param singerLogConfig the updated config
+   * @return the updated SingerLogs
+   */
+  public List<SingerLog> updateSingerLogTunables(SingerLogConfig singerLogConfig) {
+    String logName = singerLogConfig.getName();
+    Set<SingerLog> singerLogs = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Set<SingerLog> pathSingerLogs : singerLogPaths.values()) {
+      for (SingerLog singerLog : pathSingerLogs) {
+        if (logName.equals(getConfiguredLogName(singerLog))) {
+          singerLogs.add(singerLog);
+        }
+      }
+    }
+    for (SingerLog singerLog : singerLogsWithoutDir.keySet()) {
+      if (logName.equals(getConfiguredLogName(singerLog))) {
+        singerLogs.add(singerLog);
+      }
+    }
+    for (SingerLog singerLog : singerLogs) {
+      // SingerLogs keep their hash when their tunables change, so they don't need to be re-keyed
+      // in singerLogPaths, singerLogsWithoutDir and the MissingDirChecker. The config is copied
+      // and swapped since processor threads read it concurrently.
+      SingerLogConfig config = singerLog.getSingerLogConfig().deepCopy();
+      if (singerLogConfig.isSetLogDecider()) {
+        config.setLogDecider(singerLogConfig.getLogDecider());
+      } else {
+        config.unsetLogDecider();
+      }
+      config.setLogStreamProcessorConfig(singerLogConfig.getLogStreamProcessorConfig().deepCopy());
+      singerLog.setSingerLogConfig(config);
+    }
+    return new ArrayList<>(singerLogs);
+  }
+
+  /**
+   * @return the name of the SingerLogConfig the SingerLog was created from, without the pod
+   * prefix of SingerLogs of pods.
+   */
+  private static String getConfiguredLogName(SingerLog singerLog) {
+    String logName = singerLog.getLogName();
+    String podUid = singerLog.getPodUid();
+    if (podUid != null && !podUid.isEmpty()
+        && logName.startsWith(podUid + POD_LOGNAME_SEPARATOR)) {
+      return logName.substring(podUid.length() + POD_LOGNAME_SEPARATOR.length());
+    }
+    return logName;
+  }
+
+  /**
+   * Add a SingerLog to the SingerLogs of a directory.
+   *
+   * @return true if the directory did not already have the SingerLog
+   */
+  private boolean addSingerLogPath(String logPathKey, SingerLog singerLog) {
+    boolean added = singerLogPaths
+        .computeIfAbsent(logPathKey, key -> ConcurrentHashMap.newKeySet()).add(singerLog);
+    if (added) {
+      singerLogPathsVersion.incrementAndGet();
+    }
+    return added;
+  }
+
   /**
    * Creates a LogStream object for a newly discovered file, if it belongs to one monitored
    * by Singer, and register the LogStream object in  @inodes map.
@@ -426,8 +808,7 @@ public class LogStreamManager implements PodWatcher {
 
     // get all files that matches the log stream regex prefix
     String regexStr = singerLogConfig.getLogStreamRegex() + ".*";
-    Pattern pattern = PatternCache.getPattern(regexStr);
-    FileFilter fileFilter = file -> pattern.matcher(file.getName()).matches();
+    FileFilter fileFilter = FileNamePatternMatcher.newFileFilter(regexStr);
     List<File> logFiles = Arrays.asList(logDir.listFiles(fileFilter));
 
     // Sort the file first by last_modified timestamp and then by name in case two files have
@@ -462,12 +843,10 @@ public class LogStreamManager implements PodWatcher {
    * @param logStream The LogStream to track
    */
   private void registerLogStreamInDirLogStreamMap(Path logDir, LogStream logStream) {
-    if (!dirStreams.containsKey(logDir.normalize().toString())) {
-      // Concurrent Set is needed to guard against Concurrent Modification Exception
-      // can't use ConcurrentSkipListSet because that requires a comparable type
-      dirStreams.put(logDir.normalize().toString(), Collections.newSetFromMap(new ConcurrentHashMap<>()));
-    }
-    dirStreams.get(logDir.normalize().toString()).add(logStream);
+    // Concurrent Set is needed to guard against Concurrent Modification Exception
+    // can't use ConcurrentSkipListSet because that requires a comparable type
+    dirStreams.computeIfAbsent(logDir.normalize().toString(),
+        key -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(logStream);
   }
 
   /**
@@ -552,6 +931,7 @@ public class LogStreamManager implements PodWatcher {
       if(missingDirChecker != null){
         missingDirChecker.stop();
       }
+      logStreamInitExecutor.shutdownNow();
   }
 
   /**
@@ -568,21 +948,39 @@ public class LogStreamManager implements PodWatcher {
 
   @Override
   public void podCreated(String podUid) {
-    // deferred pod stream initialization
-    try {
-        File podParent = new File(podLogDirectory + "/" + podUid + "/");
-        LOG.info("Registering pod parent directory with recursive watch service:"+podParent.getAbsolutePath());
-        recursiveDirectoryWatcher.registerPath(podParent.toPath());
-        recursiveEventProcessor.evaluateAndRegisterLogStreamOrWatcher(podParent.toPath(), podUid);
-    } catch (IOException e) {
-        LOG.error("Failed to setup directory watch listener for new POD:" + podUid, e);
-    }
-
+    // deferred pod stream initialization, pods are initialized in parallel
+    PodInitialization podInitialization = new PodInitialization();
+    podInitializations.put(podUid, podInitialization);
+    submitLogStreamInit(podUid, () -> {
+      if (!podInitialization.started.compareAndSet(false, true)) {
+        LOG.info("Skipping initialization of deleted POD:" + podUid);
+        return null;
+      }
+      try {
+          File podParent = new File(podLogDirectory + "/" + podUid + "/");
+          LOG.info("Registering pod parent directory with recursive watch service:"+podParent.getAbsolutePath());
+          recursiveDirectoryWatcher.registerPath(podParent.toPath());
+          recursiveEventProcessor.evaluateAndRegisterLogStreamOrWatcher(podParent.toPath(), podUid);
+      } catch (IOException e) {
+          LOG.error("Failed to setup directory watch listener for new POD:" + podUid, e);
+      } finally {
+          podInitializations.remove(podUid, podInitialization);
+          podInitialization.finished.complete(null);
+      }
+      return null;
+    });
   }
 
   @Override
   public void podDeleted(final String podUid) {
+    awaitOrSkipPodInitialization(podUid);
+    // the missing directories of a deleted pod are not going to be created anymore
+    singerLogsWithoutDir.values().removeIf(podUid::equals);
+    missingDirChecker.pruneWatchedWildcardLogs();
     int deletionCheckIntervalInSeconds = SingerSettings.getSingerConfig().getKubeConfig().getDeletionCheckIntervalInSeconds();
+    String podPath = new File(podLogDirectory + "/" + podUid).toPath().normalize().toString();
+    startDraining(podUid, dirStreams.subMap(podPath, podPath + "/" + Character.MAX_VALUE),
+        SingerSettings.getSingerConfig().getKubeConfig().getDefaultDeletionTimeoutInSeconds());
 
     SingerSettings.getBackgroundTaskExecutor().schedule(new Runnable() {
       @Override
@@ -599,11 +997,17 @@ public class LogStreamManager implements PodWatcher {
         // iterate through the subMap
         long maxElapsedTime = checkAndCleanupLogStreamsForPod(podUid, logStreamsForPodPath,
             SingerSettings.getSingerConfig().getKubeConfig().getDefaultDeletionTimeoutInSeconds());
+        DrainCoordinator drainCoordinator = SingerSettings.getDrainCoordinator();
 
         if(logStreamsForPodPath.size()==0) {
+          if (drainCoordinator != null) {
+            drainCoordinator.finishDraining(podUid);
+          }
           // no more directory streams left, we can now cleanup singer
           try {
             SingerSettings.getOrCreateFileSystemMonitor(podUid).destroy();
+            SingerSettings.removeLogRateQuotas(podUid + POD_LOGNAME_SEPARATOR);
+            FileCatalog.getInstance().invalidateTree(new File(podLogDirectory, podUid).toPath());
             boolean enableDirectCleanup = SingerSettings.getSingerConfig().getKubeConfig().isEnablePodLogDirectoryCleanup();
 
             if (enableDirectCleanup) {
@@ -642,6 +1046,9 @@ public class LogStreamManager implements PodWatcher {
             LOG.error("Exception while cleaning up during pod deletion for pod:"+podUid, e);
           }
         } else {
+          if (drainCoordinator != null) {
+            drainCoordinator.reportProgress(podUid);
+          }
           // reschedule itself again for review in a few seconds
           SingerSettings.getBackgroundTaskExecutor().schedule(this,
               deletionCheckIntervalInSeconds, TimeUnit.SECONDS);
@@ -654,16 +1061,51 @@ public class LogStreamManager implements PodWatcher {
     Stats.incr(SingerMetrics.ACTIVE_POD_DELETION_TASKS);
   }
 
+  /**
+   * Skip the initialization of a deleted pod if it has not started yet, otherwise wait for it to
+   * finish so that the log streams it creates are cleaned up with the other streams of the pod.
+   */
+  private void awaitOrSkipPodInitialization(String podUid) {
+    PodInitialization podInitialization = podInitializations.remove(podUid);
+    if (podInitialization == null || podInitialization.started.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      podInitialization.finished.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // never completed exceptionally
+    }
+  }
+
+  @VisibleForTesting
+  public boolean hasPendingPodInitialization(String podUid) {
+    return podInitializations.containsKey(podUid);
+  }
+
+  private static class PodInitialization {
+    // claimed either by the initialization when it starts or by the deletion of the pod
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+  }
+
   public CompletableFuture<Void> drainAndStopLogStreams() {
     CompletableFuture<Void> returnFuture = new CompletableFuture<>();
     draining.set(true);
+    startDraining(NON_KUBERNETES_POD_ID, dirStreams,
+        SingerSettings.getSingerConfig().getAdminConfig().getDefaultDeletionTimeoutInSeconds());
     SingerSettings.getBackgroundTaskExecutor().schedule(new Runnable() {
       @Override
       public void run() {
         try {
           checkAndCleanupLogStreams(SingerSettings.getSingerConfig().getAdminConfig()
               .getDefaultDeletionTimeoutInSeconds());
+          DrainCoordinator drainCoordinator = SingerSettings.getDrainCoordinator();
           if (getLogStreams().size() != 0) {
+            if (drainCoordinator != null) {
+              drainCoordinator.reportProgress(NON_KUBERNETES_POD_ID);
+            }
             // reschedule itself again for review in a few seconds
             SingerSettings.getBackgroundTaskExecutor().schedule(this,
                 SingerSettings.getSingerConfig().getAdminConfig()
@@ -671,6 +1113,9 @@ public class LogStreamManager implements PodWatcher {
             LOG.debug("Rescheduling cleanup check");
           } else {
             LOG.info("Done");
+            if (drainCoordinator != null) {
+              drainCoordinator.finishDraining(NON_KUBERNETES_POD_ID);
+            }
             returnFuture.complete(null);
           }
         } catch (Exception e) {
@@ -681,6 +1126,31 @@ public class LogStreamManager implements PodWatcher {
     return returnFuture;
   }
 
+  /**
+   * Move the processing cycles of the log streams to the dedicated drain workers, if configured.
+   *
+   * @param drainId the pod whose streams are drained, or NON_KUBERNETES_POD_ID for the shutdown drain
+   * @param streamsByDir the log streams to drain by directory
+   * @param deletionTimeout the drain timeout in seconds
+   */
+  private void startDraining(String drainId, Map<String, Collection<LogStream>> streamsByDir,
+                             int deletionTimeout) {
+    DrainCoordinator drainCoordinator = SingerSettings.getDrainCoordinator();
+    if (drainCoordinator == null) {
+      return;
+    }
+    List<LogStream> logStreams = new ArrayList<>();
+    for (Collection<LogStream> streams : streamsByDir.values()) {
+      for (LogStream logStream : streams) {
+        if (!logStream.getSingerLog().getSingerLogConfig().isSkipDraining()) {
+          logStreams.add(logStream);
+        }
+      }
+    }
+    drainCoordinator.startDraining(drainId, logStreams,
+        System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(deletionTimeout));
+  }
+
   /**
    * Check if the supplied logstreams can be removed because there have been no new events for the supplied
    * deletion timeout.
@@ -811,10 +1281,7 @@ public class LogStreamManager implements PodWatcher {
       }
 
       for (String logPathKey : logPathKeys.split(",")) {
-        if (!singerLogPaths.containsKey(logPathKey)) {
-          singerLogPaths.put(logPathKey, new HashSet<>());
-        }
-        boolean added = singerLogPaths.get(logPathKey).add(singerLog);
+        boolean added = addSingerLogPath(logPathKey, singerLog);
         // we check to avoid duplicate start
         if (added) {
           LOG.info("New singerlog " + singerLog.getSingerLogConfig().getLogDir() + " for pod:" + podUid);
@@ -870,8 +1337,7 @@ public class LogStreamManager implements PodWatcher {
   }
 
   /**
-   * Exposed for testing only
-   * @return
+   * @return the LogStreams of each log directory
    */
   public SortedMap<String, Collection<LogStream>> getDirStreams() {
     return dirStreams;
@@ -17,6 +17,7 @@ package com.pinterest.singer.monitor;
 
 import com.pinterest.singer.common.SingerLog;
 import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.common.SingerSettings;
 import com.pinterest.singer.common.errors.SingerLogException;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 import com.pinterest.singer.utils.LogConfigUtils;
@@ -27,11 +28,24 @@ import com.twitter.ostrich.stats.Stats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -43,16 +57,29 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * been created. Once log directory has been created, LogStreamManager.initializeLogStreams method
  * will be called for this SingerLog and SingerLog will be removed from singerLogsWithoutDir if
  * the method call does not throw any exception.
- *
+ * <p/>
+ * SingerLogs with wildcard directories stay in singerLogsWithoutDir for dynamic discovery. Once
+ * the non-wildcard root of such a directory exists, the root and the existing intermediate
+ * directories matching the pattern are watched by the FileSystemMonitor of the SingerLog, which
+ * calls {@link #onDirectoryCreated(Path)} for every created directory. The wildcard directories
+ * are then only matched again when a relevant directory was created, or after a fallback interval
+ * of WILDCARD_FALLBACK_CHECK_PERIODS checks in case events were lost.
  */
 public class MissingDirChecker implements Runnable {
 
   private static final Logger LOG = LoggerFactory.getLogger(MissingDirChecker.class);
 
+  private static final int WILDCARD_FALLBACK_CHECK_PERIODS = 15;
+
   private long sleepInMills = 20000L;
   private AtomicBoolean cancelled = new AtomicBoolean(false);
   private Map<SingerLog, String> singerLogsWithoutDir;
   private Thread thread;
+  // wildcard SingerLogs whose directories are discovered from directory create events
+  private final Map<SingerLog, List<WildcardDirectory>> watchedWildcardLogs =
+      new ConcurrentHashMap<>();
+  private boolean wakeUpRequested = false;
+  private long lastWildcardCheckMillis = 0L;
 
   @VisibleForTesting
   public AtomicBoolean getCancelled() {
@@ -74,6 +101,11 @@ public class MissingDirChecker implements Runnable {
     return singerLogsWithoutDir;
   }
 
+  @VisibleForTesting
+  public Set<SingerLog> getWatchedWildcardLogs() {
+    return watchedWildcardLogs.keySet();
+  }
+
   public void setSingerLogsWithoutDir(Map<SingerLog, String> singerLogsWithoutDir) {
     this.singerLogsWithoutDir = singerLogsWithoutDir;
   }
@@ -85,6 +117,13 @@ public class MissingDirChecker implements Runnable {
       try {
         LOG.info("[{}] Checking missing directories for {} SingerLogs.",
             Thread.currentThread().getName(), singerLogsWithoutDir.size());
+        pruneWatchedWildcardLogs();
+        boolean wokenUp = consumeWakeUp();
+        boolean wildcardFallbackDue = System.currentTimeMillis() - lastWildcardCheckMillis
+            >= sleepInMills * WILDCARD_FALLBACK_CHECK_PERIODS;
+        if (wildcardFallbackDue) {
+          lastWildcardCheckMillis = System.currentTimeMillis();
+        }
         Iterator<Map.Entry<SingerLog, String>> iterator = singerLogsWithoutDir.entrySet()
             .iterator();
         while (iterator.hasNext()) {
@@ -95,13 +134,22 @@ public class MissingDirChecker implements Runnable {
           boolean wildCardDir = false;
           boolean directoryInitialized = false;
           ArrayList<String> directories = SingerUtils.splitString(singerLogConfig.getLogDir());
+          // watched wildcard directories only need to be matched again after a relevant event
+          boolean watched = watchedWildcardLogs.containsKey(singerLog);
+          boolean checkWildcardDirs = wokenUp || wildcardFallbackDue || !watched;
+          if (!watched) {
+            watchWildcardDirectories(singerLog, podUid);
+          }
 
           for (String logDir : directories) {
             Set<String> foundDirectories = null;
             // If directory contains wildcards, check if directories exist first
             if (LogConfigUtils.WILDCARD_SUPPORTED_CHARS.matcher(logDir).find()) {
-              foundDirectories = LogConfigUtils.findDirectories(Collections.singletonList(logDir));
               wildCardDir = true;
+              if (!checkWildcardDirs) {
+                continue;
+              }
+              foundDirectories = LogConfigUtils.findDirectories(Collections.singletonList(logDir));
             }
             File dir = new File(logDir);
             if (dir.exists() || (foundDirectories != null && !foundDirectories.isEmpty())) {
@@ -129,7 +177,7 @@ public class MissingDirChecker implements Runnable {
         }
         LOG.info("[{}] sleep for {} milliseconds and then check again.",
             Thread.currentThread().getName(), sleepInMills);
-        Thread.sleep(sleepInMills);
+        waitForNextCheck();
       } catch (InterruptedException e) {
         Stats.incr(SingerMetrics.MISSING_DIR_CHECKER_INTERRUPTED);
         LOG.warn("MissingDirChecker thread is interrupted ", e);
@@ -152,6 +200,199 @@ public class MissingDirChecker implements Runnable {
     Stats.incr(SingerMetrics.MISSING_DIR_CHECK_THREAD_STOPPED);
   }
 
+  /**
+   * Forget the wildcard directories of SingerLogs that are no longer in singerLogsWithoutDir, e.g.
+   * after their log was removed or their pod was deleted.
+   */
+  public void pruneWatchedWildcardLogs() {
+    Map<SingerLog, String> singerLogs = singerLogsWithoutDir;
+    watchedWildcardLogs.keySet()
+        .removeIf(singerLog -> singerLogs == null || !singerLogs.containsKey(singerLog));
+  }
+
+  /**
+   * Check the missing directories now instead of at the end of the current sleep interval.
+   */
+  public synchronized void wakeUp() {
+    wakeUpRequested = true;
+    notifyAll();
+  }
+
+  private synchronized boolean consumeWakeUp() {
+    boolean wokenUp = wakeUpRequested;
+    wakeUpRequested = false;
+    return wokenUp;
+  }
+
+  private synchronized void waitForNextCheck() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + sleepInMills;
+    long waitMillis;
+    while (!wakeUpRequested && (waitMillis = deadline - System.currentTimeMillis()) > 0) {
+      wait(waitMillis);
+    }
+  }
+
+  /**
+   * Called by FileSystemMonitor when a directory is created in a watched directory. Directories
+   * on the way to a wildcard directory are watched as well, and a directory matching a wildcard
+   * directory wakes up the checker.
+   */
+  public void onDirectoryCreated(Path dir) {
+    boolean relevant = false;
+    for (Map.Entry<SingerLog, List<WildcardDirectory>> entry : watchedWildcardLogs.entrySet()) {
+      String podUid = singerLogsWithoutDir != null ? singerLogsWithoutDir.get(entry.getKey()) : null;
+      if (podUid == null) {
+        continue;
+      }
+      for (WildcardDirectory wildcardDirectory : entry.getValue()) {
+        if (wildcardDirectory.matches(dir)) {
+          relevant = true;
+        } else if (wildcardDirectory.isOnTheWay(dir)) {
+          relevant = true;
+          try {
+            // subdirectories may have been created before the watch of the directory
+            registerPaths(podUid, wildcardDirectory.findDirectoriesOnTheWay(dir));
+          } catch (Exception e) {
+            LOG.warn("Failed to watch {} for wildcard directory {}", dir, wildcardDirectory, e);
+          }
+        }
+      }
+    }
+    if (relevant) {
+      Stats.incr(SingerMetrics.WILDCARD_DIR_CREATE_EVENTS);
+      wakeUp();
+    }
+  }
+
+  /**
+   * Watch the roots of the wildcard directories of a SingerLog and the existing directories on
+   * the way to them. Nothing is watched while the root of a wildcard directory does not exist.
+   */
+  private void watchWildcardDirectories(SingerLog singerLog, String podUid) {
+    List<WildcardDirectory> wildcardDirectories = new ArrayList<>();
+    for (String logDir : SingerUtils.splitString(singerLog.getSingerLogConfig().getLogDir())) {
+      if (LogConfigUtils.WILDCARD_SUPPORTED_CHARS.matcher(logDir).find()) {
+        WildcardDirectory wildcardDirectory = new WildcardDirectory(logDir);
+        if (!Files.isDirectory(wildcardDirectory.root)) {
+          return;
+        }
+        wildcardDirectories.add(wildcardDirectory);
+      }
+    }
+    if (wildcardDirectories.isEmpty()) {
+      return;
+    }
+    try {
+      for (WildcardDirectory wildcardDirectory : wildcardDirectories) {
+        registerPaths(podUid, wildcardDirectory.findDirectoriesOnTheWay(wildcardDirectory.root));
+      }
+    } catch (Exception e) {
+      LOG.warn("Failed to watch the wildcard directories of {}", singerLog.getLogName(), e);
+      return;
+    }
+    watchedWildcardLogs.put(singerLog, wildcardDirectories);
+  }
+
+  private static void registerPaths(String podUid, List<Path> dirs) throws Exception {
+    FileSystemMonitor fileSystemMonitor = SingerSettings.getOrCreateFileSystemMonitor(podUid);
+    for (Path dir : dirs) {
+      fileSystemMonitor.registerPath(dir);
+    }
+  }
+
+  /**
+   * A directory pattern with wildcards, split into its non-wildcard root and one glob per
+   * directory level below the root.
+   */
+  private static final class WildcardDirectory {
+
+    private final String pattern;
+    private final Path root;
+    // levels.get(i) matches the directories at depth root.getNameCount() + i + 1
+    private final List<PathMatcher> levels = new ArrayList<>();
+
+    private WildcardDirectory(String pattern) {
+      this.pattern = pattern;
+      Path path = Paths.get(pattern);
+      int rootCount = 0;
+      while (rootCount < path.getNameCount() && !LogConfigUtils.WILDCARD_SUPPORTED_CHARS
+          .matcher(path.getName(rootCount).toString()).find()) {
+        rootCount++;
+      }
+      this.root = prefix(path, rootCount);
+      for (int i = rootCount + 1; i <= path.getNameCount(); i++) {
+        levels.add(FileSystems.getDefault().getPathMatcher("glob:" + prefix(path, i)));
+      }
+    }
+
+    private static Path prefix(Path path, int nameCount) {
+      Path root = path.getRoot();
+      if (nameCount == 0) {
+        return root != null ? root : Paths.get("");
+      }
+      Path prefix = path.subpath(0, nameCount);
+      return root != null ? root.resolve(prefix) : prefix;
+    }
+
+    private int level(Path dir) {
+      return dir.getNameCount() - root.getNameCount() - 1;
+    }
+
+    /**
+     * @return whether the directory is one of the wildcard directories.
+     */
+    private boolean matches(Path dir) {
+      int level = level(dir);
+      return level == levels.size() - 1 && levels.get(level).matches(dir);
+    }
+
+    /**
+     * @return whether wildcard directories can be created below the directory.
+     */
+    private boolean isOnTheWay(Path dir) {
+      int level = level(dir);
+      return level >= 0 && level < levels.size() - 1 && levels.get(level).matches(dir);
+    }
+
+    /**
+     * @return the directory and its existing subdirectories on the way to wildcard directories.
+     */
+    private List<Path> findDirectoriesOnTheWay(Path dir) throws IOException {
+      List<Path> result = new ArrayList<>();
+      int maxDepth = Math.max(levels.size() - 2 - level(dir), 0);
+      Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), maxDepth,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) {
+              if (subDir.equals(dir) || isOnTheWay(subDir)) {
+                result.add(subDir);
+                return FileVisitResult.CONTINUE;
+              }
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              if (attrs.isDirectory() && (file.equals(dir) || isOnTheWay(file))) {
+                result.add(file);
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+              return FileVisitResult.CONTINUE;
+            }
+          });
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return pattern;
+    }
+  }
+
   public synchronized void start() {
     if (this.thread == null) {
       thread = new Thread(this);
@@ -24,12 +24,14 @@ import java.nio.file.WatchEvent;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Striped;
 import com.pinterest.singer.common.SingerSettings;
 import com.pinterest.singer.common.errors.SingerLogException;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
@@ -44,8 +46,14 @@ import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 public class RecursiveFSEventProcessor implements Runnable {
 
   private static final Logger LOG = LoggerFactory.getLogger(RecursiveFSEventProcessor.class);
+  private static final int NUM_POD_LOCKS = 64;
   private LogStreamManager lsm;
 
+  // Pods are registered from the log stream initialization pool and from the event processing
+  // thread at the same time. Registrations of the same pod are serialized, different pods are
+  // registered in parallel unless their locks collide.
+  private final Striped<Lock> podLocks = Striped.lock(NUM_POD_LOCKS);
+
   public RecursiveFSEventProcessor(LogStreamManager lsm) {
     this.lsm = lsm;
   }
@@ -133,6 +141,16 @@ public class RecursiveFSEventProcessor implements Runnable {
    * And it will register logstream for /var/log/security
    */
   public void evaluateAndRegisterLogStreamOrWatcher(Path path, String podUid) {
+    Lock podLock = podLocks.get(podUid);
+    podLock.lock();
+    try {
+      evaluateAndRegister(path, podUid);
+    } finally {
+      podLock.unlock();
+    }
+  }
+
+  private void evaluateAndRegister(Path path, String podUid) {
     File file = path.toFile();
 
     if (file.getName().startsWith(".")) {
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.monitor;
+
+import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Processes file system events on several threads.
+ * <p/>
+ * Events are sharded by the hash of their directory, so all events of a directory are processed
+ * by the same thread in the order in which they were received, while directories in different
+ * shards are processed in parallel.
+ * <p/>
+ * Before dispatch, a MODIFY event is dropped if the latest pending event of the same file in its
+ * shard is also a MODIFY event, since processing it again yields the same result. Unlike
+ * {@link SelectiveUniqueFSEventQueue}, a MODIFY event is never merged across a pending CREATE or
+ * DELETE event of the same file, which keeps the per-file order of events intact.
+ * <p/>
+ * Each shard holds at most maxPendingEventsPerShard events. Events that don't fit, and events
+ * whose handler failed, are passed to the lost event handler, which is expected to recover like
+ * after a watch queue overflow.
+ */
+public class ShardedFSEventProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ShardedFSEventProcessor.class);
+
+  /**
+   * Handles a single file system event on a shard thread.
+   */
+  public interface FSEventHandler {
+    void handle(FileSystemEvent event) throws Exception;
+  }
+
+  private final FSEventHandler handler;
+  private final Consumer<FileSystemEvent> lostEventHandler;
+  private final int maxPendingEventsPerShard;
+  private final Shard[] shards;
+  private final AtomicInteger numPendingEvents = new AtomicInteger();
+  private volatile boolean cancelled = false;
+
+  public ShardedFSEventProcessor(String name, int numShards, int maxPendingEventsPerShard,
+                                 FSEventHandler handler,
+                                 Consumer<FileSystemEvent> lostEventHandler) {
+    Preconditions.checkArgument(numShards > 0);
+    Preconditions.checkArgument(maxPendingEventsPerShard > 0);
+    this.handler = handler;
+    this.lostEventHandler = lostEventHandler;
+    this.maxPendingEventsPerShard = maxPendingEventsPerShard;
+    this.shards = new Shard[numShards];
+    for (int i = 0; i < numShards; i++) {
+      shards[i] = new Shard();
+      shards[i].thread = new Thread(shards[i]);
+      shards[i].thread.setName("FileSystemEventProcessor-" + name + "-" + i);
+      shards[i].thread.setDaemon(true);
+    }
+  }
+
+  public void start() {
+    for (Shard shard : shards) {
+      shard.thread.start();
+    }
+  }
+
+  /**
+   * Stop all shard threads. Pending events are discarded. This method is idempotent.
+   */
+  public void stop() {
+    cancelled = true;
+    for (Shard shard : shards) {
+      shard.thread.interrupt();
+    }
+  }
+
+  /**
+   * Queue an event for processing on the shard of its directory.
+   *
+   * @return false if the event was coalesced with a pending event of the same file, or dropped
+   * because the shard is full.
+   */
+  public boolean dispatch(FileSystemEvent event) {
+    Shard shard = shards[Math.floorMod(event.logDir().hashCode(), shards.length)];
+    switch (shard.add(event)) {
+      case QUEUED:
+        return true;
+      case FULL:
+        OpenTsdbMetricConverter.incr(SingerMetrics.FS_EVENT_SHARD_OVERFLOW);
+        lostEventHandler.accept(event);
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return the number of events that are queued but not yet being processed.
+   */
+  public int getNumPendingEvents() {
+    return numPendingEvents.get();
+  }
+
+  private static Path getFilePath(FileSystemEvent event) {
+    return event.logDir().resolve((Path) event.event().context());
+  }
+
+  private static boolean isModify(FileSystemEvent event) {
+    return event.event().kind().equals(StandardWatchEventKinds.ENTRY_MODIFY);
+  }
+
+  private enum AddResult {
+    QUEUED, COALESCED, FULL
+  }
+
+  private final class Shard implements Runnable {
+
+    private final ArrayDeque<FileSystemEvent> pendingEvents = new ArrayDeque<>();
+
+    // The latest pending event of each file in pendingEvents.
+    private final Map<Path, FileSystemEvent> latestPendingEvents = new HashMap<>();
+
+    private Thread thread;
+
+    private synchronized AddResult add(FileSystemEvent event) {
+      Path filePath = getFilePath(event);
+      FileSystemEvent latestPendingEvent = latestPendingEvents.get(filePath);
+      if (isModify(event) && latestPendingEvent != null && isModify(latestPendingEvent)) {
+        OpenTsdbMetricConverter.incr(SingerMetrics.FS_EVENTS_COALESCED);
+        return AddResult.COALESCED;
+      }
+      if (pendingEvents.size() >= maxPendingEventsPerShard) {
+        return AddResult.FULL;
+      }
+      pendingEvents.addLast(event);
+      latestPendingEvents.put(filePath, event);
+      numPendingEvents.incrementAndGet();
+      OpenTsdbMetricConverter.addMetric(SingerMetrics.FS_EVENT_SHARD_QUEUE_SIZE,
+          pendingEvents.size());
+      notifyAll();
+      return AddResult.QUEUED;
+    }
+
+    private synchronized FileSystemEvent take() throws InterruptedException {
+      while (pendingEvents.isEmpty()) {
+        wait();
+      }
+      FileSystemEvent event = pendingEvents.removeFirst();
+      numPendingEvents.decrementAndGet();
+      Path filePath = getFilePath(event);
+      if (latestPendingEvents.get(filePath) == event) {
+        latestPendingEvents.remove(filePath);
+      }
+      return event;
+    }
+
+    @Override
+    public void run() {
+      while (!cancelled) {
+        FileSystemEvent event;
+        try {
+          event = take();
+        } catch (InterruptedException e) {
+          break;
+        }
+        try {
+          handler.handle(event);
+        } catch (InterruptedException e) {
+          break;
+        } catch (Exception e) {
+          LOG.error("Failed to handle file system event {} of {}", event.event().kind(),
+              getFilePath(event), e);
+          OpenTsdbMetricConverter.incr(SingerMetrics.FS_EVENT_HANDLER_ERRORS);
+          lostEventHandler.accept(event);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.monitor;
+
+import com.pinterest.singer.common.LogStream;
+import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.thrift.LogPosition;
+import com.pinterest.singer.thrift.LogStreamSnapshot;
+import com.pinterest.singer.thrift.StreamTopologySnapshot;
+
+import com.twitter.ostrich.stats.Stats;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the LogStreams of the host level SingerLogs to a file, so that a restarted Singer can
+ * restore them instead of listing and sorting every log directory before it starts shipping.
+ * <p/>
+ * The snapshot is written with the thrift compact protocol to a temporary file that is synced and
+ * renamed over the snapshot file, so a crash while saving leaves the previous snapshot intact.
+ * LogStreams of pods are not persisted, they are discovered again from the pod directories.
+ * Committed positions are only persisted at shutdown, when they are final, so that a restarted
+ * Singer can start shipping without reading the watermark files.
+ */
+public class StreamTopologySnapshotter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StreamTopologySnapshotter.class);
+
+  private final String path;
+
+  public StreamTopologySnapshotter(String path) {
+    this.path = path;
+  }
+
+  /**
+   * Build a snapshot of the host level LogStreams.
+   *
+   * @param dirStreams the LogStreams of each directory
+   * @param committedPositions the committed positions of the stopped processors at shutdown,
+   *                           empty for the periodic snapshots
+   * @return the snapshot
+   */
+  public static StreamTopologySnapshot build(Map<String, Collection<LogStream>> dirStreams,
+                                             Map<LogStream, LogPosition> committedPositions) {
+    List<LogStreamSnapshot> logStreams = new ArrayList<>();
+    for (Map.Entry<String, Collection<LogStream>> entry : dirStreams.entrySet()) {
+      for (LogStream logStream : entry.getValue()) {
+        if (logStream.getSingerLog().getPodUid() != null) {
+          continue;
+        }
+        LogStreamSnapshot snapshot = new LogStreamSnapshot(
+            logStream.getSingerLog().getLogName(),
+            logStream.getFileNamePrefix(),
+            entry.getKey(),
+            logStream.getLogFileAndPaths());
+        LogPosition committedPosition = committedPositions.get(logStream);
+        if (committedPosition != null) {
+          snapshot.setCommittedPosition(committedPosition);
+        }
+        logStreams.add(snapshot);
+      }
+    }
+    return new StreamTopologySnapshot(System.currentTimeMillis(), logStreams);
+  }
+
+  public void save(StreamTopologySnapshot snapshot) {
+    String tmpPath = path + ".tmp";
+    try {
+      try (FileOutputStream fileOutputStream = new FileOutputStream(tmpPath)) {
+        TIOStreamTransport transport =
+            new TIOStreamTransport(new BufferedOutputStream(fileOutputStream));
+        snapshot.write(new TCompactProtocol(transport));
+        transport.flush();
+        // the rename must not become durable before the content
+        fileOutputStream.getChannel().force(true);
+      }
+      if (!new File(tmpPath).renameTo(new File(path))) {
+        throw new IOException("Failed to rename " + tmpPath + " to " + path);
+      }
+      Stats.incr(SingerMetrics.SNAPSHOT_SAVED);
+      LOG.info("Saved {} log streams to the stream topology snapshot {}",
+          snapshot.getLogStreamsSize(), path);
+    } catch (IOException | TException e) {
+      Stats.incr(SingerMetrics.SNAPSHOT_SAVE_FAILURE);
+      LOG.error("Failed to save the stream topology snapshot " + path, e);
+    }
+  }
+
+  /**
+   * @param maxAgeMillis snapshots older than this are ignored
+   * @return the saved snapshot, or null if there is no usable snapshot
+   */
+  public StreamTopologySnapshot load(long maxAgeMillis) {
+    StreamTopologySnapshot snapshot = new StreamTopologySnapshot();
+    try (InputStream inputStream = new BufferedInputStream(new FileInputStream(path))) {
+      snapshot.read(new TCompactProtocol(new TIOStreamTransport(inputStream)));
+    } catch (FileNotFoundException e) {
+      LOG.info("No stream topology snapshot found at {}", path);
+      return null;
+    } catch (IOException | TException e) {
+      Stats.incr(SingerMetrics.SNAPSHOT_LOAD_FAILURE);
+      LOG.error("Failed to load the stream topology snapshot " + path, e);
+      return null;
+    }
+    long ageMillis = System.currentTimeMillis() - snapshot.getTimestampMillis();
+    if (ageMillis > maxAgeMillis) {
+      Stats.incr(SingerMetrics.SNAPSHOT_STALE);
+      LOG.warn("Ignoring the stream topology snapshot {}, it is {} ms old", path, ageMillis);
+      return null;
+    }
+    return snapshot;
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import com.pinterest.singer.common.SingerMetrics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.twitter.ostrich.stats.Stats;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dedicated workers for processing cycles of log streams in catch-up mode, i.e. streams whose
+ * oldest unshipped file is about to be deleted.
+ * <p/>
+ * Due cycles are queued by the time left until data loss rather than by arrival order, so the
+ * stream closest to its deadline is processed first.
+ */
+public class CatchUpExecutor {
+
+  // Timer which delays cycles until they are due.
+  private final ScheduledExecutorService timer;
+
+  private final ThreadPoolExecutor workers;
+
+  // Tie breaker that keeps FIFO order among cycles with the same deadline.
+  private final AtomicLong sequence;
+
+  public CatchUpExecutor(ScheduledExecutorService timer, int numWorkers) {
+    Preconditions.checkArgument(numWorkers > 0);
+    this.timer = Preconditions.checkNotNull(timer);
+    this.workers = new ThreadPoolExecutor(numWorkers, numWorkers, 0L, TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat("CatchUpProcessor: %d").setDaemon(true).build());
+    this.sequence = new AtomicLong();
+  }
+
+  /**
+   * Schedule a processing cycle on the catch-up workers.
+   * <p/>
+   * The returned future can be cancelled and waited on like the future returned by
+   * {@link ScheduledExecutorService#schedule(Runnable, long, TimeUnit)}.
+   *
+   * @param command the processing cycle.
+   * @param delayInMillis the delay before the cycle becomes due.
+   * @param deadline the time in milliseconds at which the stream starts to lose data.
+   * @return the future of the cycle.
+   */
+  public Future<?> schedule(Runnable command, long delayInMillis, long deadline) {
+    CatchUpCycle cycle = new CatchUpCycle(command, deadline, sequence.getAndIncrement());
+    timer.schedule(() -> {
+      if (!cycle.isDone()) {
+        workers.execute(cycle);
+        Stats.setGauge(SingerMetrics.CATCH_UP_QUEUE_SIZE, workers.getQueue().size());
+      }
+    }, delayInMillis, TimeUnit.MILLISECONDS);
+    return cycle;
+  }
+
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  private static final class CatchUpCycle extends FutureTask<Void>
+      implements Comparable<CatchUpCycle> {
+
+    private final long deadline;
+    private final long sequence;
+
+    private CatchUpCycle(Runnable command, long deadline, long sequence) {
+      super(command, null);
+      this.deadline = deadline;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(CatchUpCycle other) {
+      int result = Long.compare(deadline, other.deadline);
+      return result != 0 ? result : Long.compare(sequence, other.sequence);
+    }
+  }
+}
@@ -32,6 +32,10 @@ import com.pinterest.singer.thrift.LogFileAndPath;
 import com.pinterest.singer.thrift.LogMessage;
 import com.pinterest.singer.thrift.LogMessageAndPosition;
 import com.pinterest.singer.thrift.LogPosition;
+import com.pinterest.singer.thrift.configuration.LogStreamProcessorConfig;
+import com.pinterest.singer.thrift.configuration.RetentionCatchUpConfig;
+import com.pinterest.singer.thrift.configuration.SingerConfig;
+import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 import com.pinterest.singer.utils.LogConfigUtils;
 import com.pinterest.singer.utils.SingerUtils;
 import com.pinterest.singer.utils.WatermarkUtils;
@@ -52,8 +56,8 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -70,7 +74,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
   private static final Logger LOG = LoggerFactory.getLogger(DefaultLogStreamProcessor.class);
 
   // Decider for the log stream.
-  private final String logDecider;
+  private volatile String logDecider;
 
   // Valid deciders that can be used in conjunction with logDecider to disable the logstream at a fleet level
   private final List<String> disableDeciders;
@@ -86,7 +90,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
 
   // Processor batch size.
   protected int batchSize;
-  private final int batchSizeOriginal;
+  private volatile int batchSizeOriginal;
 
   // Randomizer for initial processing delay.
   private final Random random;
@@ -95,13 +99,13 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
   private long processingIntervalInMillis;
 
   // Processor process interval in milliseconds.
-  private final long processingIntervalInMillisMin;
+  private volatile long processingIntervalInMillisMin;
 
   // Processor process interval in milliseconds.
-  private final long processingIntervalInMillisMax;
+  private volatile long processingIntervalInMillisMax;
 
   // Processor process time slice in milliseconds.
-  private final long processingTimeSliceInMilliseconds;
+  private volatile long processingTimeSliceInMilliseconds;
 
   // a boolean flag on whether LogStremaProcess uses up the time slice or not
   private boolean exceedTimeSliceLimit;
@@ -112,6 +116,33 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
   // Executor which executes processing tasks.
   private final ScheduledExecutorService executorService;
 
+  // Scheduling flow of this processor in the weighted fair scheduler, null if the processor
+  // schedules its cycles directly on the executor.
+  private final WeightedFairScheduler.Flow schedulerFlow;
+
+  // Estimates when the oldest unshipped file of the stream will be deleted.
+  private final RetentionDeadlineEstimator retentionDeadlineEstimator;
+
+  // Catch-up config, null if retention deadline aware catch-up is disabled.
+  private final RetentionCatchUpConfig catchUpConfig;
+
+  // Dedicated workers for cycles in catch-up mode, null if catch-up is disabled.
+  private final CatchUpExecutor catchUpExecutor;
+
+  // Dedicated workers for cycles of draining streams, null if they share the processor threads.
+  private final DrainCoordinator drainCoordinator;
+
+  // Whether the stream is in catch-up mode because it is close to losing data.
+  private volatile boolean catchingUp;
+
+  // Rate quotas of the log and of the host, null if not configured.
+  private final RateQuota logRateQuota;
+  private final RateQuota hostRateQuota;
+
+  // Milliseconds the stream has to wait for its quota after the current cycle, 0 if the
+  // stream is not throttled.
+  private long throttleDelayInMillis;
+
   // Whether this processor is stopped.
   private Boolean isStopped;
 
@@ -122,7 +153,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
   private volatile boolean cycleStarted;
 
   // Handle to the next scheduled processor run.
-  private ScheduledFuture<?> scheduledFuture;
+  private Future<?> scheduledFuture;
 
   // Committed LogPosition so far in the LogStream.
   protected LogPosition committedPosition;
@@ -163,6 +194,31 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
     this.processingTimeSliceInMilliseconds = processingTimeSliceInMilliseconds;
     this.logRetentionInSecs = logRetentionInSecs;
     this.executorService = Preconditions.checkNotNull(SingerSettings.getLogProcessorExecutor());
+    WeightedFairScheduler scheduler = SingerSettings.getLogProcessorScheduler();
+    if (scheduler != null) {
+      this.schedulerFlow = scheduler.newFlow(
+          logStream.getSingerLog().getLogName(),
+          logStream.getSingerLog().getSingerLogConfig().getSchedulingWeight(),
+          this::getProcessingLagInMillis,
+          this::getMillisToRetentionDeadline);
+    } else {
+      this.schedulerFlow = null;
+    }
+    this.retentionDeadlineEstimator = new RetentionDeadlineEstimator(logRetentionInSecs);
+    SingerConfig singerConfig = SingerSettings.getSingerConfig();
+    this.catchUpExecutor = SingerSettings.getCatchUpExecutor();
+    if (catchUpExecutor != null && singerConfig != null
+        && singerConfig.isSetRetentionCatchUpConfig()) {
+      this.catchUpConfig = singerConfig.getRetentionCatchUpConfig();
+    } else {
+      this.catchUpConfig = null;
+    }
+    this.catchingUp = false;
+    this.drainCoordinator = SingerSettings.getDrainCoordinator();
+    this.logRateQuota = SingerSettings.getOrCreateLogRateQuota(
+        logStream.getSingerLog().getSingerLogConfig());
+    this.hostRateQuota = SingerSettings.getHostRateQuota();
+    this.throttleDelayInMillis = 0;
     this.isStopped = true;
     this.scheduledFuture = null;
     this.committedPosition = null;
@@ -197,6 +253,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
       LOG.info("Start a processing cycle for log stream: {}", logStream);
       long cycleStartTime = System.currentTimeMillis();
       exceedTimeSliceLimit = false;
+      throttleDelayInMillis = 0;
 
       // If LogStream has no LogFile, skip this processing cycle.
       if (logStream.isEmpty()) {
@@ -222,6 +279,10 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
         return 0;
       }
 
+      retentionDeadlineEstimator.update(logStream.getLogFileAndPaths(), logFile, cycleStartTime);
+      updateCatchUpMode(cycleStartTime);
+      long timeSliceInMillis = getProcessingTimeSliceInMillis();
+
       // Seek to committed position.
       reader.seek(committedPosition);
       LOG.info("Set log stream: {}'s read position to: {}.", logStream, committedPosition);
@@ -230,10 +291,10 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
       long cycleStartNumOfLogMessagesCommitted = numOfLogMessagesCommitted;
 
       // Process the LogStream until there is no LogMessage remaining in the stream or we run into error.
-      while (processLogMessageBatch() >= batchSize) {
+      while (!isThrottled() && processLogMessageBatch() >= batchSize) {
         long currentTime = System.currentTimeMillis();
-        if (currentTime > cycleStartTime + processingTimeSliceInMilliseconds) {
-          LOG.info("Log stream {} used up {} milliseconds time slice.", logStream , processingTimeSliceInMilliseconds);
+        if (currentTime - cycleStartTime > timeSliceInMillis) {
+          LOG.info("Log stream {} used up {} milliseconds time slice.", logStream , timeSliceInMillis);
           exceedTimeSliceLimit = true;
           break;
         }
@@ -253,6 +314,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
         // Remove old log files in the current stream where mTime >= logRetentionInSecs
         logStream.removeOldFiles(committedPosition.logFile, logRetentionInSecs);
       }
+      retentionDeadlineEstimator.recordStreamState(logStream.getFirstLogFile(), logStream.size());
       return numOfLogMessagesCommitted - cycleStartNumOfLogMessagesCommitted;
     } catch (LogStreamReaderException e) {
       LOG.error("Failed to seek to position " + committedPosition, e);
@@ -333,7 +395,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
       if (isLoggingAllowedByDecider()) {
         // process this log stream
         logMessagesProcessed = processLogStream();
-        if (!exceedTimeSliceLimit) {
+        if (!exceedTimeSliceLimit && throttleDelayInMillis == 0) {
           lastCompletedCycleTime.set(System.currentTimeMillis());
         }
       } else {
@@ -358,26 +420,31 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
       if (logMessagesProcessed == -1) {
         batchSize = Math.max(1, batchSize / 2);
         LOG.warn("Processing error, decrease batch size to " + batchSize);
-      } else if (batchSize != batchSizeOriginal) {
-        batchSize = batchSizeOriginal;
+      } else if (batchSize != getTargetBatchSize()) {
+        batchSize = getTargetBatchSize();
         LOG.warn("Restoring batch size to " + batchSize);
       }
       long newProcessingIntervalInMillis = getNewProcessingIntervalInMillis(logMessagesProcessed);
 
-      if (newProcessingIntervalInMillis != processingIntervalInMillis) {
+      if (throttleDelayInMillis > 0) {
+        // The stream is over its quota. Yield the processor thread until enough tokens are
+        // refilled, and keep the processing interval as it is.
+        scheduledFuture = scheduleCycle(throttleDelayInMillis);
+        LOG.info("Log stream: {} is throttled, next processing cycle is scheduled after: {} "
+            + "milliseconds", logStream.getLogStreamDescriptor(), throttleDelayInMillis);
+      } else if (newProcessingIntervalInMillis != processingIntervalInMillis) {
         // We have a new processing interval.
         processingIntervalInMillis = newProcessingIntervalInMillis;
         LOG.info("Log stream: {} is processed at new interval: {} milliseconds",
             logStream.getLogStreamDescriptor(), processingIntervalInMillis);
         // We introduce a random initial delay to jitterize the processing cycle.
         long initialDelay = Math.abs(random.nextLong()) % processingIntervalInMillis;
-        scheduledFuture = executorService.schedule(this, initialDelay, TimeUnit.MILLISECONDS);
+        scheduledFuture = scheduleCycle(initialDelay);
         LOG.info("Log stream: {}'s next processing cycle is scheduled with initial delay: {}",
             logStream.getLogStreamDescriptor(), initialDelay);
       } else {
         // Schedule next run after processing interval.
-        scheduledFuture =
-            executorService.schedule(this, processingIntervalInMillis, TimeUnit.MILLISECONDS);
+        scheduledFuture = scheduleCycle(processingIntervalInMillis);
         LOG.info("Log stream: {}'s next processing cycle is scheduled after: {} milliseconds",
             logStream.getLogStreamDescriptor(), processingIntervalInMillis);
       }
@@ -401,11 +468,212 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
     return newProcessingIntervalInMillis;
   }
 
+  /**
+   * Schedule the next processing cycle, either through the weighted fair scheduler or directly
+   * on the processor executor. Cycles of draining streams and of streams in catch-up mode run on
+   * their dedicated workers.
+   */
+  private Future<?> scheduleCycle(long delayInMillis) {
+    if (drainCoordinator != null && drainCoordinator.isDraining(logStream)) {
+      return drainCoordinator.schedule(logStream, this, delayInMillis, getRemainingBytes());
+    }
+    if (catchingUp) {
+      long now = System.currentTimeMillis();
+      long millisToDeadline = retentionDeadlineEstimator.getMillisToDeadline(now);
+      return catchUpExecutor.schedule(this, delayInMillis,
+          millisToDeadline == Long.MAX_VALUE ? Long.MAX_VALUE : now + millisToDeadline);
+    }
+    if (schedulerFlow != null) {
+      return schedulerFlow.schedule(this, delayInMillis);
+    }
+    return executorService.schedule(this, delayInMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return the processing lag of the log stream, computed the same way as the latency
+   * reported by DefaultLogMonitor.
+   */
+  long getProcessingLagInMillis() {
+    long latestPivotTimestamp = Math.max(logStream.getLatestProcessedMessageTime(),
+        lastCompletedCycleTime.get());
+    if (latestPivotTimestamp <= 0) {
+      return 0;
+    }
+    return Math.max(logStream.getLastStreamModificationTime() - latestPivotTimestamp, 0);
+  }
+
+  /**
+   * @return the bytes of the log stream after the committed position. Only called for draining
+   * streams, and only the files from the committed file on are looked up.
+   */
+  long getRemainingBytes() {
+    LogPosition position = committedPosition;
+    List<LogFileAndPath> logFileAndPaths = logStream.getLogFileAndPaths();
+    // files before the committed file are shipped already
+    int first = 0;
+    for (int i = 0; position != null && i < logFileAndPaths.size(); i++) {
+      if (logFileAndPaths.get(i).getLogFile().equals(position.getLogFile())) {
+        first = i;
+        break;
+      }
+    }
+    long remainingBytes = 0;
+    for (int i = first; i < logFileAndPaths.size(); i++) {
+      long length = new File(logFileAndPaths.get(i).getPath()).length();
+      if (i == first && position != null
+          && logFileAndPaths.get(i).getLogFile().equals(position.getLogFile())) {
+        remainingBytes += Math.max(length - position.getByteOffset(), 0);
+      } else {
+        remainingBytes += length;
+      }
+    }
+    return remainingBytes;
+  }
+
+  /**
+   * @return the milliseconds left before the oldest unshipped file of the stream is expected to
+   * be deleted, or Long.MAX_VALUE if unknown.
+   */
+  long getMillisToRetentionDeadline() {
+    return retentionDeadlineEstimator.getMillisToDeadline(System.currentTimeMillis());
+  }
+
+  /**
+   * Enter or leave catch-up mode depending on the time left until the stream loses data. In
+   * catch-up mode the stream uses larger batches and time slices, and its cycles run on the
+   * dedicated catch-up workers ahead of streams with a later deadline.
+   */
+  private void updateCatchUpMode(long now) {
+    long millisToDeadline = retentionDeadlineEstimator.getMillisToDeadline(now);
+    String logName = logStream.getSingerLog().getLogName();
+    if (millisToDeadline != Long.MAX_VALUE) {
+      OpenTsdbMetricConverter.gauge(SingerMetrics.RETENTION_DEADLINE_SECS,
+          millisToDeadline / 1000, "log=" + logName);
+    }
+    boolean shouldCatchUp = catchUpConfig != null
+        && millisToDeadline < catchUpConfig.getCatchUpWindowInSeconds() * 1000L;
+    if (shouldCatchUp != catchingUp) {
+      catchingUp = shouldCatchUp;
+      batchSize = getTargetBatchSize();
+      OpenTsdbMetricConverter.gauge(SingerMetrics.CATCH_UP_MODE, catchingUp ? 1 : 0,
+          "log=" + logName);
+      LOG.warn("Log stream {} {} catch-up mode, {} ms left until its oldest unshipped file "
+          + "is deleted", logStream, catchingUp ? "enters" : "leaves", millisToDeadline);
+    }
+  }
+
+  /**
+   * Check the rate quotas of the log and the host before processing the next batch.
+   *
+   * @return whether the stream has to yield until its quotas allow more messages.
+   */
+  private boolean isThrottled() {
+    if (logRateQuota == null && hostRateQuota == null) {
+      return false;
+    }
+    long now = System.nanoTime();
+    String logName = logStream.getSingerLog().getLogName();
+    throttleDelayInMillis = Math.max(getThrottleDelayInMillis(logRateQuota, now, logName),
+        getThrottleDelayInMillis(hostRateQuota, now, logName));
+    if (throttleDelayInMillis > 0) {
+      OpenTsdbMetricConverter.gauge(SingerMetrics.PROCESSOR_THROTTLE_DELAY,
+          throttleDelayInMillis, "log=" + logName);
+      return true;
+    }
+    return false;
+  }
+
+  private static long getThrottleDelayInMillis(RateQuota quota, long now, String logName) {
+    if (quota == null) {
+      return 0;
+    }
+    long delayInMillis = quota.getThrottleDelayInMillis(now);
+    if (delayInMillis > 0) {
+      OpenTsdbMetricConverter.incr(SingerMetrics.PROCESSOR_THROTTLED, "log=" + logName,
+          "quota=" + quota.getName());
+    }
+    return delayInMillis;
+  }
+
+  /**
+   * Charge the rate quotas with a processed batch.
+   */
+  protected void chargeRateQuotas(long numMessages, long numBytes) {
+    long now = System.nanoTime();
+    if (logRateQuota != null) {
+      logRateQuota.charge(numMessages, numBytes, now);
+    }
+    if (hostRateQuota != null) {
+      hostRateQuota.charge(numMessages, numBytes, now);
+    }
+  }
+
+  /**
+   * @return the size of the message as counted against the byte rate quota.
+   */
+  protected static long getMessageSize(LogMessage logMessage) {
+    return (logMessage.isSetKey() ? logMessage.getKey().length : 0)
+        + (logMessage.isSetMessage() ? logMessage.getMessage().length : 0);
+  }
+
+  private int getTargetBatchSize() {
+    if (!catchingUp) {
+      return batchSizeOriginal;
+    }
+    return (int) Math.min(Integer.MAX_VALUE,
+        (long) batchSizeOriginal * catchUpConfig.getBatchSizeMultiplier());
+  }
+
+  private long getProcessingTimeSliceInMillis() {
+    if (!catchingUp) {
+      return processingTimeSliceInMilliseconds;
+    }
+    int multiplier = catchUpConfig.getTimeSliceMultiplier();
+    return processingTimeSliceInMilliseconds > Long.MAX_VALUE / multiplier
+           ? Long.MAX_VALUE : processingTimeSliceInMilliseconds * multiplier;
+  }
+
   @Override
   public long getLastCompleteCycleTime() {
     return this.lastCompletedCycleTime.get();
   }
 
+  @Override
+  public LogPosition getCommittedPosition() {
+    return committedPosition;
+  }
+
+  /**
+   * Apply the tunables of the updated config. The batch size takes effect at the end of the
+   * current processing cycle, the processing intervals when the next cycle is scheduled.
+   */
+  @Override
+  public boolean applyTunables(SingerLogConfig singerLogConfig) {
+    LogStreamProcessorConfig processorConfig = singerLogConfig.getLogStreamProcessorConfig();
+    int newBatchSize = isAuditingEnabled()
+                       ? processorConfig.getBatchSize() - 1 : processorConfig.getBatchSize();
+    long intervalMin = processorConfig.getProcessingIntervalInMillisecondsMin();
+    long intervalMax = processorConfig.getProcessingIntervalInMillisecondsMax();
+    if (newBatchSize <= 0 || intervalMin <= 0 || intervalMax < intervalMin) {
+      LOG.error("Invalid processor config {} for log stream {}", processorConfig, logStream);
+      return false;
+    }
+    this.logDecider = singerLogConfig.getLogDecider();
+    this.batchSizeOriginal = newBatchSize;
+    this.processingIntervalInMillisMin = intervalMin;
+    this.processingIntervalInMillisMax = intervalMax;
+    this.processingTimeSliceInMilliseconds = processorConfig.getProcessingTimeSliceInMilliseconds();
+    LOG.info("Applied processor config {} to log stream {}", processorConfig, logStream);
+    return true;
+  }
+
+  /**
+   * @return whether an audit message is added to every batch written by this processor.
+   */
+  protected boolean isAuditingEnabled() {
+    return writer.isAuditingEnabled();
+  }
+
   /**
    * Start to periodically process the LogStream.
    * <p/>
@@ -418,7 +686,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
         // Start the processor after a random initial delay between 0 and
         // processingIntervalInSeconds.
         long initialDelay = Math.abs(random.nextLong()) % this.processingIntervalInMillis;
-        scheduledFuture = executorService.schedule(this, initialDelay, TimeUnit.MILLISECONDS);
+        scheduledFuture = scheduleCycle(initialDelay);
         isStopped = false;
         LOG.info("Start log processor for log stream: {} which process logs every {} milliseconds "
                 + "with initial delay: {} milliseconds.",
@@ -492,7 +760,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
     return FilenameUtils.concat(path, watermarkFilename);
   }
 
-  private LogPosition resetLogStreamWatermarkPosition(LogStream stream) {
+  protected LogPosition resetLogStreamWatermarkPosition(LogStream stream) {
     LOG.warn("Reset log stream watermark : {}", stream);
     LogFileAndPath firstLogFileAndPath = stream.getFirstLogFile();
     Preconditions.checkNotNull(firstLogFileAndPath);
@@ -504,13 +772,17 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
   }
 
   /**
-   * Load last committed position from watermark file. If we can not load committed position from
-   * watermark file,
+   * Load last committed position from the snapshot restored at startup for the first cycle, or
+   * from watermark file. If we can not load committed position from watermark file,
    * start from the beginning of the first LogFile in this log stream.
    *
    * @return LogPosition in watermark file.
    */
-  private LogPosition loadCommittedPosition() {
+  protected LogPosition loadCommittedPosition() {
+    LogPosition restored = logStream.takeRestoredCommittedPosition();
+    if (restored != null && logStream.hasLogFile(restored.getLogFile())) {
+      return restored;
+    }
     LogPosition position;
     try {
       String wmFilePath = getWatermarkFilename(logStream);
@@ -587,7 +859,7 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
    * @param logMessagesRead LogMessages read from LogStream
    * @return whether successfully read the batch.
    */
-  private boolean readLogMessages(List<LogMessageAndPosition> logMessagesRead) {
+  protected boolean readLogMessages(List<LogMessageAndPosition> logMessagesRead) {
     boolean retval = false;
     try {
       for (int i = 0; i < this.batchSize; ++i) {
@@ -628,12 +900,15 @@ public class DefaultLogStreamProcessor implements LogStreamProcessor, Runnable {
       return;
     }
     List<LogMessage> logMessagesToWrite = Lists.newArrayListWithExpectedSize(numMessages);
+    long numBytes = 0;
     for (LogMessageAndPosition logMessageRead : logMessagesRead) {
       LogMessage logMessage = logMessageRead.getLogMessage();
       logMessagesToWrite.add(logMessage);
       emitMessageSizeMetrics(logStream, logMessage);
+      numBytes += getMessageSize(logMessage);
     }
     writer.writeLogMessages(logMessagesToWrite);
+    chargeRateQuotas(numMessages, numBytes);
     LogMessage lastMessage = logMessagesToWrite.get(numMessages - 1);
     if (lastMessage.isSetTimestampInNanos()) {
       logStream.setLatestProcessedMessageTime(lastMessage.getTimestampInNanos() / 1000000);
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import com.pinterest.singer.common.LogStream;
+import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.twitter.ostrich.stats.Stats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dedicated workers for processing cycles of log streams that are drained, i.e. streams of
+ * deleted pods and all streams when Singer is drained before shutdown.
+ * <p/>
+ * Draining streams do not compete with live streams for the processor threads. Due cycles are
+ * queued by the drain deadline first and by the bytes left to ship second, so the streams that
+ * are most likely to leave an undelivered tail when their deadline expires are processed first.
+ */
+public class DrainCoordinator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DrainCoordinator.class);
+
+  // Timer which delays cycles until they are due.
+  private final ScheduledExecutorService timer;
+
+  private final ThreadPoolExecutor workers;
+
+  // Tie breaker that keeps FIFO order among cycles with the same priority.
+  private final AtomicLong sequence;
+
+  private final Map<LogStream, DrainingStream> drainingStreams;
+
+  public DrainCoordinator(ScheduledExecutorService timer, int numWorkers) {
+    Preconditions.checkArgument(numWorkers > 0);
+    this.timer = Preconditions.checkNotNull(timer);
+    this.workers = new ThreadPoolExecutor(numWorkers, numWorkers, 0L, TimeUnit.MILLISECONDS,
+        new PriorityBlockingQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat("DrainProcessor: %d").setDaemon(true).build());
+    this.sequence = new AtomicLong();
+    this.drainingStreams = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Start draining the log streams. Their next processing cycles run on the drain workers.
+   *
+   * @param drainId the pod whose streams are drained, or empty for the shutdown drain.
+   * @param logStreams the streams to drain.
+   * @param deadline the time in milliseconds at which the drain times out.
+   */
+  public void startDraining(String drainId, Collection<LogStream> logStreams, long deadline) {
+    for (LogStream logStream : logStreams) {
+      drainingStreams.putIfAbsent(logStream, new DrainingStream(drainId, deadline));
+    }
+    LOG.info("Draining {} log streams of {} until {}", logStreams.size(), drainId, deadline);
+  }
+
+  /**
+   * Stop tracking the log streams of a drain, after they were shipped or timed out.
+   */
+  public void finishDraining(String drainId) {
+    drainingStreams.values().removeIf(stream -> stream.drainId.equals(drainId));
+    reportProgress(drainId);
+  }
+
+  public boolean isDraining(LogStream logStream) {
+    return drainingStreams.containsKey(logStream);
+  }
+
+  /**
+   * Schedule a processing cycle of a draining log stream on the drain workers.
+   * <p/>
+   * The returned future can be cancelled and waited on like the future returned by
+   * {@link ScheduledExecutorService#schedule(Runnable, long, TimeUnit)}.
+   *
+   * @param logStream the draining stream.
+   * @param command the processing cycle.
+   * @param delayInMillis the delay before the cycle becomes due.
+   * @param remainingBytes the bytes of the stream that are not shipped yet.
+   * @return the future of the cycle.
+   */
+  public Future<?> schedule(LogStream logStream, Runnable command, long delayInMillis,
+                            long remainingBytes) {
+    DrainingStream drainingStream = drainingStreams.get(logStream);
+    long deadline = drainingStream != null ? drainingStream.deadline : Long.MAX_VALUE;
+    if (drainingStream != null) {
+      drainingStream.remainingBytes = remainingBytes;
+    }
+    DrainCycle cycle = new DrainCycle(command, deadline, remainingBytes,
+        sequence.getAndIncrement());
+    timer.schedule(() -> {
+      if (!cycle.isDone()) {
+        workers.execute(cycle);
+        Stats.setGauge(SingerMetrics.DRAIN_QUEUE_SIZE, workers.getQueue().size());
+      }
+    }, delayInMillis, TimeUnit.MILLISECONDS);
+    return cycle;
+  }
+
+  /**
+   * Report the streams and bytes left to ship for a drain.
+   *
+   * @return the bytes left to ship, as of the last scheduled cycle of each stream.
+   */
+  public long reportProgress(String drainId) {
+    int remainingStreams = 0;
+    long remainingBytes = 0;
+    for (DrainingStream drainingStream : drainingStreams.values()) {
+      if (drainingStream.drainId.equals(drainId)) {
+        remainingStreams++;
+        remainingBytes += drainingStream.remainingBytes;
+      }
+    }
+    String podTag = "pod=" + (drainId.isEmpty() ? "host" : drainId);
+    OpenTsdbMetricConverter.gauge(SingerMetrics.DRAIN_REMAINING_STREAMS, remainingStreams,
+        podTag);
+    OpenTsdbMetricConverter.gauge(SingerMetrics.DRAIN_REMAINING_BYTES, remainingBytes, podTag);
+    LOG.info("Drain of {} has {} log streams and {} bytes left", drainId, remainingStreams,
+        remainingBytes);
+    return remainingBytes;
+  }
+
+  public void shutdown() {
+    workers.shutdownNow();
+  }
+
+  @VisibleForTesting
+  int getQueuedCycles() {
+    return workers.getQueue().size();
+  }
+
+  private static final class DrainingStream {
+
+    private final String drainId;
+    private final long deadline;
+    private volatile long remainingBytes;
+
+    private DrainingStream(String drainId, long deadline) {
+      this.drainId = drainId;
+      this.deadline = deadline;
+    }
+  }
+
+  private static final class DrainCycle extends FutureTask<Void>
+      implements Comparable<DrainCycle> {
+
+    private final long deadline;
+    private final long remainingBytes;
+    private final long sequence;
+
+    private DrainCycle(Runnable command, long deadline, long remainingBytes, long sequence) {
+      super(command, null);
+      this.deadline = deadline;
+      this.remainingBytes = remainingBytes;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(DrainCycle other) {
+      int result = Long.compare(deadline, other.deadline);
+      if (result == 0) {
+        result = Long.compare(other.remainingBytes, remainingBytes);
+      }
+      return result != 0 ? result : Long.compare(sequence, other.sequence);
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import com.pinterest.singer.common.LogStream;
+import com.pinterest.singer.common.LogStreamReader;
+import com.pinterest.singer.common.LogStreamWriter;
+import com.pinterest.singer.common.SingerConfigDef;
+import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.common.errors.LogStreamWriterException;
+import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+import com.pinterest.singer.thrift.LogMessage;
+import com.pinterest.singer.thrift.LogMessageAndPosition;
+import com.pinterest.singer.thrift.LogPosition;
+import com.pinterest.singer.utils.WatermarkUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LogStreamProcessor that reads a LogStream once and ships it to several destinations.
+ * <p/>
+ * The writer passed to the constructor is the primary destination, whose position is kept in
+ * the regular watermark file of the stream. Every fan-out destination keeps its position in its
+ * own watermark file, so each destination has its own cursor:
+ *    1. A batch read from the stream is written to every destination which has not shipped it
+ *       yet. Destinations that are ahead of the read position skip the messages they already have.
+ *    2. A destination that fails to write is skipped for the rest of the processing cycle while
+ *       the other destinations keep making progress. Its cursor stays put and the next cycle
+ *       retries from there.
+ *    3. The committed position of the processor, from which the next cycle starts reading and
+ *       before which old files may be removed, is the position of the slowest destination.
+ * <p/>
+ * The processor fails the cycle only when all destinations fail.
+ */
+public class FanOutLogStreamProcessor extends DefaultLogStreamProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FanOutLogStreamProcessor.class);
+
+  private static final String PRIMARY_DESTINATION = SingerConfigDef.FANOUT_PRIMARY_DESTINATION;
+
+  private final List<Destination> destinations;
+
+  public FanOutLogStreamProcessor(LogStream logStream,
+                                  String logDecider,
+                                  LogStreamReader reader,
+                                  LogStreamWriter writer,
+                                  Map<String, LogStreamWriter> fanOutWriters,
+                                  int batchSize,
+                                  long processingIntervalInMillisMin,
+                                  long processingIntervalInMillisMax,
+                                  long processingTimeSliceInMilliseconds,
+                                  int logRetentionInSecs) {
+    super(logStream, logDecider, reader, writer, batchSize, processingIntervalInMillisMin,
+        processingIntervalInMillisMax, processingTimeSliceInMilliseconds, logRetentionInSecs);
+    Preconditions.checkArgument(!fanOutWriters.containsKey(PRIMARY_DESTINATION));
+    this.destinations = new ArrayList<>(fanOutWriters.size() + 1);
+    this.destinations.add(
+        new Destination(PRIMARY_DESTINATION, writer, getWatermarkFilename(logStream)));
+    for (Map.Entry<String, LogStreamWriter> entry : fanOutWriters.entrySet()) {
+      destinations.add(new Destination(entry.getKey(), entry.getValue(),
+          getWatermarkFilename(logStream) + "@" + entry.getKey()));
+    }
+  }
+
+  /**
+   * Load the position of every destination and return the position of the slowest one.
+   */
+  @Override
+  protected LogPosition loadCommittedPosition() {
+    LogPosition slowestPosition = null;
+    for (Destination destination : destinations) {
+      if (destination.name.equals(PRIMARY_DESTINATION)) {
+        // the primary destination uses the regular watermark file of the stream
+        destination.position = super.loadCommittedPosition();
+      } else {
+        destination.position = loadDestinationPosition(destination);
+      }
+      destination.failedInCycle = false;
+      if (slowestPosition == null || compare(destination.position, slowestPosition) < 0) {
+        slowestPosition = destination.position;
+      }
+    }
+    return slowestPosition;
+  }
+
+  private LogPosition loadDestinationPosition(Destination destination) {
+    LogPosition position;
+    try {
+      position = WatermarkUtils.loadCommittedPositionFromWatermark(destination.watermarkFilename);
+      if (!logStream.hasLogFile(position.getLogFile())) {
+        LOG.warn("The position: {} of destination {} is invalid in {}.", position,
+            destination.name, logStream);
+        position = resetLogStreamWatermarkPosition(logStream);
+      }
+    } catch (FileNotFoundException e) {
+      LOG.warn("Failed to find watermark file of destination {} for {}", destination.name,
+          logStream);
+      position = resetLogStreamWatermarkPosition(logStream);
+      try {
+        WatermarkUtils.saveCommittedPositionToWatermark(destination.watermarkFilename, position);
+      } catch (Exception ex) {
+        LOG.error("Failed to persist watermark {} of destination {} for {}", position,
+            destination.name, logStream, ex);
+      }
+    } catch (Exception e) {
+      LOG.error("Exception in loading position of destination " + destination.name + " for "
+          + logStream, e);
+      position = resetLogStreamWatermarkPosition(logStream);
+    }
+    return position;
+  }
+
+  @Override
+  protected int processLogMessageBatch() throws IOException, LogStreamWriterException, TException {
+    List<LogMessageAndPosition> logMessagesRead = Lists.newArrayListWithExpectedSize(batchSize);
+    readLogMessages(logMessagesRead);
+    if (logMessagesRead.isEmpty()) {
+      return 0;
+    }
+
+    String logName = logStream.getSingerLog().getLogName();
+    boolean delivered = false;
+    long numBytes = 0;
+    for (LogMessageAndPosition logMessageAndPosition : logMessagesRead) {
+      emitMessageSizeMetrics(logStream, logMessageAndPosition.getLogMessage());
+      numBytes += getMessageSize(logMessageAndPosition.getLogMessage());
+    }
+    for (Destination destination : destinations) {
+      if (destination.failedInCycle) {
+        continue;
+      }
+      List<LogMessage> pendingMessages = new ArrayList<>(logMessagesRead.size());
+      LogPosition lastPosition = null;
+      for (LogMessageAndPosition logMessageAndPosition : logMessagesRead) {
+        if (compare(logMessageAndPosition.getNextPosition(), destination.position) > 0) {
+          pendingMessages.add(logMessageAndPosition.getLogMessage());
+          lastPosition = logMessageAndPosition.getNextPosition();
+        }
+      }
+      if (pendingMessages.isEmpty()) {
+        // the destination already has this batch
+        delivered = true;
+        continue;
+      }
+      try {
+        destination.writer.writeLogMessages(pendingMessages);
+        destination.position = lastPosition;
+        WatermarkUtils.saveCommittedPositionToWatermark(destination.watermarkFilename,
+            lastPosition);
+        delivered = true;
+      } catch (Exception e) {
+        // Leave this destination behind for the rest of the cycle. Its cursor is not advanced,
+        // so the next cycle resumes it from its own position.
+        destination.failedInCycle = true;
+        LOG.error("Failed to write to destination " + destination.name + " of " + logStream, e);
+        OpenTsdbMetricConverter.incr(SingerMetrics.FANOUT_WRITE_FAILURE, "log=" + logName,
+            "destination=" + destination.name);
+      }
+    }
+    if (!delivered) {
+      throw new LogStreamWriterException("All destinations failed for " + logStream);
+    }
+
+    chargeRateQuotas(logMessagesRead.size(), numBytes);
+    LogMessage lastMessage = logMessagesRead.get(logMessagesRead.size() - 1).getLogMessage();
+    if (lastMessage.isSetTimestampInNanos()) {
+      logStream.setLatestProcessedMessageTime(lastMessage.getTimestampInNanos() / 1000000);
+    }
+    // The committed position is bounded by the slowest destination.
+    LogPosition slowestPosition = null;
+    for (Destination destination : destinations) {
+      if (slowestPosition == null || compare(destination.position, slowestPosition) < 0) {
+        slowestPosition = destination.position;
+      }
+    }
+    commitLogPosition(slowestPosition, false);
+    numOfLogMessagesCommitted += logMessagesRead.size();
+    return logMessagesRead.size();
+  }
+
+  /**
+   * Compare two positions by the order of their files in the log stream and their offsets. A
+   * position whose file is no longer in the stream is ordered first.
+   */
+  private int compare(LogPosition a, LogPosition b) {
+    if (!a.getLogFile().equals(b.getLogFile())) {
+      return Integer.compare(logStream.getLogFileIndex(a.getLogFile()),
+          logStream.getLogFileIndex(b.getLogFile()));
+    }
+    return Long.compare(a.getByteOffset(), b.getByteOffset());
+  }
+
+  @Override
+  protected boolean isAuditingEnabled() {
+    for (Destination destination : destinations) {
+      if (destination.writer.isAuditingEnabled()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    super.close();
+    for (Destination destination : destinations) {
+      if (!destination.name.equals(PRIMARY_DESTINATION)) {
+        destination.writer.close();
+      }
+    }
+  }
+
+  private static final class Destination {
+
+    private final String name;
+    private final LogStreamWriter writer;
+    private final String watermarkFilename;
+
+    // The position after the last message shipped to this destination.
+    private LogPosition position;
+
+    // Whether a write to this destination failed in the current processing cycle.
+    private boolean failedInCycle;
+
+    private Destination(String name, LogStreamWriter writer, String watermarkFilename) {
+      this.name = name;
+      this.writer = writer;
+      this.watermarkFilename = watermarkFilename;
+    }
+  }
+}
@@ -75,6 +75,7 @@ public class MemoryEfficientLogStreamProcessor extends DefaultLogStreamProcessor
     int logMessagesRead = 0;
     int logMessagesSkipped = 0;
     int logMessagesToWrite = 0;
+    long bytesToWrite = 0;
     // Read a batch of LogMessages.
     LogMessageAndPosition logMessageAndPosition = null;
     boolean isDraining = LogStreamManager.getInstance().isDraining();
@@ -119,6 +120,7 @@ public class MemoryEfficientLogStreamProcessor extends DefaultLogStreamProcessor
         continue;
       }
       writer.writeLogMessageToCommit(logMessageAndPosition, isDraining);
+      bytesToWrite += getMessageSize(logMessageAndPosition.getLogMessage());
     }
 
     if (logMessagesRead > 0) {
@@ -130,6 +132,7 @@ public class MemoryEfficientLogStreamProcessor extends DefaultLogStreamProcessor
       }
       // Write the batch of LogMessages
       writer.endCommit(logMessagesToWrite, isDraining);
+      chargeRateQuotas(logMessagesToWrite, bytesToWrite);
 
       LogMessage lastMessage = logMessageAndPosition.getLogMessage();
       if (lastMessage.isSetTimestampInNanos()) {
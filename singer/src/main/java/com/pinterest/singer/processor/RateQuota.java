@@ -0,0 +1,78 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import com.pinterest.singer.thrift.configuration.RateQuotaConfig;
+import com.pinterest.singer.utils.TokenBucket;
+
+/**
+ * Byte rate and message rate quota, shared by all log stream processors it applies to.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class RateQuota {
+
+  private final String name;
+  private final RateQuotaConfig config;
+
+  // Null if the respective rate is unlimited.
+  private final TokenBucket byteBucket;
+  private final TokenBucket messageBucket;
+
+  public RateQuota(String name, RateQuotaConfig config) {
+    this.name = name;
+    this.config = config;
+    this.byteBucket = config.getBytesPerSecond() > 0
+        ? new TokenBucket(config.getBytesPerSecond(), config.getBurstInSeconds()) : null;
+    this.messageBucket = config.getMessagesPerSecond() > 0
+        ? new TokenBucket(config.getMessagesPerSecond(), config.getBurstInSeconds()) : null;
+  }
+
+  /**
+   * @return the name used in throttling metrics, "host" or the log name.
+   */
+  public String getName() {
+    return name;
+  }
+
+  public RateQuotaConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * @return the milliseconds to wait until both byte and message rate are within the quota.
+   */
+  public long getThrottleDelayInMillis(long nowInNanos) {
+    long delayInNanos = 0;
+    if (byteBucket != null) {
+      delayInNanos = byteBucket.getDelayInNanos(nowInNanos);
+    }
+    if (messageBucket != null) {
+      delayInNanos = Math.max(delayInNanos, messageBucket.getDelayInNanos(nowInNanos));
+    }
+    // round up so that a throttled stream does not wake up before its tokens are available
+    return (delayInNanos + 999_999) / 1_000_000;
+  }
+
+  public void charge(long numMessages, long numBytes, long nowInNanos) {
+    if (byteBucket != null) {
+      byteBucket.consume(numBytes, nowInNanos);
+    }
+    if (messageBucket != null) {
+      messageBucket.consume(numMessages, nowInNanos);
+    }
+  }
+}
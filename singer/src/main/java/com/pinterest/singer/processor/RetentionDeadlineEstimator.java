@@ -0,0 +1,162 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import com.pinterest.singer.thrift.LogFile;
+import com.pinterest.singer.thrift.LogFileAndPath;
+import com.pinterest.singer.utils.SingerUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Estimates when the oldest unshipped file of a log stream, which is the file at the committed
+ * position, will be deleted.
+ * <p/>
+ * Two deletion policies are taken into account:
+ *    1. Age based retention: a file is deleted logRetentionInSecs after it was last modified.
+ *    2. Count based rotation by the application (e.g. logback maxHistory or logrotate rotate
+ *       count): the application keeps at most N files of the stream. N is learnt by observing
+ *       the stream size at which files vanish from the head of the stream without Singer
+ *       removing them. Together with the rotation interval observed from the modification time
+ *       of the rotated files, this tells when the committed file will be rotated away.
+ * <p/>
+ * update() and recordStreamState() are called from the processor thread. The deadline can be
+ * read from any thread.
+ */
+class RetentionDeadlineEstimator {
+
+  private final int logRetentionInSecs;
+
+  // Returns the last modification time of a file, or 0 if the file does not exist.
+  private final ToLongFunction<String> lastModifiedFunction;
+
+  // Inode of the first file in the stream and the stream size when the last cycle finished.
+  private long lastHeadInode;
+  private int lastStreamSize;
+
+  // Number of files the application keeps for this stream, -1 if not observed yet.
+  private int rotationCapacity;
+
+  // The time at which the oldest unshipped file is expected to be deleted.
+  private volatile long deadline;
+
+  RetentionDeadlineEstimator(int logRetentionInSecs) {
+    this(logRetentionInSecs, SingerUtils::getFileLastModifiedTime);
+  }
+
+  @VisibleForTesting
+  RetentionDeadlineEstimator(int logRetentionInSecs, ToLongFunction<String> lastModifiedFunction) {
+    this.logRetentionInSecs = logRetentionInSecs;
+    this.lastModifiedFunction = lastModifiedFunction;
+    this.lastHeadInode = -1;
+    this.lastStreamSize = 0;
+    this.rotationCapacity = -1;
+    this.deadline = Long.MAX_VALUE;
+  }
+
+  /**
+   * Refresh the estimate at the beginning of a processing cycle.
+   *
+   * @param logFileAndPaths snapshot of the log stream, oldest file first.
+   * @param committedLogFile the log file at the committed position.
+   * @param now current time in milliseconds.
+   */
+  void update(List<LogFileAndPath> logFileAndPaths, LogFile committedLogFile, long now) {
+    if (logFileAndPaths.isEmpty()) {
+      return;
+    }
+    int committedIndex = -1;
+    boolean lastHeadPresent = false;
+    for (int i = 0; i < logFileAndPaths.size(); i++) {
+      LogFile logFile = logFileAndPaths.get(i).getLogFile();
+      if (logFile.equals(committedLogFile)) {
+        committedIndex = i;
+      }
+      if (logFile.getInode() == lastHeadInode) {
+        lastHeadPresent = true;
+      }
+    }
+    if (lastHeadInode != -1 && !lastHeadPresent) {
+      // The head of the stream vanished since the end of the last cycle. Singer only removes
+      // files at the end of a cycle, so this was the application rotating files away.
+      rotationCapacity = lastStreamSize;
+    }
+    if (committedIndex < 0) {
+      deadline = Long.MAX_VALUE;
+      return;
+    }
+    deadline = Math.min(
+        getAgeBasedDeadline(logFileAndPaths.get(committedIndex).getPath()),
+        getRotationBasedDeadline(logFileAndPaths, committedIndex, now));
+  }
+
+  /**
+   * Record the stream state at the end of a processing cycle, after Singer removed old files.
+   */
+  void recordStreamState(LogFileAndPath firstLogFile, int streamSize) {
+    lastHeadInode = firstLogFile != null ? firstLogFile.getLogFile().getInode() : -1;
+    lastStreamSize = streamSize;
+  }
+
+  /**
+   * @return the milliseconds left before the oldest unshipped file is expected to be deleted,
+   * or Long.MAX_VALUE if unknown.
+   */
+  long getMillisToDeadline(long now) {
+    long currentDeadline = deadline;
+    return currentDeadline == Long.MAX_VALUE ? Long.MAX_VALUE : currentDeadline - now;
+  }
+
+  @VisibleForTesting
+  int getRotationCapacity() {
+    return rotationCapacity;
+  }
+
+  private long getAgeBasedDeadline(String committedPath) {
+    if (logRetentionInSecs <= 0) {
+      return Long.MAX_VALUE;
+    }
+    long lastModified = lastModifiedFunction.applyAsLong(committedPath);
+    return lastModified > 0 ? lastModified + logRetentionInSecs * 1000L : Long.MAX_VALUE;
+  }
+
+  private long getRotationBasedDeadline(List<LogFileAndPath> logFileAndPaths,
+                                        int committedIndex,
+                                        long now) {
+    int streamSize = logFileAndPaths.size();
+    // The rotation interval is derived from the rotated files only, the last file is active.
+    int numRotatedFiles = streamSize - 1;
+    if (rotationCapacity <= 0 || numRotatedFiles < 2) {
+      return Long.MAX_VALUE;
+    }
+    long oldestRotationTime = lastModifiedFunction.applyAsLong(logFileAndPaths.get(0).getPath());
+    long lastRotationTime =
+        lastModifiedFunction.applyAsLong(logFileAndPaths.get(numRotatedFiles - 1).getPath());
+    if (oldestRotationTime <= 0 || lastRotationTime <= oldestRotationTime) {
+      return Long.MAX_VALUE;
+    }
+    long rotationIntervalInMillis = (lastRotationTime - oldestRotationTime) / (numRotatedFiles - 1);
+    // The committed file is rotated away once rotationCapacity files are newer than it.
+    int rotationsLeft = rotationCapacity - (streamSize - 1 - committedIndex);
+    if (rotationsLeft <= 0) {
+      return now;
+    }
+    return lastRotationTime + rotationsLeft * rotationIntervalInMillis;
+  }
+}
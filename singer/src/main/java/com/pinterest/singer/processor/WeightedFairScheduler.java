@@ -0,0 +1,269 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import com.pinterest.singer.common.SingerMetrics;
+import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+import com.pinterest.singer.thrift.configuration.ProcessorSchedulerConfig;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.twitter.ostrich.stats.Stats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Hands out processing cycles of log stream processors using start-time fair queuing.
+ * <p/>
+ * Without the scheduler every processor schedules itself on the processor thread pool, and
+ * cycles that become due at the same time are run in FIFO order. With the scheduler, due cycles
+ * are kept in a ready queue ordered by their virtual start time and at most
+ * {@code maxConcurrentCycles} of them are handed to the thread pool at any time. After a cycle
+ * finishes, its flow is charged with the time it used divided by the flow's effective weight,
+ * so that under contention each flow receives processing time in proportion to its weight.
+ * <p/>
+ * The effective weight of a flow is its configured weight, boosted for streams that are lagging
+ * behind or whose oldest unshipped file is close to its retention deadline.
+ * <p/>
+ * This class is thread-safe.
+ */
+public class WeightedFairScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WeightedFairScheduler.class);
+
+  // Executor which executes processing cycles.
+  private final ScheduledExecutorService executorService;
+
+  // Maximum number of processing cycles handed to the executor at the same time.
+  private final int maxConcurrentCycles;
+
+  private final long lagBoostThresholdInMillis;
+  private final double maxLagBoost;
+  private final long retentionDeadlineWindowInMillis;
+  private final double retentionDeadlineBoost;
+
+  // Cycles which are due but not yet handed to the executor. Guarded by "this".
+  private final PriorityQueue<ReadyCycle> readyQueue;
+
+  // Number of cycles currently handed to the executor. Guarded by "this".
+  private int runningCycles;
+
+  // System virtual time, which is the start tag of the last dispatched cycle. Guarded by "this".
+  private double virtualTime;
+
+  // Tie breaker that keeps FIFO order among cycles with the same start tag. Guarded by "this".
+  private long sequence;
+
+  public WeightedFairScheduler(ScheduledExecutorService executorService,
+                               int maxConcurrentCycles,
+                               ProcessorSchedulerConfig config) {
+    Preconditions.checkArgument(maxConcurrentCycles > 0);
+    this.executorService = Preconditions.checkNotNull(executorService);
+    this.maxConcurrentCycles = maxConcurrentCycles;
+    this.lagBoostThresholdInMillis = config.getLagBoostThresholdInMillis();
+    this.maxLagBoost = Math.max(1.0, config.getMaxLagBoost());
+    this.retentionDeadlineWindowInMillis = config.getRetentionDeadlineWindowInSeconds() * 1000L;
+    this.retentionDeadlineBoost = Math.max(1.0, config.getRetentionDeadlineBoost());
+    this.readyQueue = new PriorityQueue<>();
+    this.runningCycles = 0;
+    this.virtualTime = 0;
+    this.sequence = 0;
+  }
+
+  /**
+   * Create a new flow, which represents one log stream processor.
+   *
+   * @param name the name used in metrics, normally the log name.
+   * @param weight the configured weight of the flow.
+   * @param lagSupplier supplies the current processing lag of the flow in milliseconds.
+   * @param retentionDeadlineSupplier supplies the milliseconds left until the oldest unshipped
+   *                                  data of the flow is deleted, or Long.MAX_VALUE if unknown.
+   * @return the flow.
+   */
+  public Flow newFlow(String name,
+                      int weight,
+                      LongSupplier lagSupplier,
+                      LongSupplier retentionDeadlineSupplier) {
+    return new Flow(name, Math.max(1, weight),
+        () -> getLagBoost(lagSupplier.getAsLong())
+            * getRetentionDeadlineBoost(retentionDeadlineSupplier.getAsLong()));
+  }
+
+  @VisibleForTesting
+  double getLagBoost(long lagInMillis) {
+    if (lagBoostThresholdInMillis <= 0 || lagInMillis <= lagBoostThresholdInMillis) {
+      return 1.0;
+    }
+    return Math.min(maxLagBoost, (double) lagInMillis / lagBoostThresholdInMillis);
+  }
+
+  @VisibleForTesting
+  double getRetentionDeadlineBoost(long millisToRetentionDeadline) {
+    return millisToRetentionDeadline < retentionDeadlineWindowInMillis
+           ? retentionDeadlineBoost : 1.0;
+  }
+
+  @VisibleForTesting
+  synchronized int getReadyQueueSize() {
+    return readyQueue.size();
+  }
+
+  private synchronized void enqueue(ReadyCycle cycle) {
+    if (cycle.flow.running) {
+      // A processor schedules its next cycle before the current one returns. Hold the next
+      // cycle back until the current one has been charged so its start tag is accurate.
+      cycle.flow.deferredCycle = cycle;
+      return;
+    }
+    cycle.startTag = Math.max(virtualTime, cycle.flow.lastFinishTag);
+    cycle.sequence = sequence++;
+    readyQueue.add(cycle);
+    Stats.setGauge(SingerMetrics.SCHEDULER_READY_QUEUE_SIZE, readyQueue.size());
+    dispatch();
+  }
+
+  private synchronized void dispatch() {
+    while (runningCycles < maxConcurrentCycles && !readyQueue.isEmpty()) {
+      ReadyCycle cycle = readyQueue.poll();
+      if (cycle.task.isDone()) {
+        // the processor has been stopped before this cycle got its turn
+        continue;
+      }
+      runningCycles++;
+      cycle.flow.running = true;
+      virtualTime = Math.max(virtualTime, cycle.startTag);
+      executorService.execute(() -> runCycle(cycle));
+    }
+    Stats.setGauge(SingerMetrics.SCHEDULER_READY_QUEUE_SIZE, readyQueue.size());
+  }
+
+  private void runCycle(ReadyCycle cycle) {
+    long startTime = System.currentTimeMillis();
+    OpenTsdbMetricConverter.addMetric(SingerMetrics.SCHEDULER_WAIT_TIME,
+        (int) (startTime - cycle.readyTime), "log=" + cycle.flow.name);
+    try {
+      cycle.task.run();
+    } finally {
+      long usedMillis = Math.max(1, System.currentTimeMillis() - startTime);
+      synchronized (this) {
+        Flow flow = cycle.flow;
+        flow.lastFinishTag = cycle.startTag + usedMillis / cycle.effectiveWeight;
+        flow.running = false;
+        runningCycles--;
+        if (flow.deferredCycle != null) {
+          ReadyCycle deferredCycle = flow.deferredCycle;
+          flow.deferredCycle = null;
+          enqueue(deferredCycle);
+        } else {
+          dispatch();
+        }
+      }
+    }
+  }
+
+  /**
+   * A flow is the scheduling entity of one log stream processor. A flow has at most one pending
+   * cycle at any time.
+   */
+  public final class Flow {
+
+    private final String name;
+    private final int weight;
+    private final DoubleSupplier boostSupplier;
+
+    // Finish tag of the last completed cycle. Guarded by the enclosing scheduler.
+    private double lastFinishTag;
+
+    // Whether a cycle of this flow is running. Guarded by the enclosing scheduler.
+    private boolean running;
+
+    // The next cycle which became ready while the current one was running.
+    // Guarded by the enclosing scheduler.
+    private ReadyCycle deferredCycle;
+
+    private Flow(String name, int weight, DoubleSupplier boostSupplier) {
+      this.name = name;
+      this.weight = weight;
+      this.boostSupplier = boostSupplier;
+      this.lastFinishTag = 0;
+      this.running = false;
+      this.deferredCycle = null;
+    }
+
+    /**
+     * Schedule a processing cycle of this flow. After the delay, the cycle enters the ready
+     * queue and is run when it is the flow's turn.
+     * <p/>
+     * The returned future follows the contract of the future returned by
+     * {@link ScheduledExecutorService#schedule(Runnable, long, TimeUnit)}: cancelling it before the
+     * cycle starts prevents the cycle from running, and get() waits for a running cycle to finish.
+     *
+     * @param command the processing cycle.
+     * @param delayInMillis the delay before the cycle becomes ready.
+     * @return the future of the cycle.
+     */
+    public Future<?> schedule(Runnable command, long delayInMillis) {
+      FutureTask<Void> task = new FutureTask<>(command, null);
+      executorService.schedule(() -> {
+        if (!task.isDone()) {
+          enqueue(new ReadyCycle(this, task, getEffectiveWeight()));
+        }
+      }, delayInMillis, TimeUnit.MILLISECONDS);
+      return task;
+    }
+
+    public double getEffectiveWeight() {
+      double boost = 1.0;
+      try {
+        boost = boostSupplier.getAsDouble();
+      } catch (Exception e) {
+        LOG.warn("Failed to compute scheduling boost for {}", name, e);
+      }
+      return weight * boost;
+    }
+  }
+
+  private static final class ReadyCycle implements Comparable<ReadyCycle> {
+
+    private final Flow flow;
+    private final FutureTask<Void> task;
+    private final double effectiveWeight;
+    private final long readyTime;
+    private double startTag;
+    private long sequence;
+
+    private ReadyCycle(Flow flow, FutureTask<Void> task, double effectiveWeight) {
+      this.flow = flow;
+      this.task = task;
+      this.effectiveWeight = effectiveWeight;
+      this.readyTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public int compareTo(ReadyCycle other) {
+      int result = Double.compare(startTag, other.startTag);
+      return result != 0 ? result : Long.compare(sequence, other.sequence);
+    }
+  }
+}
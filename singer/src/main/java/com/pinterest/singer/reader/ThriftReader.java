@@ -23,6 +23,7 @@ import com.google.common.base.Strings;
 import io.netty.buffer.PooledByteBufAllocator;
 import org.apache.thrift.TBase;
 import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
 import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TIOStreamTransport;
@@ -36,11 +37,33 @@ import java.io.RandomAccessFile;
 /**
  * Reader that reads Thrift messages of thrift type from a file
  * <p/>
+ * Writers that preallocate their files, like the memory-mapped thrift-logger appender, leave a
+ * zero filled tail after the frames written so far. Since no frame is empty, a frame size of 0
+ * marks the end of the data, the same as the end of the file.
+ * <p/>
+ * Frames that start with {@link #COMPACT_FRAME_PREFIX} are read with TCompactProtocol, all other
+ * frames with the protocol of the given factory. The first byte of a TBinaryProtocol or
+ * TCompactProtocol encoded struct is never 0xff, so files can mix both encodings. Frames that start
+ * with {@link #SKIP_FRAME_PREFIX} hold no message and are skipped.
+ * <p/>
  * This class is NOT thread-safe.
  */
 @SuppressWarnings("rawtypes")
 public class ThriftReader<T extends TBase> implements Closeable {
 
+  /**
+   * Prefix of frames encoded with TCompactProtocol, the same as the prefix of ThriftCodec's
+   * prefixed compact encoding.
+   */
+  public static final byte[] COMPACT_FRAME_PREFIX = {(byte) 0xff, (byte) 0x01};
+
+  /**
+   * Prefix of frames without a message, the same as the skip frame prefix of thrift-logger.
+   */
+  public static final byte[] SKIP_FRAME_PREFIX = {(byte) 0xff, (byte) 0x00};
+
+  private static final byte[] EMPTY_BYTES = new byte[0];
+
   /**
    * Factory that get a TBase instance of the thrift type to be read.
    *
@@ -71,6 +94,12 @@ public class ThriftReader<T extends TBase> implements Closeable {
   // TProtocol implementation.
   private final TProtocol protocol;
 
+  // TCompactProtocol for frames with the compact frame prefix.
+  private final TProtocol compactProtocol;
+
+  // The protocol of the current frame.
+  private TProtocol currentProtocol;
+
   public ThriftReader(
       String path,
       TBaseFactory<T> baseFactory,
@@ -91,6 +120,8 @@ public class ThriftReader<T extends TBase> implements Closeable {
         .byteOffsetInputStream), maxMessageSize);
     this.baseFactory = Preconditions.checkNotNull(baseFactory);
     this.protocol = protocolFactory.get(this.framedTransport);
+    this.compactProtocol = new TCompactProtocol(this.framedTransport);
+    this.currentProtocol = this.protocol;
   }
 
   /**
@@ -101,16 +132,45 @@ public class ThriftReader<T extends TBase> implements Closeable {
    * @throws TException  when parse error.
    */
   public T read() throws IOException, TException {
-    // If frame buffer is empty and we are at EOF of underlying input stream, return null.
-    if (framedTransport.getBytesRemainingInBuffer() == 0 && byteOffsetInputStream.isEOF()) {
-      return null;
+    while (framedTransport.getBytesRemainingInBuffer() == 0) {
+      // If we are at EOF of underlying input stream, return null.
+      if (byteOffsetInputStream.isEOF()) {
+        return null;
+      }
+      long frameOffset = getByteOffset();
+      // a read of 0 bytes loads the next frame, so that its first bytes can be inspected
+      framedTransport.read(EMPTY_BYTES, 0, 0);
+      if (framedTransport.getBytesRemainingInBuffer() == 0) {
+        // zero frame size, the end of the data of a preallocated file
+        setByteOffset(frameOffset);
+        return null;
+      }
+      if (hasFramePrefix(SKIP_FRAME_PREFIX)) {
+        framedTransport.consumeBuffer(framedTransport.getBytesRemainingInBuffer());
+        continue;
+      }
+      currentProtocol = protocol;
+      if (hasFramePrefix(COMPACT_FRAME_PREFIX)) {
+        framedTransport.consumeBuffer(COMPACT_FRAME_PREFIX.length);
+        currentProtocol = compactProtocol;
+      }
+      break;
     }
 
     T t = baseFactory.get();
-    t.read(protocol);
+    t.read(currentProtocol);
     return t;
   }
 
+  private boolean hasFramePrefix(byte[] prefix) {
+    if (framedTransport.getBytesRemainingInBuffer() < prefix.length) {
+      return false;
+    }
+    byte[] buffer = framedTransport.getBuffer();
+    int position = framedTransport.getBufferPosition();
+    return buffer[position] == prefix[0] && buffer[position + 1] == prefix[1];
+  }
+
   /**
    * @return byte offset of the next message.
    * @throws IOException on file error.
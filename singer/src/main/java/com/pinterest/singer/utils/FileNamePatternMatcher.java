@@ -0,0 +1,163 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.utils;
+
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Matches file names against many log stream regexes in one pass.
+ * <p/>
+ * The literal prefix of each regex is stored in a character trie, so walking the trie along a
+ * file name only yields the patterns whose prefix the name starts with. Patterns that are a plain
+ * literal, or a literal followed by ".*", are decided by the trie alone; the others fall back to
+ * their regex, which only runs for names that already passed the prefix check.
+ * <p/>
+ * Instances are immutable and thread-safe once built.
+ *
+ * @param <T> the type of value associated with each pattern, e.g. a SingerLog.
+ */
+public class FileNamePatternMatcher<T> {
+
+  private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+  private static final String QUANTIFIERS = "?*+{";
+
+  private final TrieNode<T> root = new TrieNode<>();
+  private final int size;
+
+  public FileNamePatternMatcher(Map<String, ? extends Iterable<T>> valuesByRegex) {
+    int index = 0;
+    for (Map.Entry<String, ? extends Iterable<T>> entry : valuesByRegex.entrySet()) {
+      String regex = entry.getKey();
+      String prefix = literalPrefix(regex);
+      String remainder = regex.substring(prefix.length());
+      Pattern pattern = remainder.isEmpty() || remainder.equals(".*")
+                        ? null : PatternCache.getPattern(regex);
+      TrieNode<T> node = root;
+      for (int i = 0; i < prefix.length(); i++) {
+        node = node.children.computeIfAbsent(prefix.charAt(i), c -> new TrieNode<>());
+      }
+      for (T value : entry.getValue()) {
+        node.candidates.add(new Candidate<>(index++, value, pattern, remainder.isEmpty()));
+      }
+    }
+    this.size = index;
+  }
+
+  /**
+   * @return the number of values this matcher was built from.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the values of all patterns matching the file name, in the order they were added.
+   */
+  public List<T> match(String fileName) {
+    List<Candidate<T>> matched = null;
+    TrieNode<T> node = root;
+    for (int i = 0; node != null; i++) {
+      for (Candidate<T> candidate : node.candidates) {
+        if (candidate.matches(fileName, i)) {
+          if (matched == null) {
+            matched = new ArrayList<>();
+          }
+          matched.add(candidate);
+        }
+      }
+      node = i < fileName.length() ? node.children.get(fileName.charAt(i)) : null;
+    }
+    if (matched == null) {
+      return Collections.emptyList();
+    }
+    matched.sort((a, b) -> Integer.compare(a.index, b.index));
+    List<T> result = new ArrayList<>(matched.size());
+    for (Candidate<T> candidate : matched) {
+      result.add(candidate.value);
+    }
+    return result;
+  }
+
+  /**
+   * @return a filter accepting the files whose name matches the regex, which checks the literal
+   * prefix of the regex before running the cached compiled pattern.
+   */
+  public static FileFilter newFileFilter(String regex) {
+    String prefix = literalPrefix(regex);
+    String remainder = regex.substring(prefix.length());
+    if (remainder.isEmpty()) {
+      return file -> file.getName().equals(prefix);
+    }
+    if (remainder.equals(".*")) {
+      return file -> file.getName().startsWith(prefix);
+    }
+    Pattern pattern = PatternCache.getPattern(regex);
+    return file -> file.getName().startsWith(prefix) && pattern.matcher(file.getName()).matches();
+  }
+
+  /**
+   * Returns the longest string every match of the regex must start with. The scan stops at the
+   * first metacharacter; a character followed by a quantifier is not part of the prefix. Regexes
+   * with an alternation have no literal prefix.
+   */
+  static String literalPrefix(String regex) {
+    if (regex.indexOf('|') >= 0) {
+      return "";
+    }
+    int end = 0;
+    while (end < regex.length() && REGEX_METACHARACTERS.indexOf(regex.charAt(end)) < 0) {
+      end++;
+    }
+    if (end > 0 && end < regex.length() && QUANTIFIERS.indexOf(regex.charAt(end)) >= 0) {
+      end--;
+    }
+    return regex.substring(0, end);
+  }
+
+  private static final class TrieNode<T> {
+    private final Map<Character, TrieNode<T>> children = new HashMap<>();
+    private final List<Candidate<T>> candidates = new ArrayList<>();
+  }
+
+  private static final class Candidate<T> {
+
+    private final int index;
+    private final T value;
+    // null if the literal prefix decides the match
+    private final Pattern pattern;
+    private final boolean exact;
+
+    private Candidate(int index, T value, Pattern pattern, boolean exact) {
+      this.index = index;
+      this.value = value;
+      this.pattern = pattern;
+      this.exact = exact;
+    }
+
+    private boolean matches(String fileName, int prefixLength) {
+      if (pattern != null) {
+        return pattern.matcher(fileName).matches();
+      }
+      return !exact || fileName.length() == prefixLength;
+    }
+  }
+}
@@ -39,9 +39,12 @@ import com.pinterest.singer.thrift.configuration.LogStreamReaderConfig;
 import com.pinterest.singer.thrift.configuration.LogStreamWriterConfig;
 import com.pinterest.singer.thrift.configuration.MemqAuditorConfig;
 import com.pinterest.singer.thrift.configuration.MemqWriterConfig;
+import com.pinterest.singer.thrift.configuration.ProcessorSchedulerConfig;
 import com.pinterest.singer.thrift.configuration.PulsarProducerConfig;
 import com.pinterest.singer.thrift.configuration.PulsarWriterConfig;
+import com.pinterest.singer.thrift.configuration.RateQuotaConfig;
 import com.pinterest.singer.thrift.configuration.ReaderType;
+import com.pinterest.singer.thrift.configuration.RetentionCatchUpConfig;
 import com.pinterest.singer.thrift.configuration.RealpinObjectType;
 import com.pinterest.singer.thrift.configuration.RealpinWriterConfig;
 import com.pinterest.singer.thrift.configuration.RegexBasedModifierConfig;
@@ -53,6 +56,8 @@ import com.pinterest.singer.thrift.configuration.SingerRestartConfig;
 import com.pinterest.singer.thrift.configuration.TextLogMessageType;
 import com.pinterest.singer.thrift.configuration.TextReaderConfig;
 import com.pinterest.singer.thrift.configuration.ThriftReaderConfig;
+import com.pinterest.singer.thrift.configuration.TopicRouteConfig;
+import com.pinterest.singer.thrift.configuration.TopicRouteMatchType;
 import com.pinterest.singer.thrift.configuration.TransformType;
 import com.pinterest.singer.thrift.configuration.WriterType;
 
@@ -717,6 +722,37 @@ public class LogConfigUtils {
     if (readerConfig.isSetThriftReaderConfig() && writerConfig.isSetS3WriterConfig()) {
       throw new ConfigurationException("ThriftReader and S3Writer cannot be used together");
     }
+    // Topic routes are written within a single commit by the memory efficient processor.
+    if (hasTopicRoutes(writerConfig) && !processorConfig.isEnableMemoryEfficientProcessor()) {
+      throw new ConfigurationException("Topic routes require the memory efficient processor");
+    }
+
+    Map<String, LogStreamWriterConfig> fanOutWriterConfigs = null;
+    if (logConfiguration.containsKey(SingerConfigDef.FANOUT_WRITERS)) {
+      // The fan-out processor writes batches with writeLogMessages, which does not route messages.
+      if (hasTopicRoutes(writerConfig)) {
+        throw new ConfigurationException("Topic routes cannot be used with fan-out writers");
+      }
+      fanOutWriterConfigs = new HashMap<>();
+      for (String destination : logConfiguration.getStringArray(SingerConfigDef.FANOUT_WRITERS)) {
+        destination = destination.trim();
+        if (destination.isEmpty() || destination.equals(SingerConfigDef.FANOUT_PRIMARY_DESTINATION)
+            || fanOutWriterConfigs.containsKey(destination)) {
+          throw new ConfigurationException("Invalid fan-out destination name: " + destination);
+        }
+        LogStreamWriterConfig fanOutWriterConfig = parseLogStreamWriterConfig(
+            new SubsetConfiguration(logConfiguration,
+                SingerConfigDef.FANOUT_WRITER_PREFIX + destination + "."));
+        if (readerConfig.isSetThriftReaderConfig() && fanOutWriterConfig.isSetS3WriterConfig()) {
+          throw new ConfigurationException("ThriftReader and S3Writer cannot be used together");
+        }
+        if (hasTopicRoutes(fanOutWriterConfig)) {
+          throw new ConfigurationException(
+              "Topic routes cannot be used with fan-out writer: " + destination);
+        }
+        fanOutWriterConfigs.put(destination, fanOutWriterConfig);
+      }
+    }
 
     // initialize the optional fields
     logConfiguration.setThrowExceptionOnMissing(false);
@@ -724,6 +760,9 @@ public class LogConfigUtils {
     SingerLogConfig config = new SingerLogConfig(logName, local_dir, logfile_regex, processorConfig,
         readerConfig, writerConfig);
     config.setLogDecider(logDecider);
+    if (fanOutWriterConfigs != null && !fanOutWriterConfigs.isEmpty()) {
+      config.setFanOutWriterConfigs(fanOutWriterConfigs);
+    }
     if (logConfiguration.containsKey("enableHeadersInjector")){
       boolean enableHeadersInjector = logConfiguration.getBoolean("enableHeadersInjector");
       config.setEnableHeadersInjector(enableHeadersInjector);
@@ -772,6 +811,20 @@ public class LogConfigUtils {
       config.setSkipDraining(logConfiguration.getBoolean(SingerConfigDef.SKIP_DRAINING));
     }
 
+    if (logConfiguration.containsKey(SingerConfigDef.SCHEDULING_WEIGHT)) {
+      int schedulingWeight = logConfiguration.getInt(SingerConfigDef.SCHEDULING_WEIGHT);
+      if (schedulingWeight <= 0) {
+        throw new ConfigurationException("Invalid schedulingWeight: " + schedulingWeight);
+      }
+      config.setSchedulingWeight(schedulingWeight);
+    }
+
+    AbstractConfiguration rateQuotaConfiguration =
+        new SubsetConfiguration(logConfiguration, SingerConfigDef.RATE_QUOTA_PREFIX);
+    if (!rateQuotaConfiguration.isEmpty()) {
+      config.setRateQuotaConfig(parseRateQuotaConfig(rateQuotaConfiguration));
+    }
+
     // Parse pod allowlist configuration for Kubernetes environments
     if (logConfiguration.containsKey(SingerConfigDef.POD_ALLOWLIST)) {
       List<Object> allowlistObjects = logConfiguration.getList(SingerConfigDef.POD_ALLOWLIST);
@@ -914,12 +967,169 @@ public class LogConfigUtils {
     if (singerConfiguration.containsKey("fsEventQueueImplementation")) {
       singerConfig.setFsEventQueueImplementation(singerConfiguration.getString("fsEventQueueImplementation"));
     }
+    if (singerConfiguration.containsKey(SingerConfigDef.FS_EVENT_PROCESSOR_THREADS)) {
+      int fsEventProcessorThreads =
+          singerConfiguration.getInt(SingerConfigDef.FS_EVENT_PROCESSOR_THREADS);
+      if (fsEventProcessorThreads < 1) {
+        throw new ConfigurationException("Invalid fsEventProcessorThreads: "
+            + fsEventProcessorThreads);
+      }
+      singerConfig.setFsEventProcessorThreads(fsEventProcessorThreads);
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.FS_EVENT_SHARD_QUEUE_SIZE)) {
+      int fsEventShardQueueSize =
+          singerConfiguration.getInt(SingerConfigDef.FS_EVENT_SHARD_QUEUE_SIZE);
+      if (fsEventShardQueueSize < 1) {
+        throw new ConfigurationException("Invalid fsEventShardQueueSize: " + fsEventShardQueueSize);
+      }
+      singerConfig.setFsEventShardQueueSize(fsEventShardQueueSize);
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.OVERFLOW_RECONCILE_INTERVAL_MILLIS)) {
+      int reconcileIntervalMillis =
+          singerConfiguration.getInt(SingerConfigDef.OVERFLOW_RECONCILE_INTERVAL_MILLIS);
+      if (reconcileIntervalMillis < 0) {
+        throw new ConfigurationException("Invalid overflowReconcileIntervalInMillis: "
+            + reconcileIntervalMillis);
+      }
+      singerConfig.setOverflowReconcileIntervalInMillis(reconcileIntervalMillis);
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.LOG_STREAM_INIT_THREADS)) {
+      int logStreamInitThreads = singerConfiguration.getInt(SingerConfigDef.LOG_STREAM_INIT_THREADS);
+      if (logStreamInitThreads < 1) {
+        throw new ConfigurationException("Invalid logStreamInitThreads: " + logStreamInitThreads);
+      }
+      singerConfig.setLogStreamInitThreads(logStreamInitThreads);
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.STREAM_TOPOLOGY_SNAPSHOT_PATH)) {
+      singerConfig.setStreamTopologySnapshotPath(
+          singerConfiguration.getString(SingerConfigDef.STREAM_TOPOLOGY_SNAPSHOT_PATH));
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.STREAM_TOPOLOGY_SNAPSHOT_INTERVAL_SECS)) {
+      int snapshotIntervalSecs =
+          singerConfiguration.getInt(SingerConfigDef.STREAM_TOPOLOGY_SNAPSHOT_INTERVAL_SECS);
+      if (snapshotIntervalSecs < 1) {
+        throw new ConfigurationException("Invalid streamTopologySnapshotIntervalInSecs: "
+            + snapshotIntervalSecs);
+      }
+      singerConfig.setStreamTopologySnapshotIntervalInSecs(snapshotIntervalSecs);
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.STREAM_TOPOLOGY_SNAPSHOT_MAX_AGE_SECS)) {
+      singerConfig.setStreamTopologySnapshotMaxAgeInSecs(
+          singerConfiguration.getInt(SingerConfigDef.STREAM_TOPOLOGY_SNAPSHOT_MAX_AGE_SECS));
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.ENABLE_LOG_CONFIG_HOT_RELOAD)) {
+      singerConfig.setEnableLogConfigHotReload(
+          singerConfiguration.getBoolean(SingerConfigDef.ENABLE_LOG_CONFIG_HOT_RELOAD));
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.DRAIN_THREAD_POOL_SIZE)) {
+      int drainThreadPoolSize = singerConfiguration.getInt(SingerConfigDef.DRAIN_THREAD_POOL_SIZE);
+      if (drainThreadPoolSize < 0) {
+        throw new ConfigurationException("Invalid drainThreadPoolSize: " + drainThreadPoolSize);
+      }
+      singerConfig.setDrainThreadPoolSize(drainThreadPoolSize);
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.CHECKSUM_VERIFICATION_THREADS)) {
+      int checksumVerificationThreads =
+          singerConfiguration.getInt(SingerConfigDef.CHECKSUM_VERIFICATION_THREADS);
+      if (checksumVerificationThreads < 0) {
+        throw new ConfigurationException("Invalid checksumVerificationThreads: "
+            + checksumVerificationThreads);
+      }
+      singerConfig.setChecksumVerificationThreads(checksumVerificationThreads);
+    }
+    if (singerConfiguration.containsKey(SingerConfigDef.PARALLEL_CHECKSUM_VERIFICATION_MIN_BYTES)) {
+      singerConfig.setParallelChecksumVerificationMinBytes(
+          singerConfiguration.getLong(SingerConfigDef.PARALLEL_CHECKSUM_VERIFICATION_MIN_BYTES));
+    }
     if (singerConfiguration.containsKey("enablePooledReaderBuffers")) {
       singerConfig.setEnablePooledReaderBuffers(singerConfiguration.getBoolean("enablePooledReaderBuffers"));
     }
+    if (singerConfiguration.containsKey(
+        SingerConfigDef.PROCESSOR_SCHEDULER_PREFIX + SingerConfigDef.SCHEDULER_ENABLED)) {
+      singerConfig.setProcessorSchedulerConfig(parseProcessorSchedulerConfig(
+          new SubsetConfiguration(singerConfiguration, SingerConfigDef.PROCESSOR_SCHEDULER_PREFIX)));
+    }
+    if (singerConfiguration.containsKey(
+        SingerConfigDef.RETENTION_CATCH_UP_PREFIX + SingerConfigDef.CATCH_UP_ENABLED)) {
+      singerConfig.setRetentionCatchUpConfig(parseRetentionCatchUpConfig(
+          new SubsetConfiguration(singerConfiguration, SingerConfigDef.RETENTION_CATCH_UP_PREFIX)));
+    }
+    AbstractConfiguration hostRateQuotaConfiguration =
+        new SubsetConfiguration(singerConfiguration, SingerConfigDef.HOST_RATE_QUOTA_PREFIX);
+    if (!hostRateQuotaConfiguration.isEmpty()) {
+      singerConfig.setHostRateQuotaConfig(parseRateQuotaConfig(hostRateQuotaConfiguration));
+    }
     return singerConfig;
   }
 
+  protected static RateQuotaConfig parseRateQuotaConfig(AbstractConfiguration quotaConfiguration) throws ConfigurationException {
+    RateQuotaConfig config = new RateQuotaConfig();
+    if (quotaConfiguration.containsKey(SingerConfigDef.QUOTA_BYTES_PER_SECOND)) {
+      config.setBytesPerSecond(quotaConfiguration.getLong(SingerConfigDef.QUOTA_BYTES_PER_SECOND));
+    }
+    if (quotaConfiguration.containsKey(SingerConfigDef.QUOTA_MESSAGES_PER_SECOND)) {
+      config.setMessagesPerSecond(
+          quotaConfiguration.getLong(SingerConfigDef.QUOTA_MESSAGES_PER_SECOND));
+    }
+    if (quotaConfiguration.containsKey(SingerConfigDef.QUOTA_BURST_SECS)) {
+      config.setBurstInSeconds(quotaConfiguration.getInt(SingerConfigDef.QUOTA_BURST_SECS));
+    }
+    if (config.getBytesPerSecond() < 0 || config.getMessagesPerSecond() < 0
+        || config.getBurstInSeconds() < 0) {
+      throw new ConfigurationException("Invalid rate quota config: " + config);
+    }
+    return config;
+  }
+
+  protected static RetentionCatchUpConfig parseRetentionCatchUpConfig(AbstractConfiguration catchUpConfiguration) throws ConfigurationException {
+    RetentionCatchUpConfig config = new RetentionCatchUpConfig();
+    config.setEnabled(catchUpConfiguration.getBoolean(SingerConfigDef.CATCH_UP_ENABLED));
+    if (catchUpConfiguration.containsKey(SingerConfigDef.CATCH_UP_WINDOW_SECS)) {
+      config.setCatchUpWindowInSeconds(catchUpConfiguration.getInt(SingerConfigDef.CATCH_UP_WINDOW_SECS));
+    }
+    if (catchUpConfiguration.containsKey(SingerConfigDef.CATCH_UP_BATCH_SIZE_MULTIPLIER)) {
+      config.setBatchSizeMultiplier(
+          catchUpConfiguration.getInt(SingerConfigDef.CATCH_UP_BATCH_SIZE_MULTIPLIER));
+    }
+    if (catchUpConfiguration.containsKey(SingerConfigDef.CATCH_UP_TIME_SLICE_MULTIPLIER)) {
+      config.setTimeSliceMultiplier(
+          catchUpConfiguration.getInt(SingerConfigDef.CATCH_UP_TIME_SLICE_MULTIPLIER));
+    }
+    if (catchUpConfiguration.containsKey(SingerConfigDef.CATCH_UP_THREAD_POOL_SIZE)) {
+      config.setCatchUpThreadPoolSize(
+          catchUpConfiguration.getInt(SingerConfigDef.CATCH_UP_THREAD_POOL_SIZE));
+    }
+    if (config.getBatchSizeMultiplier() < 1 || config.getTimeSliceMultiplier() < 1
+        || config.getCatchUpThreadPoolSize() < 1) {
+      throw new ConfigurationException("Invalid retention catch-up config: " + config);
+    }
+    return config;
+  }
+
+  protected static ProcessorSchedulerConfig parseProcessorSchedulerConfig(AbstractConfiguration schedulerConfiguration) throws ConfigurationException {
+    ProcessorSchedulerConfig config = new ProcessorSchedulerConfig();
+    config.setEnabled(schedulerConfiguration.getBoolean(SingerConfigDef.SCHEDULER_ENABLED));
+    if (schedulerConfiguration.containsKey(SingerConfigDef.SCHEDULER_LAG_BOOST_THRESHOLD_MILLIS)) {
+      config.setLagBoostThresholdInMillis(
+          schedulerConfiguration.getLong(SingerConfigDef.SCHEDULER_LAG_BOOST_THRESHOLD_MILLIS));
+    }
+    if (schedulerConfiguration.containsKey(SingerConfigDef.SCHEDULER_MAX_LAG_BOOST)) {
+      config.setMaxLagBoost(schedulerConfiguration.getDouble(SingerConfigDef.SCHEDULER_MAX_LAG_BOOST));
+    }
+    if (schedulerConfiguration.containsKey(SingerConfigDef.SCHEDULER_RETENTION_DEADLINE_WINDOW_SECS)) {
+      config.setRetentionDeadlineWindowInSeconds(
+          schedulerConfiguration.getInt(SingerConfigDef.SCHEDULER_RETENTION_DEADLINE_WINDOW_SECS));
+    }
+    if (schedulerConfiguration.containsKey(SingerConfigDef.SCHEDULER_RETENTION_DEADLINE_BOOST)) {
+      config.setRetentionDeadlineBoost(
+          schedulerConfiguration.getDouble(SingerConfigDef.SCHEDULER_RETENTION_DEADLINE_BOOST));
+    }
+    if (config.getMaxLagBoost() < 1.0 || config.getRetentionDeadlineBoost() < 1.0) {
+      throw new ConfigurationException("Processor scheduler boosts must not be smaller than 1.0");
+    }
+    return config;
+  }
+
   public static LogStreamWriterConfig parseLogStreamWriterConfig(AbstractConfiguration writerConfiguration) throws ConfigurationException {
     writerConfiguration.setThrowExceptionOnMissing(true);
     String writerTypeString = writerConfiguration.getString("type");
@@ -1163,9 +1373,68 @@ public class LogConfigUtils {
     writerConfig.setAuditingEnabled(auditingEnabled);
     writerConfig.setSkipNoLeaderPartitions(skipNoLeaderPartitions);
     writerConfig.setWriteTimeoutInSeconds(writeTimeoutInSeconds);
+    if (kafkaWriterConfiguration.containsKey(SingerConfigDef.TOPIC_ROUTES)) {
+      List<TopicRouteConfig> topicRoutes = new ArrayList<>();
+      for (String route : kafkaWriterConfiguration.getStringArray(SingerConfigDef.TOPIC_ROUTES)) {
+        topicRoutes.add(parseTopicRouteConfig(route.trim(), new SubsetConfiguration(
+            kafkaWriterConfiguration, SingerConfigDef.TOPIC_ROUTE_PREFIX + route.trim() + ".")));
+      }
+      if (!topicRoutes.isEmpty()) {
+        writerConfig.setTopicRoutes(topicRoutes);
+      }
+    }
     return writerConfig;
   }
 
+  protected static TopicRouteConfig parseTopicRouteConfig(String route,
+                                                          AbstractConfiguration routeConfiguration)
+      throws ConfigurationException {
+    if (!routeConfiguration.containsKey(SingerConfigDef.TOPIC)
+        || !routeConfiguration.containsKey(SingerConfigDef.ROUTE_MATCH_TYPE)
+        || !routeConfiguration.containsKey(SingerConfigDef.ROUTE_PATTERN)) {
+      throw new ConfigurationException("Topic route " + route + " requires "
+          + SingerConfigDef.TOPIC + ", " + SingerConfigDef.ROUTE_MATCH_TYPE + " and "
+          + SingerConfigDef.ROUTE_PATTERN);
+    }
+    TopicRouteMatchType matchType;
+    try {
+      matchType = TopicRouteMatchType.valueOf(
+          routeConfiguration.getString(SingerConfigDef.ROUTE_MATCH_TYPE).toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new ConfigurationException("Invalid match type of topic route " + route);
+    }
+    String pattern = routeConfiguration.getString(SingerConfigDef.ROUTE_PATTERN);
+    TopicRouteConfig routeConfig = new TopicRouteConfig(
+        routeConfiguration.getString(SingerConfigDef.TOPIC), matchType, pattern);
+    switch (matchType) {
+      case HEADER:
+        if (!routeConfiguration.containsKey(SingerConfigDef.ROUTE_HEADER_NAME)) {
+          throw new ConfigurationException("Topic route " + route + " requires "
+              + SingerConfigDef.ROUTE_HEADER_NAME);
+        }
+        routeConfig.setHeaderName(routeConfiguration.getString(SingerConfigDef.ROUTE_HEADER_NAME));
+        break;
+      case REGEX:
+        try {
+          Pattern.compile(pattern);
+        } catch (PatternSyntaxException e) {
+          throw new ConfigurationException("Invalid pattern of topic route " + route);
+        }
+        break;
+      case THRIFT_FIELD:
+        if (!routeConfiguration.containsKey(SingerConfigDef.ROUTE_THRIFT_FIELD_ID)) {
+          throw new ConfigurationException("Topic route " + route + " requires "
+              + SingerConfigDef.ROUTE_THRIFT_FIELD_ID);
+        }
+        routeConfig.setThriftFieldId(
+            routeConfiguration.getShort(SingerConfigDef.ROUTE_THRIFT_FIELD_ID));
+        break;
+      default:
+        break;
+    }
+    return routeConfig;
+  }
+
   private static NoOpWriteConfig parseNoOpWriterConfig(AbstractConfiguration configuration) {
     configuration.setThrowExceptionOnMissing(true);
     String topic = configuration.getString(SingerConfigDef.TOPIC);
@@ -1363,6 +1632,11 @@ public class LogConfigUtils {
     return tmpBrokers;
   }
 
+  private static boolean hasTopicRoutes(LogStreamWriterConfig writerConfig) {
+    return writerConfig.isSetKafkaWriterConfig()
+        && writerConfig.getKafkaWriterConfig().isSetTopicRoutes();
+  }
+
   private static LogStreamReaderConfig parseLogStreamReaderConfig(AbstractConfiguration readerConfiguration) throws ConfigurationException {
     readerConfiguration.setThrowExceptionOnMissing(true);
     String readerTypeString = readerConfiguration.getString("type");
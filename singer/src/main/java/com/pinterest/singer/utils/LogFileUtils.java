@@ -16,16 +16,17 @@
 package com.pinterest.singer.utils;
 
 import com.pinterest.singer.common.LogStream;
+import com.pinterest.singer.monitor.FileCatalog;
 import com.pinterest.singer.thrift.configuration.FileNameMatchMode;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 
-import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 
 /**
  * Utility class for LogFile
@@ -38,6 +39,11 @@ public final class LogFileUtils {
   private LogFileUtils() {
   }
 
+  /**
+   * Find the file of a log stream by its inode, e.g. after the file was renamed. The name of the
+   * file is looked up among the catalogued files of the stream in the FileCatalog of the
+   * directory, and the directory is only listed again if the catalog entry turns out to be stale.
+   */
   public static String getFilePathByInode(LogStream logStream, long inode)
       throws IOException {
     String result = null;
@@ -49,17 +55,36 @@ public final class LogFileUtils {
       if (logConfig.getFilenameMatchMode() == FileNameMatchMode.PREFIX) {
         regexStr += ".*";
       }
+      FileFilter fileFilter = FileNamePatternMatcher.newFileFilter(regexStr);
+      String fileName =
+          FileCatalog.getInstance().getFileNameByInode(dir.toPath(), regexStr, inode);
+      if (fileName == null) {
+        return null;
+      }
+      File file = new File(dir, fileName);
+      if (!fileFilter.accept(file)) {
+        return null;
+      }
+      if (hasInode(file, inode)) {
+        return file.getAbsolutePath();
+      }
       LOG.info("Matching files under {} with filter {}", logDir, regexStr);
-      FileFilter fileFilter = new RegexFileFilter(regexStr);
       File[] files = dir.listFiles(fileFilter);
-      for (File file : files) {
-        String path = file.getAbsolutePath();
-        if (inode == SingerUtils.getFileInode(path)) {
-          result = path;
+      for (File candidate : files) {
+        if (hasInode(candidate, inode)) {
+          result = candidate.getAbsolutePath();
           break;
         }
       }
     }
     return result;
   }
+
+  private static boolean hasInode(File file, long inode) throws IOException {
+    try {
+      return inode == SingerUtils.getFileInode(file.getAbsolutePath());
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
 }
@@ -77,6 +77,8 @@ public class SingerUtils {
   private static final Logger LOG = LoggerFactory.getLogger(SingerUtils.class);
 
   public static final FileSystem defaultFileSystem = FileSystems.getDefault();
+  private static final boolean DEFAULT_FS_SUPPORTS_UNIX_ATTRIBUTES =
+      defaultFileSystem.supportedFileAttributeViews().contains("unix");
   public static String HOSTNAME = getHostname();
   public static List<String> HOSTNAME_PREFIXES = getHostnamePrefixes("-");
 
@@ -179,6 +181,9 @@ public class SingerUtils {
    * @return The inode number of that file
    */
   public static long getFileInode(Path filePath) throws IOException {
+    if (supportsUnixAttributes(filePath)) {
+      return (Long) Files.getAttribute(filePath, "unix:ino");
+    }
     BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
     Object fileKey = attrs.fileKey();
     String keyStr = fileKey.toString();
@@ -186,6 +191,16 @@ public class SingerUtils {
     return Long.parseLong(inodeStr);
   }
 
+  /**
+   * @return whether the "unix" attribute view, which exposes the inode of a file without parsing
+   * its file key, is available for the path.
+   */
+  public static boolean supportsUnixAttributes(Path path) {
+    FileSystem fileSystem = path.getFileSystem();
+    return fileSystem == defaultFileSystem ? DEFAULT_FS_SUPPORTS_UNIX_ATTRIBUTES
+                                           : fileSystem.supportedFileAttributeViews().contains("unix");
+  }
+
   public static long getFileInode(String filePathStr) throws IOException {
     Path filePath = defaultFileSystem.getPath(filePathStr);
     return getFileInode(filePath);
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.utils;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p/>
+ * Instead of a token count, the bucket keeps the time at which all consumed tokens have been
+ * refilled. Consuming tokens pushes that time forward, and the bucket is in debt as long as it
+ * lies in the future. Tokens accumulate for at most burstInSeconds while the bucket is not used.
+ * <p/>
+ * Callers usually do not know the exact cost of an operation upfront (e.g. the bytes of the next
+ * batch), so the bucket is checked with getDelayInNanos() before the operation and charged with
+ * consume() after it. A single operation may therefore overdraw the bucket, and the debt is paid
+ * back by waiting before the next operation.
+ */
+public class TokenBucket {
+
+  private final double nanosPerToken;
+  private final long burstInNanos;
+
+  // The time in nanoseconds at which all consumed tokens have been refilled.
+  private final AtomicLong refilledAt;
+
+  public TokenBucket(long tokensPerSecond, int burstInSeconds) {
+    Preconditions.checkArgument(tokensPerSecond > 0);
+    Preconditions.checkArgument(burstInSeconds >= 0);
+    this.nanosPerToken = (double) TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+    this.burstInNanos = TimeUnit.SECONDS.toNanos(burstInSeconds);
+    this.refilledAt = new AtomicLong(System.nanoTime() - burstInNanos);
+  }
+
+  /**
+   * Take the given number of tokens from the bucket. The bucket may go into debt.
+   */
+  public void consume(long tokens, long nowInNanos) {
+    long costInNanos = (long) (tokens * nanosPerToken);
+    long current;
+    long next;
+    do {
+      current = refilledAt.get();
+      next = Math.max(current, nowInNanos - burstInNanos) + costInNanos;
+    } while (!refilledAt.compareAndSet(current, next));
+  }
+
+  /**
+   * @return the nanoseconds to wait until the bucket is out of debt, 0 if tokens are available.
+   */
+  public long getDelayInNanos(long nowInNanos) {
+    return Math.max(0, refilledAt.get() - nowInNanos);
+  }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.writer;
+
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
+
+import org.apache.kafka.common.PartitionInfo;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *  Logging audit bookkeeping of the messages of a batch, one {@link Bucket} per partition.
+ *
+ *  Buckets are indexed by partition id and keep the LoggingAuditHeaders of tracked and invalid
+ *  messages in arrays indexed by the original index of the message within the bucket. The arrays
+ *  grow to the largest bucket seen and are reused by later batches, so that a batch does not
+ *  allocate any bookkeeping once the writer has warmed up.
+ *
+ *  This class is not thread safe. It is meant to be reset and filled by the thread writing a batch
+ *  and read once the batch has been written.
+ */
+public class AuditBookkeeping {
+
+  private static final Bucket[] NO_BUCKETS = new Bucket[0];
+
+  private Bucket[] buckets = NO_BUCKETS;
+
+  /**
+   *  Prepare the bookkeeping for a new batch written to the given partitions. Buckets of the
+   *  partitions are cleared, buckets of other partitions must not be used until the next reset.
+   */
+  public void reset(List<PartitionInfo> partitions) {
+    int maxPartitionId = -1;
+    for (PartitionInfo partitionInfo : partitions) {
+      maxPartitionId = Math.max(maxPartitionId, partitionInfo.partition());
+    }
+    if (maxPartitionId >= buckets.length) {
+      buckets = Arrays.copyOf(buckets, maxPartitionId + 1);
+    }
+    for (PartitionInfo partitionInfo : partitions) {
+      int partitionId = partitionInfo.partition();
+      if (buckets[partitionId] == null) {
+        buckets[partitionId] = new Bucket();
+      } else {
+        buckets[partitionId].reset();
+      }
+    }
+  }
+
+  public Bucket getBucket(int partitionId) {
+    return buckets[partitionId];
+  }
+
+  /**
+   *  Bookkeeping of the messages assigned to one partition.
+   *
+   *  The original index of a message is its index within the bucket assuming no message of the
+   *  bucket is skipped. For example: for ith partition, there are 6 message m0, m1, m2, m3, m4, m5
+   *  assigned. The original index will be 0, 1, 2, 3, 4, 5. If m1 and m3 are skipped due to
+   *  corruption, the actual messages sent to Kafka will be m0, m2, m4, m5 and actual index will be
+   *  0, 1, 2, 3.
+   */
+  public static final class Bucket {
+
+    private static final LoggingAuditHeaders[] NO_HEADERS = new LoggingAuditHeaders[0];
+    private static final int MIN_CAPACITY = 16;
+
+    private int numMessages = 0;
+    private int numTracked = 0;
+    private int numInvalid = 0;
+    private LoggingAuditHeaders[] tracked = NO_HEADERS;
+    private LoggingAuditHeaders[] invalid = NO_HEADERS;
+
+    /**
+     * @return the original index of the next message assigned to this bucket.
+     */
+    public int nextIndex() {
+      return numMessages++;
+    }
+
+    /**
+     * @return the number of messages assigned to this bucket, including skipped messages.
+     */
+    public int getNumMessages() {
+      return numMessages;
+    }
+
+    public void setTracked(int index, LoggingAuditHeaders headers) {
+      tracked = ensureCapacity(tracked, index);
+      if (tracked[index] == null) {
+        numTracked++;
+      }
+      tracked[index] = headers;
+    }
+
+    public void setInvalid(int index, LoggingAuditHeaders headers) {
+      invalid = ensureCapacity(invalid, index);
+      if (invalid[index] == null) {
+        numInvalid++;
+      }
+      invalid[index] = headers;
+    }
+
+    /**
+     * @return the LoggingAuditHeaders of the tracked message at the original index, or null if the
+     *         message is not tracked.
+     */
+    public LoggingAuditHeaders getTracked(int index) {
+      return index < tracked.length ? tracked[index] : null;
+    }
+
+    /**
+     * @return the LoggingAuditHeaders of the invalid message at the original index, or null if the
+     *         message is valid.
+     */
+    public LoggingAuditHeaders getInvalid(int index) {
+      return index < invalid.length ? invalid[index] : null;
+    }
+
+    public int getNumTracked() {
+      return numTracked;
+    }
+
+    public int getNumInvalid() {
+      return numInvalid;
+    }
+
+    private void reset() {
+      // only the slots of the previous batch can be set
+      if (numTracked > 0) {
+        Arrays.fill(tracked, 0, Math.min(numMessages, tracked.length), null);
+      }
+      if (numInvalid > 0) {
+        Arrays.fill(invalid, 0, Math.min(numMessages, invalid.length), null);
+      }
+      numMessages = 0;
+      numTracked = 0;
+      numInvalid = 0;
+    }
+
+    private static LoggingAuditHeaders[] ensureCapacity(LoggingAuditHeaders[] headers, int index) {
+      if (index < headers.length) {
+        return headers;
+      }
+      int capacity = Math.max(MIN_CAPACITY, headers.length * 2);
+      return Arrays.copyOf(headers, Math.max(capacity, index + 1));
+    }
+  }
+}
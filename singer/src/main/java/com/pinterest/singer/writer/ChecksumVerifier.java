@@ -0,0 +1,122 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.writer;
+
+import com.pinterest.singer.thrift.LogMessage;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+/**
+ *  Verifies the checksums of the messages of large batches on a pool of worker threads shared by
+ *  all log streams, so that verifying large messages does not serialize the processing of a log
+ *  stream on its processor thread.
+ *
+ *  A batch is split into chunks of consecutive messages. The last chunk is verified by the calling
+ *  thread while the other chunks are verified by the pool.
+ */
+public class ChecksumVerifier {
+
+  /**
+   *  chunks hold consecutive messages until they have at least this many bytes.
+   */
+  private static final int MIN_CHUNK_BYTES = 256 * 1024;
+
+  private final ExecutorService executor;
+  private final long minBatchBytes;
+
+  /**
+   * @param executor the worker pool verifying the chunks of batches
+   * @param minBatchBytes batches with fewer bytes of messages are verified by the calling thread
+   */
+  public ChecksumVerifier(ExecutorService executor, long minBatchBytes) {
+    Preconditions.checkNotNull(executor);
+    this.executor = executor;
+    this.minBatchBytes = minBatchBytes;
+  }
+
+  /**
+   * @return whether the batch is large enough to be verified in parallel.
+   */
+  public boolean shouldVerifyInParallel(List<LogMessage> logMessages) {
+    long batchBytes = 0;
+    for (LogMessage logMessage : logMessages) {
+      batchBytes += getMessageBytes(logMessage);
+      if (batchBytes >= minBatchBytes) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   *  Verify the messages of a batch in parallel.
+   *
+   * @param logMessages the messages of the batch
+   * @param verifier returns whether a message is valid, called concurrently by several threads
+   * @return whether each message is valid, by index of the message in logMessages
+   */
+  public boolean[] verify(List<LogMessage> logMessages, Predicate<LogMessage> verifier)
+      throws InterruptedException, ExecutionException {
+    boolean[] validMessages = new boolean[logMessages.size()];
+    List<Future<?>> futures = new ArrayList<>();
+    try {
+      int chunkStart = 0;
+      long chunkBytes = 0;
+      for (int i = 0; i < logMessages.size(); i++) {
+        chunkBytes += getMessageBytes(logMessages.get(i));
+        if (chunkBytes >= MIN_CHUNK_BYTES && i + 1 < logMessages.size()) {
+          int start = chunkStart;
+          int end = i + 1;
+          futures.add(executor.submit(
+              () -> verifyChunk(logMessages, start, end, verifier, validMessages)));
+          chunkStart = end;
+          chunkBytes = 0;
+        }
+      }
+      verifyChunk(logMessages, chunkStart, logMessages.size(), verifier, validMessages);
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return validMessages;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private static void verifyChunk(List<LogMessage> logMessages, int start, int end,
+                                  Predicate<LogMessage> verifier, boolean[] validMessages) {
+    for (int i = start; i < end; i++) {
+      validMessages[i] = verifier.test(logMessages.get(i));
+    }
+  }
+
+  private static int getMessageBytes(LogMessage logMessage) {
+    return logMessage.getMessage() == null ? 0 : logMessage.getMessage().length;
+  }
+}
@@ -25,9 +25,11 @@ import com.pinterest.singer.loggingaudit.client.AuditHeadersGenerator;
 import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
 import com.pinterest.singer.loggingaudit.thrift.configuration.AuditConfig;
 import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+import com.pinterest.singer.thrift.ChecksumType;
 import com.pinterest.singer.thrift.LogMessage;
 import com.pinterest.singer.thrift.configuration.KafkaProducerConfig;
 import com.pinterest.singer.thrift.configuration.SingerRestartConfig;
+import com.pinterest.singer.utils.ChecksumUtils;
 import com.pinterest.singer.utils.CommonUtils;
 import com.pinterest.singer.utils.PartitionComparator;
 
@@ -45,6 +47,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -57,7 +60,6 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.CRC32;
 
 /**
  * LogStreamWriter implementation that write to Kafka cluster.
@@ -71,9 +73,9 @@ public class KafkaWriter implements LogStreamWriter {
   protected static final PartitionComparator COMPARATOR = new PartitionComparator();
 
   private static final ThreadLocal<TSerializer> SERIALIZER = ThreadLocal.withInitial(TSerializer::new);
-  private static ThreadLocal<CRC32> localCRC = ThreadLocal.withInitial(CRC32::new);
   private static final String LOGGING_AUDIT_HEADER_KEY = "loggingAuditHeaders";
   private static final String CRC_HEADER_KEY = "messageCRC";
+  private static final String CHECKSUM_TYPE_HEADER_KEY = "messageChecksumType";
 
 
   // Counter for the number of batch message writing failures
@@ -114,6 +116,11 @@ public class KafkaWriter implements LogStreamWriter {
    */
   protected HeadersInjector headersInjector = null;
 
+  /**
+   *  Logging audit bookkeeping of the batch being written, reused across batches.
+   */
+  private final AuditBookkeeping auditBookkeeping = new AuditBookkeeping();
+
 
   public boolean isEnableLoggingAudit() {
     return enableLoggingAudit;
@@ -278,26 +285,10 @@ public class KafkaWriter implements LogStreamWriter {
    * @param partitions unordered list of partitionInfo to be used for partitioning this batch
    * @param topic the kafka topic
    * @param logMessages the messages that will be written to kafka
-   * @param mapOfTrackedMessageMaps a map whose key is the partitionId, value is an inner map. The
-   *                               key of the inner map is indexWithinTheBucket and the value of the
-   *                               inner map is LoggingAuditHeaders object of tracked messages
-   * @param mapOfInvalidMessageMaps a map whose key is the partitionId, value is an inner map. The
-   *                               key of the inner map is indexWithinTheBucket and the value of the
-   *                               inner map is LoggingAuditHeaders object of invalid messages(note:
-   *                               invalid messages may or may not be tracked)
-   * @param mapOfOriginalIndexWithinBucket a map whose key is the partitionId, value is original
-   *                                       index within the bucket. The init value  is -1. Anytime
-   *                                       a message is assigned to a partition (may be skipped),
-   *                                       the value increases by 1. If certain messages are skipped
-   *                                       due to corruption, i.e. they are not added to the bucket,
-   *                                       the actual index of those un-skipped messages could be
-   *                                       lower. The original index means assuming no messages are
-   *                                       skipped.
-   *                                       For example: for ith partition, there are 6 message m0,
-   *                                       m1, m2, m3, m4, m5 assigned. The original index will be
-   *                                       0, 1, 2, 3, 4, 5. If m1 and m3 are skipped due to
-   *                                       corruption, the actual messages sent to Kafka will be
-   *                                       m0, m2, m4, m5 and actual index will be 0, 1, 2, 3.
+   * @param auditBookkeeping the bookkeeping to reset and fill with the LoggingAuditHeaders of
+   *                         tracked and invalid messages (note: invalid messages may or may not be
+   *                         tracked) of each partition, by original index within the bucket. See
+   *                         {@link AuditBookkeeping.Bucket} for the original index.
    *
    * @return a list of message lists that are classified based on partitions.
    */
@@ -305,9 +296,7 @@ public class KafkaWriter implements LogStreamWriter {
       List<PartitionInfo> partitions,
       String topic,
       List<LogMessage> logMessages,
-      Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfTrackedMessageMaps,
-      Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfInvalidMessageMaps,
-      Map<Integer, Integer> mapOfOriginalIndexWithinBucket) throws Exception {
+      AuditBookkeeping auditBookkeeping) throws Exception {
     LOG.info("Collate {} messages of topic {} for logStream {}", logMessages.size(), topic, logName);
 
     Map<Integer, List<ProducerRecord<byte[], byte[]>>> buckets = new HashMap<>();
@@ -326,17 +315,28 @@ public class KafkaWriter implements LogStreamWriter {
 
       for (int i = 0; i < validPartitions.size(); i++) {
         // for each partitionId, there is a corresponding bucket in buckets and a corresponding
-        // trackedMessageMap in mapOfTrackedMessageMaps and corresponding invalidMessageMap in
-        // mapOfInvalidMessageMaps
+        // bucket in auditBookkeeping
         int partitionId = validPartitions.get(i).partition();
         buckets.put(partitionId, new ArrayList<>());
-        mapOfTrackedMessageMaps.put(partitionId, new HashMap<Integer, LoggingAuditHeaders>());
-        mapOfInvalidMessageMaps.put(partitionId, new HashMap<Integer, LoggingAuditHeaders>());
-        mapOfOriginalIndexWithinBucket.put(partitionId, -1);
+      }
+      auditBookkeeping.reset(validPartitions);
+
+      // checksums of large batches are verified on the checksum verification pool, after the
+      // headers and checksums of messages are set by Singer if auditing starts at Singer
+      boolean[] validMessages = null;
+      ChecksumVerifier checksumVerifier = SingerSettings.getChecksumVerifier();
+      if (enableLoggingAudit && checksumVerifier != null
+          && checksumVerifier.shouldVerifyInParallel(logMessages)) {
+        for (LogMessage msg : logMessages) {
+          checkAndSetLoggingAuditHeadersForLogMessage(msg);
+        }
+        validMessages = checksumVerifier.verify(logMessages,
+            msg -> msg.getLoggingAuditHeaders() == null || checkMessageValid(msg));
       }
 
       ProducerRecord<byte[], byte[]> keyedMessage;
-      for (LogMessage msg : logMessages) {
+      for (int i = 0; i < logMessages.size(); i++) {
+        LogMessage msg = logMessages.get(i);
         byte[] key = null;
         if (msg.isSetKey()) {
           key = msg.getKey();
@@ -346,13 +346,17 @@ public class KafkaWriter implements LogStreamWriter {
           partitionId = validPartitions.get(partitionId).partition();
         }
         keyedMessage = new ProducerRecord<>(topic, partitionId, key, msg.getMessage());
-        mapOfOriginalIndexWithinBucket.put(partitionId, 1 + mapOfOriginalIndexWithinBucket.get(partitionId));
+        AuditBookkeeping.Bucket auditBucket = auditBookkeeping.getBucket(partitionId);
+        int originalIndex = auditBucket.nextIndex();
         Headers headers = keyedMessage.headers();
-        checkAndSetLoggingAuditHeadersForLogMessage(msg);
+        if (validMessages == null) {
+          checkAndSetLoggingAuditHeadersForLogMessage(msg);
+        }
         if (msg.getLoggingAuditHeaders() != null) {
+          boolean isMessageValid = validMessages != null ? validMessages[i] : checkMessageValid(msg);
           // check if the message should be skipped
-          if (checkMessageValidAndInjectHeaders(msg, headers, mapOfOriginalIndexWithinBucket.get(partitionId),
-              partitionId, mapOfTrackedMessageMaps, mapOfInvalidMessageMaps)) {
+          if (checkMessageValidAndInjectHeaders(msg, headers, originalIndex, auditBucket,
+              isMessageValid)) {
             continue;
           }
         }
@@ -373,36 +377,39 @@ public class KafkaWriter implements LogStreamWriter {
    *
    * @param msg the message to validate
    * @param headers the headers of the ProducerRecord
-   * @param indexWithinTheBucket the index of the current message within the bucket
-   * @param partitionId the partition id
-   * @param mapOfTrackedMessageMaps a map whose key is the partitionId, value is an inner map. The
-   *                               key of the inner map is indexWithinTheBucket and the value of the
-   *                               inner map is LoggingAuditHeaders object of tracked messages
-   * @param mapOfInvalidMessageMaps a map whose key is the partitionId, value is an inner map. The
-   *                               key of the inner map is indexWithinTheBucket and the value of the
-   *                               inner map is LoggingAuditHeaders object of invalid messages(note:
-   *                               invalid messages may or may not be tracked)
+   * @param indexWithinTheBucket the original index of the current message within the bucket
+   * @param auditBucket the audit bookkeeping of the partition the message is assigned to, which
+   *                    keeps the LoggingAuditHeaders of tracked and invalid messages (note: invalid
+   *                    messages may or may not be tracked)
    * @return a boolean indicates whether this message should be skipped
    */
   public boolean checkMessageValidAndInjectHeaders(
-      LogMessage msg, Headers headers, int indexWithinTheBucket, int partitionId,
-      Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfTrackedMessageMaps,
-      Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfInvalidMessageMaps) {
-    boolean isMessageValid = checkMessageValid(msg);
+      LogMessage msg, Headers headers, int indexWithinTheBucket,
+      AuditBookkeeping.Bucket auditBucket) {
+    return checkMessageValidAndInjectHeaders(msg, headers, indexWithinTheBucket, auditBucket,
+        checkMessageValid(msg));
+  }
+
+  /**
+   *  Same as {@link #checkMessageValidAndInjectHeaders(LogMessage, Headers, int,
+   *  AuditBookkeeping.Bucket)} for a message whose validity was already checked.
+   */
+  protected boolean checkMessageValidAndInjectHeaders(
+      LogMessage msg, Headers headers, int indexWithinTheBucket,
+      AuditBookkeeping.Bucket auditBucket, boolean isMessageValid) {
 
     // note that only a percentage of messages are tracked, i.e. corresponding audit events are sent
-    // out at different stages. For each bucket, messages being tracked are kept in the hash map where
-    // key is the indexWithin the bucket, and value is the message LoggingAuditHeaders.
+    // out at different stages. For each bucket, the LoggingAuditHeaders of messages being tracked
+    // are kept at the indexWithin the bucket.
     if (msg.getLoggingAuditHeaders() != null && msg.getLoggingAuditHeaders().isTracked()){
-      mapOfTrackedMessageMaps.get(partitionId).put(indexWithinTheBucket, msg.getLoggingAuditHeaders());
+      auditBucket.setTracked(indexWithinTheBucket, msg.getLoggingAuditHeaders());
     }
 
     // note that some messages (whether being tracked or not) could be invalid because crc32 checksum
-    // does not match mismatch or original message cannot be deserialized. These invalid messages are
-    // kept in the hash map where key is the indexWithin the bucket, and value is the message
-    // LoggingAuditHeaders.
+    // does not match mismatch or original message cannot be deserialized. The LoggingAuditHeaders of
+    // these invalid messages are kept at the indexWithin the bucket.
     if (msg.getLoggingAuditHeaders() != null && !isMessageValid) {
-      mapOfInvalidMessageMaps.get(partitionId).put(indexWithinTheBucket, msg.getLoggingAuditHeaders());
+      auditBucket.setInvalid(indexWithinTheBucket, msg.getLoggingAuditHeaders());
     }
 
     boolean shouldSkipMessage = false;
@@ -427,6 +434,11 @@ public class KafkaWriter implements LogStreamWriter {
       }
       if (msg.isSetChecksum()) {
         this.headersInjector.addHeaders(headers, CRC_HEADER_KEY, Longs.toByteArray(msg.getChecksum()));
+        if (msg.isSetChecksumType() && msg.getChecksumType() != ChecksumType.CRC32) {
+          // consumers assume a CRC-32 checksum if the header is not set
+          this.headersInjector.addHeaders(headers, CHECKSUM_TYPE_HEADER_KEY,
+              msg.getChecksumType().name().getBytes(StandardCharsets.UTF_8));
+        }
         OpenTsdbMetricConverter.incr(SingerMetrics.CHECKSUM_INJECTED,  "host=" + HOSTNAME, "logStreamName=" + logName);
       }
     } catch (TException e) {
@@ -435,6 +447,10 @@ public class KafkaWriter implements LogStreamWriter {
     }
   }
 
+  /**
+   *  Check whether the message is valid. Can be called concurrently by the threads of the
+   *  checksum verification pool.
+   */
   protected boolean checkMessageValid(LogMessage msg) {
     if (msg.getMessage() == null){
       return false;
@@ -442,11 +458,10 @@ public class KafkaWriter implements LogStreamWriter {
     boolean isMessageUncorrupted = true;
     boolean canDeserializeMessage = true;
 
-    // check if message is corrupted based on crc32 checksum
+    // check if message is corrupted based on its checksum
     if (msg.isSetChecksum()) {
       long start = System.nanoTime();
-      long singerChecksum = computeCRC(msg.getMessage());
-      isMessageUncorrupted = singerChecksum == msg.getChecksum();
+      isMessageUncorrupted = ChecksumUtils.verifyChecksum(msg);
       OpenTsdbMetricConverter.gauge(SingerMetrics.AUDIT_COMPUTE_CHECKSUM_LATENCY_NANO, Math.max(
           0, System.nanoTime() - start), "host=" + HOSTNAME, "logStreamName=" + logName);
       OpenTsdbMetricConverter.incr(isMessageUncorrupted ? SingerMetrics.AUDIT_NUM_UNCORRUPTED_MESSAGES : SingerMetrics.AUDIT_NUM_CORRUPTED_MESSAGES,
@@ -457,13 +472,6 @@ public class KafkaWriter implements LogStreamWriter {
     return isMessageUncorrupted && canDeserializeMessage;
   }
 
-  private long computeCRC(byte[] message) {
-    CRC32 crc = localCRC.get();
-    crc.reset();
-    crc.update(message);
-    return crc.getValue();
-  }
-
   /**
    * If auditing is started at Singer, LoggingAuditHeaders and crc32 checksum are injected for
    * every message. Based on audit rate, certain messages are randomly chosen to be tracked.
@@ -490,7 +498,8 @@ public class KafkaWriter implements LogStreamWriter {
         }
         // set checksum by Singer if LogMessage's checksum field is not set
         if (!msg.isSetChecksum()) {
-          long checksum = computeCRC(msg.getMessage());
+          long checksum = ChecksumUtils.computeChecksum(ChecksumUtils.getChecksumType(msg),
+              msg.getMessage());
           msg.setChecksum(checksum);
           OpenTsdbMetricConverter.incr(SingerMetrics.CHECKSUM_SET_FOR_LOG_MESSAGE,
               "topic=" + topic, "host=" + HOSTNAME,  "logName=" +
@@ -517,31 +526,11 @@ public class KafkaWriter implements LogStreamWriter {
     try {
       List<PartitionInfo> partitions = producer.partitionsFor(topic);
 
-      // The key of mapOfTrackedMessageMaps is the partition_id; value of mapOfTrackedMessageMaps is
-      // trackedMessageMap. key of the trackedMessageMap is the listIndex of ProducerRecord in the
-      // bucket (buckets.get(partition_id)); value of the trackedMessageMap is the
-      // LoggingAuditHeaders of the tracked message.
-      Map<Integer, Map<Integer, LoggingAuditHeaders>>  mapOfTrackedMessageMaps = new HashMap<>();
-
-      // The key of mapOfInvalidMessageMaps is the partition_id; value of mapOfInvalidMessageMaps is
-      // invalidMessageMap. The key of the invalidMessageMap is the listIndex of ProducerRecord in the
-      // bucket (buckets.get(partition_id)); value of the invalidMessageMap is the
-      // LoggingAuditHeaders of the invalid message. Message is determined as invalid because crc32
-      // checksum does not match or message cannot be deserialized.
-      Map<Integer, Map<Integer, LoggingAuditHeaders>>  mapOfInvalidMessageMaps = new HashMap<>();
-
-
-
-      // The key of mapOfOriginalIndexWithinBucket is the partition_id, value is original index
-      // within the bucket (one bucket corresponds to one partition_id). The init value is -1,
-      // anytime a LogMessage is assigned to partition_id, the value increases by 1.
-
-      Map<Integer, Integer> mapOfOriginalIndexWithinBucket = new HashMap<>();
-
       // key of buckets is the partition_id; value of the buckets is a list of ProducerRecord that
-      // should be sent to partition_id.
+      // should be sent to partition_id. auditBookkeeping is reset and keeps the LoggingAuditHeaders
+      // of the tracked and invalid messages of each bucket.
       Map<Integer, List<ProducerRecord<byte[], byte[]>>> buckets = messageCollation(partitions,
-          topic, logMessages, mapOfTrackedMessageMaps, mapOfInvalidMessageMaps, mapOfOriginalIndexWithinBucket);
+          topic, logMessages, auditBookkeeping);
 
       // we sort this info after, we have to create a copy of the data since
       // the returned list is immutable
@@ -573,7 +562,7 @@ public class KafkaWriter implements LogStreamWriter {
               result.getKafkaBatchWriteLatencyInMillis());
           if (isLoggingAuditEnabledAndConfigured()) {
             int bucketIndex = result.getPartition();
-            enqueueLoggingAuditEvents(result.getRecordMetadataList(), mapOfTrackedMessageMaps.get(bucketIndex), mapOfInvalidMessageMaps.get(bucketIndex));
+            enqueueLoggingAuditEvents(result.getRecordMetadataList(), auditBookkeeping.getBucket(bucketIndex));
           }
         }
       }
@@ -633,59 +622,72 @@ public class KafkaWriter implements LogStreamWriter {
    * to be true.
    *
    * @param recordMetadataList a list of RecordMetadata of the messages sent
-   * @param trackedMessageMap a map in which key is indexWithinTheBucket and value is
-   *                          LoggingAuditHeaders object of tracked message
-   * @param invalidMessageMap a map in which key is indexWithinTheBucket and value is
-   *                          LoggingAuditHeaders object of invalid message
+   * @param auditBucket the audit bookkeeping of the bucket, which keeps the LoggingAuditHeaders of
+   *                    tracked and invalid messages by original index within the bucket
    */
   public void enqueueLoggingAuditEvents(List<RecordMetadata> recordMetadataList,
-                                        Map<Integer, LoggingAuditHeaders> trackedMessageMap,
-                                        Map<Integer, LoggingAuditHeaders> invalidMessageMap){
+                                        AuditBookkeeping.Bucket auditBucket){
+    enqueueLoggingAuditEvents(recordMetadataList, auditBucket, topic);
+  }
+
+  /**
+   * Same as {@link #enqueueLoggingAuditEvents(List, AuditBookkeeping.Bucket)} for messages written
+   * to destinationTopic, which differs from the topic of this writer if the message was routed.
+   */
+  protected void enqueueLoggingAuditEvents(List<RecordMetadata> recordMetadataList,
+                                           AuditBookkeeping.Bucket auditBucket,
+                                           String destinationTopic){
 
     //
     if (!enableLoggingAudit || this.auditConfig == null) {
       return;
     }
+    if (auditBucket.getNumTracked() == 0 && auditBucket.getNumInvalid() == 0) {
+      // no audit event to send for this bucket
+      return;
+    }
     if (this.auditConfig.isSkipCorruptedMessageAtCurrentStage()) {
       // invalid messages are skipped and are not sent to Kafka. Suppose there 10 messages in bucket
       // 2 (corresponding to partition 2), 4 messages (withinBucketIndex: 0, 5, 6, 9) are invalid
       // and skipped, thus only 6 messages (withinBucketIndex: 1, 2, 3, 4, 7, 8) are sent to  Kafka
       // which means the RecordMetadataList of result (KafkaWritingTaskResult) should be of size 6.
 
-      int total = recordMetadataList.size() + invalidMessageMap.size();
+      int total = recordMetadataList.size() + auditBucket.getNumInvalid();
       int skippedSofar = 0;
       for(int i = 0; i < total; i++){
-        if (invalidMessageMap.containsKey(i)){
+        LoggingAuditHeaders invalidHeaders = auditBucket.getInvalid(i);
+        if (invalidHeaders != null){
           // if message is invalid and also skipped, an audit event should be sent out.
           skippedSofar += 1;
-          SingerSettings.getLoggingAuditClient().audit(this.logName, invalidMessageMap.get(i),
+          SingerSettings.getLoggingAuditClient().audit(this.logName, invalidHeaders,
               false, -1, true);
         } else {
-          if (trackedMessageMap.containsKey(i)){
+          LoggingAuditHeaders trackedHeaders = auditBucket.getTracked(i);
+          if (trackedHeaders != null){
             // if the message is tracked, an audit event should be sent out.
             int indexInRecordMetadataList = i - skippedSofar;
             if (indexInRecordMetadataList >= recordMetadataList.size()){
               continue;
             }
             RecordMetadata metadata = recordMetadataList.get(indexInRecordMetadataList);
-            SingerSettings.getLoggingAuditClient().audit(this.logName, trackedMessageMap.get(i),
-                true, metadata.timestamp(), kafkaClusterSig, topic);
+            SingerSettings.getLoggingAuditClient().audit(this.logName, trackedHeaders,
+                true, metadata.timestamp(), kafkaClusterSig, destinationTopic);
           }
         }
       }
     } else {
       // In this case, invalid messages are not skipped and still sent to Kafka. This usually means
       // later stage will skip the invalid message.
+      if (auditBucket.getNumTracked() == 0) {
+        return;
+      }
       int total = recordMetadataList.size();
       for(int i =0; i < total; i++){
-        if (trackedMessageMap.containsKey(i)) {
-          int indexInRecordMetadataList = i;
-          if (indexInRecordMetadataList >= recordMetadataList.size()){
-            continue;
-          }
-          RecordMetadata metadata = recordMetadataList.get(indexInRecordMetadataList);
-          SingerSettings.getLoggingAuditClient().audit(this.logName, trackedMessageMap.get(i),
-              !invalidMessageMap.containsKey(i),  metadata.timestamp(), kafkaClusterSig, topic);
+        LoggingAuditHeaders trackedHeaders = auditBucket.getTracked(i);
+        if (trackedHeaders != null) {
+          RecordMetadata metadata = recordMetadataList.get(i);
+          SingerSettings.getLoggingAuditClient().audit(this.logName, trackedHeaders,
+              auditBucket.getInvalid(i) == null,  metadata.timestamp(), kafkaClusterSig, destinationTopic);
 
         }
       }
@@ -18,6 +18,7 @@ package com.pinterest.singer.writer.kafka;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -48,12 +49,12 @@ import com.pinterest.singer.common.LogStreamWriter;
 import com.pinterest.singer.common.SingerMetrics;
 import com.pinterest.singer.common.SingerSettings;
 import com.pinterest.singer.common.errors.LogStreamWriterException;
-import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
 import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
 import com.pinterest.singer.thrift.LogMessage;
 import com.pinterest.singer.thrift.LogMessageAndPosition;
 import com.pinterest.singer.thrift.configuration.KafkaProducerConfig;
 import com.pinterest.singer.thrift.configuration.SingerRestartConfig;
+import com.pinterest.singer.writer.AuditBookkeeping;
 import com.pinterest.singer.writer.KafkaMessagePartitioner;
 import com.pinterest.singer.writer.KafkaProducerManager;
 import com.pinterest.singer.writer.KafkaWriter;
@@ -62,6 +63,10 @@ import com.pinterest.singer.writer.KafkaWriter;
  * Committable writer that implements the commit design pattern methods of {@link LogStreamWriter}
  *
  * This class allows usage of MemoryEfficientLogStreamProcessor.
+ *
+ * If a {@link TopicRouter} is set, each message is written to the topic chosen by the router, or to
+ * the default topic if no route matches. Messages of all topics are bucketed by topic and partition
+ * and written within the same commit, so the log stream is read once and keeps a single watermark.
  */
 public class CommittableKafkaWriter extends KafkaWriter {
 
@@ -69,11 +74,14 @@ public class CommittableKafkaWriter extends KafkaWriter {
   public static final String MESSAGE_ID = "_mid";
   public static final String ORIGINAL_TIMESTAMP = "_ots";
   protected List<PartitionInfo> committableValidPartitions;
-  protected Map<Integer, Map<Integer, LoggingAuditHeaders>> committableMapOfTrackedMessageMaps;
-  protected Map<Integer, Map<Integer, LoggingAuditHeaders>> committableMapOfInvalidMessageMaps;
-  protected Map<Integer, Integer> committableMapOfOriginalIndexWithinBucket;
+  protected AuditBookkeeping committableAuditBookkeeping;
   protected Map<Integer, KafkaWritingTaskFuture> committableBuckets;
+  // Buckets of the default topic followed by the buckets of the routed topics.
+  protected Map<String, TopicBuckets> committableTopicBuckets;
   protected KafkaProducer<byte[], byte[]> committableProducer;
+  protected TopicRouter topicRouter;
+  // Audit bookkeeping of each topic, reused across commits.
+  private final Map<String, AuditBookkeeping> auditBookkeepingByTopic = new HashMap<>();
   protected static final ScheduledExecutorService executionTimer;
   static {
     ScheduledThreadPoolExecutor tmpTimer = new ScheduledThreadPoolExecutor(1);
@@ -127,81 +135,111 @@ public class CommittableKafkaWriter extends KafkaWriter {
         partitionerClassName, writeTimeoutInSeconds);
   }
 
+  /**
+   * Route messages of this writer to several topics. The router is evaluated once per message.
+   */
+  public void setTopicRouter(TopicRouter topicRouter) {
+    this.topicRouter = topicRouter;
+  }
+
   @Override
   public void startCommit(boolean isDraining) throws LogStreamWriterException {
     committableProducer = KafkaProducerManager.getProducer(producerConfig);
     Preconditions.checkNotNull(committableProducer);
+    committableTopicBuckets = new LinkedHashMap<>();
+    TopicBuckets defaultTopicBuckets = createTopicBuckets(topic, isDraining);
+    committableTopicBuckets.put(topic, defaultTopicBuckets);
+    if (topicRouter != null) {
+      for (String routedTopic : topicRouter.getTopics()) {
+        if (!committableTopicBuckets.containsKey(routedTopic)) {
+          committableTopicBuckets.put(routedTopic, createTopicBuckets(routedTopic, isDraining));
+        }
+      }
+    }
+
+    if (producerConfig.isTransactionEnabled()) {
+      committableProducer.beginTransaction();
+    }
+
+    committableValidPartitions = defaultTopicBuckets.validPartitions;
+    committableBuckets = defaultTopicBuckets.buckets;
+    committableAuditBookkeeping = defaultTopicBuckets.auditBookkeeping;
+  }
+
+  private TopicBuckets createTopicBuckets(String bucketTopic, boolean isDraining) {
     List<PartitionInfo> partitions;
     try {
-      partitions = committableProducer.partitionsFor(topic);
+      partitions = committableProducer.partitionsFor(bucketTopic);
     } catch (Exception e) {
-      LOG.error("Exception when calling partitionsFor on topic " + topic + ", resetting producer", e);
+      LOG.error("Exception when calling partitionsFor on topic " + bucketTopic + ", resetting producer", e);
       KafkaProducerManager.resetProducer(producerConfig);
-      OpenTsdbMetricConverter.incr("singer.writer.start_commit.error", 1, "topic=" + topic,
+      OpenTsdbMetricConverter.incr("singer.writer.start_commit.error", 1, "topic=" + bucketTopic,
           "host=" + HOSTNAME, "drain=" + isDraining);
-      OpenTsdbMetricConverter.incr("singer.writer.producer_reset", 1, "topic=" + topic,
+      OpenTsdbMetricConverter.incr("singer.writer.producer_reset", 1, "topic=" + bucketTopic,
           "host=" + HOSTNAME, "drain=" + isDraining);
       throw e;
     }
 
-    if (producerConfig.isTransactionEnabled()) {
-      committableProducer.beginTransaction();
-    }
-
-    committableValidPartitions = partitions;
+    TopicBuckets topicBuckets = new TopicBuckets(bucketTopic,
+        auditBookkeepingByTopic.computeIfAbsent(bucketTopic, t -> new AuditBookkeeping()));
+    topicBuckets.validPartitions = partitions;
     if (skipNoLeaderPartitions) {
-      committableValidPartitions = new ArrayList<>();
+      topicBuckets.validPartitions = new ArrayList<>();
       for (PartitionInfo partitionInfo : partitions) {
         // If there is no leader, the id value is -1
         // github.com/apache/kafka/blob/trunk/clients/src/main/java/org/apache/kafka/common/PartitionInfo.java
         if (partitionInfo.leader().id() >= 0) {
-          committableValidPartitions.add(partitionInfo);
+          topicBuckets.validPartitions.add(partitionInfo);
         }
       }
     }
 
-    committableBuckets = new HashMap<>();
-    committableMapOfTrackedMessageMaps = new HashMap<>();
-    committableMapOfInvalidMessageMaps = new HashMap<>();
-    committableMapOfOriginalIndexWithinBucket = new HashMap<>();
-
-    for (PartitionInfo partitionInfo : committableValidPartitions) {
+    for (PartitionInfo partitionInfo : topicBuckets.validPartitions) {
       // for each partitionId, there is a corresponding bucket in buckets and a
-      // corresponding headersMap in mapOfHeadersMaps.
+      // corresponding bucket in auditBookkeeping.
       int partitionId = partitionInfo.partition();
-      committableBuckets.put(partitionId, new KafkaWritingTaskFuture(partitionInfo));
-      committableMapOfTrackedMessageMaps.put(partitionId, new HashMap<>());
-      committableMapOfInvalidMessageMaps.put(partitionId, new HashMap<>());
-      committableMapOfOriginalIndexWithinBucket.put(partitionId, -1);
+      topicBuckets.buckets.put(partitionId, new KafkaWritingTaskFuture(partitionInfo));
     }
+    topicBuckets.auditBookkeeping.reset(topicBuckets.validPartitions);
+    return topicBuckets;
   }
 
   @Override
   public void writeLogMessageToCommit(LogMessageAndPosition message, boolean isDraining) throws LogStreamWriterException {
     LogMessage msg = message.getLogMessage();
+    TopicBuckets topicBuckets = null;
+    if (topicRouter != null) {
+      String routedTopic = topicRouter.route(message);
+      if (routedTopic != null) {
+        topicBuckets = committableTopicBuckets.get(routedTopic);
+      }
+    }
+    if (topicBuckets == null) {
+      topicBuckets = committableTopicBuckets.get(topic);
+    }
     ProducerRecord<byte[], byte[]> keyedMessage;
     byte[] key = null;
     if (msg.isSetKey()) {
       key = msg.getKey();
     }
-    int partitionId = partitioner.partition(key, committableValidPartitions);
+    int partitionId = partitioner.partition(key, topicBuckets.validPartitions);
     if (skipNoLeaderPartitions) {
-      partitionId = committableValidPartitions.get(partitionId).partition();
+      partitionId = topicBuckets.validPartitions.get(partitionId).partition();
     }
-    keyedMessage = new ProducerRecord<>(topic, partitionId, key, msg.getMessage());
+    keyedMessage = new ProducerRecord<>(topicBuckets.topic, partitionId, key, msg.getMessage());
     Headers headers = keyedMessage.headers();
     addStandardHeaders(message, headers);
     checkAndSetLoggingAuditHeadersForLogMessage(msg);
-    committableMapOfOriginalIndexWithinBucket.put(partitionId, 1 + committableMapOfOriginalIndexWithinBucket.get(partitionId));
+    AuditBookkeeping.Bucket auditBucket = topicBuckets.auditBookkeeping.getBucket(partitionId);
+    int originalIndex = auditBucket.nextIndex();
     if (msg.getLoggingAuditHeaders() != null) {
       // check if the message should be skipped
-      if (checkMessageValidAndInjectHeaders(msg, headers, committableMapOfOriginalIndexWithinBucket.get(partitionId), partitionId,
-          committableMapOfTrackedMessageMaps, committableMapOfInvalidMessageMaps)) {
+      if (checkMessageValidAndInjectHeaders(msg, headers, originalIndex, auditBucket)) {
         return;
       }
     }
 
-    KafkaWritingTaskFuture kafkaWritingTaskFutureResult = committableBuckets.get(partitionId);
+    KafkaWritingTaskFuture kafkaWritingTaskFutureResult = topicBuckets.buckets.get(partitionId);
     List<CompletableFuture<RecordMetadata>> recordMetadataList = kafkaWritingTaskFutureResult
         .getRecordMetadataList();
 
@@ -239,38 +277,41 @@ public class CommittableKafkaWriter extends KafkaWriter {
   public void endCommit(int numLogMessages, boolean isDraining) throws LogStreamWriterException {
 
     List<CompletableFuture<Integer>> bucketFutures = new ArrayList<>();
-    for(KafkaWritingTaskFuture f : committableBuckets.values()) {
-      List<CompletableFuture<RecordMetadata>> futureList = f.getRecordMetadataList();
-      if (futureList.isEmpty()) {
-        continue;
-      }
-      long start = f.getFirstProduceTimestamp();
-      int leaderNode = f.getPartitionInfo().leader().id();
-      int size = futureList.size();
-      OpenTsdbMetricConverter.addMetric(SingerMetrics.WRITER_BATCH_SIZE, size, "topic=" + topic,
-          "host=" + KafkaWriter.HOSTNAME);
-
-      // resolves with the latency of that bucket
-      CompletableFuture<Integer> bucketFuture = CompletableFuture.allOf(futureList.toArray(new CompletableFuture[0]))
-          .handleAsync((v, t) -> {
-            if (t != null) {
-              handleBucketException(leaderNode, size, isDraining, t);
-              if (t instanceof RuntimeException) {
-                throw (RuntimeException) t;
-              } else {
-                throw new RuntimeException(t);
+    for (TopicBuckets topicBuckets : committableTopicBuckets.values()) {
+      String bucketTopic = topicBuckets.topic;
+      for (KafkaWritingTaskFuture f : topicBuckets.buckets.values()) {
+        List<CompletableFuture<RecordMetadata>> futureList = f.getRecordMetadataList();
+        if (futureList.isEmpty()) {
+          continue;
+        }
+        long start = f.getFirstProduceTimestamp();
+        int leaderNode = f.getPartitionInfo().leader().id();
+        int size = futureList.size();
+        OpenTsdbMetricConverter.addMetric(SingerMetrics.WRITER_BATCH_SIZE, size, "topic=" + bucketTopic,
+            "host=" + KafkaWriter.HOSTNAME);
+
+        // resolves with the latency of that bucket
+        CompletableFuture<Integer> bucketFuture = CompletableFuture.allOf(futureList.toArray(new CompletableFuture[0]))
+            .handleAsync((v, t) -> {
+              if (t != null) {
+                handleBucketException(bucketTopic, leaderNode, size, isDraining, t);
+                if (t instanceof RuntimeException) {
+                  throw (RuntimeException) t;
+                } else {
+                  throw new RuntimeException(t);
+                }
               }
-            }
-            int kafkaLatency = (int) (System.currentTimeMillis() - start);
-            // we shouldn't have latency greater than 2B milliseconds so it should be okay
-            // to downcast to integer
-            OpenTsdbMetricConverter.incrGranular(SingerMetrics.BROKER_WRITE_SUCCESS, 1,
-                "broker=" + leaderNode, "drain=" + isDraining);
-            OpenTsdbMetricConverter.addGranularMetric(SingerMetrics.BROKER_WRITE_LATENCY,
-                kafkaLatency, "broker=" + leaderNode, "drain=" + isDraining);
-            return kafkaLatency;
-          });
-      bucketFutures.add(bucketFuture);
+              int kafkaLatency = (int) (System.currentTimeMillis() - start);
+              // we shouldn't have latency greater than 2B milliseconds so it should be okay
+              // to downcast to integer
+              OpenTsdbMetricConverter.incrGranular(SingerMetrics.BROKER_WRITE_SUCCESS, 1,
+                  "broker=" + leaderNode, "drain=" + isDraining);
+              OpenTsdbMetricConverter.addGranularMetric(SingerMetrics.BROKER_WRITE_LATENCY,
+                  kafkaLatency, "broker=" + leaderNode, "drain=" + isDraining);
+              return kafkaLatency;
+            });
+        bucketFutures.add(bucketFuture);
+      }
     }
     CompletableFuture<Void> batchFuture = CompletableFuture.allOf(bucketFutures.toArray(new CompletableFuture[0]));
 
@@ -299,18 +340,19 @@ public class CommittableKafkaWriter extends KafkaWriter {
     }
   }
 
-  protected void handleBucketException(int leaderNode, int size, boolean isDraining, Throwable t) {
+  protected void handleBucketException(String bucketTopic, int leaderNode, int size, boolean isDraining,
+                                       Throwable t) {
     if (t instanceof org.apache.kafka.common.errors.RecordTooLargeException) {
       LOG.error("Kafka write failure due to excessively large message size", t);
-      OpenTsdbMetricConverter.incr(SingerMetrics.OVERSIZED_MESSAGES, 1, "topic=" + topic,
+      OpenTsdbMetricConverter.incr(SingerMetrics.OVERSIZED_MESSAGES, 1, "topic=" + bucketTopic,
           "host=" + KafkaWriter.HOSTNAME, "drain=" + isDraining);
     } else if (t instanceof org.apache.kafka.common.errors.SslAuthenticationException) {
       LOG.error("Kafka write failure due to SSL authentication failure", t);
-      OpenTsdbMetricConverter.incr(SingerMetrics.WRITER_SSL_EXCEPTION, 1, "topic=" + topic,
+      OpenTsdbMetricConverter.incr(SingerMetrics.WRITER_SSL_EXCEPTION, 1, "topic=" + bucketTopic,
           "host=" + KafkaWriter.HOSTNAME, "drain=" + isDraining);
     } else if (t instanceof Exception) {
       LOG.error("Failed to write " + size + " messages to kafka", t);
-      OpenTsdbMetricConverter.incr(SingerMetrics.WRITE_FAILURE, 1, "topic=" + topic,
+      OpenTsdbMetricConverter.incr(SingerMetrics.WRITE_FAILURE, 1, "topic=" + bucketTopic,
           "host=" + KafkaWriter.HOSTNAME, "drain=" + isDraining);
       OpenTsdbMetricConverter.incrGranular(SingerMetrics.BROKER_WRITE_FAILURE, 1,
           "broker=" + leaderNode, "drain=" + isDraining);
@@ -319,18 +361,26 @@ public class CommittableKafkaWriter extends KafkaWriter {
 
   protected void onBatchComplete(int numLogMessages, List<CompletableFuture<Integer>> bucketFutures, boolean isDraining) {
     int bytesWritten = 0;
-    for (Entry<Integer, KafkaWritingTaskFuture> entry : committableBuckets.entrySet()) {
-      List<CompletableFuture<RecordMetadata>> futureList = entry.getValue().getRecordMetadataList();
-      if (futureList.isEmpty()) {
-        continue;
+    for (TopicBuckets topicBuckets : committableTopicBuckets.values()) {
+      int numRoutedMessages = 0;
+      for (Entry<Integer, KafkaWritingTaskFuture> entry : topicBuckets.buckets.entrySet()) {
+        List<CompletableFuture<RecordMetadata>> futureList = entry.getValue().getRecordMetadataList();
+        if (futureList.isEmpty()) {
+          continue;
+        }
+        List<RecordMetadata> recordMetadataList = futureList.stream()
+            .map(CompletableFuture::join)
+            .collect(Collectors.toList());
+        if (isLoggingAuditEnabledAndConfigured()) {
+          captureAndLogAuditEvents(topicBuckets, entry.getKey(), recordMetadataList);
+        }
+        bytesWritten += recordMetadataList.stream().mapToInt(rmd -> rmd.serializedKeySize() + rmd.serializedValueSize()).sum();
+        numRoutedMessages += recordMetadataList.size();
       }
-      List<RecordMetadata> recordMetadataList = futureList.stream()
-          .map(CompletableFuture::join)
-          .collect(Collectors.toList());
-      if (isLoggingAuditEnabledAndConfigured()) {
-        captureAndLogAuditEvents(entry.getKey(), recordMetadataList);
+      if (topicRouter != null) {
+        OpenTsdbMetricConverter.incr(SingerMetrics.ROUTED_MESSAGES, numRoutedMessages,
+            "topic=" + topicBuckets.topic, "host=" + HOSTNAME, "logname=" + logName);
       }
-      bytesWritten += recordMetadataList.stream().mapToInt(rmd -> rmd.serializedKeySize() + rmd.serializedValueSize()).sum();
     }
     int maxKafkaBatchWriteLatency = bucketFutures.stream().mapToInt(CompletableFuture::join).max().orElse(0);
     if (producerConfig.isTransactionEnabled()) {
@@ -359,10 +409,11 @@ public class CommittableKafkaWriter extends KafkaWriter {
     throw new CompletionException("Failed to write messages to topic " + topic, t);
   }
 
-  private void captureAndLogAuditEvents(int bucketIndex, List<RecordMetadata> recordMetadataList) {
+  private void captureAndLogAuditEvents(TopicBuckets topicBuckets, int bucketIndex,
+                                        List<RecordMetadata> recordMetadataList) {
     if (isLoggingAuditEnabledAndConfigured()) {
-      enqueueLoggingAuditEvents(recordMetadataList, committableMapOfTrackedMessageMaps.get(bucketIndex),
-          committableMapOfInvalidMessageMaps.get(bucketIndex));
+      enqueueLoggingAuditEvents(recordMetadataList,
+          topicBuckets.auditBookkeeping.getBucket(bucketIndex), topicBuckets.topic);
     }
   }
 
@@ -398,4 +449,26 @@ public class CommittableKafkaWriter extends KafkaWriter {
     return committableBuckets;
   }
 
+  @VisibleForTesting
+  protected Map<String, TopicBuckets> getCommittableTopicBuckets() {
+    return committableTopicBuckets;
+  }
+
+  /**
+   * Partition buckets of a topic within the current commit, together with the audit bookkeeping of
+   * each bucket.
+   */
+  protected static final class TopicBuckets {
+
+    protected final String topic;
+    protected List<PartitionInfo> validPartitions;
+    protected final Map<Integer, KafkaWritingTaskFuture> buckets = new HashMap<>();
+    protected final AuditBookkeeping auditBookkeeping;
+
+    protected TopicBuckets(String topic, AuditBookkeeping auditBookkeeping) {
+      this.topic = topic;
+      this.auditBookkeeping = auditBookkeeping;
+    }
+  }
+
 }
@@ -0,0 +1,226 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.writer.kafka;
+
+import com.pinterest.singer.thrift.LogMessage;
+import com.pinterest.singer.thrift.LogMessageAndPosition;
+import com.pinterest.singer.thrift.configuration.TopicRouteConfig;
+
+import com.google.common.base.Preconditions;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TMemoryInputTransport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides the topic of each message of a log stream based on a list of routes.
+ * <p/>
+ * Routes are compiled once and evaluated in order for every message, the first matching route
+ * decides the topic. Messages matching no route are written to the default topic of the writer.
+ * <p/>
+ * This class is NOT thread-safe.
+ */
+public class TopicRouter {
+
+  private final List<Route> routes;
+
+  // Reused to decode thrift fields without allocating a transport per message.
+  private final TMemoryInputTransport thriftTransport = new TMemoryInputTransport();
+  private final TProtocol thriftProtocol = new TBinaryProtocol(thriftTransport) {
+    // Wrap binary values in place, and reject lengths beyond the message instead of allocating
+    // a buffer of the length read from a message that is not a thrift struct.
+    @Override
+    public ByteBuffer readBinary() throws TException {
+      int size = readI32();
+      if (size < 0 || size > thriftTransport.getBytesRemainingInBuffer()) {
+        throw new TProtocolException(TProtocolException.INVALID_DATA, "Invalid length " + size);
+      }
+      ByteBuffer value = ByteBuffer.wrap(thriftTransport.getBuffer(),
+          thriftTransport.getBufferPosition(), size);
+      thriftTransport.consumeBuffer(size);
+      return value;
+    }
+  };
+
+  /**
+   * @param routeConfigs the routes, whose topics are already resolved for the log stream.
+   */
+  public TopicRouter(List<TopicRouteConfig> routeConfigs) {
+    Preconditions.checkArgument(routeConfigs != null && !routeConfigs.isEmpty());
+    routes = new ArrayList<>(routeConfigs.size());
+    for (TopicRouteConfig routeConfig : routeConfigs) {
+      routes.add(compile(routeConfig));
+    }
+  }
+
+  /**
+   * @return the distinct topics of all routes, in route order.
+   */
+  public Set<String> getTopics() {
+    Set<String> topics = new LinkedHashSet<>();
+    for (Route route : routes) {
+      topics.add(route.topic);
+    }
+    return Collections.unmodifiableSet(topics);
+  }
+
+  /**
+   * @return the topic of the first route matching the message, null if no route matches.
+   */
+  public String route(LogMessageAndPosition logMessageAndPosition) {
+    for (Route route : routes) {
+      if (route.matches(logMessageAndPosition)) {
+        return route.topic;
+      }
+    }
+    return null;
+  }
+
+  private Route compile(TopicRouteConfig routeConfig) {
+    String topic = routeConfig.getTopic();
+    String pattern = routeConfig.getPattern();
+    byte[] patternBytes = pattern.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer patternBuffer = ByteBuffer.wrap(patternBytes);
+    switch (routeConfig.getMatchType()) {
+      case KEY_PREFIX:
+        return new Route(topic) {
+          @Override
+          boolean matches(LogMessageAndPosition logMessageAndPosition) {
+            LogMessage logMessage = logMessageAndPosition.getLogMessage();
+            return logMessage.isSetKey() && startsWith(logMessage.getKey(), patternBytes);
+          }
+        };
+      case HEADER:
+        Preconditions.checkArgument(routeConfig.isSetHeaderName(),
+            "headerName is required by HEADER route to " + topic);
+        String headerName = routeConfig.getHeaderName();
+        return new Route(topic) {
+          @Override
+          boolean matches(LogMessageAndPosition logMessageAndPosition) {
+            Map<String, ByteBuffer> headers = logMessageAndPosition.getInjectedHeaders();
+            if (headers == null) {
+              return false;
+            }
+            ByteBuffer value = headers.get(headerName);
+            return value != null && value.equals(patternBuffer);
+          }
+        };
+      case REGEX:
+        Pattern regex = Pattern.compile(pattern, Pattern.DOTALL);
+        return new Route(topic) {
+          @Override
+          boolean matches(LogMessageAndPosition logMessageAndPosition) {
+            byte[] message = logMessageAndPosition.getLogMessage().getMessage();
+            return message != null
+                && regex.matcher(new String(message, StandardCharsets.UTF_8)).matches();
+          }
+        };
+      case THRIFT_FIELD:
+        Preconditions.checkArgument(routeConfig.isSetThriftFieldId(),
+            "thriftFieldId is required by THRIFT_FIELD route to " + topic);
+        short fieldId = routeConfig.getThriftFieldId();
+        return new Route(topic) {
+          @Override
+          boolean matches(LogMessageAndPosition logMessageAndPosition) {
+            byte[] message = logMessageAndPosition.getLogMessage().getMessage();
+            return message != null && thriftFieldEquals(message, fieldId, pattern, patternBuffer);
+          }
+        };
+      default:
+        throw new IllegalArgumentException("Unsupported match type " + routeConfig.getMatchType());
+    }
+  }
+
+  private static boolean startsWith(byte[] bytes, byte[] prefix) {
+    if (bytes.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Scan the top-level fields of a TBinaryProtocol encoded struct and compare the given field
+   * with the pattern. String and binary fields are compared byte by byte, integer and bool fields
+   * by their decimal or "true"/"false" representation. A message that cannot be decoded matches
+   * no route.
+   */
+  private boolean thriftFieldEquals(byte[] message, short fieldId, String pattern,
+                                    ByteBuffer patternBuffer) {
+    thriftTransport.reset(message);
+    try {
+      thriftProtocol.readStructBegin();
+      while (true) {
+        TField field = thriftProtocol.readFieldBegin();
+        if (field.type == TType.STOP) {
+          return false;
+        }
+        if (field.id != fieldId) {
+          TProtocolUtil.skip(thriftProtocol, field.type);
+          thriftProtocol.readFieldEnd();
+          continue;
+        }
+        switch (field.type) {
+          case TType.STRING:
+            return thriftProtocol.readBinary().equals(patternBuffer);
+          case TType.BOOL:
+            return pattern.equals(Boolean.toString(thriftProtocol.readBool()));
+          case TType.BYTE:
+            return pattern.equals(Byte.toString(thriftProtocol.readByte()));
+          case TType.I16:
+            return pattern.equals(Short.toString(thriftProtocol.readI16()));
+          case TType.I32:
+            return pattern.equals(Integer.toString(thriftProtocol.readI32()));
+          case TType.I64:
+            return pattern.equals(Long.toString(thriftProtocol.readI64()));
+          default:
+            return false;
+        }
+      }
+    } catch (TException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  private abstract static class Route {
+
+    private final String topic;
+
+    private Route(String topic) {
+      this.topic = topic;
+    }
+
+    abstract boolean matches(LogMessageAndPosition logMessageAndPosition);
+  }
+}
@@ -17,6 +17,7 @@ package com.pinterest.singer.common;
 
 import com.pinterest.singer.thrift.LogFile;
 import com.pinterest.singer.thrift.LogFileAndPath;
+import com.pinterest.singer.thrift.LogPosition;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 import com.pinterest.singer.utils.SingerUtils;
 
@@ -66,6 +67,56 @@ public class LogStreamTest extends com.pinterest.singer.SingerTestBase {
     assertTrue(stream.checkConsistency());
   }
 
+  @Test
+  public void testReconcile() throws Exception {
+    final File testDir = this.tempDir.newFolder();
+    final String filePrefix = "test.tmp";
+
+    SingerLogConfig singerLogConfig = createSingerLogConfig("test", testDir.getPath());
+    SingerLog singerLog = new SingerLog(singerLogConfig);
+
+    // [test.tmp.2, test.tmp.1, test.tmp]
+    File[] files = createTestLogStreamFiles(testDir, filePrefix, 3);
+    LogStream stream = new LogStream(singerLog, filePrefix);
+    stream.initialize();
+    long keptInode = SingerUtils.getFileInode(files[1].toPath());
+    long rotatedInode = SingerUtils.getFileInode(files[2].toPath());
+
+    // the oldest file is deleted and the current one is rotated to test.tmp.0
+    assertTrue(files[0].delete());
+    File rotated = new File(testDir, filePrefix + ".0");
+    assertTrue(files[2].renameTo(rotated));
+    File current = new File(testDir, filePrefix);
+    assertTrue(current.createNewFile());
+    assertTrue(current.setLastModified(rotated.lastModified() + 2000));
+
+    stream.reconcile();
+    List<LogFileAndPath> logFileAndPaths = stream.getLogFileAndPaths();
+    assertEquals(3, logFileAndPaths.size());
+    assertEquals(files[1].toString(), logFileAndPaths.get(0).getPath());
+    assertEquals(keptInode, logFileAndPaths.get(0).getLogFile().getInode());
+    assertEquals(rotated.toString(), logFileAndPaths.get(1).getPath());
+    assertEquals(rotatedInode, logFileAndPaths.get(1).getLogFile().getInode());
+    assertEquals(current.toString(), logFileAndPaths.get(2).getPath());
+    assertEquals(SingerUtils.getFileInode(current.toPath()),
+        logFileAndPaths.get(2).getLogFile().getInode());
+    assertFalse(stream.hasLogFile(new LogFile(SingerUtils.getFileInode(current.toPath()) + 1)));
+    assertTrue(stream.checkConsistency());
+  }
+
+  @Test
+  public void testRestoredCommittedPositionIsTakenOnce() throws Exception {
+    SingerLogConfig singerLogConfig =
+        createSingerLogConfig("test", this.tempDir.newFolder().getPath());
+    LogStream stream = new LogStream(new SingerLog(singerLogConfig), "test.tmp");
+    assertNull(stream.takeRestoredCommittedPosition());
+
+    LogPosition position = new LogPosition(new LogFile(1L), 100L);
+    stream.setRestoredCommittedPosition(position);
+    assertEquals(position, stream.takeRestoredCommittedPosition());
+    assertNull(stream.takeRestoredCommittedPosition());
+  }
+
   @Test
   public void testLogStreamUpdate() throws Exception {
     final File testDir = this.tempDir.newFolder();
@@ -17,7 +17,9 @@ package com.pinterest.singer.common;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -25,7 +27,10 @@ import org.junit.contrib.java.lang.system.EnvironmentVariables;
 
 import com.pinterest.singer.environment.EnvVariableBasedEnvironmentProvider;
 import com.pinterest.singer.monitor.DefaultLogMonitor;
+import com.pinterest.singer.processor.RateQuota;
+import com.pinterest.singer.thrift.configuration.RateQuotaConfig;
 import com.pinterest.singer.thrift.configuration.SingerConfig;
+import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 
 public class TestSingerSettings {
 
@@ -47,6 +52,24 @@ public class TestSingerSettings {
     SingerSettings.getLogMonitorStaticInstanceMethod(DefaultLogMonitor.class.getName());
   }
 
+  @Test
+  public void testRemoveLogRateQuotas() {
+    RateQuotaConfig quotaConfig = new RateQuotaConfig().setBytesPerSecond(1000);
+    SingerLogConfig pod1Log = new SingerLogConfig().setName("pod1..log")
+        .setRateQuotaConfig(quotaConfig);
+    SingerLogConfig pod2Log = new SingerLogConfig().setName("pod2..log")
+        .setRateQuotaConfig(quotaConfig);
+    RateQuota pod1Quota = SingerSettings.getOrCreateLogRateQuota(pod1Log);
+    RateQuota pod2Quota = SingerSettings.getOrCreateLogRateQuota(pod2Log);
+    assertSame(pod1Quota, SingerSettings.getOrCreateLogRateQuota(pod1Log));
+
+    SingerSettings.removeLogRateQuotas("pod1..");
+    assertNotSame(pod1Quota, SingerSettings.getOrCreateLogRateQuota(pod1Log));
+    assertSame(pod2Quota, SingerSettings.getOrCreateLogRateQuota(pod2Log));
+    SingerSettings.removeLogRateQuotas("pod1..");
+    SingerSettings.removeLogRateQuotas("pod2..");
+  }
+
   @Test
   public void testEnvironmentLoader() {
     SingerConfig config = new SingerConfig();
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.config;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Charsets;
+import com.twitter.util.Function;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ConfigFileWatcherTest {
+
+  @Rule
+  public TemporaryFolder tempDir = new TemporaryFolder();
+
+  private static void waitForUpdates(List<String> updates, int expected) throws Exception {
+    for (int i = 0; i < 100 && updates.size() < expected; i++) {
+      Thread.sleep(100);
+    }
+  }
+
+  @Test
+  public void testFileEventsNotifyWatchers() throws Exception {
+    File file = tempDir.newFile("decider");
+    Files.write(file.toPath(), "{\"a\": 1}".getBytes(Charsets.UTF_8));
+    List<String> updates = new CopyOnWriteArrayList<>();
+    // poll rarely, so that the updates can only be noticed through file system events
+    ConfigFileWatcher watcher = new ConfigFileWatcher(3600, 10);
+    watcher.addWatch(file.getPath(), new Function<byte[], Void>() {
+      public Void apply(byte[] contents) {
+        updates.add(new String(contents, Charsets.UTF_8));
+        return null;
+      }
+    });
+    assertEquals(1, updates.size());
+
+    Files.write(file.toPath(), "{\"a\": 0}".getBytes(Charsets.UTF_8));
+    waitForUpdates(updates, 2);
+    assertEquals("{\"a\": 0}", updates.get(1));
+
+    // files replaced by a rename are picked up as well
+    File tmpFile = tempDir.newFile("decider.tmp");
+    Files.write(tmpFile.toPath(), "{\"a\": 100}".getBytes(Charsets.UTF_8));
+    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    waitForUpdates(updates, 3);
+    assertEquals("{\"a\": 100}", updates.get(2));
+
+    // a modification that keeps the content does not notify the watchers
+    file.setLastModified(file.lastModified() + 1000);
+    watcher.runWatcherTaskNow();
+    assertEquals(3, updates.size());
+  }
+
+  @Test
+  public void testSymlinkSwapsAreWatched() throws Exception {
+    // lay out the files like a mounted ConfigMap: decider -> ..data/decider, ..data -> ..v1
+    File root = tempDir.newFolder("config");
+    Path v1 = Files.createDirectory(root.toPath().resolve("..v1"));
+    Path v2 = Files.createDirectory(root.toPath().resolve("..v2"));
+    Files.write(v1.resolve("decider"), "{\"a\": 1}".getBytes(Charsets.UTF_8));
+    Files.write(v2.resolve("decider"), "{\"a\": 2}".getBytes(Charsets.UTF_8));
+    Path data = Files.createSymbolicLink(root.toPath().resolve("..data"), Paths.get("..v1"));
+    Path file = Files.createSymbolicLink(root.toPath().resolve("decider"),
+        Paths.get("..data", "decider"));
+
+    List<String> updates = new CopyOnWriteArrayList<>();
+    // poll rarely, so that the updates can only be noticed through file system events
+    ConfigFileWatcher watcher = new ConfigFileWatcher(3600, 10);
+    watcher.addWatch(file.toString(), new Function<byte[], Void>() {
+      public Void apply(byte[] contents) {
+        updates.add(new String(contents, Charsets.UTF_8));
+        return null;
+      }
+    });
+    assertEquals(1, updates.size());
+
+    // swap the data symlink to the new directory, and delete the old one
+    Path tmpData = Files.createSymbolicLink(root.toPath().resolve("..data_tmp"), Paths.get("..v2"));
+    Files.move(tmpData, data, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    FileUtils.deleteDirectory(v1.toFile());
+    waitForUpdates(updates, 2);
+    assertEquals("{\"a\": 2}", updates.get(1));
+
+    // updates in the new target directory raise events as well
+    Thread.sleep(100);
+    Files.write(v2.resolve("decider"), "{\"a\": 3}".getBytes(Charsets.UTF_8));
+    waitForUpdates(updates, 3);
+    assertEquals(3, updates.size());
+    assertEquals("{\"a\": 3}", updates.get(2));
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.pinterest.singer.thrift.configuration.LogStreamProcessorConfig;
+import com.pinterest.singer.thrift.configuration.SingerConfig;
+import com.pinterest.singer.thrift.configuration.SingerLogConfig;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SingerConfigDiffTest {
+
+  private static SingerLogConfig createLogConfig(String name) {
+    SingerLogConfig logConfig = new SingerLogConfig();
+    logConfig.setName(name);
+    logConfig.setLogDir("/mnt/log/singer");
+    logConfig.setLogStreamRegex(name + ".log");
+    logConfig.setLogStreamProcessorConfig(new LogStreamProcessorConfig(1000, 10000, 200));
+    return logConfig;
+  }
+
+  private static SingerConfig createSingerConfig(SingerLogConfig... logConfigs) {
+    SingerConfig singerConfig = new SingerConfig();
+    singerConfig.setLogConfigs(Lists.newArrayList(logConfigs));
+    return singerConfig;
+  }
+
+  @Test
+  public void testLogConfigChanges() {
+    SingerLogConfig tuned = createLogConfig("tuned");
+    SingerLogConfig restarted = createLogConfig("restarted");
+    SingerConfig oldConfig = createSingerConfig(createLogConfig("unchanged"),
+        createLogConfig("removed"), tuned, restarted);
+
+    SingerLogConfig newTuned = tuned.deepCopy();
+    newTuned.setLogDecider("singer_tuned_decider");
+    newTuned.getLogStreamProcessorConfig().setBatchSize(500);
+    newTuned.getLogStreamProcessorConfig().setProcessingIntervalInMillisecondsMax(20000);
+    SingerLogConfig newRestarted = restarted.deepCopy();
+    newRestarted.setLogStreamRegex("restarted_.*.log");
+    SingerConfig newConfig = createSingerConfig(createLogConfig("unchanged"),
+        newTuned, newRestarted, createLogConfig("added"));
+
+    SingerConfigDiff diff = new SingerConfigDiff(oldConfig, newConfig);
+    assertTrue(diff.isLogConfigsOnly());
+    assertTrue(diff.hasLogStreamChanges());
+    assertEquals(Lists.newArrayList(createLogConfig("added")), diff.getAddedLogConfigs());
+    assertEquals(Lists.newArrayList(createLogConfig("removed")), diff.getRemovedLogConfigs());
+    assertEquals(Lists.newArrayList(newTuned), diff.getTunedLogConfigs());
+    assertEquals(Lists.newArrayList(newRestarted), diff.getRestartedLogConfigs());
+  }
+
+  @Test
+  public void testTunableChange() {
+    SingerLogConfig oldLogConfig = createLogConfig("log");
+    assertFalse(SingerConfigDiff.isTunableChange(oldLogConfig, oldLogConfig.deepCopy()));
+
+    SingerLogConfig newLogConfig = oldLogConfig.deepCopy();
+    newLogConfig.getLogStreamProcessorConfig().setProcessingTimeSliceInMilliseconds(1000);
+    assertTrue(SingerConfigDiff.isTunableChange(oldLogConfig, newLogConfig));
+
+    // the processor type is not tunable
+    newLogConfig.getLogStreamProcessorConfig().setEnableMemoryEfficientProcessor(false);
+    assertFalse(SingerConfigDiff.isTunableChange(oldLogConfig, newLogConfig));
+  }
+
+  @Test
+  public void testSettingsChange() {
+    SingerConfig oldConfig = createSingerConfig(createLogConfig("log"));
+    SingerConfig newConfig = oldConfig.deepCopy();
+    newConfig.setThreadPoolSize(40);
+    SingerConfigDiff diff = new SingerConfigDiff(oldConfig, newConfig);
+    assertFalse(diff.isLogConfigsOnly());
+    assertFalse(diff.hasLogStreamChanges());
+  }
+
+  @Test
+  public void testDirectoryWatcherReloadsLogConfigs() throws Exception {
+    SingerLogConfig logConfig = createLogConfig("log");
+    SingerConfig oldConfig = createSingerConfig(logConfig);
+    oldConfig.setLogConfigPollIntervalSecs(1000);
+    SingerConfig newConfig = oldConfig.deepCopy();
+    newConfig.getLogConfigs().get(0).getLogStreamProcessorConfig().setBatchSize(500);
+    AtomicReference<SingerConfig> parsedConfig = new AtomicReference<>(oldConfig);
+    AtomicInteger exitCode = new AtomicInteger(-1);
+    AtomicReference<SingerConfigDiff> reloaded = new AtomicReference<>();
+    AtomicReference<Boolean> reloadResult = new AtomicReference<>(true);
+    SingerDirectoryWatcher watcher = new SingerDirectoryWatcher(oldConfig, parsedConfig::get,
+        exitCode::set, diff -> {
+          reloaded.set(diff);
+          return reloadResult.get();
+        });
+    // let the first scheduled run of the watcher pass
+    Thread.sleep(100);
+
+    parsedConfig.set(newConfig);
+    watcher.run();
+    assertEquals(-1, exitCode.get());
+    assertEquals(Lists.newArrayList(newConfig.getLogConfigs()),
+        reloaded.get().getTunedLogConfigs());
+
+    // the reloaded config is the base of the next comparison
+    reloaded.set(null);
+    watcher.run();
+    assertEquals(null, reloaded.get());
+
+    // Singer exits if the changes can not be applied
+    SingerConfig failedConfig = newConfig.deepCopy();
+    failedConfig.getLogConfigs().add(createLogConfig("added"));
+    parsedConfig.set(failedConfig);
+    reloadResult.set(false);
+    watcher.run();
+    assertEquals(0, exitCode.get());
+
+    // changes of other settings always restart Singer
+    exitCode.set(-1);
+    reloaded.set(null);
+    SingerConfig settingsConfig = newConfig.deepCopy();
+    settingsConfig.setThreadPoolSize(40);
+    parsedConfig.set(settingsConfig);
+    reloadResult.set(true);
+    watcher.run();
+    assertEquals(0, exitCode.get());
+  }
+}
@@ -18,6 +18,7 @@ package com.pinterest.singer.kubernetes;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -35,6 +36,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.http.client.ClientProtocolException;
@@ -44,6 +46,8 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.pinterest.singer.thrift.configuration.KubeConfig;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
@@ -235,6 +239,71 @@ public class TestKubeService {
         assertEquals(podNames.size() - 1, pmdTracker.getPodMetadataMap().size());
     }
 
+    @Test
+    public void testPodMetadataFetchedOnceForAllPods() throws IOException {
+        AtomicInteger podListRequests = new AtomicInteger();
+        byte[] response = Files.readAllBytes(new File("src/test/resources/pods-goodresponse.json").toPath());
+        server.createContext("/pods", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                podListRequests.incrementAndGet();
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+
+        KubeConfig kubeConfig = new KubeConfig();
+        kubeConfig.setPodMetadataFields(Arrays.asList("name", "namespace", "uid"));
+        kubeConfig.setPodLogDirectory("");
+        // initializes the kubelet url
+        new KubeService(kubeConfig);
+        PodMetadataFetcher pmdTracker = new PodMetadataFetcher(kubeConfig);
+
+        // the first miss refreshes the snapshot, the other pods are found in it
+        for (String pod : podNames) {
+            assertNotNull(pmdTracker.getPodMetadata(pod));
+        }
+        assertEquals(1, podListRequests.get());
+
+        // an unknown pod refreshes the snapshot once per lookup
+        assertNull(pmdTracker.getPodMetadata("default_unknown_pod"));
+        assertEquals(2, podListRequests.get());
+
+        // a snapshot from the poll serves new lookups without a fetch
+        PodMetadataFetcher polledTracker = new PodMetadataFetcher(kubeConfig);
+        polledTracker.updateSnapshot(KubeService.getPodListFromKubelet());
+        for (String pod : podNames) {
+            assertNotNull(polledTracker.getPodMetadata(pod));
+        }
+        assertEquals(3, podListRequests.get());
+    }
+
+    @Test
+    public void testMalformedPodListItemsAreSkipped() {
+        KubeConfig kubeConfig = new KubeConfig();
+        kubeConfig.setPodMetadataFields(Arrays.asList("name", "namespace", "uid"));
+        kubeConfig.setPodLogDirectory("");
+        PodMetadataFetcher pmdTracker = new PodMetadataFetcher(kubeConfig);
+
+        JsonArray podList = new Gson().fromJson("["
+            + "{\"metadata\": {\"namespace\": \"default\", \"name\": \"good\", \"uid\": \"u1\"}},"
+            + "{\"spec\": {}},"
+            + "{\"metadata\": \"not an object\"},"
+            + "{\"metadata\": {\"namespace\": \"default\", \"name\": \"nouid\"}},"
+            + "{\"metadata\": {\"namespace\": {}, \"name\": \"bad\", \"uid\": \"u2\"}},"
+            + "\"not a pod\""
+            + "]", JsonArray.class);
+        pmdTracker.updateSnapshot(podList);
+
+        // the well formed pod is served from the snapshot despite the malformed items
+        Map<String, String> metadata = pmdTracker.getPodMetadata("default_good_u1");
+        assertNotNull(metadata);
+        assertEquals("good", metadata.get("name"));
+        assertEquals("u1", metadata.get("uid"));
+    }
+
 //    @Test
     public void testListener() throws IOException {
         registerGoodResponse();
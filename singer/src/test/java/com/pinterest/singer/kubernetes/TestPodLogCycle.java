@@ -23,9 +23,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.After;
 import org.junit.Before;
@@ -33,11 +38,13 @@ import org.junit.Test;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.pinterest.singer.SingerTestBase;
+import com.pinterest.singer.common.LogStream;
 import com.pinterest.singer.common.SingerMetrics;
 import com.pinterest.singer.common.SingerSettings;
 import com.pinterest.singer.common.errors.SingerLogException;
 import com.pinterest.singer.monitor.FileSystemMonitor;
 import com.pinterest.singer.monitor.LogStreamManager;
+import com.pinterest.singer.monitor.RecursiveFSEventProcessor;
 import com.pinterest.singer.thrift.configuration.FileNameMatchMode;
 import com.pinterest.singer.thrift.configuration.KubeConfig;
 import com.pinterest.singer.thrift.configuration.SingerConfig;
@@ -431,6 +438,92 @@ public class TestPodLogCycle {
         assertFalse("Dot file should not be created (old behavior)", dotFile.exists());
     }
 
+    @Test
+    public void testPodDeletedWhileInitializing() throws InterruptedException, IOException {
+        kubeConfig.setEnablePodLogDirectoryCleanup(true);
+        kubeConfig.setDeletionCheckIntervalInSeconds(1);
+        kubeConfig.setDefaultDeletionTimeoutInSeconds(1);
+
+        SingerLogConfig logConfig = new SingerLogConfig();
+        logConfig.setLogDir("/var/log");
+        logConfig.setFilenameMatchMode(FileNameMatchMode.PREFIX);
+        logConfig.setName("testDeletionWhileInitializing");
+        logConfig.setLogStreamRegex("test.log");
+        config.setLogConfigs(Arrays.asList(logConfig));
+        SingerSettings.getLogConfigMap().putAll(SingerSettings.loadLogConfigMap(config));
+
+        LogStreamManager lsm = LogStreamManager.getInstance();
+
+        String podUid = "create-delete-test-pod-123";
+        File podDirectory = new File(podLogPath + "/" + podUid);
+        new File(podDirectory + "/var/log").mkdirs();
+
+        // the pod is deleted before its deferred initialization is done
+        lsm.podCreated(podUid);
+        lsm.podDeleted(podUid);
+        assertFalse(lsm.hasPendingPodInitialization(podUid));
+
+        Thread.sleep(5000);
+
+        String podPath = podDirectory.toPath().normalize().toString();
+        assertTrue(lsm.getDirStreams().subMap(podPath, podPath + "/" + Character.MAX_VALUE).isEmpty());
+        assertFalse("Pod directory should be deleted", podDirectory.exists());
+        assertFalse(lsm.hasPendingPodInitialization(podUid));
+    }
+
+    @Test
+    public void testConcurrentPodRegistration() throws Exception {
+        SingerLogConfig logConfig = new SingerLogConfig();
+        logConfig.setLogDir("/var/log");
+        logConfig.setFilenameMatchMode(FileNameMatchMode.PREFIX);
+        logConfig.setName("testConcurrentRegistration");
+        logConfig.setLogStreamRegex("access.log");
+        SingerLogConfig appLogConfig = new SingerLogConfig();
+        appLogConfig.setLogDir("/var/log/app");
+        appLogConfig.setFilenameMatchMode(FileNameMatchMode.PREFIX);
+        appLogConfig.setName("testConcurrentAppRegistration");
+        appLogConfig.setLogStreamRegex("app.log");
+        config.setLogConfigs(Arrays.asList(logConfig, appLogConfig));
+        SingerSettings.getLogConfigMap().putAll(SingerSettings.loadLogConfigMap(config));
+
+        String podUid = "concurrent-registration-pod-123";
+        File podDirectory = new File(podLogPath + "/" + podUid);
+        new File(podDirectory + "/var/log/app").mkdirs();
+        new File(podDirectory + "/var/log/access.log").createNewFile();
+        new File(podDirectory + "/var/log/app/app.log").createNewFile();
+
+        // the pod initialization and the events of its directories register the same paths
+        LogStreamManager lsm = LogStreamManager.getInstance();
+        RecursiveFSEventProcessor processor = new RecursiveFSEventProcessor(lsm);
+        int numThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                processor.evaluateAndRegisterLogStreamOrWatcher(podDirectory.toPath(), podUid);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        String logDir = podDirectory.toPath().normalize() + "/var/log";
+        assertEquals(2, lsm.getSingerLogPaths().size());
+        assertEquals(1, lsm.getSingerLogPaths().get(logDir).size());
+        assertEquals(1, lsm.getSingerLogPaths().get(logDir + "/app").size());
+        Collection<LogStream> logStreams = lsm.getDirStreams().get(logDir);
+        assertEquals(1, logStreams.size());
+        assertEquals(1, logStreams.iterator().next().size());
+        Collection<LogStream> appLogStreams = lsm.getDirStreams().get(logDir + "/app");
+        assertEquals(1, appLogStreams.size());
+        assertEquals(1, appLogStreams.iterator().next().size());
+    }
+
     /*
      * Copied from
      * https://github.com/srotya/sidewinder/blob/development/core/src/main/java/com/
@@ -1,22 +1,43 @@
 package com.pinterest.singer.monitor;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.pinterest.singer.common.LogStream;
 import com.pinterest.singer.common.SingerLog;
+import com.pinterest.singer.common.SingerSettings;
 import com.pinterest.singer.config.Decider;
+import com.pinterest.singer.config.SingerConfigDiff;
 import com.pinterest.singer.thrift.configuration.LogStreamProcessorConfig;
 import com.pinterest.singer.thrift.configuration.SamplingType;
 import com.pinterest.singer.thrift.configuration.SingerConfig;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
 
+import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 public class DefaultLogMonitorTest {
 
+  @Rule
+  public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    LogStreamManager.reset();
+    SingerSettings.reset();
+  }
+
   @Test
   public void testIsLogStreamInactive() throws Exception {
     SingerConfig singerConfig = new SingerConfig();
@@ -87,4 +108,105 @@ public class DefaultLogMonitorTest {
       }
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testApplyAddedAndRemovedLogConfigs() throws Exception {
+    SingerLogConfig logConfigA = makeLogConfig("a", createLogDir("a"), 100);
+    SingerLogConfig logConfigB = makeLogConfig("b", createLogDir("b"), 100);
+    SingerConfig oldConfig = makeSingerConfig(logConfigA, logConfigB);
+    initializeLogStreams(oldConfig);
+    SingerLog singerLogA = findSingerLog("a");
+    assertEquals(Arrays.asList("a", "b"), getLogNames());
+
+    SingerLogConfig logConfigC = makeLogConfig("c", createLogDir("c"), 100);
+    SingerConfig newConfig = makeSingerConfig(logConfigA.deepCopy(), logConfigC);
+    DefaultLogMonitor logMonitor = new DefaultLogMonitor(1, oldConfig);
+    assertTrue(logMonitor.reloadLogConfigs(new SingerConfigDiff(oldConfig, newConfig)));
+
+    assertEquals(Arrays.asList("a", "c"), getLogNames());
+    // the unchanged log keeps its SingerLog
+    assertSame(singerLogA, findSingerLog("a"));
+    assertFalse(LogStreamManager.getInstance().getSingerLogPaths().values().stream()
+        .anyMatch(singerLogs -> singerLogs.stream().anyMatch(log -> log.getLogName().equals("b"))));
+  }
+
+  @Test
+  public void testApplyTunedLogConfigs() throws Exception {
+    SingerLogConfig logConfigA = makeLogConfig("a", createLogDir("a"), 100);
+    // a log whose directory doesn't exist yet
+    SingerLogConfig logConfigB =
+        makeLogConfig("b", new File(tempDir.getRoot(), "missing").getPath(), 100);
+    SingerConfig oldConfig = makeSingerConfig(logConfigA, logConfigB);
+    initializeLogStreams(oldConfig);
+    LogStreamManager logStreamManager = LogStreamManager.getInstance();
+    SingerLog singerLogA = findSingerLog("a");
+    SingerLog singerLogB = logStreamManager.getMissingDirChecker().getSingerLogsWithoutDir()
+        .keySet().iterator().next();
+
+    SingerLogConfig tunedLogConfigA = makeLogConfig("a", logConfigA.getLogDir(), 200);
+    tunedLogConfigA.setLogDecider("decider_a");
+    SingerLogConfig tunedLogConfigB = makeLogConfig("b", logConfigB.getLogDir(), 300);
+    SingerConfig newConfig = makeSingerConfig(tunedLogConfigA, tunedLogConfigB);
+    SingerConfigDiff diff = new SingerConfigDiff(oldConfig, newConfig);
+    assertEquals(2, diff.getTunedLogConfigs().size());
+    DefaultLogMonitor logMonitor = new DefaultLogMonitor(1, oldConfig);
+    assertTrue(logMonitor.reloadLogConfigs(diff));
+
+    // the SingerLogs are updated with new configs and can still be found in the hashed collections
+    assertSame(singerLogA, findSingerLog("a"));
+    assertEquals(200, singerLogA.getSingerLogConfig().getLogStreamProcessorConfig().getBatchSize());
+    assertEquals("decider_a", singerLogA.getSingerLogConfig().getLogDecider());
+    assertTrue(logStreamManager.getSingerLogPaths().values().stream()
+        .anyMatch(singerLogs -> singerLogs.contains(singerLogA)));
+    assertEquals(300, singerLogB.getSingerLogConfig().getLogStreamProcessorConfig().getBatchSize());
+    assertTrue(logStreamManager.getMissingDirChecker().getSingerLogsWithoutDir()
+        .containsKey(singerLogB));
+    // the configs of the old SingerConfig are not modified
+    assertEquals(100, logConfigA.getLogStreamProcessorConfig().getBatchSize());
+    assertFalse(logConfigA.isSetLogDecider());
+  }
+
+  private String createLogDir(String logName) throws Exception {
+    File logDir = tempDir.newFolder(logName);
+    new File(logDir, logName + ".log").createNewFile();
+    return logDir.getPath();
+  }
+
+  private static SingerLogConfig makeLogConfig(String logName, String logDir, int batchSize) {
+    LogStreamProcessorConfig processorConfig = new LogStreamProcessorConfig(1000, 1000, batchSize);
+    return new SingerLogConfig(logName, logDir, logName + ".log", processorConfig, null, null);
+  }
+
+  private static SingerConfig makeSingerConfig(SingerLogConfig... logConfigs) {
+    SingerConfig singerConfig = new SingerConfig();
+    singerConfig.setLogConfigs(new ArrayList<>(Arrays.asList(logConfigs)));
+    return singerConfig;
+  }
+
+  private static void initializeLogStreams(SingerConfig singerConfig) throws Exception {
+    LogStreamManager.getInstance();
+    LogStreamManager.reset();
+    SingerSettings.setSingerConfig(singerConfig);
+    SingerSettings.initializeConfigMap(singerConfig);
+    LogStreamManager.initializeLogStreams();
+  }
+
+  private static SingerLog findSingerLog(String logName) {
+    for (LogStream logStream : LogStreamManager.getLogStreams()) {
+      if (logStream.getSingerLog().getLogName().equals(logName)) {
+        return logStream.getSingerLog();
+      }
+    }
+    return null;
+  }
+
+  private static List<String> getLogNames() {
+    Collection<LogStream> logStreams = LogStreamManager.getLogStreams();
+    List<String> logNames = new ArrayList<>();
+    for (LogStream logStream : logStreams) {
+      logNames.add(logStream.getSingerLog().getLogName());
+    }
+    logNames.sort(null);
+    return logNames;
+  }
+}
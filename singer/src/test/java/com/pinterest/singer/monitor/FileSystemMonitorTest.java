@@ -245,6 +245,41 @@ public class FileSystemMonitorTest extends com.pinterest.singer.SingerTestBase {
     }
   }
 
+  @Test
+  public void testParallelLogStreamInitialization() throws Exception {
+    final int NUM_DIRS = 20;
+    final int NUM_FILES = 5;
+    SingerConfig singerConfig = new SingerConfig();
+    singerConfig.setLogStreamInitThreads(4);
+    List<SingerLogConfig> logStreamConfigs = new ArrayList<>();
+    File[] testDirs = new File[NUM_DIRS];
+    String[][] createdFiles = new String[NUM_DIRS][];
+    for (int d = 0; d < NUM_DIRS; d++) {
+      testDirs[d] = this.tempDir.newFolder();
+      File[] created = createTestLogStreamFiles(testDirs[d], "test_001.tmp", NUM_FILES);
+      createdFiles[d] = new String[NUM_FILES];
+      for (int i = 0; i < NUM_FILES; i++) {
+        createdFiles[d][i] = created[i].getName();
+      }
+      SingerLogConfig config = createSingerLogConfig("logstream_" + d, testDirs[d].getAbsolutePath());
+      config.setLogStreamRegex("test_(\\d+).tmp");
+      logStreamConfigs.add(config);
+    }
+    singerConfig.setLogConfigs(logStreamConfigs);
+
+    SingerSettings.setSingerConfig(singerConfig);
+    SingerSettings.getOrCreateFileSystemMonitor("");
+    // returns once the log streams of all configs are initialized
+    LogStreamManager.initializeLogStreams();
+
+    for (int d = 0; d < NUM_DIRS; d++) {
+      List<LogStream> logStreams = LogStreamManager.getLogStreamsFor(testDirs[d].toPath(),
+          new File(testDirs[d], createdFiles[d][0]).toPath());
+      assertEquals(1, logStreams.size());
+      verifyFiles(createdFiles[d], logStreams.get(0));
+    }
+  }
+
   @Test
   public void testRenameFile() throws Exception {
     File testDir = this.tempDir.newFolder();
@@ -558,4 +593,31 @@ public class FileSystemMonitorTest extends com.pinterest.singer.SingerTestBase {
 
     monitor.stop();
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testMatchedSingerLogsFollowLogChanges() throws Exception {
+    final File testDir = this.tempDir.newFolder();
+    SingerSettings.setSingerConfig(new SingerConfig());
+    LogStreamManager manager = LogStreamManager.getInstance();
+    File appFile = new File(testDir, "app.log");
+    File otherFile = new File(testDir, "other.log");
+
+    SingerLogConfig appConfig = createSingerLogConfig("app", testDir.getAbsolutePath());
+    appConfig.setLogStreamRegex("app\\.log");
+    manager.initializeSingerLog(appConfig);
+    assertEquals(1, LogStreamManager.getMatchedSingerLogs(testDir.toPath(), appFile).size());
+    assertEquals(0, LogStreamManager.getMatchedSingerLogs(testDir.toPath(), otherFile).size());
+
+    // the directory gets a different log with the same number of logs
+    manager.removeSingerLogs("app");
+    SingerLogConfig otherConfig = createSingerLogConfig("other", testDir.getAbsolutePath());
+    otherConfig.setLogStreamRegex("other\\.log");
+    manager.initializeSingerLog(otherConfig);
+    assertEquals(0, LogStreamManager.getMatchedSingerLogs(testDir.toPath(), appFile).size());
+    List<SingerLog> matchedLogs = LogStreamManager.getMatchedSingerLogs(testDir.toPath(), otherFile);
+    assertEquals(1, matchedLogs.size());
+    assertEquals("other", matchedLogs.get(0).getLogName());
+
+    manager.removeSingerLogs("other");
+  }
+}
@@ -189,6 +189,44 @@ public class MissingDirCheckerTest extends SingerTestBase {
     assertTrue(instance.getMissingDirChecker().getCancelled().get());
   }
 
+  @Test
+  public void testWildcardDirectoryDiscoveryFromCreateEvents() throws Exception {
+    String testBasePath = tempDir.getRoot().getAbsolutePath();
+    File baseDir = new File(testBasePath, "services");
+    assertTrue(baseDir.mkdirs());
+
+    Map<String, String> singerConfigProperties = makeDirectorySingerConfigProperties("");
+    File singerConfigFile = createSingerConfigFile(singerConfigProperties);
+    createSingerLogConfigPropertyFile("test.app1.properties", "app1_(\\\\w+)",
+        baseDir.getAbsolutePath() + "/*/logs", "topic1");
+    DirectorySingerConfigurator configurator =
+        new DirectorySingerConfigurator(singerConfigFile.getParent());
+    SingerSettings.setSingerConfig(configurator.parseSingerConfig());
+    LogStreamManager instance = LogStreamManager.getInstance();
+    // polling alone would not discover the directory during this test
+    instance.getMissingDirChecker().setSleepInMills(60000);
+    LogStreamManager.initializeLogStreams();
+
+    MissingDirChecker checker = instance.getMissingDirChecker();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (checker.getWatchedWildcardLogs().isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(1, checker.getWatchedWildcardLogs().size());
+
+    Path logDir = Paths.get(baseDir.getAbsolutePath(), "session_1", "logs");
+    Files.createDirectories(logDir);
+    Files.write(logDir.resolve("app1_test"), "message".getBytes());
+
+    deadline = System.currentTimeMillis() + 10000;
+    while (LogStreamManager.getLogStreams(logDir) == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertNotNull(LogStreamManager.getLogStreams(logDir));
+    assertEquals(1, LogStreamManager.getLogStreams(logDir).size());
+    instance.stop();
+  }
+
   public Map<String, String> makeDirectorySingerConfigProperties(String logConfigDirPath) {
     return new TreeMap<String, String>() {
       private static final long serialVersionUID = 1L;
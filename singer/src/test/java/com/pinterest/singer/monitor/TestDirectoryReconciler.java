@@ -0,0 +1,154 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.monitor;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestDirectoryReconciler {
+
+  @Rule
+  public TemporaryFolder tempDir = new TemporaryFolder();
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static void setOldMtime(Path dir) throws Exception {
+    Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() - 60000));
+  }
+
+  @Test
+  public void testOnlyChangedDirectoriesAreRescanned() throws Exception {
+    Path dir1 = tempDir.newFolder("dir1").toPath();
+    Path dir2 = tempDir.newFolder("dir2").toPath();
+    Path dir3 = tempDir.newFolder("dir3").toPath();
+    setOldMtime(dir1);
+    setOldMtime(dir2);
+    List<Path> monitoredPaths = ImmutableList.of(dir1, dir2, dir3);
+    DirectoryReconciler reconciler =
+        new DirectoryReconciler("test", 0, () -> monitoredPaths, executor);
+    reconciler.markConsistent(dir1);
+    reconciler.markConsistent(dir2);
+
+    // dir3 was never consistent
+    assertEquals(ImmutableList.of(dir3), reconciler.reconcile());
+
+    // a file created in dir2 changes its mtime, the mtime of dir3 is too recent to be trusted
+    // but its names did not change
+    Files.createFile(dir2.resolve("app.log"));
+    assertEquals(ImmutableList.of(dir2), reconciler.reconcile());
+
+    // the mtimes changed without changing the names
+    setOldMtime(dir2);
+    setOldMtime(dir3);
+    assertEquals(ImmutableList.of(), reconciler.reconcile());
+    assertEquals(ImmutableList.of(), reconciler.reconcile());
+
+    Files.delete(dir2.resolve("app.log"));
+    assertEquals(ImmutableList.of(dir2), reconciler.reconcile());
+  }
+
+  @Test
+  public void testProcessedEventsAvoidRescans() throws Exception {
+    Path dir1 = tempDir.newFolder("dir1").toPath();
+    setOldMtime(dir1);
+    List<Path> monitoredPaths = ImmutableList.of(dir1);
+    DirectoryReconciler reconciler =
+        new DirectoryReconciler("test", 0, () -> monitoredPaths, executor);
+    reconciler.markConsistent(dir1);
+
+    Files.createFile(dir1.resolve("app.log"));
+    reconciler.onFileCreated(dir1, "app.log");
+    assertEquals(ImmutableList.of(), reconciler.reconcile());
+
+    // the event of other.log was lost
+    Files.createFile(dir1.resolve("other.log"));
+    assertEquals(ImmutableList.of(dir1), reconciler.reconcile());
+
+    Files.delete(dir1.resolve("other.log"));
+    reconciler.onFileDeleted(dir1, "other.log");
+    // dot files are ignored by the FileSystemMonitor
+    Files.createFile(dir1.resolve(".app.log.watermark"));
+    assertEquals(ImmutableList.of(), reconciler.reconcile());
+  }
+
+  @Test
+  public void testDirectoriesAreForgotten() throws Exception {
+    Path dir1 = tempDir.newFolder("dir1").toPath();
+    Path dir2 = tempDir.newFolder("dir2").toPath();
+    List<Path> monitoredPaths = new ArrayList<>(ImmutableList.of(dir1, dir2));
+    DirectoryReconciler reconciler =
+        new DirectoryReconciler("test", 0, () -> monitoredPaths, executor);
+    reconciler.markConsistent(dir1);
+    reconciler.markConsistent(dir2);
+    assertEquals(ImmutableSet.of(dir1, dir2), reconciler.getConsistentDirectories());
+
+    reconciler.forget(dir1);
+    assertEquals(ImmutableSet.of(dir2), reconciler.getConsistentDirectories());
+
+    // directories that are no longer monitored are pruned by the next reconciliation
+    reconciler.markConsistent(dir1);
+    monitoredPaths.remove(dir2);
+    reconciler.reconcile();
+    assertEquals(ImmutableSet.of(dir1), reconciler.getConsistentDirectories());
+
+    reconciler.stop();
+    assertEquals(ImmutableSet.of(), reconciler.getConsistentDirectories());
+  }
+
+  @Test
+  public void testRequestsAreCoalesced() throws Exception {
+    Path dir1 = tempDir.newFolder("dir1").toPath();
+    AtomicInteger reconciliations = new AtomicInteger();
+    DirectoryReconciler reconciler = new DirectoryReconciler("test", 60000, () -> {
+      reconciliations.incrementAndGet();
+      return ImmutableList.of(dir1);
+    }, executor);
+    reconciler.requestReconciliation();
+    reconciler.requestReconciliation();
+    // the second reconciliation can only run a minute after the first one
+    executor.submit(() -> { }).get(10, TimeUnit.SECONDS);
+    reconciler.requestReconciliation();
+    reconciler.requestReconciliation();
+    Thread.sleep(500);
+    assertEquals(1, reconciliations.get());
+
+    // a stopped reconciler doesn't reconcile anymore
+    reconciler.stop();
+    Thread.sleep(500);
+    assertEquals(1, reconciliations.get());
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.pinterest.singer.utils.SingerUtils;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+public class TestFileCatalog {
+
+  private static final String ALL_FILES = ".*";
+
+  @Rule
+  public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @After
+  public void tearDown() {
+    FileCatalog catalog = FileCatalog.getInstance();
+    catalog.setMinRescanIntervalMillis(FileCatalog.DEFAULT_MIN_RESCAN_INTERVAL_MILLIS);
+    catalog.invalidate();
+  }
+
+  @Test
+  public void testLookupsFollowEvents() throws Exception {
+    FileCatalog catalog = FileCatalog.getInstance();
+    Path dir = tempDir.getRoot().toPath();
+    Path log = Files.write(dir.resolve("app.log"), "abc".getBytes(StandardCharsets.UTF_8));
+    long inode = SingerUtils.getFileInode(log);
+
+    assertEquals("app.log", catalog.getFileNameByInode(dir, ALL_FILES, inode));
+
+    // rotation: the file is renamed and a new file takes its name
+    Files.move(log, dir.resolve("app.log.1"));
+    Path newLog = Files.write(dir.resolve("app.log"), "d".getBytes(StandardCharsets.UTF_8));
+    long newInode = SingerUtils.getFileInode(newLog);
+    catalog.remove(dir, Paths.get("app.log"));
+    assertEquals(inode, catalog.update(dir, Paths.get("app.log.1")));
+    assertEquals(newInode, catalog.update(dir, Paths.get("app.log")));
+    assertEquals("app.log.1", catalog.getFileNameByInode(dir, ALL_FILES, inode));
+    assertEquals("app.log", catalog.getFileNameByInode(dir, ALL_FILES, newInode));
+
+    Files.delete(dir.resolve("app.log.1"));
+    catalog.remove(dir, Paths.get("app.log.1"));
+    assertNull(catalog.getFileNameByInode(dir, ALL_FILES, inode));
+  }
+
+  @Test
+  public void testMissRescansDirectory() throws Exception {
+    FileCatalog catalog = FileCatalog.getInstance();
+    catalog.setMinRescanIntervalMillis(0);
+    Path dir = tempDir.getRoot().toPath();
+    Path log = Files.write(dir.resolve("app.log"), new byte[0]);
+    long inode = SingerUtils.getFileInode(log);
+    assertEquals("app.log", catalog.getFileNameByInode(dir, ALL_FILES, inode));
+
+    // no events are delivered for these changes
+    Files.move(log, dir.resolve("app.log.1"));
+    Path newLog = Files.write(dir.resolve("app.log"), new byte[0]);
+    long newInode = SingerUtils.getFileInode(newLog);
+    assertEquals("app.log", catalog.getFileNameByInode(dir, ALL_FILES, newInode));
+    assertEquals("app.log.1", catalog.getFileNameByInode(dir, ALL_FILES, inode));
+    assertNull(catalog.getFileNameByInode(dir.resolve("missing"), ALL_FILES, inode));
+  }
+
+  @Test
+  public void testRescansAreRateLimited() throws Exception {
+    FileCatalog catalog = FileCatalog.getInstance();
+    catalog.setMinRescanIntervalMillis(TimeUnit.HOURS.toMillis(1));
+    Path dir = tempDir.getRoot().toPath();
+    Path log = Files.write(dir.resolve("app.log"), new byte[0]);
+    long inode = SingerUtils.getFileInode(log);
+    assertEquals("app.log", catalog.getFileNameByInode(dir, ALL_FILES, inode));
+
+    // without events the new file is only found once the directory may be rescanned
+    Path newLog = Files.write(dir.resolve("app.log.1"), new byte[0]);
+    long newInode = SingerUtils.getFileInode(newLog);
+    assertNull(catalog.getFileNameByInode(dir, ALL_FILES, newInode));
+    catalog.setMinRescanIntervalMillis(0);
+    assertEquals("app.log.1", catalog.getFileNameByInode(dir, ALL_FILES, newInode));
+  }
+
+  @Test
+  public void testScansAreFilteredByPattern() throws Exception {
+    FileCatalog catalog = FileCatalog.getInstance();
+    catalog.setMinRescanIntervalMillis(TimeUnit.HOURS.toMillis(1));
+    Path dir = tempDir.getRoot().toPath();
+    long appInode = SingerUtils.getFileInode(Files.write(dir.resolve("app.log"), new byte[0]));
+    long otherInode = SingerUtils.getFileInode(Files.write(dir.resolve("other.log"), new byte[0]));
+
+    assertEquals("app.log", catalog.getFileNameByInode(dir, "app\\.log.*", appInode));
+    assertNull(catalog.getFileNameByInode(dir, "app\\.log.*", otherInode));
+    // the first query of another pattern scans the files matching it
+    assertEquals("other.log", catalog.getFileNameByInode(dir, "other\\.log.*", otherInode));
+  }
+
+  @Test
+  public void testInvalidateTree() throws Exception {
+    FileCatalog catalog = FileCatalog.getInstance();
+    Path pod = tempDir.newFolder("pod1", "var", "log").toPath().getParent().getParent();
+    Path podLogDir = pod.resolve("var/log");
+    Path otherPodLogDir = tempDir.newFolder("pod10", "var", "log").toPath();
+    catalog.getFileNameByInode(pod, ALL_FILES, 0);
+    catalog.getFileNameByInode(podLogDir, ALL_FILES, 0);
+    catalog.getFileNameByInode(otherPodLogDir, ALL_FILES, 0);
+
+    catalog.invalidateTree(pod);
+    assertFalse(catalog.isCatalogued(pod));
+    assertFalse(catalog.isCatalogued(podLogDir));
+    // directories sharing a name prefix are kept
+    assertTrue(catalog.isCatalogued(otherPodLogDir));
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.pinterest.singer.monitor.TestSelectiveUniqueFSEventQueue.TestWatchEvent;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestShardedFSEventProcessor {
+
+  private static FileSystemEvent event(String dir, WatchEvent.Kind<?> kind, String file) {
+    return new FileSystemEvent(Paths.get(dir), new TestWatchEvent(kind, Paths.get(file)));
+  }
+
+  @Test
+  public void testModifyEventsAreCoalescedInOrder() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> handled = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(5);
+    ShardedFSEventProcessor processor = new ShardedFSEventProcessor("test", 1, 100, event -> {
+      Path file = (Path) event.event().context();
+      if (file.toString().equals("block")) {
+        blocked.countDown();
+        release.await();
+      }
+      handled.add(event.event().kind().name() + " " + file);
+      done.countDown();
+    }, lostEvent -> fail("no event should be lost"));
+    processor.start();
+    try {
+      // hold the shard thread so that the following events stay pending
+      processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_CREATE, "block"));
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+      assertTrue(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_MODIFY, "a")));
+      assertFalse(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_MODIFY, "a")));
+      assertTrue(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_MODIFY, "b")));
+      assertFalse(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_MODIFY, "a")));
+      // a MODIFY event is not merged across a DELETE event of the same file
+      assertTrue(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_DELETE, "a")));
+      assertTrue(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_MODIFY, "a")));
+      assertEquals(4, processor.getNumPendingEvents());
+
+      release.countDown();
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      assertEquals(Arrays.asList("ENTRY_CREATE block", "ENTRY_MODIFY a", "ENTRY_MODIFY b",
+          "ENTRY_DELETE a", "ENTRY_MODIFY a"), handled);
+
+      // the file has no pending event anymore, so a new MODIFY event is queued again
+      assertTrue(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_MODIFY, "a")));
+    } finally {
+      processor.stop();
+    }
+  }
+
+  @Test
+  public void testEventsOfADirectoryKeepTheirOrder() throws Exception {
+    int numDirs = 16;
+    int numEventsPerDir = 200;
+    List<List<Integer>> handled = new ArrayList<>();
+    for (int i = 0; i < numDirs; i++) {
+      handled.add(Collections.synchronizedList(new ArrayList<>()));
+    }
+    CountDownLatch done = new CountDownLatch(numDirs * numEventsPerDir);
+    ShardedFSEventProcessor processor = new ShardedFSEventProcessor("test", 4, numEventsPerDir, event -> {
+      int dir = Integer.parseInt(event.logDir().getFileName().toString());
+      handled.get(dir).add(Integer.parseInt(event.event().context().toString()));
+      done.countDown();
+    }, lostEvent -> fail("no event should be lost"));
+    processor.start();
+    try {
+      for (int i = 0; i < numEventsPerDir; i++) {
+        for (int dir = 0; dir < numDirs; dir++) {
+          processor.dispatch(
+              event("/logs/" + dir, StandardWatchEventKinds.ENTRY_CREATE, Integer.toString(i)));
+        }
+      }
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+      for (int dir = 0; dir < numDirs; dir++) {
+        List<Integer> events = handled.get(dir);
+        assertEquals(numEventsPerDir, events.size());
+        for (int i = 0; i < numEventsPerDir; i++) {
+          assertEquals(i, (int) events.get(i));
+        }
+      }
+    } finally {
+      processor.stop();
+    }
+  }
+
+  @Test
+  public void testLostEvents() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> lost = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch handledAll = new CountDownLatch(3);
+    ShardedFSEventProcessor processor = new ShardedFSEventProcessor("test", 1, 2, event -> {
+      Path file = (Path) event.event().context();
+      if (file.toString().equals("block")) {
+        blocked.countDown();
+        release.await();
+      }
+      handledAll.countDown();
+      if (file.toString().equals("fail")) {
+        throw new IllegalStateException("handler failure");
+      }
+    }, lostEvent -> lost.add(lostEvent.event().context().toString()));
+    processor.start();
+    try {
+      processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_CREATE, "block"));
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+      assertTrue(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_CREATE, "fail")));
+      assertTrue(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_CREATE, "a")));
+      // the shard is full
+      assertFalse(processor.dispatch(event("/logs", StandardWatchEventKinds.ENTRY_CREATE, "b")));
+      assertEquals(Collections.singletonList("b"), lost);
+      assertEquals(2, processor.getNumPendingEvents());
+
+      // the shard thread survives the failed event and handles the next one
+      release.countDown();
+      assertTrue(handledAll.await(10, TimeUnit.SECONDS));
+      assertEquals(Arrays.asList("b", "fail"), lost);
+    } finally {
+      processor.stop();
+    }
+  }
+}
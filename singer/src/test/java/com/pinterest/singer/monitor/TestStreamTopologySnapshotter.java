@@ -0,0 +1,98 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.pinterest.singer.common.LogStream;
+import com.pinterest.singer.common.SingerLog;
+import com.pinterest.singer.thrift.LogFile;
+import com.pinterest.singer.thrift.LogFileAndPath;
+import com.pinterest.singer.thrift.LogPosition;
+import com.pinterest.singer.thrift.LogStreamSnapshot;
+import com.pinterest.singer.thrift.StreamTopologySnapshot;
+import com.pinterest.singer.thrift.configuration.FileNameMatchMode;
+import com.pinterest.singer.thrift.configuration.SingerLogConfig;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+
+public class TestStreamTopologySnapshotter {
+
+  @Rule
+  public TemporaryFolder tempDir = new TemporaryFolder();
+
+  private static SingerLogConfig createLogConfig(String name, String logDir) {
+    SingerLogConfig config = new SingerLogConfig();
+    config.setName(name);
+    config.setLogDir(logDir);
+    config.setLogStreamRegex("app.log");
+    config.setFilenameMatchMode(FileNameMatchMode.PREFIX);
+    return config;
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    String logDir = tempDir.newFolder("logs").getAbsolutePath();
+    LogStream hostStream = new LogStream(new SingerLog(createLogConfig("host", logDir)),
+        new File(logDir, "app.log").toPath());
+    // the files are restored in the given order without reading them
+    hostStream.restore(ImmutableList.of(
+        new LogFileAndPath(new LogFile(11), logDir + "/app.log.1"),
+        new LogFileAndPath(new LogFile(12), logDir + "/app.log")));
+    LogStream podStream = new LogStream(new SingerLog(createLogConfig("pod", logDir), "pod1"),
+        new File(logDir, "app.log").toPath());
+    Map<String, Collection<LogStream>> dirStreams =
+        ImmutableMap.of(logDir, ImmutableList.of(hostStream, podStream));
+    LogPosition position = new LogPosition(new LogFile(12), 100L);
+
+    StreamTopologySnapshotter snapshotter =
+        new StreamTopologySnapshotter(tempDir.getRoot() + "/topology.snapshot");
+    assertNull(snapshotter.load(60000));
+    snapshotter.save(
+        StreamTopologySnapshotter.build(dirStreams, ImmutableMap.of(hostStream, position)));
+
+    StreamTopologySnapshot snapshot = snapshotter.load(60000);
+    // log streams of pods are not persisted
+    assertEquals(1, snapshot.getLogStreamsSize());
+    LogStreamSnapshot logStream = snapshot.getLogStreams().get(0);
+    assertEquals("host", logStream.getLogName());
+    assertEquals("app.log", logStream.getFileNamePrefix());
+    assertEquals(logDir, logStream.getLogDir());
+    assertEquals(hostStream.getLogFileAndPaths(), logStream.getLogFileAndPaths());
+    assertEquals(position, logStream.getCommittedPosition());
+
+    LogStream restored = new LogStream(hostStream.getSingerLog(),
+        new File(logDir, logStream.getFileNamePrefix()).toPath());
+    restored.restore(logStream.getLogFileAndPaths());
+    assertEquals(hostStream, restored);
+    assertEquals(1, restored.getLogFileIndex(new LogFile(12)));
+    assertTrue(restored.containsFile("app.log.1"));
+
+    // stale snapshots are ignored
+    Thread.sleep(10);
+    assertNull(snapshotter.load(1));
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.pinterest.singer.common.LogStream;
+import com.pinterest.singer.common.SingerLog;
+import com.pinterest.singer.thrift.configuration.SingerLogConfig;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TestDrainCoordinator {
+
+  private ScheduledExecutorService executor;
+  private DrainCoordinator drainCoordinator;
+
+  @Before
+  public void setup() {
+    executor = Executors.newScheduledThreadPool(1);
+    drainCoordinator = new DrainCoordinator(executor, 1);
+  }
+
+  @After
+  public void teardown() {
+    drainCoordinator.shutdown();
+    executor.shutdownNow();
+  }
+
+  private static LogStream createLogStream(String name) {
+    SingerLogConfig config = new SingerLogConfig();
+    config.setName(name);
+    config.setLogDir("/tmp/" + name);
+    return new LogStream(new SingerLog(config), name + ".log");
+  }
+
+  @Test
+  public void testDrainOrder() throws Exception {
+    LogStream idle = createLogStream("idle");
+    LogStream earlyDeadline = createLogStream("early");
+    LogStream small = createLogStream("small");
+    LogStream large = createLogStream("large");
+    long now = System.currentTimeMillis();
+    drainCoordinator.startDraining("pod1", ImmutableList.of(earlyDeadline), now + 1000);
+    drainCoordinator.startDraining("pod2", ImmutableList.of(idle, small, large), now + 60000);
+    assertTrue(drainCoordinator.isDraining(large));
+    assertFalse(drainCoordinator.isDraining(createLogStream("live")));
+
+    // keep the only worker busy until all cycles are queued
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    drainCoordinator.schedule(idle, () -> {
+      started.countDown();
+      try {
+        blocked.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, 0, 0);
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    List<String> order = new CopyOnWriteArrayList<>();
+    List<Future<?>> cycles = ImmutableList.of(
+        drainCoordinator.schedule(small, () -> order.add("small"), 0, 100),
+        drainCoordinator.schedule(large, () -> order.add("large"), 0, 10000),
+        drainCoordinator.schedule(earlyDeadline, () -> order.add("early"), 0, 10));
+    assertEquals(10110,
+        drainCoordinator.reportProgress("pod2") + drainCoordinator.reportProgress("pod1"));
+    // the timer hands the due cycles to the blocked worker's queue
+    long timeout = System.currentTimeMillis() + 5000;
+    while (drainCoordinator.getQueuedCycles() < cycles.size()
+        && System.currentTimeMillis() < timeout) {
+      Thread.yield();
+    }
+    assertEquals(cycles.size(), drainCoordinator.getQueuedCycles());
+    blocked.countDown();
+    for (Future<?> cycle : cycles) {
+      cycle.get(5, TimeUnit.SECONDS);
+    }
+
+    // the earliest deadline goes first, then the stream with the most bytes left
+    assertEquals(ImmutableList.of("early", "large", "small"), order);
+
+    drainCoordinator.finishDraining("pod2");
+    assertFalse(drainCoordinator.isDraining(large));
+    assertTrue(drainCoordinator.isDraining(earlyDeadline));
+    assertEquals(0, drainCoordinator.reportProgress("pod2"));
+  }
+}
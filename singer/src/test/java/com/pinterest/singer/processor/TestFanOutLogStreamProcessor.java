@@ -0,0 +1,130 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import com.pinterest.singer.SingerTestBase;
+import com.pinterest.singer.common.LogStream;
+import com.pinterest.singer.common.LogStreamReader;
+import com.pinterest.singer.common.LogStreamWriter;
+import com.pinterest.singer.common.SingerLog;
+import com.pinterest.singer.common.SingerSettings;
+import com.pinterest.singer.common.errors.LogStreamWriterException;
+import com.pinterest.singer.monitor.LogStreamManager;
+import com.pinterest.singer.reader.DefaultLogStreamReader;
+import com.pinterest.singer.reader.ThriftLogFileReaderFactory;
+import com.pinterest.singer.thrift.LogMessage;
+import com.pinterest.singer.thrift.LogMessageAndPosition;
+import com.pinterest.singer.thrift.configuration.FileNameMatchMode;
+import com.pinterest.singer.thrift.configuration.SingerConfig;
+import com.pinterest.singer.thrift.configuration.SingerLogConfig;
+import com.pinterest.singer.thrift.configuration.ThriftReaderConfig;
+import com.pinterest.singer.utils.SimpleThriftLogger;
+import com.pinterest.singer.utils.WatermarkUtils;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FilenameUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestFanOutLogStreamProcessor extends SingerTestBase {
+
+  private static final class CollectingWriter implements LogStreamWriter {
+
+    private final List<LogMessage> logMessages = new ArrayList<>();
+    private boolean throwOnWrite = false;
+
+    @Override
+    public LogStream getLogStream() {
+      return null;
+    }
+
+    @Override
+    public boolean isAuditingEnabled() {
+      return false;
+    }
+
+    @Override
+    public void writeLogMessages(List<LogMessage> messages) throws LogStreamWriterException {
+      if (throwOnWrite) {
+        throw new LogStreamWriterException("Write error");
+      }
+      logMessages.addAll(messages);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+
+  @Test
+  public void testDestinationFailureIsolation() throws Exception {
+    String tempPath = getTempPath();
+    String logStreamHeadFileName = "thrift.log";
+    String path = FilenameUtils.concat(tempPath, logStreamHeadFileName);
+
+    SingerLogConfig logConfig = new SingerLogConfig("test", tempPath, logStreamHeadFileName, null,
+        null, null);
+    logConfig.setFilenameMatchMode(FileNameMatchMode.PREFIX);
+    SingerLog singerLog = new SingerLog(logConfig);
+    SingerConfig singerConfig = new SingerConfig();
+    singerConfig.setThreadPoolSize(1);
+    singerConfig.setWriterThreadPoolSize(1);
+    singerConfig.setLogConfigs(Collections.singletonList(logConfig));
+    SingerSettings.initialize(singerConfig);
+
+    LogStream logStream = new LogStream(singerLog, logStreamHeadFileName);
+    LogStreamManager.addLogStream(logStream);
+    SimpleThriftLogger<LogMessage> logger = new SimpleThriftLogger<>(path);
+    CollectingWriter primary = new CollectingWriter();
+    CollectingWriter backup = new CollectingWriter();
+    LogStreamReader reader = new DefaultLogStreamReader(logStream,
+        new ThriftLogFileReaderFactory(new ThriftReaderConfig(16000, 16000)));
+    FanOutLogStreamProcessor processor = new FanOutLogStreamProcessor(logStream, null, reader,
+        primary, ImmutableMap.of("backup", backup), 50, 1, 1, 3600, 0);
+
+    try {
+      List<LogMessageAndPosition> written = writeThriftLogMessages(logger, 120, 50);
+      while (logStream.isEmpty()) {
+        Thread.sleep(FILE_EVENT_WAIT_TIME_MS);
+      }
+
+      // the backup destination fails, the primary destination still ships everything
+      backup.throwOnWrite = true;
+      assertEquals(120, processor.processLogStream());
+      assertEquals(120, primary.logMessages.size());
+      assertEquals(0, backup.logMessages.size());
+      // the committed position is held back by the backup destination
+      assertEquals(0, processor.committedPosition.getByteOffset());
+
+      // the backup destination recovers and catches up without duplicates in the primary
+      backup.throwOnWrite = false;
+      processor.processLogStream();
+      assertEquals(120, primary.logMessages.size());
+      assertEquals(120, backup.logMessages.size());
+      assertEquals(written.get(119).getNextPosition(), processor.committedPosition);
+      assertEquals(written.get(119).getNextPosition(),
+          WatermarkUtils.loadCommittedPositionFromWatermark(
+              DefaultLogStreamProcessor.getWatermarkFilename(logStream) + "@backup"));
+    } finally {
+      logger.close();
+      processor.close();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import static org.junit.Assert.assertEquals;
+
+import com.pinterest.singer.thrift.LogFile;
+import com.pinterest.singer.thrift.LogFileAndPath;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestRetentionDeadlineEstimator {
+
+  private static final long MINUTE = 60 * 1000L;
+
+  private final Map<String, Long> lastModified = new HashMap<>();
+
+  private LogFileAndPath file(long inode, long mtime) {
+    String path = "/tmp/test.log." + inode;
+    lastModified.put(path, mtime);
+    return new LogFileAndPath(new LogFile(inode), path);
+  }
+
+  @Test
+  public void testAgeBasedDeadline() {
+    RetentionDeadlineEstimator estimator =
+        new RetentionDeadlineEstimator(3600, path -> lastModified.getOrDefault(path, 0L));
+    long now = 100 * MINUTE;
+    List<LogFileAndPath> files = new ArrayList<>();
+    files.add(file(1, now - 50 * MINUTE));
+    files.add(file(2, now));
+
+    assertEquals(Long.MAX_VALUE, estimator.getMillisToDeadline(now));
+    estimator.update(files, files.get(0).getLogFile(), now);
+    assertEquals(10 * MINUTE, estimator.getMillisToDeadline(now));
+
+    // unknown committed file
+    estimator.update(files, new LogFile(42), now);
+    assertEquals(Long.MAX_VALUE, estimator.getMillisToDeadline(now));
+  }
+
+  @Test
+  public void testRotationBasedDeadline() {
+    RetentionDeadlineEstimator estimator =
+        new RetentionDeadlineEstimator(0, path -> lastModified.getOrDefault(path, 0L));
+    long now = 100 * MINUTE;
+    // the application rotates every 10 minutes and keeps 4 files
+    List<LogFileAndPath> files = new ArrayList<>();
+    files.add(file(1, now - 25 * MINUTE));
+    files.add(file(2, now - 15 * MINUTE));
+    files.add(file(3, now - 5 * MINUTE));
+    files.add(file(4, now - MINUTE));
+    estimator.update(files, files.get(0).getLogFile(), now);
+    estimator.recordStreamState(files.get(0), files.size());
+    // no rotation observed yet
+    assertEquals(-1, estimator.getRotationCapacity());
+    assertEquals(Long.MAX_VALUE, estimator.getMillisToDeadline(now));
+
+    // one rotation later: file 4 got sealed and file 1 was rotated away by the application
+    now += 10 * MINUTE;
+    files.remove(0);
+    files.set(2, file(4, now - 5 * MINUTE));
+    files.add(file(5, now - MINUTE));
+    estimator.update(files, files.get(0).getLogFile(), now);
+    assertEquals(4, estimator.getRotationCapacity());
+    // the committed file is the oldest, it is rotated away at the next rotation
+    assertEquals(5 * MINUTE, estimator.getMillisToDeadline(now));
+
+    // committed file is the second oldest, one more rotation to go
+    estimator.update(files, files.get(1).getLogFile(), now);
+    assertEquals(15 * MINUTE, estimator.getMillisToDeadline(now));
+  }
+}
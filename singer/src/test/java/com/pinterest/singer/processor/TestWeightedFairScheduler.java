@@ -0,0 +1,142 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.pinterest.singer.thrift.configuration.ProcessorSchedulerConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestWeightedFairScheduler {
+
+  private ScheduledExecutorService executor;
+
+  @Before
+  public void setup() {
+    executor = Executors.newScheduledThreadPool(2);
+  }
+
+  @After
+  public void teardown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testBoosts() {
+    ProcessorSchedulerConfig config = new ProcessorSchedulerConfig();
+    config.setLagBoostThresholdInMillis(1000);
+    config.setMaxLagBoost(4.0);
+    config.setRetentionDeadlineWindowInSeconds(60);
+    config.setRetentionDeadlineBoost(8.0);
+    WeightedFairScheduler scheduler = new WeightedFairScheduler(executor, 1, config);
+
+    assertEquals(1.0, scheduler.getLagBoost(0), 0.0001);
+    assertEquals(1.0, scheduler.getLagBoost(1000), 0.0001);
+    assertEquals(2.5, scheduler.getLagBoost(2500), 0.0001);
+    assertEquals(4.0, scheduler.getLagBoost(100000), 0.0001);
+
+    assertEquals(1.0, scheduler.getRetentionDeadlineBoost(Long.MAX_VALUE), 0.0001);
+    assertEquals(1.0, scheduler.getRetentionDeadlineBoost(60000), 0.0001);
+    assertEquals(8.0, scheduler.getRetentionDeadlineBoost(59999), 0.0001);
+    assertEquals(8.0, scheduler.getRetentionDeadlineBoost(-1), 0.0001);
+
+    WeightedFairScheduler.Flow flow = scheduler.newFlow("test", 3, () -> 2000, () -> 0);
+    assertEquals(3 * 2.0 * 8.0, flow.getEffectiveWeight(), 0.0001);
+  }
+
+  @Test
+  public void testWeightedShareUnderContention() throws Exception {
+    WeightedFairScheduler scheduler =
+        new WeightedFairScheduler(executor, 1, new ProcessorSchedulerConfig());
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicInteger lightCycles = new AtomicInteger();
+    AtomicInteger heavyCycles = new AtomicInteger();
+    WeightedFairScheduler.Flow light = scheduler.newFlow("light", 1, () -> 0, () -> Long.MAX_VALUE);
+    WeightedFairScheduler.Flow heavy = scheduler.newFlow("heavy", 4, () -> 0, () -> Long.MAX_VALUE);
+
+    new BusyCycle(light, lightCycles, running).schedule();
+    new BusyCycle(heavy, heavyCycles, running).schedule();
+    Thread.sleep(1500);
+    running.set(false);
+
+    double ratio = (double) heavyCycles.get() / Math.max(1, lightCycles.get());
+    assertTrue("Unexpected ratio " + ratio + " heavy=" + heavyCycles + " light=" + lightCycles,
+        ratio > 2.5 && ratio < 6);
+  }
+
+  @Test
+  public void testCancelBeforeRun() throws Exception {
+    WeightedFairScheduler scheduler =
+        new WeightedFairScheduler(executor, 1, new ProcessorSchedulerConfig());
+    WeightedFairScheduler.Flow flow = scheduler.newFlow("test", 1, () -> 0, () -> Long.MAX_VALUE);
+    AtomicBoolean ran = new AtomicBoolean(false);
+    Future<?> future = flow.schedule(() -> ran.set(true), 200);
+    assertTrue(future.cancel(false));
+    Thread.sleep(400);
+    assertFalse(ran.get());
+    assertEquals(0, scheduler.getReadyQueueSize());
+
+    future = flow.schedule(() -> ran.set(true), 0);
+    future.get(5, TimeUnit.SECONDS);
+    assertTrue(ran.get());
+  }
+
+  /**
+   * A cycle that keeps the processor thread busy for a few milliseconds and reschedules itself
+   * right away, like a processor that has a large backlog.
+   */
+  private static final class BusyCycle implements Runnable {
+
+    private final WeightedFairScheduler.Flow flow;
+    private final AtomicInteger counter;
+    private final AtomicBoolean running;
+
+    private BusyCycle(WeightedFairScheduler.Flow flow, AtomicInteger counter,
+                      AtomicBoolean running) {
+      this.flow = flow;
+      this.counter = counter;
+      this.running = running;
+    }
+
+    void schedule() {
+      flow.schedule(this, 0);
+    }
+
+    @Override
+    public void run() {
+      long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+      while (System.nanoTime() < end) {
+        // busy wait
+      }
+      counter.incrementAndGet();
+      if (running.get()) {
+        schedule();
+      }
+    }
+  }
+}
@@ -15,6 +15,9 @@
  */
 package com.pinterest.singer.reader;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 import com.pinterest.singer.thrift.LogMessage;
 import com.pinterest.singer.client.logback.AppenderUtils;
 
@@ -26,9 +29,11 @@ import org.apache.thrift.transport.TTransport;
 import org.junit.Test;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 
 public class LogMessageEncoderTest {
 
@@ -113,6 +118,147 @@ public class LogMessageEncoderTest {
     }
   }
 
+  /**
+   * Test tailing a preallocated thrift log file, in which a zero frame size marks the end of data
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testReadPreallocatedFile() throws Exception {
+    File logFile = File.createTempFile("temp-thrift-log", ".tmp");
+    String logFilePath = logFile.getAbsolutePath();
+    try {
+      ByteArrayOutputStream frames = new ByteArrayOutputStream();
+      AppenderUtils.LogMessageEncoder encoder = new AppenderUtils.LogMessageEncoder();
+      encoder.init(frames);
+      LogMessage[] logMessages = new LogMessage[3];
+      for (int i = 0; i < logMessages.length; i++) {
+        logMessages[i] = new LogMessage()
+            .setTimestampInNanos(System.currentTimeMillis() * 1000000)
+            .setMessage(("sample message " + i).getBytes());
+        encoder.doEncode(logMessages[i]);
+      }
+      encoder.close();
+      byte[] data = frames.toByteArray();
+      int lastFrameStart = data.length - (data.length / 3);
+
+      // the first two frames followed by a zero filled tail
+      try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+        file.setLength(4096);
+        file.write(data, 0, lastFrameStart);
+      }
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      ThriftReader<LogMessage> thriftReader = new ThriftReader(
+          logFilePath, new LogMessageFactory(), new BinaryProtocolFactory(), 1000, 1000);
+      assertEquals(logMessages[0], thriftReader.read());
+      assertEquals(logMessages[1], thriftReader.read());
+      assertNull(thriftReader.read());
+      assertEquals(lastFrameStart, thriftReader.getByteOffset());
+
+      // the reader continues once the next frame is written
+      try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+        file.seek(lastFrameStart);
+        file.write(data, lastFrameStart, data.length - lastFrameStart);
+      }
+      assertEquals(logMessages[2], thriftReader.read());
+      assertNull(thriftReader.read());
+      thriftReader.close();
+    } finally {
+      logFile.delete();
+    }
+  }
+
+  /**
+   * Test reading a thrift log file that mixes binary and compact protocol frames
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testReadMixedProtocolFrames() throws Exception {
+    File logFile = File.createTempFile("temp-thrift-log", ".tmp");
+    String logFilePath = logFile.getAbsolutePath();
+    try {
+      OutputStream os = new BufferedOutputStream(new FileOutputStream(logFile));
+      AppenderUtils.LogMessageEncoder binaryEncoder = new AppenderUtils.LogMessageEncoder();
+      AppenderUtils.LogMessageEncoder compactEncoder =
+          new AppenderUtils.LogMessageEncoder(0, 0, true);
+      binaryEncoder.init(os);
+      compactEncoder.init(os);
+      LogMessage[] logMessages = new LogMessage[10];
+      for (int i = 0; i < logMessages.length; i++) {
+        logMessages[i] = new LogMessage()
+            .setTimestampInNanos(System.currentTimeMillis() * 1000000)
+            .setMessage(("sample message " + i).getBytes())
+            .setKey(("key" + i).getBytes());
+        if (i % 2 == 0) {
+          binaryEncoder.doEncode(logMessages[i]);
+        } else {
+          compactEncoder.doEncode(logMessages[i]);
+        }
+      }
+      os.close();
+
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      ThriftReader<LogMessage> thriftReader = new ThriftReader(
+          logFilePath, new LogMessageFactory(), new BinaryProtocolFactory(), 1000, 1000);
+      for (int i = 0; i < logMessages.length; i++) {
+        assertEquals(logMessages[i], thriftReader.read());
+      }
+      assertNull(thriftReader.read());
+      assertEquals(logFile.length(), thriftReader.getByteOffset());
+      thriftReader.close();
+    } finally {
+      logFile.delete();
+    }
+  }
+
+  /**
+   * Test reading a thrift log file with a skip frame between messages, like the frame covering
+   * an incomplete frame of a sealed memory-mapped segment
+   *
+   * @throws Exception
+   */
+  @Test
+  public void testReadSkipFrames() throws Exception {
+    File logFile = File.createTempFile("temp-thrift-log", ".tmp");
+    String logFilePath = logFile.getAbsolutePath();
+    try {
+      ByteArrayOutputStream frames = new ByteArrayOutputStream();
+      AppenderUtils.LogMessageEncoder encoder = new AppenderUtils.LogMessageEncoder();
+      encoder.init(frames);
+      LogMessage[] logMessages = new LogMessage[2];
+      for (int i = 0; i < logMessages.length; i++) {
+        logMessages[i] = new LogMessage()
+            .setTimestampInNanos(System.currentTimeMillis() * 1000000)
+            .setMessage(("sample message " + i).getBytes());
+        encoder.doEncode(logMessages[i]);
+      }
+      encoder.close();
+      byte[] data = frames.toByteArray();
+      int secondFrameStart = data.length / 2;
+
+      // the first frame, a skip frame over garbage, the second frame and a zero filled tail
+      try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+        file.setLength(4096);
+        file.write(data, 0, secondFrameStart);
+        file.writeInt(AppenderUtils.SKIP_FRAME_PREFIX.length + 10);
+        file.write(AppenderUtils.SKIP_FRAME_PREFIX);
+        file.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        file.write(data, secondFrameStart, data.length - secondFrameStart);
+      }
+      @SuppressWarnings({ "unchecked", "rawtypes" })
+      ThriftReader<LogMessage> thriftReader = new ThriftReader(
+          logFilePath, new LogMessageFactory(), new BinaryProtocolFactory(), 1000, 1000);
+      assertEquals(logMessages[0], thriftReader.read());
+      assertEquals(logMessages[1], thriftReader.read());
+      assertNull(thriftReader.read());
+      assertEquals(data.length + 16, thriftReader.getByteOffset());
+      thriftReader.close();
+    } finally {
+      logFile.delete();
+    }
+  }
+
   @Test
   public void createLogFiles() throws Exception {
     File logFile = new File("/tmp/thrift.log");
@@ -18,6 +18,7 @@ package com.pinterest.singer.utils;
 import com.pinterest.singer.SingerTestBase;
 import com.pinterest.singer.common.LogStream;
 import com.pinterest.singer.common.SingerLog;
+import com.pinterest.singer.monitor.FileCatalog;
 import com.pinterest.singer.thrift.LogMessage;
 import com.pinterest.singer.thrift.LogMessageAndPosition;
 import com.pinterest.singer.thrift.configuration.FileNameMatchMode;
@@ -72,4 +73,28 @@ public class LogFileUtilsTest extends SingerTestBase {
       assertEquals(path, file.getAbsolutePath());
     }
   }
+
+  @Test
+  public void testGetFilePathByInodeWithStaleCatalog() throws Exception {
+    SingerLog singerLog = new SingerLog(
+        new SingerLogConfig("test", getTempPath(), "app.log", null, null, null));
+    singerLog.getSingerLogConfig().setFilenameMatchMode(FileNameMatchMode.PREFIX);
+    LogStream logStream = new LogStream(singerLog, "app.log");
+    File log = new File(getTempPath(), "app.log");
+    assertTrue(log.createNewFile());
+    long inode = SingerUtils.getFileInode(log.toPath());
+    assertEquals(log.getAbsolutePath(), LogFileUtils.getFilePathByInode(logStream, inode));
+
+    // rotate without delivering file system events, the catalog still maps the inode to app.log
+    FileCatalog.getInstance().setMinRescanIntervalMillis(0);
+    File rotated = new File(getTempPath(), "app.log.1");
+    assertTrue(log.renameTo(rotated));
+    assertTrue(log.createNewFile());
+    assertEquals(rotated.getAbsolutePath(), LogFileUtils.getFilePathByInode(logStream, inode));
+    assertEquals(log.getAbsolutePath(),
+        LogFileUtils.getFilePathByInode(logStream, SingerUtils.getFileInode(log.toPath())));
+    FileCatalog.getInstance()
+        .setMinRescanIntervalMillis(FileCatalog.DEFAULT_MIN_RESCAN_INTERVAL_MILLIS);
+    FileCatalog.getInstance().invalidate();
+  }
 }
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+public class TestFileNamePatternMatcher {
+
+  @Test
+  public void testLiteralPrefix() {
+    assertEquals("access_log", FileNamePatternMatcher.literalPrefix("access_log"));
+    assertEquals("access", FileNamePatternMatcher.literalPrefix("access.log"));
+    assertEquals("access", FileNamePatternMatcher.literalPrefix("access.*"));
+    assertEquals("access_", FileNamePatternMatcher.literalPrefix("access_\\d+"));
+    assertEquals("acces", FileNamePatternMatcher.literalPrefix("access?_log"));
+    assertEquals("acces", FileNamePatternMatcher.literalPrefix("access{1,2}"));
+    assertEquals("", FileNamePatternMatcher.literalPrefix("a*"));
+    assertEquals("", FileNamePatternMatcher.literalPrefix("access|error"));
+    assertEquals("", FileNamePatternMatcher.literalPrefix("(?i)access"));
+    assertEquals("", FileNamePatternMatcher.literalPrefix("[ab]ccess"));
+  }
+
+  @Test
+  public void testMatchesLikeEachRegex() {
+    List<String> regexes = ImmutableList.of("access", "access.*", "access_\\d+\\.log",
+        "access?_log.*", "error|access.*", "[ae]\\w+", ".*\\.log", "access.log", "acc");
+    Map<String, List<String>> valuesByRegex = new LinkedHashMap<>();
+    for (String regex : regexes) {
+      valuesByRegex.put(regex, Collections.singletonList(regex));
+    }
+    FileNamePatternMatcher<String> matcher = new FileNamePatternMatcher<>(valuesByRegex);
+    assertEquals(regexes.size(), matcher.size());
+
+    List<String> fileNames = ImmutableList.of("access", "access_12.log", "acces_log.1",
+        "access_log", "accessXlog", "error", "error.log", "acc", "ac", "", "b.log", "access.log");
+    for (String fileName : fileNames) {
+      List<String> expected = new ArrayList<>();
+      for (String regex : regexes) {
+        if (Pattern.compile(regex).matcher(fileName).matches()) {
+          expected.add(regex);
+        }
+      }
+      assertEquals(fileName, expected, matcher.match(fileName));
+      for (String regex : regexes) {
+        FileFilter filter = FileNamePatternMatcher.newFileFilter(regex);
+        assertEquals(regex + " " + fileName, expected.contains(regex),
+            filter.accept(new File("/logs", fileName)));
+      }
+    }
+  }
+
+  @Test
+  public void testValuesSharingARegex() {
+    Map<String, List<Integer>> valuesByRegex = new LinkedHashMap<>();
+    valuesByRegex.put("b.*", ImmutableList.of(1, 2));
+    valuesByRegex.put(".*", ImmutableList.of(3));
+    FileNamePatternMatcher<Integer> matcher = new FileNamePatternMatcher<>(valuesByRegex);
+    assertEquals(ImmutableList.of(1, 2, 3), matcher.match("b"));
+    assertEquals(ImmutableList.of(3), matcher.match("a"));
+    assertTrue(new FileNamePatternMatcher<Integer>(Collections.emptyMap()).match("a").isEmpty());
+  }
+}
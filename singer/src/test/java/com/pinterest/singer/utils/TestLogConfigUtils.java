@@ -47,13 +47,17 @@ import org.junit.Test;
 import com.pinterest.singer.common.SingerConfigDef;
 import com.pinterest.singer.config.ConfigFileWatcher;
 import com.pinterest.singer.thrift.configuration.KafkaProducerConfig;
+import com.pinterest.singer.thrift.configuration.KafkaWriterConfig;
 import com.pinterest.singer.thrift.configuration.LogStreamProcessorConfig;
 import com.pinterest.singer.thrift.configuration.MemqWriterConfig;
+import com.pinterest.singer.thrift.configuration.RateQuotaConfig;
 import com.pinterest.singer.thrift.configuration.RealpinWriterConfig;
 import com.pinterest.singer.thrift.configuration.RegexBasedModifierConfig;
 import com.pinterest.singer.thrift.configuration.S3WriterConfig;
 import com.pinterest.singer.thrift.configuration.SamplingType;
 import com.pinterest.singer.thrift.configuration.TextReaderConfig;
+import com.pinterest.singer.thrift.configuration.TopicRouteConfig;
+import com.pinterest.singer.thrift.configuration.TopicRouteMatchType;
 
 public class TestLogConfigUtils {
 
@@ -205,6 +209,25 @@ public class TestLogConfigUtils {
     }
   }
 
+  @Test
+  public void testRateQuotaConfig() throws ConfigurationException {
+    Map<String, Object> map = new HashMap<>();
+    map.put("bytesPerSecond", "1048576");
+    map.put("burstInSeconds", "5");
+    RateQuotaConfig quotaConfig = LogConfigUtils.parseRateQuotaConfig(new MapConfiguration(map));
+    assertEquals(1048576, quotaConfig.getBytesPerSecond());
+    assertEquals(0, quotaConfig.getMessagesPerSecond());
+    assertEquals(5, quotaConfig.getBurstInSeconds());
+
+    map.put("messagesPerSecond", "-1");
+    try {
+      LogConfigUtils.parseRateQuotaConfig(new MapConfiguration(map));
+      fail("Negative rates should not be accepted");
+    } catch (ConfigurationException e) {
+      // expected
+    }
+  }
+
   @Test
   public void testKafkaProducerConfigAck() throws ConfigurationException {
     Map<String, Object> map = new HashMap<>();
@@ -487,6 +510,88 @@ public class TestLogConfigUtils {
     assertEquals(10, s3WriterConfig.getMaxRetries());
   }
 
+  @Test
+  public void testKafkaWriterTopicRoutes() throws Exception {
+    String config = "type=kafka\n" + "kafka.topic=events\n"
+        + "kafka.producerConfig.bootstrap.servers=localhost:9092\n"
+        + "kafka.topicRoutes=clicks,mobile\n"
+        + "kafka.topicRoute.clicks.topic=click_events\n"
+        + "kafka.topicRoute.clicks.matchType=thrift_field\n"
+        + "kafka.topicRoute.clicks.pattern=CLICK\n"
+        + "kafka.topicRoute.clicks.thriftFieldId=3\n"
+        + "kafka.topicRoute.mobile.topic=mobile_events\n"
+        + "kafka.topicRoute.mobile.matchType=HEADER\n"
+        + "kafka.topicRoute.mobile.pattern=ios\n";
+    PropertiesConfiguration conf = new PropertiesConfiguration();
+    conf.load(new ByteArrayInputStream(config.getBytes()));
+    try {
+      LogConfigUtils.parseLogStreamWriterConfig(conf);
+      fail("HEADER route without headerName should not be accepted");
+    } catch (ConfigurationException e) {
+      // expected
+    }
+
+    conf.setProperty("kafka.topicRoute.mobile.headerName", "platform");
+    KafkaWriterConfig kafkaWriterConfig =
+        LogConfigUtils.parseLogStreamWriterConfig(conf).getKafkaWriterConfig();
+    assertEquals("events", kafkaWriterConfig.getTopic());
+    assertEquals(2, kafkaWriterConfig.getTopicRoutesSize());
+    TopicRouteConfig clicks = kafkaWriterConfig.getTopicRoutes().get(0);
+    assertEquals("click_events", clicks.getTopic());
+    assertEquals(TopicRouteMatchType.THRIFT_FIELD, clicks.getMatchType());
+    assertEquals("CLICK", clicks.getPattern());
+    assertEquals(3, clicks.getThriftFieldId());
+    TopicRouteConfig mobile = kafkaWriterConfig.getTopicRoutes().get(1);
+    assertEquals("mobile_events", mobile.getTopic());
+    assertEquals("platform", mobile.getHeaderName());
+  }
+
+  @Test
+  public void testFanOutWritersRejectTopicRoutes() throws Exception {
+    String config = "logDir=/mnt/log/singer\n" + "logStreamRegex=events.log\n"
+        + "processor.batchSize=200\n" + "processor.processingIntervalInSeconds=10\n"
+        + "processor.enableMemoryEfficiency=true\n"
+        + "reader.type=thrift\n"
+        + "writer.type=kafka\n" + "writer.kafka.topic=events\n"
+        + "writer.kafka.producerConfig.bootstrap.servers=localhost:9092\n"
+        + "fanOutWriters=backup\n"
+        + "fanOutWriter.backup.type=kafka\n" + "fanOutWriter.backup.kafka.topic=events_backup\n"
+        + "fanOutWriter.backup.kafka.producerConfig.bootstrap.servers=localhost:9092\n";
+    PropertiesConfiguration conf = new PropertiesConfiguration();
+    conf.load(new ByteArrayInputStream(config.getBytes()));
+    assertEquals(1, LogConfigUtils.parseLogConfig("test", conf).getFanOutWriterConfigsSize());
+
+    // routes on the writer of a fan-out destination
+    conf.setProperty("fanOutWriter.backup.kafka.topicRoutes", "clicks");
+    conf.setProperty("fanOutWriter.backup.kafka.topicRoute.clicks.topic", "click_events");
+    conf.setProperty("fanOutWriter.backup.kafka.topicRoute.clicks.matchType", "regex");
+    conf.setProperty("fanOutWriter.backup.kafka.topicRoute.clicks.pattern", "CLICK");
+    try {
+      LogConfigUtils.parseLogConfig("test", conf);
+      fail("Topic routes should not be accepted on a fan-out writer");
+    } catch (ConfigurationException e) {
+      // expected
+    }
+    conf.clearProperty("fanOutWriter.backup.kafka.topicRoutes");
+
+    // routes on the primary writer of a log with fan-out writers
+    conf.setProperty("writer.kafka.topicRoutes", "clicks");
+    conf.setProperty("writer.kafka.topicRoute.clicks.topic", "click_events");
+    conf.setProperty("writer.kafka.topicRoute.clicks.matchType", "regex");
+    conf.setProperty("writer.kafka.topicRoute.clicks.pattern", "CLICK");
+    try {
+      LogConfigUtils.parseLogConfig("test", conf);
+      fail("Topic routes should not be accepted on a log with fan-out writers");
+    } catch (ConfigurationException e) {
+      // expected
+    }
+
+    // routes are accepted once the log has no fan-out writers
+    conf.clearProperty("fanOutWriters");
+    assertEquals(1, LogConfigUtils.parseLogConfig("test", conf).getWriterConfig()
+        .getKafkaWriterConfig().getTopicRoutesSize());
+  }
+
   @Test
   public void testRegexTransformerConfigurations() throws Exception {
     String
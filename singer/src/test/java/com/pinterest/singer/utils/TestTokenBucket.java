@@ -0,0 +1,56 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestTokenBucket {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void testDebtAndRefill() {
+    TokenBucket bucket = new TokenBucket(1000, 0);
+    long now = System.nanoTime();
+    assertEquals(0, bucket.getDelayInNanos(now));
+
+    // overdraw the bucket by two seconds worth of tokens
+    bucket.consume(2000, now);
+    assertEquals(2 * SECOND, bucket.getDelayInNanos(now));
+    assertEquals(SECOND, bucket.getDelayInNanos(now + SECOND));
+    assertEquals(0, bucket.getDelayInNanos(now + 2 * SECOND));
+
+    // idle time beyond the burst does not accumulate tokens
+    now += 10 * SECOND;
+    bucket.consume(500, now);
+    assertEquals(SECOND / 2, bucket.getDelayInNanos(now));
+  }
+
+  @Test
+  public void testBurst() {
+    TokenBucket bucket = new TokenBucket(1000, 2);
+    long now = System.nanoTime() + 10 * SECOND;
+    // two seconds of tokens have accumulated while the bucket was idle
+    bucket.consume(1500, now);
+    assertEquals(0, bucket.getDelayInNanos(now));
+    bucket.consume(1000, now);
+    assertEquals(SECOND / 2, bucket.getDelayInNanos(now));
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.pinterest.singer.thrift.ChecksumType;
+import com.pinterest.singer.thrift.LogMessage;
+import com.pinterest.singer.utils.ChecksumUtils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TestChecksumVerifier {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testShouldVerifyInParallel() {
+    ChecksumVerifier verifier = new ChecksumVerifier(executor, 1000);
+    List<LogMessage> logMessages = new ArrayList<>();
+    logMessages.add(new LogMessage().setMessage(new byte[600]));
+    assertFalse(verifier.shouldVerifyInParallel(logMessages));
+    logMessages.add(new LogMessage().setMessage(new byte[400]));
+    assertTrue(verifier.shouldVerifyInParallel(logMessages));
+  }
+
+  @Test
+  public void testVerify() throws Exception {
+    Random random = new Random();
+    List<LogMessage> logMessages = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      // messages of several hundred KB are verified in different chunks
+      byte[] payload = new byte[100 * 1024 + random.nextInt(300 * 1024)];
+      random.nextBytes(payload);
+      ChecksumType checksumType = i % 2 == 0 ? ChecksumType.CRC32 : ChecksumType.CRC32C;
+      long checksum = ChecksumUtils.computeChecksum(checksumType, payload);
+      if (i % 3 == 0) {
+        checksum++;
+      }
+      logMessages.add(new LogMessage().setMessage(payload).setChecksumType(checksumType)
+          .setChecksum(checksum));
+    }
+
+    Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    boolean[] validMessages = new ChecksumVerifier(executor, 0).verify(logMessages, msg -> {
+      threads.add(Thread.currentThread().getName());
+      return ChecksumUtils.verifyChecksum(msg);
+    });
+
+    assertEquals(logMessages.size(), validMessages.length);
+    for (int i = 0; i < validMessages.length; i++) {
+      assertEquals(i % 3 != 0, validMessages[i]);
+    }
+    // the calling thread verifies the last chunk
+    assertTrue(threads.contains(Thread.currentThread().getName()));
+    assertTrue(threads.size() > 1);
+  }
+}
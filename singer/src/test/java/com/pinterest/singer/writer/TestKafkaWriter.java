@@ -42,10 +42,12 @@ import com.pinterest.singer.loggingaudit.client.AuditHeadersGenerator;
 import com.pinterest.singer.loggingaudit.thrift.AuditDemoLog1Message;
 import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
 import com.pinterest.singer.loggingaudit.thrift.configuration.AuditConfig;
+import com.pinterest.singer.thrift.ChecksumType;
 import com.pinterest.singer.thrift.LogMessage;
 import com.pinterest.singer.thrift.configuration.KafkaProducerConfig;
 import com.pinterest.singer.thrift.configuration.SingerConfig;
 import com.pinterest.singer.thrift.configuration.SingerLogConfig;
+import com.pinterest.singer.utils.ChecksumUtils;
 import com.pinterest.singer.utils.PartitionComparator;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -122,13 +124,10 @@ public class TestKafkaWriter extends SingerTestBase {
     List<PartitionInfo> sortedPartitions = new ArrayList<>(partitions);
     Collections.sort(sortedPartitions, new PartitionComparator());
 
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfTrackedMessageMaps = new HashMap<>();
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfInvalidMessageMaps = new HashMap<>();
-    Map<Integer, Integer> mapOfOriginalIndexWithinBucket = new HashMap<>();
+    AuditBookkeeping auditBookkeeping = new AuditBookkeeping();
 
     Map<Integer, List<ProducerRecord<byte[], byte[]>>> messageCollation = writer.messageCollation(
-        partitions, "topicx", logMessages, mapOfTrackedMessageMaps, mapOfInvalidMessageMaps,
-        mapOfOriginalIndexWithinBucket);
+        partitions, "topicx", logMessages, auditBookkeeping);
 
     for(int partitionId = 0; partitionId < messageCollation.keySet().size(); partitionId++) {
       if (messageCollation.get(partitionId).size() == 0) {
@@ -210,13 +209,10 @@ public class TestKafkaWriter extends SingerTestBase {
       list.add(logMessage);
     }
 
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfTrackedMessageMaps = new HashMap<>();
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfInvalidMessageMaps = new HashMap<>();
-    Map<Integer, Integer> mapOfOriginalIndexWithinBucket = new HashMap<>();
+    AuditBookkeeping auditBookkeeping = new AuditBookkeeping();
 
     Map<Integer, List<ProducerRecord<byte[], byte[]>>> messageCollation = writer.messageCollation(
-        partitions, "topicx", logMessages, mapOfTrackedMessageMaps, mapOfInvalidMessageMaps,
-        mapOfOriginalIndexWithinBucket);
+        partitions, "topicx", logMessages, auditBookkeeping);
 
     // for (int i = 0; i < messageCollation.size(); i++) {
     for(Integer partitionId : messageCollation.keySet()){
@@ -301,13 +297,10 @@ public class TestKafkaWriter extends SingerTestBase {
       list.add(logMessage);
     }
 
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfTrackedMessageMaps = new HashMap<>();
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfInvalidMessageMaps = new HashMap<>();
-    Map<Integer, Integer> mapOfOriginalIndexWithinBucket = new HashMap<>();
+    AuditBookkeeping auditBookkeeping = new AuditBookkeeping();
 
     Map<Integer, List<ProducerRecord<byte[], byte[]>>> messageCollation = writer.messageCollation(
-        partitions, "topicx", logMessages, mapOfTrackedMessageMaps, mapOfInvalidMessageMaps,
-        mapOfOriginalIndexWithinBucket);
+        partitions, "topicx", logMessages, auditBookkeeping);
 
     // validate each bucket
     for (int i = 0; i < messageCollation.size(); i++) {
@@ -351,9 +344,9 @@ public class TestKafkaWriter extends SingerTestBase {
       }
     }
 
-    // validate tracked messages in mapOfTrackedMessageMaps
-    for(Map<Integer, LoggingAuditHeaders> map : mapOfTrackedMessageMaps.values()){
-      for(LoggingAuditHeaders h: map.values()){
+    // validate tracked messages in auditBookkeeping
+    for(Integer partitionId : messageCollation.keySet()){
+      for(LoggingAuditHeaders h: getTrackedHeaders(auditBookkeeping.getBucket(partitionId))){
         assertTrue(trackedMessageSet.contains(h));
         trackedMessageSet.remove(h);
       }
@@ -393,12 +386,9 @@ public class TestKafkaWriter extends SingerTestBase {
     Set<LoggingAuditHeaders> invalidMessageSet  = new HashSet<>();
     corruptLogMessages(logMessages, invalidMessageSet, 0.8);
 
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfTrackedMessageMaps = new HashMap<>();
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfInvalidMessageMaps = new HashMap<>();
-    Map<Integer, Integer> mapOfOriginalIndexWithinBucket = new HashMap<>();
+    AuditBookkeeping auditBookkeeping = new AuditBookkeeping();
     Map<Integer, List<ProducerRecord<byte[], byte[]>>> messageCollation = writer.messageCollation(
-        partitions, "topicx", logMessages, mapOfTrackedMessageMaps, mapOfInvalidMessageMaps,
-        mapOfOriginalIndexWithinBucket);
+        partitions, "topicx", logMessages, auditBookkeeping);
 
     // validate messages in each bucket
     CRC32 checksumCalculator = new CRC32();
@@ -406,8 +396,7 @@ public class TestKafkaWriter extends SingerTestBase {
 
     for(Integer partitionId : messageCollation.keySet()){
       List<ProducerRecord<byte[], byte[]>> writerOutput = messageCollation.get(partitionId);
-      Map<Integer, LoggingAuditHeaders> trackedMessageMap = mapOfTrackedMessageMaps.get(partitionId);
-      Map<Integer, LoggingAuditHeaders> invalidMessageMap = mapOfInvalidMessageMaps.get(partitionId);
+      AuditBookkeeping.Bucket auditBucket = auditBookkeeping.getBucket(partitionId);
 
       // validate LoggingAuditHeaders field and checksum field are injected
       // validate the value is uncorrupted as all corrupted messages have been skipped.
@@ -437,13 +426,13 @@ public class TestKafkaWriter extends SingerTestBase {
       }
 
       // validate tracked messages are found during calling messageCollation method
-      for(LoggingAuditHeaders h: trackedMessageMap.values()){
+      for(LoggingAuditHeaders h: getTrackedHeaders(auditBucket)){
         assertTrue(trackedMessageSet.contains(h));
         trackedMessageSet.remove(h);
       }
 
       // validate invalid messages are found during calling messageCollation method
-      for(LoggingAuditHeaders h: invalidMessageMap.values()){
+      for(LoggingAuditHeaders h: getInvalidHeaders(auditBucket)){
         assertTrue(invalidMessageSet.contains(h));
         invalidMessageSet.remove(h);
       }
@@ -489,12 +478,9 @@ public class TestKafkaWriter extends SingerTestBase {
     Set<LoggingAuditHeaders> invalidMessageSet  = new HashSet<>();
     corruptLogMessages(logMessages, invalidMessageSet, 0.8);
 
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfTrackedMessageMaps = new HashMap<>();
-    Map<Integer, Map<Integer, LoggingAuditHeaders>> mapOfInvalidMessageMaps = new HashMap<>();
-    Map<Integer, Integer> mapOfOriginalIndexWithinBucket = new HashMap<>();
+    AuditBookkeeping auditBookkeeping = new AuditBookkeeping();
     Map<Integer, List<ProducerRecord<byte[], byte[]>>> messageCollation = writer.messageCollation(
-        partitions, "topicx", logMessages, mapOfTrackedMessageMaps, mapOfInvalidMessageMaps,
-        mapOfOriginalIndexWithinBucket);
+        partitions, "topicx", logMessages, auditBookkeeping);
 
     // validate messages in each bucket
     CRC32 checksumCalculator = new CRC32();
@@ -502,8 +488,7 @@ public class TestKafkaWriter extends SingerTestBase {
 
     for(Integer partitionId : messageCollation.keySet()){
       List<ProducerRecord<byte[], byte[]>> writerOutput = messageCollation.get(partitionId);
-      Map<Integer, LoggingAuditHeaders> trackedMessageMap = mapOfTrackedMessageMaps.get(partitionId);
-      Map<Integer, LoggingAuditHeaders> invalidMessageMap = mapOfInvalidMessageMaps.get(partitionId);
+      AuditBookkeeping.Bucket auditBucket = auditBookkeeping.getBucket(partitionId);
 
       // validate LoggingAuditHeaders field and checksum field are injected
       for (int j = 0; j < writerOutput.size(); j++) {
@@ -536,13 +521,13 @@ public class TestKafkaWriter extends SingerTestBase {
       }
 
       // validate tracked messages are found during calling messageCollation method
-      for(LoggingAuditHeaders h: trackedMessageMap.values()){
+      for(LoggingAuditHeaders h: getTrackedHeaders(auditBucket)){
         assertTrue(trackedMessageSet.contains(h));
         trackedMessageSet.remove(h);
       }
 
       // validate invalid messages are found during calling messageCollation method
-      for(LoggingAuditHeaders h: invalidMessageMap.values()){
+      for(LoggingAuditHeaders h: getInvalidHeaders(auditBucket)){
         assertTrue(invalidMessageSet.contains(h));
         invalidMessageSet.remove(h);
       }
@@ -664,6 +649,61 @@ public class TestKafkaWriter extends SingerTestBase {
     assertEquals(0, invalidMessageSet.size());
   }
 
+  @Test
+  public void testCheckMessageValidByCrc32cChecksum() throws Exception {
+    KafkaWriter writer = setupWriterForCorruptedMessagesTests(true);
+    byte[] payload = RandomStringUtils.randomAlphanumeric(100).getBytes();
+    LogMessage logMessage = new LogMessage().setMessage(payload)
+        .setChecksumType(ChecksumType.CRC32C)
+        .setChecksum(ChecksumUtils.computeChecksum(ChecksumType.CRC32C, payload));
+    assertTrue(writer.checkMessageValid(logMessage));
+
+    // a CRC-32 checksum does not match if the message has a CRC-32C checksum
+    logMessage.setChecksum(ChecksumUtils.computeChecksum(ChecksumType.CRC32, payload));
+    assertFalse(writer.checkMessageValid(logMessage));
+    logMessage.unsetChecksumType();
+    assertTrue(writer.checkMessageValid(logMessage));
+  }
+
+  @Test
+  public void testMessageCollationWithParallelChecksumVerification() throws Exception {
+    KafkaWriter writer = setupWriterForCorruptedMessagesTests(true);
+    List<PartitionInfo> partitions = ImmutableList.copyOf(Arrays.asList(
+        new PartitionInfo("topicx", 1, new Node(2, "broker2", 9092, "us-east-1b"), null, null),
+        new PartitionInfo("topicx", 0, new Node(1, "broker1", 9092, "us-east-1a"), null, null),
+        new PartitionInfo("topicx", 2, new Node(3, "broker3", 9092, "us-east-1c"), null, null)));
+
+    List<LogMessage> logMessages = new ArrayList<>();
+    Set<LoggingAuditHeaders> trackedMessageSet = new HashSet<>();
+    populateLogMessagesForLoggingAuditTests(logMessages, trackedMessageSet, true, 0.65);
+
+    Set<LoggingAuditHeaders> invalidMessageSet  = new HashSet<>();
+    corruptLogMessages(logMessages, invalidMessageSet, 0.8);
+
+    SingerSettings.setChecksumVerifier(new ChecksumVerifier(Executors.newFixedThreadPool(2), 0));
+    try {
+      AuditBookkeeping auditBookkeeping = new AuditBookkeeping();
+      Map<Integer, List<ProducerRecord<byte[], byte[]>>> messageCollation = writer.messageCollation(
+          partitions, "topicx", logMessages, auditBookkeeping);
+
+      int numInvalid = 0;
+      int numWritten = 0;
+      for (Integer partitionId : messageCollation.keySet()) {
+        numWritten += messageCollation.get(partitionId).size();
+        // corrupted messages found by the verification pool are skipped
+        for (LoggingAuditHeaders h : getInvalidHeaders(auditBookkeeping.getBucket(partitionId))) {
+          assertTrue(invalidMessageSet.remove(h));
+          numInvalid++;
+        }
+      }
+      assertEquals(0, invalidMessageSet.size());
+      assertEquals(logMessages.size(), numWritten + numInvalid);
+    } finally {
+      SingerSettings.getChecksumVerifier().shutdown();
+      SingerSettings.setChecksumVerifier(null);
+    }
+  }
+
   public KafkaWritingTaskResult createResult(KafkaWritingTask worker, List<PartitionInfo> sortedPartitions){
     long start = System.currentTimeMillis();
     List<ProducerRecord<byte[], byte[]>> messages = worker.getMessages();
@@ -799,4 +839,25 @@ public class TestKafkaWriter extends SingerTestBase {
     }
   }
 
+  private static List<LoggingAuditHeaders> getTrackedHeaders(AuditBookkeeping.Bucket auditBucket) {
+    List<LoggingAuditHeaders> headers = new ArrayList<>();
+    for (int i = 0; i < auditBucket.getNumMessages(); i++) {
+      if (auditBucket.getTracked(i) != null) {
+        headers.add(auditBucket.getTracked(i));
+      }
+    }
+    assertEquals(auditBucket.getNumTracked(), headers.size());
+    return headers;
+  }
+
+  private static List<LoggingAuditHeaders> getInvalidHeaders(AuditBookkeeping.Bucket auditBucket) {
+    List<LoggingAuditHeaders> headers = new ArrayList<>();
+    for (int i = 0; i < auditBucket.getNumMessages(); i++) {
+      if (auditBucket.getInvalid(i) != null) {
+        headers.add(auditBucket.getInvalid(i));
+      }
+    }
+    assertEquals(auditBucket.getNumInvalid(), headers.size());
+    return headers;
+  }
 }
\ No newline at end of file
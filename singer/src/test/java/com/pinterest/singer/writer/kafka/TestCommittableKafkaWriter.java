@@ -74,6 +74,8 @@ import com.pinterest.singer.thrift.LogMessage;
 import com.pinterest.singer.thrift.LogMessageAndPosition;
 import com.pinterest.singer.thrift.configuration.KafkaProducerConfig;
 import com.pinterest.singer.thrift.configuration.SingerConfig;
+import com.pinterest.singer.thrift.configuration.TopicRouteConfig;
+import com.pinterest.singer.thrift.configuration.TopicRouteMatchType;
 import com.pinterest.singer.writer.Crc32ByteArrayPartitioner;
 import com.pinterest.singer.writer.KafkaMessagePartitioner;
 import com.pinterest.singer.writer.KafkaProducerManager;
@@ -336,6 +338,55 @@ public class TestCommittableKafkaWriter extends SingerTestBase {
     writer.close();
   }
 
+  @Test
+  public void testWriteLogMessagesWithTopicRoutes() throws Exception {
+    KafkaMessagePartitioner partitioner = new Crc32ByteArrayPartitioner();
+    KafkaProducerConfig config = new KafkaProducerConfig();
+    SingerSettings.setSingerConfig(new SingerConfig());
+    KafkaProducerManager.injectTestProducer(config, producer);
+    CommittableKafkaWriter writer = new CommittableKafkaWriter(config, partitioner, "topicx", false,
+        Executors.newCachedThreadPool());
+    writer.setTopicRouter(new TopicRouter(ImmutableList.of(
+        new TopicRouteConfig("topicy", TopicRouteMatchType.KEY_PREFIX, "click_"))));
+
+    when(producer.partitionsFor("topicx")).thenReturn(ImmutableList.of(
+        new PartitionInfo("topicx", 0, new Node(1, "broker1", 9092, "us-east-1a"), null, null),
+        new PartitionInfo("topicx", 1, new Node(2, "broker2", 9092, "us-east-1b"), null, null)));
+    when(producer.partitionsFor("topicy")).thenReturn(ImmutableList.of(
+        new PartitionInfo("topicy", 0, new Node(3, "broker3", 9092, "us-east-1c"), null, null)));
+    List<ProducerRecord<byte[], byte[]>> sentRecords = new ArrayList<>();
+    when(producer.send(any(), any(Callback.class))).thenAnswer((InvocationOnMock invocation) -> {
+      ProducerRecord<byte[], byte[]> record =
+          (ProducerRecord<byte[], byte[]>) invocation.getArguments()[0];
+      sentRecords.add(record);
+      RecordMetadata rmd = new RecordMetadata(
+          new TopicPartition(record.topic(), record.partition()), 0L, 0L, 0L, 0L, 0, 0);
+      ((Callback) invocation.getArguments()[1]).onCompletion(rmd, null);
+      return ConcurrentUtils.constantFuture(rmd);
+    });
+
+    writer.startCommit(false);
+    for (int i = 0; i < 100; i++) {
+      LogMessage logMessage = new LogMessage(ByteBuffer.wrap(new byte[]{(byte) i}));
+      logMessage.setKey(((i % 4 == 0 ? "click_" : "view_") + i).getBytes());
+      writer.writeLogMessageToCommit(
+          new LogMessageAndPosition(logMessage, new LogPosition(new LogFile(1L), i)), false);
+    }
+    Map<String, CommittableKafkaWriter.TopicBuckets> topicBuckets =
+        writer.getCommittableTopicBuckets();
+    assertEquals(ImmutableList.of("topicx", "topicy"), new ArrayList<>(topicBuckets.keySet()));
+    assertEquals(writer.getCommittableBuckets(), topicBuckets.get("topicx").buckets);
+    assertEquals(25, topicBuckets.get("topicy").buckets.get(0).getRecordMetadataList().size());
+    writer.endCommit(100, false);
+
+    assertEquals(100, sentRecords.size());
+    for (ProducerRecord<byte[], byte[]> record : sentRecords) {
+      boolean isClick = new String(record.key()).startsWith("click_");
+      assertEquals(isClick ? "topicy" : "topicx", record.topic());
+    }
+    writer.close();
+  }
+
   @Test
   public void testWriterWithHeadersInjectorEnabledWithWrongClass() throws Exception {
     SingerLog singerLog = new SingerLog(createSingerLogConfig("test", "/a/b/c"));
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.writer.kafka;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.pinterest.singer.thrift.LogFile;
+import com.pinterest.singer.thrift.LogMessage;
+import com.pinterest.singer.thrift.LogMessageAndPosition;
+import com.pinterest.singer.thrift.LogPosition;
+import com.pinterest.singer.thrift.configuration.TopicRouteConfig;
+import com.pinterest.singer.thrift.configuration.TopicRouteMatchType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TType;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class TestTopicRouter {
+
+  private static LogMessageAndPosition message(String key, byte[] message) {
+    LogMessage logMessage = new LogMessage(ByteBuffer.wrap(message));
+    if (key != null) {
+      logMessage.setKey(key.getBytes(StandardCharsets.UTF_8));
+    }
+    return new LogMessageAndPosition(logMessage, new LogPosition(new LogFile(1L), 0));
+  }
+
+  @Test
+  public void testFirstMatchingRouteWins() {
+    TopicRouter router = new TopicRouter(ImmutableList.of(
+        new TopicRouteConfig("clicks", TopicRouteMatchType.KEY_PREFIX, "click_"),
+        new TopicRouteConfig("errors", TopicRouteMatchType.REGEX, ".*ERROR.*"),
+        new TopicRouteConfig("clicks", TopicRouteMatchType.REGEX, "^click.*")));
+    assertEquals(ImmutableList.of("clicks", "errors"), ImmutableList.copyOf(router.getTopics()));
+
+    assertEquals("clicks", router.route(message("click_1", "ERROR\nfoo".getBytes())));
+    assertEquals("errors", router.route(message("view_1", "foo\nERROR\nbar".getBytes())));
+    assertEquals("clicks", router.route(message(null, "click bar".getBytes())));
+    assertNull(router.route(message("view_1", "view".getBytes())));
+    assertNull(router.route(message("cli", "view".getBytes())));
+  }
+
+  @Test
+  public void testHeaderRoute() {
+    TopicRouteConfig routeConfig = new TopicRouteConfig("mobile", TopicRouteMatchType.HEADER, "ios");
+    routeConfig.setHeaderName("platform");
+    TopicRouter router = new TopicRouter(ImmutableList.of(routeConfig));
+
+    LogMessageAndPosition logMessageAndPosition = message(null, "m".getBytes());
+    assertNull(router.route(logMessageAndPosition));
+    logMessageAndPosition.setInjectedHeaders(ImmutableMap.of("platform",
+        ByteBuffer.wrap("web".getBytes(StandardCharsets.UTF_8))));
+    assertNull(router.route(logMessageAndPosition));
+    logMessageAndPosition.setInjectedHeaders(ImmutableMap.of("platform",
+        ByteBuffer.wrap("ios".getBytes(StandardCharsets.UTF_8))));
+    assertEquals("mobile", router.route(logMessageAndPosition));
+  }
+
+  @Test
+  public void testThriftFieldRoute() throws Exception {
+    TopicRouteConfig binaryRoute = new TopicRouteConfig("binary", TopicRouteMatchType.THRIFT_FIELD,
+        "payload");
+    binaryRoute.setThriftFieldId((short) 2);
+    TopicRouteConfig i64Route = new TopicRouteConfig("i64", TopicRouteMatchType.THRIFT_FIELD, "42");
+    i64Route.setThriftFieldId((short) 3);
+    TopicRouter router = new TopicRouter(ImmutableList.of(binaryRoute, i64Route));
+
+    TSerializer serializer = new TSerializer();
+    LogMessage event = new LogMessage(ByteBuffer.wrap("payload".getBytes(StandardCharsets.UTF_8)));
+    event.setKey("key".getBytes(StandardCharsets.UTF_8));
+    assertEquals("binary", router.route(message(null, serializer.serialize(event))));
+
+    event.setMessage("other".getBytes(StandardCharsets.UTF_8));
+    event.setTimestampInNanos(42L);
+    assertEquals("i64", router.route(message(null, serializer.serialize(event))));
+
+    event.setTimestampInNanos(43L);
+    assertNull(router.route(message(null, serializer.serialize(event))));
+
+    // messages which are not thrift structs do not match
+    assertNull(router.route(message(null, "not a thrift struct".getBytes())));
+    // a string field followed by a length beyond the message
+    assertNull(router.route(message(null, new byte[]{TType.STRING, 0, 2, 127, 127, 127, 127})));
+  }
+}
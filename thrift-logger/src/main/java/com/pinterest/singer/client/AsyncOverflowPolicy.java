@@ -0,0 +1,38 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+/**
+ * What an asynchronous ThriftLogger does with a message when its buffer is full.
+ */
+public enum AsyncOverflowPolicy {
+
+  /**
+   * Wait until the background writer frees a slot in the buffer.
+   */
+  BLOCK,
+
+  /**
+   * Drop the message and count it in the thrift_logger.async.dropped metric.
+   */
+  DROP,
+
+  /**
+   * Write the message to the file on the calling thread, bypassing the buffer. Spilled messages
+   * may be written ahead of messages that are still buffered.
+   */
+  SPILL
+}
@@ -18,8 +18,10 @@ package com.pinterest.singer.client;
 import com.pinterest.singer.client.logback.AuditableLogbackThriftLoggerFactory;
 import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
 import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+import com.pinterest.singer.thrift.ChecksumType;
 import com.pinterest.singer.thrift.LogMessage;
 import com.pinterest.singer.loggingaudit.client.AuditHeadersGenerator;
+import com.pinterest.singer.utils.ChecksumUtils;
 
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.LogbackException;
@@ -31,7 +33,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 import java.util.Random;
-import java.util.zip.CRC32;
 
 
 /**
@@ -44,7 +45,6 @@ import java.util.zip.CRC32;
 public class AuditableLogbackThriftLogger extends LogbackThriftLogger {
 
   private static Logger LOG = LoggerFactory.getLogger(AuditableLogbackThriftLogger.class);
-  private static ThreadLocal<CRC32> localCRC = ThreadLocal.withInitial(CRC32::new);
 
   private static final String AUDIT_THRIFT_LOGGER_HEADERS_ADDED_TO_ORIGINAL_COUNT = "audit.thrift_logger.headers_added_to_original.count";
   private static final String AUDIT_THRIFT_LOGGER_HEADERS_ADDED_TO_LOG_MESSAGE_COUNT = "audit.thrift_logger.headers_added_to_log_message.count";
@@ -57,6 +57,7 @@ public class AuditableLogbackThriftLogger extends LogbackThriftLogger {
   private AuditHeadersGenerator auditHeadersGenerator;
   private boolean enableLoggingAudit = false;
   private double auditSamplingRate = 1.0;
+  private ChecksumType checksumType = ChecksumType.CRC32;
   private Random random = new Random();
 
   public void setAuditHeadersGenerator(AuditHeadersGenerator auditHeadersGenerator) {
@@ -71,6 +72,10 @@ public class AuditableLogbackThriftLogger extends LogbackThriftLogger {
     return auditSamplingRate;
   }
 
+  public ChecksumType getChecksumType() {
+    return checksumType;
+  }
+
 
   /**
    *  If thriftClazz is not null, advanced LoggingAudit feature is enabled (enableLoggingAudit is true):
@@ -106,6 +111,20 @@ public class AuditableLogbackThriftLogger extends LogbackThriftLogger {
     this.auditSamplingRate = auditSamplingRate;
   }
 
+  /**
+   *  Same as the constructor above, with the checksum type of the audited log messages. CRC32C
+   *  checksums can only be verified by Singers that know the checksumType field of LogMessage.
+   */
+  public AuditableLogbackThriftLogger(Appender<LogMessage> appender,
+                                      String topic,
+                                      Class<?> thriftClazz,
+                                      boolean enableLoggingAudit,
+                                      double auditSamplingRate,
+                                      ChecksumType checksumType) {
+    this(appender, topic, thriftClazz, enableLoggingAudit, auditSamplingRate);
+    this.checksumType = checksumType;
+  }
+
   public void init(Class<?> thriftClazz) {
     try {
       Map m = (Map) thriftClazz.getDeclaredField("metaDataMap").get(null);
@@ -170,8 +189,12 @@ public class AuditableLogbackThriftLogger extends LogbackThriftLogger {
           .setTimestampInNanos(timeNanos).setMessage(message);
 
       if(this.enableLoggingAudit && headers != null) {
-        long crc = computeCRC(message);
+        long crc = ChecksumUtils.computeChecksum(checksumType, message);
         logMessage.setLoggingAuditHeaders(headers).setChecksum(crc);
+        if (checksumType != ChecksumType.CRC32) {
+          // CRC32 is left unset so that the messages can be verified by older Singers
+          logMessage.setChecksumType(checksumType);
+        }
         OpenTsdbMetricConverter.incr(AUDIT_THRIFT_LOGGER_HEADERS_ADDED_TO_LOG_MESSAGE_COUNT,
             "topic=" + topic, "host=" + HOST_NAME);
         OpenTsdbMetricConverter.incr(AUDIT_THRIFT_LOGGER_CHECKSUM_ADDED_TO_LOG_MESSAGE_COUNT,
@@ -187,13 +210,6 @@ public class AuditableLogbackThriftLogger extends LogbackThriftLogger {
       }
   }
 
-  private long computeCRC(byte[] message) {
-    CRC32 crc = localCRC.get();
-    crc.reset();
-    crc.update(message);
-    return crc.getValue();
-  }
-
   public boolean shouldAudit(){
      return random.nextDouble() < auditSamplingRate;
   }
@@ -15,6 +15,7 @@
  */
 package com.pinterest.singer.client;
 
+import com.pinterest.singer.client.logback.ThriftMessageAppender;
 import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
 import com.pinterest.singer.thrift.LogMessage;
 
@@ -98,8 +99,13 @@ public class LogbackThriftLogger extends BaseThriftLogger {
   @Override
   public void append(byte[] partitionKey, TBase thriftMessage, long timeNanos) throws TException {
     try {
-      byte[] messageBytes = ThriftCodec.getInstance().serialize(thriftMessage);
-      append(partitionKey, messageBytes, timeNanos);
+      if (appender instanceof ThriftMessageAppender) {
+        // serializes the message straight into the frame of its LogMessage
+        append((ThriftMessageAppender) appender, partitionKey, thriftMessage, timeNanos);
+      } else {
+        byte[] messageBytes = ThriftCodec.getInstance().serialize(thriftMessage);
+        append(partitionKey, messageBytes, timeNanos);
+      }
     } catch (TException e) {
       OpenTsdbMetricConverter.incr(
           THRIFT_LOGGER_ERROR_TEXCEPTION, "topic=" + topic, "host=" + HOST_NAME);
@@ -107,6 +113,19 @@ public class LogbackThriftLogger extends BaseThriftLogger {
     }
   }
 
+  private void append(ThriftMessageAppender thriftMessageAppender, byte[] partitionKey,
+                      TBase thriftMessage, long timeNanos) throws TException {
+    try {
+      thriftMessageAppender.appendThriftMessage(partitionKey, thriftMessage, timeNanos);
+      OpenTsdbMetricConverter.incr(
+          THRIFT_LOGGER_COUNT_METRIC, "topic=" + topic, "host=" + HOST_NAME);
+    } catch (LogbackException e) {
+      OpenTsdbMetricConverter.incr(
+          THRIFT_LOGGER_ERROR_LOGBACKEXCEPTION, "topic=" + topic, "host=" + HOST_NAME);
+      throw e;
+    }
+  }
+
   public void close() {
     appender.stop();
   }
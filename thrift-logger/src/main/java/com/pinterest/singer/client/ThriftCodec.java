@@ -22,15 +22,21 @@ import org.apache.thrift.TException;
 import org.apache.thrift.TSerializer;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TField;
 import org.apache.thrift.protocol.TJSONProtocol;
 import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
 import org.apache.thrift.transport.TIOStreamTransport;
 import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
 /**
@@ -59,6 +65,10 @@ import java.nio.ByteBuffer;
  *  // Deserialize any of the above two protocols:
  *  ThriftObject myThriftObject = ThriftCodec.deserialize(myBytes, ThriftObject.class);
  *
+ * To avoid allocating a byte array per object, the serialize calls also take a ByteBuffer
+ * to write into, e.g. a buffer that is reused by the caller. serializeLogMessage() writes a
+ * LogMessage with a thrift object as its message without serializing the object separately.
+ *
  */
 public class ThriftCodec {
   // CHECKSTYLE_OFF: DeclarationOrder
@@ -122,6 +132,53 @@ public class ThriftCodec {
     return bytes;
   }
 
+  /**
+   * Serialize a thrift object with the TBinaryProtocol into a buffer.
+   *
+   * @param obj a thrift object.
+   * @param buffer the buffer to write to, starting at its position.
+   * @return the number of bytes written, the position of the buffer is advanced past them.
+   * @throws BufferOverflowException if the object does not fit the remaining buffer, the
+   *                                 position of the buffer is then unchanged.
+   */
+  public <T extends TBase> int serialize(T obj, ByteBuffer buffer) throws TException {
+    return byteBufferEncoder.get().serialize(obj, buffer, false, false);
+  }
+
+  /**
+   * Serialize a thrift object with the prefixed TCompactProtocol into a buffer, see
+   * {@link #serialize(TBase, ByteBuffer)}.
+   */
+  public <T extends TBase> int serializePrefixed(T obj, ByteBuffer buffer) throws TException {
+    return byteBufferEncoder.get().serialize(obj, buffer, true, true);
+  }
+
+  /**
+   * Serialize a thrift object with the TCompactProtocol into a buffer, see
+   * {@link #serialize(TBase, ByteBuffer)}.
+   */
+  public <T extends TBase> int serializeCompact(T obj, ByteBuffer buffer) throws TException {
+    return byteBufferEncoder.get().serialize(obj, buffer, true, false);
+  }
+
+  /**
+   * Serialize a LogMessage with the TBinaryProtocol into a buffer. The thrift object is
+   * serialized with the TBinaryProtocol straight into the message field, so the result is the
+   * same as serializing a LogMessage whose message is serialize(thriftMessage).
+   *
+   * @param partitionKey the key of the LogMessage, can be null.
+   * @param thriftMessage the thrift object to use as the message of the LogMessage.
+   * @param timeNanos the timestamp of the LogMessage.
+   * @param buffer the buffer to write to, see {@link #serialize(TBase, ByteBuffer)}.
+   * @return the number of bytes written.
+   */
+  public <T extends TBase> int serializeLogMessage(byte[] partitionKey, T thriftMessage,
+                                                   long timeNanos, ByteBuffer buffer)
+      throws TException {
+    return byteBufferEncoder.get().serializeLogMessage(
+        partitionKey, thriftMessage, timeNanos, buffer);
+  }
+
   /**
    * Serialize a thrift object as JSON.
    *
@@ -227,6 +284,119 @@ public class ThriftCodec {
     }
   }
 
+  /**
+   * Transport that writes to a ByteBuffer.
+   */
+  private static class ByteBufferTransport extends TTransport {
+
+    private ByteBuffer buffer;
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+      throw new TTransportException("Reading is not supported");
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+      if (len > buffer.remaining()) {
+        throw new BufferOverflowException();
+      }
+      buffer.put(buf, off, len);
+    }
+  }
+
+  /**
+   * Serializer that writes to ByteBuffers given by the caller.
+   */
+  private static class ByteBufferSerializer {
+
+    // the fields of LogMessage, as defined in singer_if.thrift
+    private static final TStruct LOG_MESSAGE_STRUCT = new TStruct("LogMessage");
+    private static final TField KEY_FIELD = new TField("key", TType.STRING, (short) 1);
+    private static final TField MESSAGE_FIELD = new TField("message", TType.STRING, (short) 2);
+    private static final TField TIMESTAMP_FIELD =
+        new TField("timestampInNanos", TType.I64, (short) 3);
+
+    private final ByteBufferTransport transport = new ByteBufferTransport();
+    private final TProtocol binaryProtocol = new TBinaryProtocol(transport);
+    private final TProtocol compactProtocol = new TCompactProtocol(transport);
+
+    public int serialize(TBase base, ByteBuffer buffer, boolean compact, boolean prefixed)
+        throws TException {
+      int start = buffer.position();
+      transport.buffer = buffer;
+      try {
+        if (prefixed) {
+          if (buffer.remaining() < 2) {
+            throw new BufferOverflowException();
+          }
+          buffer.put(PrefixedSerializer.SECRET_BYTE);
+          buffer.put(PrefixedSerializer.COMPACT_PROTOCOL_BYTE);
+        }
+        base.write(compact ? compactProtocol : binaryProtocol);
+        return buffer.position() - start;
+      } catch (BufferOverflowException e) {
+        buffer.position(start);
+        throw e;
+      } finally {
+        transport.buffer = null;
+        compactProtocol.reset();
+      }
+    }
+
+    public int serializeLogMessage(byte[] partitionKey, TBase thriftMessage, long timeNanos,
+                                   ByteBuffer buffer) throws TException {
+      int start = buffer.position();
+      transport.buffer = buffer;
+      try {
+        // the fields are written in the same order as LogMessage.write() writes them
+        binaryProtocol.writeStructBegin(LOG_MESSAGE_STRUCT);
+        if (partitionKey != null) {
+          binaryProtocol.writeFieldBegin(KEY_FIELD);
+          binaryProtocol.writeBinary(ByteBuffer.wrap(partitionKey));
+          binaryProtocol.writeFieldEnd();
+        }
+        binaryProtocol.writeFieldBegin(MESSAGE_FIELD);
+        // the length of the message is only known after it is written
+        int lengthPosition = buffer.position();
+        binaryProtocol.writeI32(0);
+        int messageStart = buffer.position();
+        thriftMessage.write(binaryProtocol);
+        int length = buffer.position() - messageStart;
+        // big endian like TBinaryProtocol, independent of the byte order of the buffer
+        buffer.put(lengthPosition, (byte) (length >>> 24));
+        buffer.put(lengthPosition + 1, (byte) (length >>> 16));
+        buffer.put(lengthPosition + 2, (byte) (length >>> 8));
+        buffer.put(lengthPosition + 3, (byte) length);
+        binaryProtocol.writeFieldEnd();
+        binaryProtocol.writeFieldBegin(TIMESTAMP_FIELD);
+        binaryProtocol.writeI64(timeNanos);
+        binaryProtocol.writeFieldEnd();
+        binaryProtocol.writeFieldStop();
+        binaryProtocol.writeStructEnd();
+        return buffer.position() - start;
+      } catch (BufferOverflowException e) {
+        buffer.position(start);
+        throw e;
+      } finally {
+        transport.buffer = null;
+      }
+    }
+  }
+
   private static class PrefixedDeserializer {
 
     private final TProtocol protocol;
@@ -293,6 +463,14 @@ public class ThriftCodec {
     }
   };
 
+  private ThreadLocal<ByteBufferSerializer> byteBufferEncoder =
+      new ThreadLocal<ByteBufferSerializer>() {
+        @Override
+        protected ByteBufferSerializer initialValue() {
+          return new ByteBufferSerializer();
+        }
+      };
+
   private ThreadLocal<TSerializer> encoderCompact = new ThreadLocal<TSerializer>() {
     @Override
     protected TSerializer initialValue() {
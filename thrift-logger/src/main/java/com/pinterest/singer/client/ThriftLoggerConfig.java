@@ -15,6 +15,8 @@
  */
 package com.pinterest.singer.client;
 
+import com.pinterest.singer.thrift.ChecksumType;
+
 import java.io.File;
 
 /**
@@ -29,6 +31,23 @@ public class ThriftLoggerConfig {
   public Class<?> thriftClazz;
   public boolean enableLoggingAudit = false;
   public double auditSamplingRate = 1.0;
+  // number of messages buffered for the background writer, 0 writes on the calling thread
+  public int asyncBufferCapacity = 0;
+  public AsyncOverflowPolicy asyncOverflowPolicy = AsyncOverflowPolicy.BLOCK;
+  // bytes of log messages grouped into one write, 0 writes every message
+  public int flushThresholdBytes = 0;
+  // max time grouped log messages are held before they are written
+  public long flushIntervalMillis = 1000;
+  // write to preallocated memory-mapped segments instead of through a logback file appender
+  public boolean enableMappedSegments = false;
+  // number of files the topic is written to, see AppenderUtils.getShardFileName
+  public int numShards = 1;
+  // shard messages with a partition key by the key instead of by the calling thread
+  public boolean shardByPartitionKey = false;
+  // encode log messages with the TCompactProtocol, requires a Singer that detects the encoding
+  public boolean enableCompactProtocol = false;
+  // checksum of audited log messages, CRC32C requires a Singer that knows the checksum type
+  public ChecksumType checksumType = ChecksumType.CRC32;
 
   public ThriftLoggerConfig(File baseDir,
                             String kafkaTopic,
@@ -111,6 +130,78 @@ public class ThriftLoggerConfig {
     this.auditSamplingRate = auditSamplingRate;
   }
 
+  public int getAsyncBufferCapacity() {
+    return asyncBufferCapacity;
+  }
+
+  public void setAsyncBufferCapacity(int asyncBufferCapacity) {
+    this.asyncBufferCapacity = asyncBufferCapacity;
+  }
+
+  public AsyncOverflowPolicy getAsyncOverflowPolicy() {
+    return asyncOverflowPolicy;
+  }
+
+  public void setAsyncOverflowPolicy(AsyncOverflowPolicy asyncOverflowPolicy) {
+    this.asyncOverflowPolicy = asyncOverflowPolicy;
+  }
+
+  public int getFlushThresholdBytes() {
+    return flushThresholdBytes;
+  }
+
+  public void setFlushThresholdBytes(int flushThresholdBytes) {
+    this.flushThresholdBytes = flushThresholdBytes;
+  }
+
+  public long getFlushIntervalMillis() {
+    return flushIntervalMillis;
+  }
+
+  public void setFlushIntervalMillis(long flushIntervalMillis) {
+    this.flushIntervalMillis = flushIntervalMillis;
+  }
+
+  public boolean isEnableMappedSegments() {
+    return enableMappedSegments;
+  }
+
+  public void setEnableMappedSegments(boolean enableMappedSegments) {
+    this.enableMappedSegments = enableMappedSegments;
+  }
+
+  public int getNumShards() {
+    return numShards;
+  }
+
+  public void setNumShards(int numShards) {
+    this.numShards = numShards;
+  }
+
+  public boolean isShardByPartitionKey() {
+    return shardByPartitionKey;
+  }
+
+  public void setShardByPartitionKey(boolean shardByPartitionKey) {
+    this.shardByPartitionKey = shardByPartitionKey;
+  }
+
+  public boolean isEnableCompactProtocol() {
+    return enableCompactProtocol;
+  }
+
+  public void setEnableCompactProtocol(boolean enableCompactProtocol) {
+    this.enableCompactProtocol = enableCompactProtocol;
+  }
+
+  public ChecksumType getChecksumType() {
+    return checksumType;
+  }
+
+  public void setChecksumType(ChecksumType checksumType) {
+    this.checksumType = checksumType;
+  }
+
   public String toString() {
     if (this.thriftClazz != null) {
       return String.format("Thrift Logger config for AuditableLogbackThriftLogger (with advanced "
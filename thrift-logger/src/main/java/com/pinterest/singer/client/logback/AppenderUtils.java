@@ -15,6 +15,7 @@
  */
 package com.pinterest.singer.client.logback;
 
+import com.pinterest.singer.client.AsyncOverflowPolicy;
 import com.pinterest.singer.thrift.LogMessage;
 
 import ch.qos.logback.core.Appender;
@@ -24,16 +25,21 @@ import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.SizeAndTimeBasedFNATP;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
 import ch.qos.logback.core.util.FileSize;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
 import org.apache.thrift.protocol.TProtocol;
-import org.apache.thrift.transport.TFastFramedTransport;
 import org.apache.thrift.transport.TIOStreamTransport;
-import org.apache.thrift.transport.TTransport;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utils to create logback appenders
@@ -42,42 +48,176 @@ public class AppenderUtils {
 
   public static final String PATH_SEP = "/";
 
+  /**
+   * Prefix of frames that hold a TCompactProtocol encoded LogMessage, the same as the prefix of
+   * ThriftCodec's prefixed compact encoding. A TBinaryProtocol encoded LogMessage never starts
+   * with 0xff, so Singer can tell the two apart for every frame.
+   */
+  public static final byte[] COMPACT_FRAME_PREFIX = {(byte) 0xff, (byte) 0x01};
+
+  /**
+   * Prefix of frames without a LogMessage that Singer skips, e.g. the frames that cover space
+   * reserved by a writer that never completed its frame.
+   */
+  public static final byte[] SKIP_FRAME_PREFIX = {(byte) 0xff, (byte) 0x00};
+
   private AppenderUtils() {
   }
 
   /**
    * Encoder for LogMessage objects.
+   *
+   * Messages are written as TFramedTransport frames: a 4-byte big-endian length followed by the
+   * TBinaryProtocol encoded LogMessage, or the {@link #COMPACT_FRAME_PREFIX} followed by the
+   * TCompactProtocol encoded LogMessage. Frames are serialized into a reusable buffer. By default
+   * every frame is written out and flushed right away. With a flush threshold, frames are grouped
+   * and written with a single write once the buffer holds flushThresholdBytes, when
+   * flushIntervalMillis passed since the last flush, or when {@link #flush()} is called.
    */
   public static class LogMessageEncoder extends EncoderBase<LogMessage> {
 
-    private TTransport framedTransport;
-    private TProtocol protocol;
+    private static final int INITIAL_BUFFER_BYTES = 4096;
+    private static final int FRAME_HEADER_BYTES = 4;
+    private static final ScheduledExecutorService FLUSHER =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("ThriftLoggerFlusher-%d").setDaemon(true).build());
+
+    private final int flushThresholdBytes;
+    private final long flushIntervalMillis;
+    private final FrameBuffer buffer = new FrameBuffer(INITIAL_BUFFER_BYTES);
+    private final boolean compactProtocol;
+    private final TProtocol protocol;
     private OutputStream os;
+    private long lastFlushMillis;
+    private ScheduledFuture<?> flushTask;
+
+    public LogMessageEncoder() {
+      this(0, 0, false);
+    }
+
+    public LogMessageEncoder(int flushThresholdBytes, long flushIntervalMillis) {
+      this(flushThresholdBytes, flushIntervalMillis, false);
+    }
+
+    /**
+     * @param flushThresholdBytes the buffered bytes that trigger a flush, 0 flushes every frame.
+     * @param flushIntervalMillis the max time frames are buffered, 0 only flushes on size.
+     * @param compactProtocol whether frames are encoded with the TCompactProtocol.
+     */
+    public LogMessageEncoder(int flushThresholdBytes, long flushIntervalMillis,
+                             boolean compactProtocol) {
+      this.flushThresholdBytes = flushThresholdBytes;
+      this.flushIntervalMillis = flushIntervalMillis;
+      this.compactProtocol = compactProtocol;
+      TIOStreamTransport transport = new TIOStreamTransport(buffer);
+      this.protocol = compactProtocol
+                      ? new TCompactProtocol(transport) : new TBinaryProtocol(transport);
+    }
 
     @Override
-    public void init(OutputStream os) {
+    public synchronized void init(OutputStream os) {
       this.os = os;
-      // Use the TFlushingFastFramedTransport to be compatible with singer_thrift
-      // log.
-      final int bufferCapacity = 10;
-      framedTransport = new TFastFramedTransport(new TIOStreamTransport(os),
-          bufferCapacity);
-      protocol = new TBinaryProtocol(framedTransport);
+      this.lastFlushMillis = System.currentTimeMillis();
+      if (flushThresholdBytes > 0 && flushIntervalMillis > 0 && flushTask == null) {
+        // flushes the tail of the buffer when no more messages arrive
+        flushTask = FLUSHER.scheduleWithFixedDelay(this::flushIfDue,
+            flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+      }
     }
 
     @Override
-    public void doEncode(LogMessage logMessage) throws IOException {
+    public synchronized void doEncode(LogMessage logMessage) throws IOException {
+      int frameStart = buffer.size();
+      buffer.reserve(FRAME_HEADER_BYTES);
+      if (compactProtocol) {
+        buffer.write(COMPACT_FRAME_PREFIX);
+      }
       try {
         logMessage.write(protocol);
-        framedTransport.flush();
       } catch (TException e) {
+        buffer.truncate(frameStart);
         throw new IOException(e);
       }
+      buffer.putInt(frameStart, buffer.size() - frameStart - FRAME_HEADER_BYTES);
+      if (buffer.size() >= flushThresholdBytes || (flushIntervalMillis > 0
+          && System.currentTimeMillis() - lastFlushMillis >= flushIntervalMillis)) {
+        flush();
+      }
+    }
+
+    /**
+     * Write all buffered frames to the output stream and flush it.
+     */
+    public synchronized void flush() throws IOException {
+      lastFlushMillis = System.currentTimeMillis();
+      if (buffer.size() == 0 || os == null) {
+        return;
+      }
+      buffer.writeTo(os);
+      buffer.reset();
+      // do not hold on to the memory of rare large batches
+      buffer.shrink(Math.max(INITIAL_BUFFER_BYTES, flushThresholdBytes * 2));
+      os.flush();
+    }
+
+    private synchronized void flushIfDue() {
+      if (System.currentTimeMillis() - lastFlushMillis < flushIntervalMillis) {
+        return;
+      }
+      try {
+        flush();
+      } catch (IOException e) {
+        addError("Failed to flush buffered log messages", e);
+      }
     }
 
     @Override
-    public void close() throws IOException {
-      framedTransport.close();
+    public synchronized void close() throws IOException {
+      if (flushTask != null) {
+        flushTask.cancel(false);
+        flushTask = null;
+      }
+      flush();
+      os = null;
+    }
+  }
+
+  /**
+   * ByteArrayOutputStream whose frame headers can be filled in after the frame is written.
+   */
+  private static final class FrameBuffer extends ByteArrayOutputStream {
+
+    private final int initialSize;
+
+    private FrameBuffer(int size) {
+      super(size);
+      this.initialSize = size;
+    }
+
+    /**
+     * Reserve space for a header, to be filled in with {@link #putInt(int, int)}.
+     */
+    private void reserve(int length) {
+      for (int i = 0; i < length; i++) {
+        super.write(0);
+      }
+    }
+
+    private void putInt(int position, int value) {
+      buf[position] = (byte) (value >>> 24);
+      buf[position + 1] = (byte) (value >>> 16);
+      buf[position + 2] = (byte) (value >>> 8);
+      buf[position + 3] = (byte) value;
+    }
+
+    private void truncate(int size) {
+      count = size;
+    }
+
+    private void shrink(int maxCapacity) {
+      if (buf.length > maxCapacity && count == 0) {
+        buf = new byte[initialSize];
+      }
     }
   }
 
@@ -96,12 +236,35 @@ public class AppenderUtils {
       long rotateThresholdKBytes,
       Context context,
       int maxRetentionHours) {
+    return createFileRollingThriftAppender(
+        basePath, topic, rotateThresholdKBytes, context, maxRetentionHours, 0, 0, false);
+  }
+
+  /**
+   * Create the basic thrift appender which groups log messages into fewer writes.
+   *
+   * @param flushThresholdBytes the buffered bytes that trigger a write, 0 writes every message.
+   * @param flushIntervalMillis the max time messages are buffered before they are written.
+   * @param compactProtocol whether messages are encoded with the TCompactProtocol.
+   * @see #createFileRollingThriftAppender(File, String, long, Context, int)
+   */
+  public static Appender<LogMessage> createFileRollingThriftAppender(
+      File basePath,
+      String topic,
+      long rotateThresholdKBytes,
+      Context context,
+      int maxRetentionHours,
+      int flushThresholdBytes,
+      long flushIntervalMillis,
+      boolean compactProtocol) {
     RollingFileAppender<LogMessage> appender = new RollingFileAppender<LogMessage>();
     appender.setContext(context);
     appender.setAppend(true);
     appender.setPrudent(false);
 
-    LogMessageEncoder encoder = new LogMessageEncoder();
+    LogMessageEncoder encoder =
+        new LogMessageEncoder(flushThresholdBytes, flushIntervalMillis, compactProtocol);
+    encoder.setContext(context);
     appender.setEncoder(encoder);
     appender.setFile(basePath + PATH_SEP + topic);
 
@@ -127,4 +290,62 @@ public class AppenderUtils {
 
     return appender;
   }
+
+  /**
+   * Wrap an appender so that messages are written by a background thread.
+   *
+   * @param appender the appender that writes the messages.
+   * @param topic the topic name for the current appender.
+   * @param bufferCapacity the number of messages that can be buffered.
+   * @param overflowPolicy what to do with messages when the buffer is full.
+   * @param context the logback context.
+   */
+  public static Appender<LogMessage> createAsyncThriftAppender(
+      Appender<LogMessage> appender,
+      String topic,
+      int bufferCapacity,
+      AsyncOverflowPolicy overflowPolicy,
+      Context context) {
+    AsyncRingBufferAppender asyncAppender =
+        new AsyncRingBufferAppender(appender, topic, bufferCapacity, overflowPolicy);
+    asyncAppender.setContext(context);
+    asyncAppender.start();
+    return asyncAppender;
+  }
+
+  /**
+   * Create a thrift appender which writes to memory-mapped segments without taking a lock. The
+   * segments roll by size and by hour with the same file names as the rolling thrift appender.
+   *
+   * @param basePath base directory the files are under.
+   * @param topic the topic name for the current appender.
+   * @param segmentBytes the size of the preallocated segments, which is also the size to rotate
+   *                     after.
+   * @param context the logback context.
+   * @param maxRetentionHours number of hours rolled segments are kept.
+   * @param compactProtocol whether messages are encoded with the TCompactProtocol.
+   */
+  public static Appender<LogMessage> createMappedThriftAppender(
+      File basePath,
+      String topic,
+      int segmentBytes,
+      Context context,
+      int maxRetentionHours,
+      boolean compactProtocol) {
+    MappedSegmentAppender appender = new MappedSegmentAppender(
+        basePath, topic, segmentBytes, maxRetentionHours, compactProtocol);
+    appender.setContext(context);
+    appender.start();
+    return appender;
+  }
+
+  /**
+   * Name of the file of one shard of a topic. Shard numbers are zero padded to the same width,
+   * so that no shard file name is a prefix of another one and Singer can pick up the shards as
+   * separate log streams of one log, e.g. with logStreamRegex topic_\d+ in PREFIX mode.
+   */
+  public static String getShardFileName(String topic, int shard, int numShards) {
+    int width = String.valueOf(numShards - 1).length();
+    return String.format("%s_%0" + width + "d", topic, shard);
+  }
 }
@@ -0,0 +1,249 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client.logback;
+
+import com.pinterest.singer.client.AsyncOverflowPolicy;
+import com.pinterest.singer.metrics.OpenTsdbMetricConverter;
+import com.pinterest.singer.thrift.LogMessage;
+import com.pinterest.singer.utils.CommonUtils;
+
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appender that hands LogMessages to a background writer through a lock-free ring buffer.
+ *
+ * Appending a message only claims a slot in the preallocated buffer, so application threads
+ * neither contend on the lock of the underlying file appender nor wait for file I/O. A single
+ * writer thread drains the buffer in batches into the wrapped appender, and flushes the frames
+ * grouped by its encoder whenever the buffer runs empty. An idle writer yields a few times and
+ * then parks until a producer unparks it. When the buffer is full, the
+ * {@link AsyncOverflowPolicy} decides whether the caller blocks, drops the message or writes it
+ * itself.
+ */
+public class AsyncRingBufferAppender extends UnsynchronizedAppenderBase<LogMessage> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncRingBufferAppender.class);
+
+  public static final String THRIFT_LOGGER_ASYNC_DROPPED = "thrift_logger.async.dropped";
+  public static final String THRIFT_LOGGER_ASYNC_SPILLED = "thrift_logger.async.spilled";
+  public static final String THRIFT_LOGGER_ASYNC_ERROR = "thrift_logger.async.error";
+
+  // max number of messages the writer drains before it checks for shutdown
+  private static final int WRITER_BATCH_SIZE = 1024;
+  // number of empty drains the writer yields for before it parks
+  private static final int WRITER_IDLE_YIELDS = 64;
+  // upper bound of a park, the writer is normally unparked by producers
+  private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long PRODUCER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  // how long stop() waits for callers that claimed a slot to publish their message
+  private static final long STOP_PUBLISH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Appender<LogMessage> appender;
+  // encoder of the wrapped appender, if it groups frames
+  private final AppenderUtils.LogMessageEncoder encoder;
+  private final String topic;
+  private final String hostName;
+  private final AsyncOverflowPolicy overflowPolicy;
+  private final LogMessageRingBuffer buffer;
+  private final Thread writer;
+  private volatile boolean stopping = false;
+  // set while the writer is about to park or parked, producers only unpark it then
+  private volatile boolean writerParked = false;
+
+  /**
+   * @param appender the appender that writes the messages, stopped together with this appender.
+   * @param topic the topic of the messages, used to tag metrics.
+   * @param bufferCapacity the number of messages that can be buffered.
+   * @param overflowPolicy what to do with messages when the buffer is full.
+   */
+  public AsyncRingBufferAppender(Appender<LogMessage> appender,
+                                 String topic,
+                                 int bufferCapacity,
+                                 AsyncOverflowPolicy overflowPolicy) {
+    this.appender = Preconditions.checkNotNull(appender);
+    this.encoder = findEncoder(appender);
+    this.topic = topic;
+    this.hostName = CommonUtils.getHostName();
+    this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy);
+    this.buffer = new LogMessageRingBuffer(bufferCapacity);
+    this.writer = new Thread(this::runWriter, "ThriftLoggerWriter-" + topic);
+    this.writer.setDaemon(true);
+  }
+
+  @Override
+  public void start() {
+    if (isStarted()) {
+      return;
+    }
+    writer.start();
+    super.start();
+  }
+
+  /**
+   * Stop accepting messages, write all buffered messages and stop the wrapped appender.
+   */
+  @Override
+  public void stop() {
+    if (!isStarted()) {
+      return;
+    }
+    super.stop();
+    stopping = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting for the writer of topic {}", topic);
+      Thread.currentThread().interrupt();
+    }
+    // messages of callers that raced with stop(), which may not have published their claimed
+    // slots yet
+    long deadline = System.nanoTime() + STOP_PUBLISH_TIMEOUT_NANOS;
+    while (true) {
+      buffer.drain(this::write, Integer.MAX_VALUE);
+      if (buffer.isEmpty()) {
+        break;
+      }
+      if (System.nanoTime() - deadline >= 0) {
+        int unpublished = buffer.size();
+        OpenTsdbMetricConverter.incr(
+            THRIFT_LOGGER_ASYNC_DROPPED, unpublished, "topic=" + topic, "host=" + hostName);
+        LOG.warn("Dropped {} unpublished messages of topic {} on stop", unpublished, topic);
+        break;
+      }
+      LockSupport.parkNanos(PRODUCER_BACKOFF_NANOS);
+    }
+    appender.stop();
+  }
+
+  @Override
+  protected void append(LogMessage logMessage) {
+    if (buffer.offer(logMessage)) {
+      wakeWriter();
+      return;
+    }
+    switch (overflowPolicy) {
+      case BLOCK:
+        while (!buffer.offer(logMessage)) {
+          if (stopping) {
+            OpenTsdbMetricConverter.incr(
+                THRIFT_LOGGER_ASYNC_DROPPED, "topic=" + topic, "host=" + hostName);
+            return;
+          }
+          LockSupport.parkNanos(PRODUCER_BACKOFF_NANOS);
+        }
+        wakeWriter();
+        break;
+      case SPILL:
+        appender.doAppend(logMessage);
+        OpenTsdbMetricConverter.incr(
+            THRIFT_LOGGER_ASYNC_SPILLED, "topic=" + topic, "host=" + hostName);
+        break;
+      default:
+        OpenTsdbMetricConverter.incr(
+            THRIFT_LOGGER_ASYNC_DROPPED, "topic=" + topic, "host=" + hostName);
+    }
+  }
+
+  private void wakeWriter() {
+    if (writerParked) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  private void runWriter() {
+    int idleRounds = 0;
+    while (true) {
+      int drained = buffer.drain(this::write, WRITER_BATCH_SIZE);
+      if (drained > 0) {
+        idleRounds = 0;
+        if (drained < WRITER_BATCH_SIZE) {
+          flushEncoder();
+        }
+        continue;
+      }
+      if (stopping) {
+        return;
+      }
+      if (++idleRounds <= WRITER_IDLE_YIELDS) {
+        Thread.yield();
+        continue;
+      }
+      writerParked = true;
+      // producers that claimed a slot before the flag was set do not unpark the writer, so only
+      // park if no slot is claimed. The claim of the slot and the read of the flag by a producer
+      // are ordered like the write of the flag and this check, one of them sees the other.
+      if (buffer.isEmpty() && !stopping) {
+        LockSupport.parkNanos(this, WRITER_PARK_NANOS);
+      } else {
+        Thread.yield();
+      }
+      writerParked = false;
+    }
+  }
+
+  private void flushEncoder() {
+    if (encoder == null) {
+      return;
+    }
+    try {
+      encoder.flush();
+    } catch (IOException e) {
+      OpenTsdbMetricConverter.incr(
+          THRIFT_LOGGER_ASYNC_ERROR, "topic=" + topic, "host=" + hostName);
+      LOG.error("Failed to flush messages of topic " + topic, e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static AppenderUtils.LogMessageEncoder findEncoder(Appender<LogMessage> appender) {
+    if (appender instanceof OutputStreamAppender) {
+      Encoder<LogMessage> encoder = ((OutputStreamAppender<LogMessage>) appender).getEncoder();
+      if (encoder instanceof AppenderUtils.LogMessageEncoder) {
+        return (AppenderUtils.LogMessageEncoder) encoder;
+      }
+    }
+    return null;
+  }
+
+  private void write(LogMessage logMessage) {
+    try {
+      appender.doAppend(logMessage);
+    } catch (RuntimeException e) {
+      // there is no caller to rethrow to, count the failure and keep the writer alive
+      OpenTsdbMetricConverter.incr(
+          THRIFT_LOGGER_ASYNC_ERROR, "topic=" + topic, "host=" + hostName);
+      LOG.error("Failed to write message of topic " + topic, e);
+    }
+  }
+
+  /**
+   * @return the number of buffered messages.
+   */
+  public int getBufferedMessages() {
+    return buffer.size();
+  }
+}
@@ -132,12 +132,7 @@ public class AuditableLogbackThriftLoggerFactory extends LogbackThriftLoggerFact
       throw new IllegalArgumentException("The fields of thriftLoggerConfig are not properly set.");
     }
 
-    Appender<LogMessage> appender = AppenderUtils.createFileRollingThriftAppender(
-        thriftLoggerConfig.getBaseDir(),
-        thriftLoggerConfig.getKafkaTopic(),
-        thriftLoggerConfig.getLogRotationThresholdBytes()/ 1024, // convert to KB
-        contextBase,
-        thriftLoggerConfig.getMaxRetentionSecs() / (60 * 60));    // lowest granularity is hours
+    Appender<LogMessage> appender = createAppender(thriftLoggerConfig);
 
     if (loggingAuditClient != null && (thriftLoggerConfig.getThriftClazz()  != null || thriftLoggerConfig.isEnableLoggingAudit())){
       Map<String, String> properties = createProperties(thriftLoggerConfig.getAuditSamplingRate());
@@ -147,7 +142,7 @@ public class AuditableLogbackThriftLoggerFactory extends LogbackThriftLoggerFact
 
     return new AuditableLogbackThriftLogger(appender, thriftLoggerConfig.getKafkaTopic(),
         thriftLoggerConfig.getThriftClazz(), thriftLoggerConfig.isEnableLoggingAudit(),
-        thriftLoggerConfig.getAuditSamplingRate());
+        thriftLoggerConfig.getAuditSamplingRate(), thriftLoggerConfig.getChecksumType());
   }
 
   private Map<String, String> createProperties(double auditSamplingRate){
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client.logback;
+
+import com.pinterest.singer.thrift.LogMessage;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, preallocated ring buffer of LogMessages with many producers and a single consumer.
+ *
+ * Producers claim a sequence number with a CAS on the tail and publish the message by storing the
+ * sequence into the slot, so offering a message never takes a lock. The consumer only reads slots
+ * whose published sequence matches the head, which keeps the order in which sequences were
+ * claimed.
+ */
+final class LogMessageRingBuffer {
+
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private final LogMessage[] entries;
+  // sequence number of the message stored in each slot, -1 before the first message
+  private final AtomicLongArray published;
+  private final int mask;
+  // next sequence number to claim
+  private final AtomicLong tail = new AtomicLong();
+  // next sequence number to consume
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * @param requestedCapacity the minimum capacity, rounded up to the next power of two.
+   */
+  LogMessageRingBuffer(int requestedCapacity) {
+    Preconditions.checkArgument(requestedCapacity > 0 && requestedCapacity <= MAX_CAPACITY,
+        "Invalid ring buffer capacity: %s", requestedCapacity);
+    int capacity = requestedCapacity == 1 ? 1 : Integer.highestOneBit(requestedCapacity - 1) << 1;
+    this.entries = new LogMessage[capacity];
+    this.published = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      published.set(i, -1);
+    }
+    this.mask = capacity - 1;
+  }
+
+  int capacity() {
+    return entries.length;
+  }
+
+  /**
+   * @return false if the buffer is full.
+   */
+  boolean offer(LogMessage logMessage) {
+    long sequence;
+    do {
+      sequence = tail.get();
+      if (sequence - head.get() >= entries.length) {
+        return false;
+      }
+    } while (!tail.compareAndSet(sequence, sequence + 1));
+    int index = (int) sequence & mask;
+    entries[index] = logMessage;
+    published.lazySet(index, sequence);
+    return true;
+  }
+
+  /**
+   * Pass up to maxMessages published messages to the consumer. Must only be called by the single
+   * consumer thread.
+   *
+   * @return the number of messages consumed.
+   */
+  int drain(Consumer<LogMessage> consumer, int maxMessages) {
+    long sequence = head.get();
+    int count = 0;
+    while (count < maxMessages) {
+      int index = (int) sequence & mask;
+      if (published.get(index) != sequence) {
+        break;
+      }
+      LogMessage logMessage = entries[index];
+      entries[index] = null;
+      // free the slot before handing out the message so that blocked producers can proceed
+      head.lazySet(++sequence);
+      count++;
+      consumer.accept(logMessage);
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of claimed slots, including messages that are not published yet.
+   */
+  int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  boolean isEmpty() {
+    return tail.get() == head.get();
+  }
+}
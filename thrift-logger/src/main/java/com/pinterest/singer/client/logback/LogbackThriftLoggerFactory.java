@@ -25,6 +25,8 @@ import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.ContextBase;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Factory that creates a logback-based logger.
@@ -66,13 +68,63 @@ public class LogbackThriftLoggerFactory extends BaseThriftLoggerFactory {
 
   @Override
   protected synchronized ThriftLogger createLogger(ThriftLoggerConfig thriftLoggerConfig) {
+    Appender<LogMessage> appender = createAppender(thriftLoggerConfig);
+    return new LogbackThriftLogger(thriftLoggerConfig.kafkaTopic, appender);
+  }
+
+  /**
+   * Create the appender of a topic. With more than one shard, the topic is written to one file
+   * per shard, see {@link AppenderUtils#getShardFileName(String, int, int)}.
+   */
+  protected Appender<LogMessage> createAppender(ThriftLoggerConfig thriftLoggerConfig) {
+    if (thriftLoggerConfig.numShards <= 1) {
+      return createAppender(thriftLoggerConfig, thriftLoggerConfig.kafkaTopic);
+    }
+    List<Appender<LogMessage>> shards = new ArrayList<>(thriftLoggerConfig.numShards);
+    for (int shard = 0; shard < thriftLoggerConfig.numShards; shard++) {
+      shards.add(createAppender(thriftLoggerConfig, AppenderUtils.getShardFileName(
+          thriftLoggerConfig.kafkaTopic, shard, thriftLoggerConfig.numShards)));
+    }
+    ShardedAppender appender =
+        new ShardedAppender(shards, thriftLoggerConfig.shardByPartitionKey);
+    appender.setContext(contextBase);
+    appender.start();
+    return appender;
+  }
+
+  /**
+   * Create the rolling file appender of one file of a topic, or the memory-mapped segment
+   * appender if the config enables it. If the config sets an async buffer capacity, the appender
+   * is wrapped so that messages are written by a background thread.
+   */
+  private Appender<LogMessage> createAppender(ThriftLoggerConfig thriftLoggerConfig,
+                                              String fileName) {
+    if (thriftLoggerConfig.enableMappedSegments) {
+      return AppenderUtils.createMappedThriftAppender(
+          thriftLoggerConfig.baseDir,
+          fileName,
+          thriftLoggerConfig.logRotationThresholdBytes,
+          contextBase,
+          thriftLoggerConfig.maxRetentionSecs / (60 * 60),   // lowest granularity is hours
+          thriftLoggerConfig.enableCompactProtocol);
+    }
     Appender<LogMessage> appender = AppenderUtils.createFileRollingThriftAppender(
         thriftLoggerConfig.baseDir,
-        thriftLoggerConfig.kafkaTopic,
+        fileName,
         thriftLoggerConfig.logRotationThresholdBytes / 1024, // convert to KB
         contextBase,
-        thriftLoggerConfig.maxRetentionSecs / (60 * 60));    // lowest granularity is hours
-
-    return new LogbackThriftLogger(thriftLoggerConfig.kafkaTopic, appender);
+        thriftLoggerConfig.maxRetentionSecs / (60 * 60),     // lowest granularity is hours
+        thriftLoggerConfig.flushThresholdBytes,
+        thriftLoggerConfig.flushIntervalMillis,
+        thriftLoggerConfig.enableCompactProtocol);
+    if (thriftLoggerConfig.asyncBufferCapacity > 0) {
+      appender = AppenderUtils.createAsyncThriftAppender(
+          appender,
+          thriftLoggerConfig.kafkaTopic,
+          thriftLoggerConfig.asyncBufferCapacity,
+          thriftLoggerConfig.asyncOverflowPolicy,
+          contextBase);
+    }
+    return appender;
   }
 }
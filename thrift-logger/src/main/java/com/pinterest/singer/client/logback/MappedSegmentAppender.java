@@ -0,0 +1,422 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client.logback;
+
+import com.pinterest.singer.client.ThriftCodec;
+import com.pinterest.singer.thrift.LogMessage;
+
+import ch.qos.logback.core.LogbackException;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Appender that writes framed LogMessages into a preallocated, memory-mapped log segment.
+ *
+ * Threads reserve space for their frame by advancing the write cursor of the segment with a CAS
+ * and copy the frame in without taking a lock. The payload of a frame is copied before its size,
+ * so readers that tail the segment see a frame size of 0 until the frame is complete; Singer's
+ * ThriftReader treats a zero frame size as the end of the data written so far.
+ *
+ * The active segment is written to basePath/topic. When a segment is full or the hour changes,
+ * it is truncated to its data, renamed to topic.yyyy-MM-dd-HH.i like the files rolled by
+ * {@link AppenderUtils#createFileRollingThriftAppender}, and a new segment is mapped. Rolling is
+ * the only operation that takes a lock. Sealing waits a bounded time for the reserved frames; a
+ * frame whose writer does not complete it in time is covered by a frame with the
+ * {@link AppenderUtils#SKIP_FRAME_PREFIX}.
+ *
+ * Frames are serialized into a reused per thread buffer. Thrift messages appended through
+ * {@link ThriftMessageAppender} are serialized straight into the message field of the frame.
+ */
+public class MappedSegmentAppender extends UnsynchronizedAppenderBase<LogMessage>
+    implements ThriftMessageAppender {
+
+  private static final int FRAME_HEADER_BYTES = 4;
+  private static final DateTimeFormatter PERIOD_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+
+  private static final int INITIAL_FRAME_BUFFER_BYTES = 1024;
+  // how long sealing a segment waits for the reserved frames to be written
+  private static final long SEAL_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final ThreadLocal<ByteBuffer> FRAME_BUFFERS =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_FRAME_BUFFER_BYTES));
+
+  private final File basePath;
+  private final String topic;
+  private final int segmentBytes;
+  private final int maxRetentionHours;
+  private final boolean compactProtocol;
+  private final Pattern rolledFilePattern;
+  private volatile Segment segment;
+
+  /**
+   * @param basePath base directory the files are under.
+   * @param topic the topic name for the current appender.
+   * @param segmentBytes the size of a segment, a larger segment is only used for larger frames.
+   * @param maxRetentionHours number of hours rolled segments are kept.
+   */
+  public MappedSegmentAppender(File basePath, String topic, int segmentBytes,
+                               int maxRetentionHours) {
+    this(basePath, topic, segmentBytes, maxRetentionHours, false);
+  }
+
+  /**
+   * @param compactProtocol whether frames are encoded with the TCompactProtocol, see
+   *                        {@link AppenderUtils#COMPACT_FRAME_PREFIX}.
+   */
+  public MappedSegmentAppender(File basePath, String topic, int segmentBytes,
+                               int maxRetentionHours, boolean compactProtocol) {
+    Preconditions.checkArgument(segmentBytes > FRAME_HEADER_BYTES);
+    this.basePath = Preconditions.checkNotNull(basePath);
+    this.topic = Preconditions.checkNotNull(topic);
+    this.segmentBytes = segmentBytes;
+    this.maxRetentionHours = maxRetentionHours;
+    this.compactProtocol = compactProtocol;
+    this.rolledFilePattern =
+        Pattern.compile(Pattern.quote(topic) + "\\.(\\d{4}-\\d{2}-\\d{2}-\\d{2})\\.(\\d+)");
+  }
+
+  @Override
+  public synchronized void start() {
+    if (isStarted()) {
+      return;
+    }
+    try {
+      Files.createDirectories(basePath.toPath());
+      File activeFile = new File(basePath, topic);
+      if (activeFile.length() > 0) {
+        // the segment of a previous run, its end is the first zero frame size
+        long dataEnd = findDataEnd(activeFile);
+        try (RandomAccessFile file = new RandomAccessFile(activeFile, "rw")) {
+          file.setLength(dataEnd);
+        }
+        rename(activeFile, Instant.ofEpochMilli(activeFile.lastModified()));
+      }
+      segment = new Segment(activeFile, segmentBytes);
+    } catch (IOException e) {
+      addError("Failed to create segment for topic " + topic, e);
+      return;
+    }
+    super.start();
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (!isStarted()) {
+      return;
+    }
+    super.stop();
+    try {
+      seal(segment);
+    } catch (IOException e) {
+      addError("Failed to seal segment of topic " + topic, e);
+    }
+  }
+
+  @Override
+  protected void append(LogMessage logMessage) {
+    ByteBuffer frame;
+    try {
+      frame = serializeFrame(buffer -> {
+        if (compactProtocol) {
+          buffer.put(AppenderUtils.COMPACT_FRAME_PREFIX);
+          ThriftCodec.getInstance().serializeCompact(logMessage, buffer);
+        } else {
+          ThriftCodec.getInstance().serialize(logMessage, buffer);
+        }
+      });
+    } catch (TException e) {
+      throw new LogbackException("Failed to serialize log message", e);
+    }
+    appendFrame(frame);
+  }
+
+  @Override
+  public void appendThriftMessage(byte[] partitionKey, TBase thriftMessage, long timeNanos)
+      throws TException {
+    if (!isStarted()) {
+      // dropped like the LogMessages appended to a stopped appender
+      return;
+    }
+    if (compactProtocol) {
+      LogMessage logMessage = new LogMessage().setTimestampInNanos(timeNanos)
+          .setMessage(ThriftCodec.getInstance().serialize(thriftMessage));
+      if (partitionKey != null) {
+        logMessage.setKey(partitionKey);
+      }
+      append(logMessage);
+      return;
+    }
+    appendFrame(serializeFrame(buffer -> ThriftCodec.getInstance()
+        .serializeLogMessage(partitionKey, thriftMessage, timeNanos, buffer)));
+  }
+
+  /**
+   * @return the per thread frame buffer, flipped for reading the serialized frame.
+   */
+  private static ByteBuffer serializeFrame(FrameSerializer serializer) throws TException {
+    ByteBuffer frame = FRAME_BUFFERS.get();
+    while (true) {
+      frame.clear();
+      try {
+        serializer.serialize(frame);
+        frame.flip();
+        return frame;
+      } catch (BufferOverflowException e) {
+        frame = ByteBuffer.allocate(frame.capacity() * 2);
+        FRAME_BUFFERS.set(frame);
+      }
+    }
+  }
+
+  private void appendFrame(ByteBuffer frame) {
+    int frameLength = FRAME_HEADER_BYTES + frame.remaining();
+    while (true) {
+      Segment current = segment;
+      if (System.currentTimeMillis() < current.rollAtMillis) {
+        long offset = current.reserve(frameLength);
+        if (offset >= 0) {
+          current.write((int) offset, frame);
+          return;
+        }
+      }
+      try {
+        roll(current, frameLength);
+      } catch (IOException e) {
+        throw new LogbackException("Failed to roll segment of topic " + topic, e);
+      }
+    }
+  }
+
+  /**
+   * Seal the given segment and replace it with a new one, unless another thread already did.
+   */
+  private synchronized void roll(Segment current, int frameLength) throws IOException {
+    if (!isStarted()) {
+      throw new IOException("Appender is stopped");
+    }
+    if (segment != current) {
+      return;
+    }
+    seal(current);
+    rename(current.file, Instant.ofEpochMilli(current.createdMillis));
+    segment = new Segment(current.file, Math.max(segmentBytes, frameLength));
+    deleteExpiredSegments();
+  }
+
+  private void seal(Segment current) throws IOException {
+    long incompleteBytes = current.seal();
+    if (incompleteBytes == 0) {
+      return;
+    }
+    if (current.corrupt) {
+      addError("Segment of topic " + topic + " has " + incompleteBytes
+          + " bytes of incomplete frames, readers stop at the first of them");
+    } else {
+      addWarn("Skipped an incomplete frame of " + incompleteBytes + " bytes of topic " + topic);
+    }
+  }
+
+  private void rename(File activeFile, Instant created) throws IOException {
+    String period = PERIOD_FORMAT.format(created.atZone(ZoneId.systemDefault()));
+    int index = 0;
+    File rolledFile;
+    do {
+      rolledFile = new File(basePath, topic + "." + period + "." + index++);
+    } while (rolledFile.exists());
+    Files.move(activeFile.toPath(), rolledFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void deleteExpiredSegments() {
+    File[] files = basePath.listFiles();
+    if (files == null || maxRetentionHours <= 0) {
+      return;
+    }
+    String oldestPeriod = PERIOD_FORMAT.format(
+        ZonedDateTime.now().truncatedTo(ChronoUnit.HOURS).minusHours(maxRetentionHours));
+    for (File file : files) {
+      Matcher matcher = rolledFilePattern.matcher(file.getName());
+      // the period format sorts chronologically
+      if (matcher.matches() && matcher.group(1).compareTo(oldestPeriod) < 0 && !file.delete()) {
+        addWarn("Failed to delete expired segment " + file);
+      }
+    }
+  }
+
+  /**
+   * @return the offset after the last complete frame of a segment file.
+   */
+  static long findDataEnd(File segmentFile) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(segmentFile, "r")) {
+      long length = file.length();
+      long offset = 0;
+      while (offset + FRAME_HEADER_BYTES <= length) {
+        file.seek(offset);
+        int frameSize = file.readInt();
+        if (frameSize <= 0 || offset + FRAME_HEADER_BYTES + frameSize > length) {
+          break;
+        }
+        offset += FRAME_HEADER_BYTES + frameSize;
+      }
+      return offset;
+    }
+  }
+
+  private interface FrameSerializer {
+
+    void serialize(ByteBuffer buffer) throws TException;
+  }
+
+  private static final class Segment {
+
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long capacity;
+    private final long createdMillis;
+    private final long rollAtMillis;
+    // offset of the next reservation, moved past the capacity when the segment is sealed
+    private final AtomicLong cursor = new AtomicLong();
+    // bytes of the frames that are completely written
+    private final AtomicLong committed = new AtomicLong();
+    // written between the payload and the size of a frame to order the two
+    private volatile int fence;
+    // whether sealing left incomplete frames that readers cannot skip
+    private volatile boolean corrupt;
+
+    private Segment(File file, int capacity) throws IOException {
+      this.file = file;
+      this.capacity = capacity;
+      this.channel = new RandomAccessFile(file, "rw").getChannel();
+      // mapping past the end of the file preallocates it with zeros
+      this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      ZonedDateTime now = ZonedDateTime.now();
+      this.createdMillis = now.toInstant().toEpochMilli();
+      this.rollAtMillis = now.truncatedTo(ChronoUnit.HOURS).plusHours(1).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @return the offset of the reserved space, or -1 if the frame does not fit.
+     */
+    private long reserve(int frameLength) {
+      long offset;
+      do {
+        offset = cursor.get();
+        if (offset + frameLength > capacity) {
+          return -1;
+        }
+      } while (!cursor.compareAndSet(offset, offset + frameLength));
+      return offset;
+    }
+
+    private void write(int offset, ByteBuffer frame) {
+      int frameSize = frame.remaining();
+      ByteBuffer target = buffer.duplicate();
+      target.position(offset + FRAME_HEADER_BYTES);
+      target.put(frame);
+      fence = offset;
+      buffer.putInt(offset, frameSize);
+      committed.addAndGet(FRAME_HEADER_BYTES + frameSize);
+    }
+
+    /**
+     * Stop reservations, wait for the reserved frames to be written and truncate the file to
+     * the reserved frames. Frames that are not written before the timeout, e.g. because their
+     * writer died, are covered by a skip frame if possible, and mark the segment corrupt if not.
+     *
+     * @return the number of bytes of frames that were not written.
+     */
+    private long seal() throws IOException {
+      long dataEnd = cursor.getAndSet(Long.MAX_VALUE / 2);
+      if (dataEnd > capacity) {
+        // already sealed
+        return 0;
+      }
+      long deadline = System.nanoTime() + SEAL_TIMEOUT_NANOS;
+      long incompleteBytes = 0;
+      while (committed.get() < dataEnd) {
+        if (System.nanoTime() - deadline >= 0) {
+          incompleteBytes = dataEnd - committed.get();
+          corrupt = incompleteBytes > 0 && !skipIncompleteFrame((int) dataEnd, incompleteBytes);
+          break;
+        }
+        LockSupport.parkNanos(1000);
+      }
+      // late writers of incomplete frames still write within the file
+      channel.truncate(dataEnd);
+      channel.close();
+      return incompleteBytes;
+    }
+
+    /**
+     * Cover a reserved but unwritten frame with a skip frame. Only a single incomplete frame can
+     * be covered, since its length is the difference of the reserved and the committed bytes. A
+     * writer that completes the frame later overwrites the skip frame with the same size.
+     *
+     * @return false if the incomplete frames cannot be covered.
+     */
+    private boolean skipIncompleteFrame(int dataEnd, long incompleteBytes) {
+      int frameStart = findFramesEnd(0, dataEnd);
+      long frameEnd = frameStart + incompleteBytes;
+      if (incompleteBytes < FRAME_HEADER_BYTES + AppenderUtils.SKIP_FRAME_PREFIX.length
+          || frameEnd > dataEnd || findFramesEnd((int) frameEnd, dataEnd) != dataEnd) {
+        return false;
+      }
+      ByteBuffer target = buffer.duplicate();
+      target.position(frameStart + FRAME_HEADER_BYTES);
+      target.put(AppenderUtils.SKIP_FRAME_PREFIX);
+      fence = frameStart;
+      buffer.putInt(frameStart, (int) incompleteBytes - FRAME_HEADER_BYTES);
+      return true;
+    }
+
+    /**
+     * @return the offset after the complete frames that follow each other from the given offset.
+     */
+    private int findFramesEnd(int offset, int dataEnd) {
+      while (offset + FRAME_HEADER_BYTES <= dataEnd) {
+        int frameSize = buffer.getInt(offset);
+        if (frameSize <= 0 || offset + FRAME_HEADER_BYTES + frameSize > dataEnd) {
+          break;
+        }
+        offset += FRAME_HEADER_BYTES + frameSize;
+      }
+      return offset;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client.logback;
+
+import com.pinterest.singer.client.ThriftCodec;
+import com.pinterest.singer.thrift.LogMessage;
+
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import com.google.common.base.Preconditions;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Appender that spreads the LogMessages of a topic over several shard appenders, each writing
+ * its own file.
+ *
+ * A message goes to the shard of its partition key if it has one and sharding by key is enabled,
+ * otherwise to the shard of the calling thread. Messages of one thread or one key therefore stay
+ * in order within one file.
+ */
+public class ShardedAppender extends UnsynchronizedAppenderBase<LogMessage>
+    implements ThriftMessageAppender {
+
+  private final Appender<LogMessage>[] shards;
+  private final boolean shardByPartitionKey;
+
+  /**
+   * @param shards the appenders of the shards, stopped together with this appender.
+   * @param shardByPartitionKey whether messages with a partition key are sharded by the key.
+   */
+  @SuppressWarnings("unchecked")
+  public ShardedAppender(List<Appender<LogMessage>> shards, boolean shardByPartitionKey) {
+    Preconditions.checkArgument(!shards.isEmpty());
+    this.shards = shards.toArray(new Appender[shards.size()]);
+    this.shardByPartitionKey = shardByPartitionKey;
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    for (Appender<LogMessage> shard : shards) {
+      shard.stop();
+    }
+  }
+
+  @Override
+  protected void append(LogMessage logMessage) {
+    shards[getShard(logMessage.isSetKey() ? logMessage.getKey() : null)].doAppend(logMessage);
+  }
+
+  @Override
+  public void appendThriftMessage(byte[] partitionKey, TBase thriftMessage, long timeNanos)
+      throws TException {
+    if (!isStarted()) {
+      return;
+    }
+    Appender<LogMessage> shard = shards[getShard(partitionKey)];
+    if (shard instanceof ThriftMessageAppender) {
+      ((ThriftMessageAppender) shard).appendThriftMessage(partitionKey, thriftMessage, timeNanos);
+      return;
+    }
+    LogMessage logMessage = new LogMessage().setTimestampInNanos(timeNanos)
+        .setMessage(ThriftCodec.getInstance().serialize(thriftMessage));
+    if (partitionKey != null) {
+      logMessage.setKey(partitionKey);
+    }
+    shard.doAppend(logMessage);
+  }
+
+  private int getShard(byte[] partitionKey) {
+    long hash = shardByPartitionKey && partitionKey != null
+                ? Arrays.hashCode(partitionKey)
+                : Thread.currentThread().getId();
+    return (int) Math.floorMod(hash, (long) shards.length);
+  }
+
+  public int getNumShards() {
+    return shards.length;
+  }
+}
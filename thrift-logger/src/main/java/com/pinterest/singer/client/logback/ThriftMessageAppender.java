@@ -0,0 +1,37 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client.logback;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+
+/**
+ * Appender that can write a thrift message as the message of a LogMessage without the message
+ * being serialized into a byte array and wrapped in a LogMessage first.
+ */
+public interface ThriftMessageAppender {
+
+  /**
+   * Append a LogMessage with the given thrift message serialized with the TBinaryProtocol as
+   * its message. The thrift message is not referenced after the call returns.
+   *
+   * @param partitionKey the key of the LogMessage, can be null.
+   * @param thriftMessage the thrift message.
+   * @param timeNanos the timestamp of the LogMessage.
+   */
+  void appendThriftMessage(byte[] partitionKey, TBase thriftMessage, long timeNanos)
+      throws TException;
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.pinterest.singer.client.logback.AsyncRingBufferAppender;
+import com.pinterest.singer.thrift.LogMessage;
+
+import ch.qos.logback.core.ContextBase;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+public class AsyncRingBufferAppenderTest {
+
+  /**
+   * Appender that collects the messages, optionally waiting on a latch before each write.
+   */
+  private static class CollectingAppender extends UnsynchronizedAppenderBase<LogMessage> {
+
+    private final List<LogMessage> messages = new CopyOnWriteArrayList<>();
+    private final CountDownLatch latch;
+
+    CollectingAppender(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    protected void append(LogMessage logMessage) {
+      try {
+        latch.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      messages.add(logMessage);
+    }
+  }
+
+  private static AsyncRingBufferAppender createAppender(CollectingAppender collector,
+                                                        int capacity,
+                                                        AsyncOverflowPolicy policy) {
+    ContextBase context = new ContextBase();
+    collector.setContext(context);
+    collector.start();
+    AsyncRingBufferAppender appender =
+        new AsyncRingBufferAppender(collector, "test_topic", capacity, policy);
+    appender.setContext(context);
+    appender.start();
+    return appender;
+  }
+
+  private static LogMessage createMessage(int producer, int sequence) {
+    return new LogMessage().setTimestampInNanos(sequence)
+        .setMessage(ByteBuffer.allocate(8).putInt(producer).putInt(sequence).array());
+  }
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    CollectingAppender collector = new CollectingAppender(new CountDownLatch(0));
+    // a small buffer makes the producers block on the writer
+    AsyncRingBufferAppender appender = createAppender(collector, 16, AsyncOverflowPolicy.BLOCK);
+    int numProducers = 4;
+    int numMessages = 5000;
+    List<Thread> producers = new ArrayList<>();
+    for (int p = 0; p < numProducers; p++) {
+      final int producer = p;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < numMessages; i++) {
+          appender.doAppend(createMessage(producer, i));
+        }
+      });
+      thread.start();
+      producers.add(thread);
+    }
+    for (Thread thread : producers) {
+      thread.join();
+    }
+    appender.stop();
+    assertFalse(collector.isStarted());
+    assertEquals(numProducers * numMessages, collector.messages.size());
+
+    // messages of each producer are written in the order they were appended
+    int[] next = new int[numProducers];
+    for (LogMessage logMessage : collector.messages) {
+      ByteBuffer buffer = ByteBuffer.wrap(logMessage.getMessage());
+      int producer = buffer.getInt();
+      assertEquals(next[producer]++, buffer.getInt());
+    }
+  }
+
+  @Test
+  public void testOverflowPolicies() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    CollectingAppender collector = new CollectingAppender(latch);
+    AsyncRingBufferAppender appender = createAppender(collector, 4, AsyncOverflowPolicy.DROP);
+    // the writer takes the first message and blocks, the next 4 fill the buffer
+    for (int i = 0; i < 10; i++) {
+      appender.doAppend(createMessage(0, i));
+      if (i == 0) {
+        while (appender.getBufferedMessages() > 0) {
+          Thread.sleep(1);
+        }
+      }
+    }
+    assertEquals(4, appender.getBufferedMessages());
+    latch.countDown();
+    appender.stop();
+    assertEquals(5, collector.messages.size());
+
+    collector = new CollectingAppender(new CountDownLatch(0));
+    appender = createAppender(collector, 1, AsyncOverflowPolicy.SPILL);
+    for (int i = 0; i < 100; i++) {
+      appender.doAppend(createMessage(0, i));
+    }
+    appender.stop();
+    // spilled messages are written by the caller, nothing is lost
+    assertEquals(100, collector.messages.size());
+  }
+
+  @Test
+  public void testIdleWriterIsWoken() throws Exception {
+    CollectingAppender collector = new CollectingAppender(new CountDownLatch(0));
+    AsyncRingBufferAppender appender = createAppender(collector, 16, AsyncOverflowPolicy.BLOCK);
+    for (int i = 0; i < 5; i++) {
+      // let the writer run out of yields and park
+      Thread.sleep(50);
+      appender.doAppend(createMessage(0, i));
+      for (int j = 0; j < 1000 && collector.messages.size() <= i; j++) {
+        Thread.sleep(1);
+      }
+      assertEquals(i + 1, collector.messages.size());
+    }
+    appender.stop();
+    assertEquals(5, collector.messages.size());
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.pinterest.singer.loggingaudit.client.AuditHeadersGenerator;
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
+
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class AuditHeadersGeneratorTest {
+
+  @Test
+  public void testConcurrentGenerateHeaders() throws Exception {
+    AuditHeadersGenerator generator = new AuditHeadersGenerator("host", "log");
+    int numThreads = 8;
+    int numHeaders = 10000;
+    Set<Integer> logSeqNums = ConcurrentHashMap.newKeySet();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      Thread thread = new Thread(() -> {
+        LoggingAuditHeaders headers = new LoggingAuditHeaders();
+        for (int i = 0; i < numHeaders; i++) {
+          assertSame(headers, generator.generateHeaders(headers));
+          logSeqNums.add(headers.getLogSeqNumInSession());
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // every sequence number from 0 is claimed exactly once
+    assertEquals(numThreads * numHeaders, logSeqNums.size());
+    assertEquals(numThreads * numHeaders, generator.generateHeaders().getLogSeqNumInSession());
+  }
+
+  @Test
+  public void testWriteHeaders() throws Exception {
+    AuditHeadersGenerator generator = new AuditHeadersGenerator("host", "log");
+    LoggingAuditHeaders first = generator.generateHeaders();
+    TSerializer serializer = new TSerializer(new TBinaryProtocol.Factory());
+    TDeserializer deserializer = new TDeserializer(new TBinaryProtocol.Factory());
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+    for (boolean tracked : new boolean[] {false, true}) {
+      buffer.clear();
+      int length = generator.writeHeaders(buffer, tracked);
+      assertEquals(length, buffer.position());
+      byte[] bytes = Arrays.copyOf(buffer.array(), length);
+      LoggingAuditHeaders headers = new LoggingAuditHeaders();
+      deserializer.deserialize(headers, bytes);
+      assertEquals("host", headers.getHost());
+      assertEquals("log", headers.getLogName());
+      assertEquals(first.getSession(), headers.getSession());
+      assertEquals(first.getLogSeqNumInSession() + (tracked ? 2 : 1),
+          headers.getLogSeqNumInSession());
+      assertEquals(tracked, headers.isTracked());
+      assertArrayEquals(serializer.serialize(headers), bytes);
+    }
+
+    // no sequence number is claimed if the headers do not fit
+    ByteBuffer smallBuffer = ByteBuffer.allocate(10);
+    assertThrows(BufferOverflowException.class, () -> generator.writeHeaders(smallBuffer, false));
+    assertEquals(first.getLogSeqNumInSession() + 3,
+        generator.generateHeaders().getLogSeqNumInSession());
+  }
+}
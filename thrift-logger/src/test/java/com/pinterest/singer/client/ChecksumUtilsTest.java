@@ -0,0 +1,64 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.pinterest.singer.thrift.ChecksumType;
+import com.pinterest.singer.thrift.LogMessage;
+import com.pinterest.singer.utils.ChecksumUtils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+public class ChecksumUtilsTest {
+
+  private static final byte[] CHECK_INPUT = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  public void testComputeChecksum() {
+    CRC32 crc = new CRC32();
+    crc.update(CHECK_INPUT);
+    assertEquals(crc.getValue(), ChecksumUtils.computeChecksum(ChecksumType.CRC32, CHECK_INPUT));
+    // check value of CRC-32C
+    assertEquals(0xE3069283L, ChecksumUtils.computeChecksum(ChecksumType.CRC32C, CHECK_INPUT));
+    // thread local checksums are reset between messages
+    assertEquals(0xE3069283L, ChecksumUtils.computeChecksum(ChecksumType.CRC32C, CHECK_INPUT));
+  }
+
+  @Test
+  public void testVerifyChecksum() {
+    LogMessage logMessage = new LogMessage().setMessage(CHECK_INPUT);
+    assertTrue(ChecksumUtils.verifyChecksum(logMessage));
+
+    // messages without checksum type have a CRC-32 checksum
+    logMessage.setChecksum(ChecksumUtils.computeChecksum(ChecksumType.CRC32, CHECK_INPUT));
+    assertEquals(ChecksumType.CRC32, ChecksumUtils.getChecksumType(logMessage));
+    assertTrue(ChecksumUtils.verifyChecksum(logMessage));
+
+    logMessage.setChecksumType(ChecksumType.CRC32C);
+    assertFalse(ChecksumUtils.verifyChecksum(logMessage));
+    logMessage.setChecksum(ChecksumUtils.computeChecksum(ChecksumType.CRC32C, CHECK_INPUT));
+    assertTrue(ChecksumUtils.verifyChecksum(logMessage));
+
+    logMessage.setMessage("123456780".getBytes(StandardCharsets.US_ASCII));
+    assertFalse(ChecksumUtils.verifyChecksum(logMessage));
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.pinterest.singer.client.logback.AppenderUtils;
+import com.pinterest.singer.thrift.LogMessage;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TFastFramedTransport;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+public class LogMessageEncoderTest {
+
+  private static LogMessage[] createMessages(int count) {
+    LogMessage[] messages = new LogMessage[count];
+    for (int i = 0; i < count; i++) {
+      messages[i] = new LogMessage().setTimestampInNanos(i)
+          .setMessage(("message" + i).getBytes()).setKey(("key" + i).getBytes());
+    }
+    return messages;
+  }
+
+  /**
+   * Frames as written by a flushing TFastFramedTransport, the format Singer reads.
+   */
+  private static byte[] encodeWithFramedTransport(LogMessage[] messages) throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    TTransport transport = new TFastFramedTransport(new TIOStreamTransport(os), 10);
+    TProtocol protocol = new TBinaryProtocol(transport);
+    for (LogMessage message : messages) {
+      message.write(protocol);
+      transport.flush();
+    }
+    return os.toByteArray();
+  }
+
+  @Test
+  public void testEncoderFormat() throws Exception {
+    LogMessage[] messages = createMessages(100);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    AppenderUtils.LogMessageEncoder encoder = new AppenderUtils.LogMessageEncoder();
+    encoder.init(os);
+    for (LogMessage message : messages) {
+      encoder.doEncode(message);
+    }
+    encoder.close();
+    assertArrayEquals(encodeWithFramedTransport(messages), os.toByteArray());
+  }
+
+  @Test
+  public void testGroupFlush() throws Exception {
+    LogMessage[] messages = createMessages(1000);
+    byte[] expected = encodeWithFramedTransport(messages);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    AppenderUtils.LogMessageEncoder encoder = new AppenderUtils.LogMessageEncoder(4096, 0);
+    encoder.init(os);
+    encoder.doEncode(messages[0]);
+    // frames stay buffered until the threshold is reached
+    assertEquals(0, os.size());
+    for (int i = 1; i < messages.length; i++) {
+      encoder.doEncode(messages[i]);
+    }
+    int written = os.size();
+    assertTrue(written > 0 && written < expected.length);
+
+    encoder.flush();
+    assertArrayEquals(expected, os.toByteArray());
+
+    // close writes out the remaining frames
+    encoder.doEncode(messages[0]);
+    encoder.close();
+    byte[] frame = encodeWithFramedTransport(new LogMessage[] {messages[0]});
+    assertEquals(expected.length + frame.length, os.size());
+  }
+
+  @Test
+  public void testCompactProtocol() throws Exception {
+    LogMessage[] messages = createMessages(100);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    AppenderUtils.LogMessageEncoder encoder = new AppenderUtils.LogMessageEncoder(0, 0, true);
+    encoder.init(os);
+    for (LogMessage message : messages) {
+      encoder.doEncode(message);
+    }
+    encoder.close();
+    byte[] binary = encodeWithFramedTransport(messages);
+    assertTrue(os.size() < binary.length);
+
+    ByteBuffer data = ByteBuffer.wrap(os.toByteArray());
+    for (LogMessage message : messages) {
+      int frameSize = data.getInt();
+      byte[] prefix = new byte[AppenderUtils.COMPACT_FRAME_PREFIX.length];
+      data.get(prefix);
+      assertArrayEquals(AppenderUtils.COMPACT_FRAME_PREFIX, prefix);
+      LogMessage decoded = new LogMessage();
+      decoded.read(new TCompactProtocol(new TMemoryInputTransport(
+          data.array(), data.position(), frameSize - prefix.length)));
+      assertEquals(message, decoded);
+      data.position(data.position() + frameSize - prefix.length);
+    }
+    assertEquals(0, data.remaining());
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.pinterest.singer.loggingaudit.client.AuditHeadersGenerator;
+import com.pinterest.singer.loggingaudit.client.LoggingAuditEventAggregator;
+import com.pinterest.singer.loggingaudit.thrift.AggregatedLoggingAuditEvent;
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditEvent;
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditHeaders;
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditSeqNumRange;
+import com.pinterest.singer.loggingaudit.thrift.LoggingAuditStage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LoggingAuditEventAggregatorTest {
+
+  private static LoggingAuditEvent createEvent(LoggingAuditHeaders headers, boolean messageValid) {
+    return new LoggingAuditEvent().setHost("host").setStage(LoggingAuditStage.SINGER)
+        .setStartAtCurrentStage(false).setStopAtCurrentStage(false)
+        .setLoggingAuditHeaders(headers).setHeaderGeneratedTimestamp(headers.getTimestamp())
+        .setMessageValid(messageValid).setKafkaCluster("cluster").setTopic("topic");
+  }
+
+  private static LoggingAuditSeqNumRange range(int start, int count) {
+    return new LoggingAuditSeqNumRange().setStart(start).setCount(count);
+  }
+
+  @Test
+  public void testAggregateRanges() {
+    LoggingAuditEventAggregator aggregator = new LoggingAuditEventAggregator(60000, 100, 100);
+    AuditHeadersGenerator generator = new AuditHeadersGenerator("host", "log");
+    List<LoggingAuditHeaders> headers = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      headers.add(generator.generateHeaders().setTimestamp(120000 + i));
+    }
+    // out of order, with a gap at 5 and a repeated audit of 2
+    LoggingAuditEvent first = createEvent(headers.get(3), true);
+    aggregator.add(first);
+    for (int i : new int[] {0, 1, 2, 2, 4, 6, 7, 8, 9}) {
+      aggregator.add(createEvent(headers.get(i), true));
+    }
+    // invalid messages are aggregated separately
+    aggregator.add(createEvent(headers.get(5), false));
+    assertEquals(2, aggregator.size());
+
+    List<AggregatedLoggingAuditEvent> events = aggregator.drain();
+    assertEquals(0, aggregator.size());
+    assertEquals(2, events.size());
+    AggregatedLoggingAuditEvent valid = events.get(0).getEvent().isMessageValid()
+                                        ? events.get(0) : events.get(1);
+    assertSame(first, valid.getEvent());
+    assertEquals(10, valid.getCount());
+    assertEquals(120000, valid.getWindowStartTimestamp());
+    assertEquals(Arrays.asList(range(0, 5), range(6, 4)), valid.getSeqNumRanges());
+  }
+
+  @Test
+  public void testAggregateWindows() {
+    LoggingAuditEventAggregator aggregator = new LoggingAuditEventAggregator(1000, 100, 100);
+    AuditHeadersGenerator generator = new AuditHeadersGenerator("host", "log");
+    aggregator.add(createEvent(generator.generateHeaders().setTimestamp(1999), true));
+    aggregator.add(createEvent(generator.generateHeaders().setTimestamp(2000), true));
+    List<AggregatedLoggingAuditEvent> events = aggregator.drain();
+    assertEquals(2, events.size());
+    for (AggregatedLoggingAuditEvent event : events) {
+      assertEquals(1, event.getCount());
+      assertEquals(event.getEvent().getHeaderGeneratedTimestamp() / 1000 * 1000,
+          event.getWindowStartTimestamp());
+    }
+  }
+
+  @Test
+  public void testLimits() {
+    LoggingAuditEventAggregator aggregator = new LoggingAuditEventAggregator(1000, 2, 3);
+    AuditHeadersGenerator generator = new AuditHeadersGenerator("host", "log");
+    for (int i = 0; i < 3; i++) {
+      assertTrue(aggregator.add(createEvent(generator.generateHeaders().setTimestamp(0), true)));
+    }
+    // the aggregate of the first window is full
+    assertFalse(aggregator.add(createEvent(generator.generateHeaders().setTimestamp(0), true)));
+    assertTrue(aggregator.add(createEvent(generator.generateHeaders().setTimestamp(1000), true)));
+    // no aggregate is left for a third window
+    assertFalse(aggregator.add(createEvent(generator.generateHeaders().setTimestamp(2000), true)));
+    assertEquals(2, aggregator.size());
+
+    List<AggregatedLoggingAuditEvent> events = aggregator.drain();
+    assertEquals(4, events.stream().mapToInt(AggregatedLoggingAuditEvent::getCount).sum());
+    assertTrue(aggregator.add(createEvent(generator.generateHeaders().setTimestamp(2000), true)));
+  }
+
+  @Test
+  public void testClose() {
+    LoggingAuditEventAggregator aggregator = new LoggingAuditEventAggregator(1000, 100, 100);
+    AuditHeadersGenerator generator = new AuditHeadersGenerator("host", "log");
+    assertTrue(aggregator.add(createEvent(generator.generateHeaders().setTimestamp(0), true)));
+    assertEquals(1, aggregator.close().size());
+    assertTrue(aggregator.isClosed());
+    assertFalse(aggregator.add(createEvent(generator.generateHeaders().setTimestamp(0), true)));
+    assertEquals(0, aggregator.size());
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.pinterest.singer.client.logback.AppenderUtils;
+import com.pinterest.singer.client.logback.MappedSegmentAppender;
+import com.pinterest.singer.thrift.LogMessage;
+
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.ContextBase;
+import com.twitter.io.TempDirectory;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class MappedSegmentAppenderTest {
+
+  /**
+   * Read the frames of a segment up to the end of the file or the first zero frame size.
+   */
+  private static List<LogMessage> readSegment(File file) throws Exception {
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    List<LogMessage> messages = new ArrayList<>();
+    while (data.remaining() >= 4) {
+      int frameSize = data.getInt();
+      if (frameSize == 0) {
+        break;
+      }
+      LogMessage logMessage = new LogMessage();
+      logMessage.read(new TBinaryProtocol(
+          new TMemoryInputTransport(data.array(), data.position(), frameSize)));
+      data.position(data.position() + frameSize);
+      messages.add(logMessage);
+    }
+    return messages;
+  }
+
+  @Test
+  public void testConcurrentAppendsAndRolls() throws Exception {
+    File baseDir = TempDirectory.create(true);
+    Appender<LogMessage> appender =
+        AppenderUtils.createMappedThriftAppender(baseDir, "test_topic", 16 * 1024,
+            new ContextBase(), 1);
+    int numThreads = 4;
+    int numMessages = 2000;
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      final int thread = t;
+      Thread writer = new Thread(() -> {
+        for (int i = 0; i < numMessages; i++) {
+          appender.doAppend(new LogMessage().setTimestampInNanos(i)
+              .setMessage(("message-" + thread + "-" + i).getBytes()));
+        }
+      });
+      writer.start();
+      threads.add(writer);
+    }
+
+    // the active segment can be tailed while it is written
+    File activeFile = new File(baseDir, "test_topic");
+    assertTrue(activeFile.length() >= 16 * 1024);
+    readSegment(activeFile);
+
+    for (Thread writer : threads) {
+      writer.join();
+    }
+    appender.stop();
+
+    File[] files = baseDir.listFiles();
+    // the segments rolled by size, sealed segments are truncated to their frames
+    assertTrue(files.length > 1);
+    Set<String> messages = new HashSet<>();
+    for (File file : files) {
+      assertTrue(file.getName().equals("test_topic")
+          || file.getName().matches("test_topic\\.\\d{4}-\\d{2}-\\d{2}-\\d{2}\\.\\d+"));
+      assertTrue(file.length() <= 16 * 1024);
+      for (LogMessage logMessage : readSegment(file)) {
+        messages.add(new String(logMessage.getMessage()));
+      }
+    }
+    assertEquals(numThreads * numMessages, messages.size());
+  }
+
+  @Test
+  public void testAppendThriftMessage() throws Exception {
+    File baseDir = TempDirectory.create(true);
+    MappedSegmentAppender appender =
+        new MappedSegmentAppender(baseDir, "test_topic", 16 * 1024, 1);
+    appender.start();
+    LogMessage thriftMessage = new LogMessage().setMessage("thrift message".getBytes());
+    appender.appendThriftMessage("key".getBytes(), thriftMessage, 1L);
+    appender.doAppend(new LogMessage().setTimestampInNanos(2L).setMessage("message".getBytes()));
+    appender.appendThriftMessage(null, thriftMessage, 3L);
+
+    List<LogMessage> messages = readSegment(new File(baseDir, "test_topic"));
+    assertEquals(3, messages.size());
+    byte[] messageBytes = ThriftCodec.getInstance().serialize(thriftMessage);
+    assertEquals(new LogMessage().setKey("key".getBytes()).setMessage(messageBytes)
+        .setTimestampInNanos(1L), messages.get(0));
+    assertEquals("message", new String(messages.get(1).getMessage()));
+    assertEquals(new LogMessage().setMessage(messageBytes).setTimestampInNanos(3L),
+        messages.get(2));
+    appender.stop();
+  }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.pinterest.singer.client.logback.AppenderUtils;
+import com.pinterest.singer.client.logback.LogbackThriftLoggerFactory;
+import com.pinterest.singer.thrift.LogMessage;
+
+import com.twitter.io.TempDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ShardedAppenderTest {
+
+  @Test
+  public void testShardFileNames() {
+    assertEquals("topic_0", AppenderUtils.getShardFileName("topic", 0, 4));
+    assertEquals("topic_03", AppenderUtils.getShardFileName("topic", 3, 12));
+    assertEquals("topic_11", AppenderUtils.getShardFileName("topic", 11, 12));
+  }
+
+  @Test
+  public void testShardedLogger() throws Exception {
+    File baseDir = TempDirectory.create(true);
+    ThriftLoggerConfig config = new ThriftLoggerConfig(baseDir, "sharded_topic", 3600, 1024 * 1024);
+    config.setNumShards(4);
+    config.setShardByPartitionKey(true);
+    LogbackThriftLoggerFactory factory = new LogbackThriftLoggerFactory();
+    ThriftLogger logger = factory.getLogger(config);
+    for (int i = 0; i < 100; i++) {
+      logger.append(("key" + i).getBytes(), ("message" + i).getBytes(), System.nanoTime());
+    }
+    factory.shutdown();
+
+    Set<String> files = new HashSet<>(Arrays.asList(baseDir.list()));
+    assertEquals(new HashSet<>(Arrays.asList(
+        "sharded_topic_0", "sharded_topic_1", "sharded_topic_2", "sharded_topic_3")), files);
+    // the keys are spread over the shards
+    for (String file : files) {
+      assertTrue(new File(baseDir, file).length() > 0);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2019 Pinterest, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.pinterest.singer.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.pinterest.singer.thrift.LogMessage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class ThriftCodecTest {
+
+  private static final ThriftCodec CODEC = ThriftCodec.getInstance();
+
+  private static LogMessage createMessage() {
+    return new LogMessage().setTimestampInNanos(123L)
+        .setMessage("message".getBytes()).setKey("key".getBytes());
+  }
+
+  private static byte[] getBytes(ByteBuffer buffer, int start, int length) {
+    return Arrays.copyOfRange(buffer.array(), start, start + length);
+  }
+
+  @Test
+  public void testSerializeToByteBuffer() throws Exception {
+    LogMessage message = createMessage();
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    buffer.position(10);
+
+    int length = CODEC.serialize(message, buffer);
+    assertArrayEquals(CODEC.serialize(message), getBytes(buffer, 10, length));
+    int start = buffer.position();
+    length = CODEC.serializePrefixed(message, buffer);
+    assertArrayEquals(CODEC.serializePrefixed(message), getBytes(buffer, start, length));
+    start = buffer.position();
+    length = CODEC.serializeCompact(message, buffer);
+    assertArrayEquals(CODEC.serializeCompact(message), getBytes(buffer, start, length));
+    assertEquals(start + length, buffer.position());
+  }
+
+  @Test
+  public void testSerializeOverflow() throws Exception {
+    LogMessage message = createMessage();
+    ByteBuffer buffer = ByteBuffer.allocate(CODEC.serialize(message).length - 1);
+    assertThrows(BufferOverflowException.class, () -> CODEC.serialize(message, buffer));
+    assertEquals(0, buffer.position());
+    assertThrows(BufferOverflowException.class,
+        () -> CODEC.serializeLogMessage(null, message, 0L, buffer));
+    assertEquals(0, buffer.position());
+
+    // the codec is still usable after an overflow
+    ByteBuffer largeBuffer = ByteBuffer.allocate(1024);
+    int length = CODEC.serializeCompact(message, largeBuffer);
+    assertArrayEquals(CODEC.serializeCompact(message), getBytes(largeBuffer, 0, length));
+  }
+
+  @Test
+  public void testSerializeLogMessage() throws Exception {
+    LogMessage thriftMessage = createMessage();
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    for (byte[] key : new byte[][] {null, "partition".getBytes()}) {
+      buffer.clear();
+      int length = CODEC.serializeLogMessage(key, thriftMessage, 456L, buffer);
+      LogMessage logMessage = new LogMessage().setTimestampInNanos(456L)
+          .setMessage(CODEC.serialize(thriftMessage));
+      if (key != null) {
+        logMessage.setKey(key);
+      }
+      assertArrayEquals(CODEC.serialize(logMessage), getBytes(buffer, 0, length));
+    }
+  }
+}